@@ -0,0 +1,122 @@
+package com.kklsqm.webssh.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * 功能: 双缓冲流拷贝
+ * 作者: 沙琪马
+ * 日期: 2025/9/18 14:30
+ *
+ * 只有两块固定大小的缓冲区在读写线程之间轮换：
+ * 当前线程从输入流填充一块的同时，写线程把另一块写到输出流，
+ * 两端的网络延迟可以重叠，内存占用固定为 2 * bufferSize。
+ */
+public final class BufferPairPump {
+
+    private static final int EOF = -1;
+
+    private BufferPairPump() {
+    }
+
+    /**
+     * 把输入流全部拷贝到输出流
+     *
+     * @param progress 每写完一块回调一次，参数为已写出的总字节数，可为 null
+     * @return 拷贝的总字节数
+     */
+    public static long pump(InputStream in, OutputStream out, int bufferSize, LongConsumer progress) throws IOException {
+        BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(2);
+        BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(2);
+        free.add(new byte[bufferSize]);
+        free.add(new byte[bufferSize]);
+
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writer = Thread.ofVirtual().name("buffer-pump-writer").start(() -> {
+            long written = 0;
+            try {
+                while (true) {
+                    Chunk chunk = filled.take();
+                    if (chunk.length == EOF) {
+                        break;
+                    }
+                    out.write(chunk.buffer, 0, chunk.length);
+                    written += chunk.length;
+                    free.put(chunk.buffer);
+                    if (progress != null) {
+                        progress.accept(written);
+                    }
+                }
+                out.flush();
+            } catch (Throwable t) {
+                writerError.set(t);
+            }
+        });
+
+        long total = 0;
+        try {
+            while (true) {
+                byte[] buffer = takeFreeBuffer(free, writer, writerError);
+                int length = fill(in, buffer);
+                if (length <= 0) {
+                    filled.put(new Chunk(buffer, EOF));
+                    break;
+                }
+                filled.put(new Chunk(buffer, length));
+                total += length;
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IOException("拷贝被中断", e);
+        } catch (IOException e) {
+            writer.interrupt();
+            throw e;
+        }
+
+        Throwable error = writerError.get();
+        if (error != null) {
+            throw error instanceof IOException ioe ? ioe : new IOException("写入失败: " + error.getMessage(), error);
+        }
+        return total;
+    }
+
+    /**
+     * 尽量把缓冲区填满再交给写线程，减少小块写入
+     */
+    private static int fill(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private static byte[] takeFreeBuffer(BlockingQueue<byte[]> free, Thread writer,
+                                         AtomicReference<Throwable> writerError) throws InterruptedException, IOException {
+        while (true) {
+            byte[] buffer = free.poll(100, TimeUnit.MILLISECONDS);
+            if (buffer != null) {
+                return buffer;
+            }
+            if (writerError.get() != null || !writer.isAlive()) {
+                Throwable error = writerError.get();
+                throw new IOException("写入失败: " + (error != null ? error.getMessage() : "写线程已退出"), error);
+            }
+        }
+    }
+
+    private record Chunk(byte[] buffer, int length) {
+    }
+}
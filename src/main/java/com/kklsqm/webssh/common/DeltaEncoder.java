@@ -0,0 +1,258 @@
+package com.kklsqm.webssh.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 功能: rsync 风格的增量编码器
+ * 作者: 沙琪马
+ * 日期: 2025/9/16 15:10
+ *
+ * 输入旧文件 (远程) 每个完整数据块的 cksum 弱校验和 MD5 强校验，
+ * 对新文件数据流做滚动匹配，输出 "从旧文件复制" 和 "字面数据" 两类操作。
+ * 字面数据按顺序写入 literalOut，内存占用只与块大小有关，与文件大小无关。
+ * 实例不是线程安全的，每次同步新建一个。
+ */
+public class DeltaEncoder {
+
+    private static final int LITERAL_FLUSH_SIZE = 64 * 1024;
+
+    private final int blockSize;
+    private final RollingCksum rolling;
+    // 高 32 位为校验值，低 32 位为块序号，排序后可二分查找
+    private final long[] sortedSums;
+    // 以校验值低 16 位为下标的位图，绝大多数位置可以直接排除
+    private final long[] filter = new long[1 << 10];
+    private final byte[] digests;
+    private final MessageDigest md5;
+
+    private byte[] buf;
+    private int litStart;
+    private int start;
+    private int end;
+    private boolean eof;
+    private InputStream in;
+    private OutputStream literalOut;
+    private List<DeltaOp> ops;
+    private long targetOffset;
+    private long literalOffset;
+
+    /**
+     * @param blockSize    块大小
+     * @param blockSums    每个完整块的 cksum 值
+     * @param blockDigests 每个完整块的 MD5，按块顺序拼接 (每块 16 字节)
+     */
+    public DeltaEncoder(int blockSize, int[] blockSums, byte[] blockDigests) {
+        if (blockDigests.length != blockSums.length * 16) {
+            throw new IllegalArgumentException("弱校验与强校验数量不一致");
+        }
+        this.blockSize = blockSize;
+        this.rolling = new RollingCksum(blockSize);
+        this.digests = blockDigests;
+        this.sortedSums = new long[blockSums.length];
+        for (int i = 0; i < blockSums.length; i++) {
+            sortedSums[i] = ((long) blockSums[i] << 32) | i;
+            int low = blockSums[i] & 0xFFFF;
+            filter[low >>> 6] |= 1L << (low & 63);
+        }
+        Arrays.sort(sortedSums);
+        try {
+            this.md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 对新数据做增量编码
+     *
+     * @param input      新文件内容
+     * @param literalOut 字面数据的输出流
+     * @return 按目标文件顺序排列、已合并相邻区间的操作列表
+     */
+    public List<DeltaOp> encode(InputStream input, OutputStream literalOut) throws IOException {
+        this.buf = new byte[blockSize * 2 + LITERAL_FLUSH_SIZE];
+        this.litStart = 0;
+        this.start = 0;
+        this.end = 0;
+        this.eof = false;
+        this.in = input;
+        this.literalOut = literalOut;
+        this.ops = new ArrayList<>();
+        this.targetOffset = 0;
+        this.literalOffset = 0;
+
+        boolean haveCrc = false;
+        int crc = 0;
+        int expectedBlock = -1;
+
+        while (true) {
+            if (!haveCrc) {
+                fill(blockSize);
+                if (end - start < blockSize) {
+                    break;
+                }
+                crc = RollingCksum.raw(buf, start, blockSize);
+                haveCrc = true;
+            }
+
+            int block = match(crc, expectedBlock);
+            if (block >= 0) {
+                flushLiteral();
+                emitCopy((long) block * blockSize, blockSize);
+                start += blockSize;
+                litStart = start;
+                expectedBlock = block + 1;
+                haveCrc = false;
+                continue;
+            }
+
+            fill(blockSize + 1);
+            if (end - start < blockSize + 1) {
+                break;
+            }
+            crc = rolling.roll(crc, buf[start], buf[start + blockSize]);
+            start++;
+            if (start - litStart >= LITERAL_FLUSH_SIZE) {
+                flushLiteral();
+            }
+        }
+
+        // 剩余不足一个块的尾部全部作为字面数据
+        start = end;
+        flushLiteral();
+        literalOut.flush();
+        return ops;
+    }
+
+    private int match(int crc, int expectedBlock) {
+        if (sortedSums.length == 0) {
+            return -1;
+        }
+        int sum = rolling.finish(crc);
+        int low = sum & 0xFFFF;
+        if ((filter[low >>> 6] & (1L << (low & 63))) == 0) {
+            return -1;
+        }
+
+        int pos = Arrays.binarySearch(sortedSums, (long) sum << 32);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+
+        byte[] windowDigest = null;
+        int found = -1;
+        for (int i = pos; i < sortedSums.length && (int) (sortedSums[i] >> 32) == sum; i++) {
+            int block = (int) sortedSums[i];
+            if (windowDigest == null) {
+                md5.update(buf, start, blockSize);
+                windowDigest = md5.digest();
+            }
+            if (Arrays.equals(windowDigest, 0, 16, digests, block * 16, block * 16 + 16)) {
+                // 优先选择紧接上一个匹配块的块，便于合并成连续复制
+                if (block == expectedBlock) {
+                    return block;
+                }
+                if (found < 0) {
+                    found = block;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 保证缓冲区中从 start 开始至少有 need 个字节 (除非已读到末尾)
+     */
+    private void fill(int need) throws IOException {
+        if (end - start >= need || eof) {
+            return;
+        }
+        if (start + need > buf.length) {
+            flushLiteral();
+            int remaining = end - start;
+            System.arraycopy(buf, start, buf, 0, remaining);
+            start = 0;
+            litStart = 0;
+            end = remaining;
+        }
+        while (end - start < need) {
+            int read = in.read(buf, end, buf.length - end);
+            if (read == -1) {
+                eof = true;
+                return;
+            }
+            end += read;
+        }
+    }
+
+    private void flushLiteral() throws IOException {
+        int length = start - litStart;
+        if (length <= 0) {
+            return;
+        }
+        literalOut.write(buf, litStart, length);
+
+        DeltaOp last = ops.isEmpty() ? null : ops.get(ops.size() - 1);
+        if (last != null && last.literal) {
+            last.length += length;
+        } else {
+            ops.add(new DeltaOp(true, targetOffset, literalOffset, length));
+        }
+        literalOffset += length;
+        targetOffset += length;
+        litStart = start;
+    }
+
+    private void emitCopy(long sourceOffset, int length) {
+        DeltaOp last = ops.isEmpty() ? null : ops.get(ops.size() - 1);
+        if (last != null && !last.literal && last.sourceOffset + last.length == sourceOffset) {
+            last.length += length;
+        } else {
+            ops.add(new DeltaOp(false, targetOffset, sourceOffset, length));
+        }
+        targetOffset += length;
+    }
+
+    /**
+     * 增量操作：把来源 (旧文件或字面数据文件) 中的一段写到目标文件的指定位置
+     */
+    public static class DeltaOp {
+        private final boolean literal;
+        private final long targetOffset;
+        private final long sourceOffset;
+        private long length;
+
+        DeltaOp(boolean literal, long targetOffset, long sourceOffset, long length) {
+            this.literal = literal;
+            this.targetOffset = targetOffset;
+            this.sourceOffset = sourceOffset;
+            this.length = length;
+        }
+
+        /**
+         * true 表示来源为字面数据文件，false 表示来源为旧文件
+         */
+        public boolean isLiteral() {
+            return literal;
+        }
+
+        public long getTargetOffset() {
+            return targetOffset;
+        }
+
+        public long getSourceOffset() {
+            return sourceOffset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.kklsqm.webssh.common;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kklsqm.webssh.domain.ContainerMetric;
+
+import java.util.Arrays;
+
+/**
+ * 功能: 解析 docker stats --format '{{json .}}' 的输出行
+ * 作者: 沙琪马
+ * 日期: 2025/9/29 10:10
+ *
+ * 持续输出模式下 docker 每刷新一轮会先输出清屏控制序列 (ESC[2J ESC[H)，
+ * 带控制序列的行即新一轮的第一行。数值带单位 (0.50%、1.5MiB / 1GiB、10kB / 2MB)，
+ * 十进制单位按 1000、二进制单位按 1024 换算成字节，无法解析的值为 NaN。
+ */
+public final class DockerStatsParser {
+
+    public static final String COMMAND = "docker stats --format '{{json .}}'";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private DockerStatsParser() {
+    }
+
+    /**
+     * 一个容器的一次采样，values 按 ContainerMetric 下标排列
+     */
+    public record Entry(String id, String name, boolean frameStart, double[] values) {
+    }
+
+    /**
+     * 解析一行输出，不是合法 JSON 时返回 null
+     */
+    public static Entry parse(String line) {
+        int start = line.indexOf('{');
+        if (start < 0) {
+            return null;
+        }
+        JsonNode node;
+        try {
+            node = MAPPER.readTree(line.substring(start));
+        } catch (Exception e) {
+            return null;
+        }
+        String name = node.path("Name").asText("");
+        if (name.isEmpty()) {
+            return null;
+        }
+        double[] values = new double[ContainerMetric.count()];
+        Arrays.fill(values, Double.NaN);
+        values[ContainerMetric.CPU.ordinal()] = parsePercent(node.path("CPUPerc").asText(""));
+        values[ContainerMetric.MEMORY.ordinal()] = parsePercent(node.path("MemPerc").asText(""));
+        String[] memory = pair(node.path("MemUsage").asText(""));
+        values[ContainerMetric.MEMORY_USAGE.ordinal()] = parseSize(memory[0]);
+        values[ContainerMetric.MEMORY_LIMIT.ordinal()] = parseSize(memory[1]);
+        String[] net = pair(node.path("NetIO").asText(""));
+        values[ContainerMetric.NET_RX.ordinal()] = parseSize(net[0]);
+        values[ContainerMetric.NET_TX.ordinal()] = parseSize(net[1]);
+        String[] block = pair(node.path("BlockIO").asText(""));
+        values[ContainerMetric.BLOCK_READ.ordinal()] = parseSize(block[0]);
+        values[ContainerMetric.BLOCK_WRITE.ordinal()] = parseSize(block[1]);
+        values[ContainerMetric.PIDS.ordinal()] = parseNumber(node.path("PIDs").asText(""));
+        return new Entry(node.path("ID").asText(""), name, line.indexOf('\u001b') >= 0, values);
+    }
+
+    /**
+     * 解析 12.5% 这样的百分比
+     */
+    public static double parsePercent(String text) {
+        String value = text.trim();
+        if (value.endsWith("%")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        return parseNumber(value);
+    }
+
+    /**
+     * 解析 1.5MiB、10kB、0B 这样的大小，返回字节数
+     */
+    public static double parseSize(String text) {
+        String value = text.trim();
+        int unitStart = 0;
+        while (unitStart < value.length()
+                && (Character.isDigit(value.charAt(unitStart)) || value.charAt(unitStart) == '.')) {
+            unitStart++;
+        }
+        if (unitStart == 0) {
+            return Double.NaN;
+        }
+        double number = parseNumber(value.substring(0, unitStart));
+        long multiplier = switch (value.substring(unitStart).trim()) {
+            case "", "B" -> 1L;
+            case "kB", "KB" -> 1000L;
+            case "MB" -> 1000L * 1000;
+            case "GB" -> 1000L * 1000 * 1000;
+            case "TB" -> 1000L * 1000 * 1000 * 1000;
+            case "KiB" -> 1L << 10;
+            case "MiB" -> 1L << 20;
+            case "GiB" -> 1L << 30;
+            case "TiB" -> 1L << 40;
+            default -> -1L;
+        };
+        return multiplier < 0 ? Double.NaN : number * multiplier;
+    }
+
+    private static double parseNumber(String text) {
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            // 容器刚启动或已停止时 docker 输出 --
+            return Double.NaN;
+        }
+    }
+
+    // "a / b" 拆成两部分
+    private static String[] pair(String text) {
+        int slash = text.indexOf('/');
+        if (slash < 0) {
+            return new String[]{text, ""};
+        }
+        return new String[]{text.substring(0, slash), text.substring(slash + 1)};
+    }
+}
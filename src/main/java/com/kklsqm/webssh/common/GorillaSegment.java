@@ -0,0 +1,424 @@
+package com.kklsqm.webssh.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 功能: Gorilla 压缩的时间序列段文件
+ * 作者: 沙琪马
+ * 日期: 2025/9/27 10:00
+ *
+ * 一个段文件保存一台服务器一段时间内的多指标采样，所有指标共用一列时间戳，按记录顺序写在同一个位流里：
+ * 时间戳用二阶差分 (delta-of-delta) 编码，每个指标的值与该指标上一个值做 XOR，
+ * 只写有效位 (Facebook Gorilla 论文的方案)。采样间隔稳定、数值变化不大时每条记录只需十几个字节。
+ *
+ * 文件通过内存映射读写，追加只是写内存，由操作系统回写磁盘；进程崩溃时已写入的记录不会丢失。
+ * 映射区按需倍增，达到上限时 append 返回 false，由调用方换新段。
+ *
+ * 文件头 (64 字节)：magic, 版本, 指标数, 步长, 首/末时间戳, 记录数, 位流长度
+ */
+public final class GorillaSegment implements Closeable {
+
+    public static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC = 0x47545331; // "GTS1"
+    private static final byte VERSION = 1;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_METRICS = 5;
+    private static final int OFFSET_STEP = 8;
+    private static final int OFFSET_FIRST = 16;
+    private static final int OFFSET_LAST = 24;
+    private static final int OFFSET_COUNT = 32;
+    private static final int OFFSET_BITS = 40;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int maxCapacity;
+    private final long step;
+    private final Codec codec;
+    private MappedByteBuffer buffer;
+    private long firstTimestamp;
+    private int count;
+
+    private GorillaSegment(Path file, FileChannel channel, MappedByteBuffer buffer, int maxCapacity,
+                           int metricCount, long step) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.maxCapacity = maxCapacity;
+        this.step = step;
+        this.codec = new Codec(metricCount);
+    }
+
+    /**
+     * 新建段文件，已存在的同名文件会被覆盖
+     *
+     * @param step 采样步长 (毫秒)，原始数据为 0，只记录在文件头中
+     */
+    public static GorillaSegment create(Path file, int metricCount, long step,
+                                        int initialCapacity, int maxCapacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(initialCapacity, HEADER_SIZE * 2));
+            GorillaSegment segment = new GorillaSegment(file, channel, buffer, maxCapacity, metricCount, step);
+            buffer.putInt(OFFSET_MAGIC, MAGIC);
+            buffer.put(OFFSET_VERSION, VERSION);
+            buffer.put(OFFSET_METRICS, (byte) metricCount);
+            buffer.putLong(OFFSET_STEP, step);
+            segment.writeHeader();
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开已有的段文件继续追加，读取全部记录以恢复编码状态
+     */
+    public static GorillaSegment open(Path file, int maxCapacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            Header header = Header.read(buffer, file, buffer.capacity());
+            GorillaSegment segment = new GorillaSegment(file, channel, buffer, maxCapacity, header.metricCount(), header.step());
+            segment.firstTimestamp = header.firstTimestamp();
+            segment.count = header.count();
+            segment.codec.bitPosition = 0;
+            double[] values = new double[header.metricCount()];
+            for (int i = 0; i < header.count(); i++) {
+                segment.codec.decode(buffer, i == 0 ? header.firstTimestamp() : Long.MIN_VALUE, values);
+            }
+            if (segment.codec.bitPosition != header.bitLength()) {
+                throw new IOException("段文件位流长度不一致: " + file);
+            }
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 追加一条记录，时间戳必须大于上一条；映射区已达上限时返回 false 且不写入
+     */
+    public synchronized boolean append(long timestamp, double[] values) throws IOException {
+        if (count > 0 && timestamp <= codec.previousTimestamp) {
+            throw new IllegalArgumentException("时间戳必须递增");
+        }
+        if (!ensureCapacity(codec.maxRecordBits())) {
+            return false;
+        }
+        if (count == 0) {
+            firstTimestamp = timestamp;
+        }
+        codec.encode(buffer, count == 0, timestamp, values);
+        count++;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * 依次回调 [from, to] 范围内的记录，values 数组在回调间复用
+     */
+    public synchronized void scan(long from, long to, PointConsumer consumer) {
+        scan(buffer, new Codec(codec.metricCount), firstTimestamp, count, from, to, consumer);
+    }
+
+    /**
+     * 只读方式扫描段文件，不影响正在追加的段
+     */
+    public static void scan(Path file, long from, long to, PointConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Header header = Header.read(buffer, file, buffer.capacity());
+            if (header.count() == 0 || header.lastTimestamp() < from || header.firstTimestamp() > to) {
+                return;
+            }
+            scan(buffer, new Codec(header.metricCount()), header.firstTimestamp(), header.count(), from, to, consumer);
+        }
+    }
+
+    /**
+     * 只读取文件头
+     */
+    public static Header readHeader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // 读满文件头
+            }
+            header.flip();
+            return Header.read(header, file, channel.size());
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    public int getMetricCount() {
+        return codec.metricCount;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized long getFirstTimestamp() {
+        return count == 0 ? -1 : firstTimestamp;
+    }
+
+    public synchronized long getLastTimestamp() {
+        return count == 0 ? -1 : codec.previousTimestamp;
+    }
+
+    /**
+     * 不再追加：把文件截断到实际数据长度并关闭
+     */
+    public synchronized void seal() throws IOException {
+        buffer.force();
+        long used = HEADER_SIZE + (codec.bitPosition + 7) / 8;
+        // 丢掉映射后再截断，之后不再访问旧的映射区
+        buffer = null;
+        channel.truncate(used);
+        channel.close();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        channel.close();
+    }
+
+    private static void scan(ByteBuffer buffer, Codec codec, long firstTimestamp, int count,
+                             long from, long to, PointConsumer consumer) {
+        double[] values = new double[codec.metricCount];
+        for (int i = 0; i < count; i++) {
+            long timestamp = codec.decode(buffer, i == 0 ? firstTimestamp : Long.MIN_VALUE, values);
+            if (timestamp > to) {
+                return;
+            }
+            if (timestamp >= from) {
+                consumer.accept(timestamp, values);
+            }
+        }
+    }
+
+    // 确保还能写入 bits 位，必要时倍增映射区
+    private boolean ensureCapacity(long bits) throws IOException {
+        long needed = HEADER_SIZE + (codec.bitPosition + bits + 7) / 8;
+        if (needed <= buffer.capacity()) {
+            return true;
+        }
+        if (needed > maxCapacity) {
+            return false;
+        }
+        long capacity = Math.min(maxCapacity, Math.max(needed, (long) buffer.capacity() * 2));
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        return true;
+    }
+
+    // 记录写完后再更新文件头，崩溃时最多丢失正在写的一条
+    private void writeHeader() {
+        buffer.putLong(OFFSET_FIRST, firstTimestamp);
+        buffer.putLong(OFFSET_LAST, count == 0 ? 0 : codec.previousTimestamp);
+        buffer.putInt(OFFSET_COUNT, count);
+        buffer.putLong(OFFSET_BITS, codec.bitPosition);
+    }
+
+    /**
+     * 扫描回调
+     */
+    @FunctionalInterface
+    public interface PointConsumer {
+        void accept(long timestamp, double[] values);
+    }
+
+    /**
+     * 段文件头
+     */
+    public record Header(int metricCount, long step, long firstTimestamp, long lastTimestamp, int count, long bitLength) {
+
+        static Header read(ByteBuffer buffer, Path file, long fileSize) throws IOException {
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(OFFSET_MAGIC) != MAGIC) {
+                throw new IOException("不是有效的段文件: " + file);
+            }
+            if (buffer.get(OFFSET_VERSION) != VERSION) {
+                throw new IOException("不支持的段文件版本: " + file);
+            }
+            Header header = new Header(buffer.get(OFFSET_METRICS) & 0xFF, buffer.getLong(OFFSET_STEP),
+                    buffer.getLong(OFFSET_FIRST), buffer.getLong(OFFSET_LAST),
+                    buffer.getInt(OFFSET_COUNT), buffer.getLong(OFFSET_BITS));
+            if (header.bitLength() < 0 || HEADER_SIZE + (header.bitLength() + 7) / 8 > fileSize) {
+                throw new IOException("段文件已损坏: " + file);
+            }
+            return header;
+        }
+    }
+
+    /**
+     * 位流编解码状态，编码和解码共用同一套状态，打开旧文件时解码一遍即可继续编码
+     */
+    private static final class Codec {
+
+        private final int metricCount;
+        private final long[] previousBits;
+        private final int[] leading;
+        private final int[] trailing;
+        private long previousTimestamp;
+        private long previousDelta;
+        private long bitPosition;
+
+        Codec(int metricCount) {
+            this.metricCount = metricCount;
+            this.previousBits = new long[metricCount];
+            this.leading = new int[metricCount];
+            this.trailing = new int[metricCount];
+            Arrays.fill(leading, -1);
+        }
+
+        // 一条记录最多占用的位数：时间戳 4+64，每个指标 2+5+6+64
+        long maxRecordBits() {
+            return 68 + 77L * metricCount;
+        }
+
+        void encode(ByteBuffer buffer, boolean first, long timestamp, double[] values) {
+            // 第一条的时间戳保存在文件头中
+            if (!first) {
+                long delta = timestamp - previousTimestamp;
+                long dod = delta - previousDelta;
+                if (dod == 0) {
+                    writeBits(buffer, 0, 1);
+                } else if (dod >= -63 && dod <= 64) {
+                    writeBits(buffer, 0b10, 2);
+                    writeBits(buffer, dod + 63, 7);
+                } else if (dod >= -255 && dod <= 256) {
+                    writeBits(buffer, 0b110, 3);
+                    writeBits(buffer, dod + 255, 9);
+                } else if (dod >= -2047 && dod <= 2048) {
+                    writeBits(buffer, 0b1110, 4);
+                    writeBits(buffer, dod + 2047, 12);
+                } else {
+                    writeBits(buffer, 0b1111, 4);
+                    writeBits(buffer, dod, 64);
+                }
+                previousDelta = delta;
+            }
+            previousTimestamp = timestamp;
+
+            for (int metric = 0; metric < metricCount; metric++) {
+                long bits = Double.doubleToRawLongBits(values[metric]);
+                long xor = bits ^ previousBits[metric];
+                previousBits[metric] = bits;
+                if (xor == 0) {
+                    writeBits(buffer, 0, 1);
+                    continue;
+                }
+                int lead = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trail = Long.numberOfTrailingZeros(xor);
+                if (leading[metric] >= 0 && lead >= leading[metric] && trail >= trailing[metric]) {
+                    // 有效位落在上一次的窗口内，沿用窗口
+                    writeBits(buffer, 0b10, 2);
+                    writeBits(buffer, xor >>> trailing[metric], 64 - leading[metric] - trailing[metric]);
+                } else {
+                    int length = 64 - lead - trail;
+                    writeBits(buffer, 0b11, 2);
+                    writeBits(buffer, lead, 5);
+                    writeBits(buffer, length - 1, 6);
+                    writeBits(buffer, xor >>> trail, length);
+                    leading[metric] = lead;
+                    trailing[metric] = trail;
+                }
+            }
+        }
+
+        /**
+         * 解码下一条记录到 values，返回时间戳；firstTimestamp 只在第一条时有效
+         */
+        long decode(ByteBuffer buffer, long firstTimestamp, double[] values) {
+            if (firstTimestamp != Long.MIN_VALUE) {
+                previousTimestamp = firstTimestamp;
+            } else {
+                long dod;
+                if (readBits(buffer, 1) == 0) {
+                    dod = 0;
+                } else if (readBits(buffer, 1) == 0) {
+                    dod = readBits(buffer, 7) - 63;
+                } else if (readBits(buffer, 1) == 0) {
+                    dod = readBits(buffer, 9) - 255;
+                } else if (readBits(buffer, 1) == 0) {
+                    dod = readBits(buffer, 12) - 2047;
+                } else {
+                    dod = readBits(buffer, 64);
+                }
+                previousDelta += dod;
+                previousTimestamp += previousDelta;
+            }
+
+            for (int metric = 0; metric < metricCount; metric++) {
+                if (readBits(buffer, 1) != 0) {
+                    long xor;
+                    if (readBits(buffer, 1) == 0) {
+                        int length = 64 - leading[metric] - trailing[metric];
+                        xor = readBits(buffer, length) << trailing[metric];
+                    } else {
+                        int lead = (int) readBits(buffer, 5);
+                        int length = (int) readBits(buffer, 6) + 1;
+                        int trail = 64 - lead - length;
+                        xor = readBits(buffer, length) << trail;
+                        leading[metric] = lead;
+                        trailing[metric] = trail;
+                    }
+                    previousBits[metric] ^= xor;
+                }
+                values[metric] = Double.longBitsToDouble(previousBits[metric]);
+            }
+            return previousTimestamp;
+        }
+
+        private void writeBits(ByteBuffer buffer, long value, int bits) {
+            while (bits > 0) {
+                int index = HEADER_SIZE + (int) (bitPosition >>> 3);
+                int offset = (int) (bitPosition & 7);
+                int take = Math.min(8 - offset, bits);
+                int chunk = (int) (value >>> (bits - take)) & ((1 << take) - 1);
+                // 保留本字节已写的高位，清掉其余位 (可能是崩溃前未提交的旧数据)
+                int current = offset == 0 ? 0 : buffer.get(index) & (0xFF00 >>> offset) & 0xFF;
+                buffer.put(index, (byte) (current | (chunk << (8 - offset - take))));
+                bitPosition += take;
+                bits -= take;
+            }
+        }
+
+        private long readBits(ByteBuffer buffer, int bits) {
+            long value = 0;
+            while (bits > 0) {
+                int index = HEADER_SIZE + (int) (bitPosition >>> 3);
+                int offset = (int) (bitPosition & 7);
+                int take = Math.min(8 - offset, bits);
+                int chunk = ((buffer.get(index) & 0xFF) >>> (8 - offset - take)) & ((1 << take) - 1);
+                value = (value << take) | chunk;
+                bitPosition += take;
+                bits -= take;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.kklsqm.webssh.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 功能: 限制单行长度的按行读取器
+ * 作者: 沙琪马
+ * 日期: 2025/9/21 09:30
+ *
+ * 用于读取远程命令输出：BufferedReader 遇到超长行会把整行读入内存，
+ * 这里超过 maxLineLength 的部分直接丢弃，只通过 isTruncated 告知调用方。
+ */
+public class LineReader {
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private final byte[] line;
+    private int position;
+    private int limit;
+    private int length;
+    private boolean truncated;
+
+    public LineReader(InputStream in, int maxLineLength) {
+        this.in = in;
+        this.line = new byte[maxLineLength];
+    }
+
+    /**
+     * 读取下一行 (不含换行符和行尾的 \r)，到达末尾返回 null
+     */
+    public String readLine() throws IOException {
+        length = 0;
+        truncated = false;
+        boolean any = false;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return any ? toLineString() : null;
+                }
+            }
+            any = true;
+            while (position < limit) {
+                byte b = buffer[position++];
+                if (b == '\n') {
+                    return toLineString();
+                }
+                if (length < line.length) {
+                    line[length++] = b;
+                } else {
+                    truncated = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 上一次读取的行是否被截断
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private String toLineString() {
+        int end = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+        return new String(line, 0, end, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,95 @@
+package com.kklsqm.webssh.common;
+
+/**
+ * 功能: LTTB (Largest-Triangle-Three-Buckets) 降采样
+ * 作者: 沙琪马
+ * 日期: 2025/9/27 15:00
+ *
+ * 把一条曲线降到最多 threshold 个点，保留首尾点，中间每个桶选出与前一个选中点、
+ * 下一个桶平均点构成的三角形面积最大的点，能保住峰值和趋势，适合画图。
+ * 只在基本类型数组上计算，NaN (缺失值) 的点不参与。
+ */
+public final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * 选出的点在 [from, from + length) 内的下标，按时间升序；NaN 的点被跳过
+     *
+     * @param x 时间戳，升序
+     * @param y 数值
+     */
+    public static int[] select(long[] x, double[] y, int from, int length, int threshold) {
+        // 先收集非 NaN 的下标
+        int[] valid = new int[length];
+        int count = 0;
+        for (int i = from; i < from + length; i++) {
+            if (!Double.isNaN(y[i])) {
+                valid[count++] = i;
+            }
+        }
+        if (threshold >= count || threshold <= 2) {
+            int keep = threshold <= 2 ? Math.min(count, Math.max(threshold, 0)) : count;
+            int[] result = new int[keep];
+            if (keep == count) {
+                System.arraycopy(valid, 0, result, 0, count);
+            } else if (keep > 0) {
+                result[0] = valid[0];
+                if (keep == 2) {
+                    result[1] = valid[count - 1];
+                }
+            }
+            return result;
+        }
+
+        int[] selected = new int[threshold];
+        selected[0] = valid[0];
+        int a = valid[0];
+        // 首尾点之外的点平均分到 threshold - 2 个桶
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+
+            // 下一个桶的平均点，最后一个桶用尾点
+            int nextStart = end;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, count);
+            if (bucket == threshold - 3) {
+                nextStart = count - 1;
+                nextEnd = count;
+            }
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += x[valid[j]];
+                avgY += y[valid[j]];
+            }
+            int nextCount = nextEnd - nextStart;
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            // 时间戳相对于 a 计算，避免大数相乘丢精度
+            double ax = 0;
+            double ay = y[a];
+            double bx = avgX - x[a];
+            double maxArea = -1;
+            int chosen = valid[start];
+            for (int j = start; j < end; j++) {
+                int index = valid[j];
+                double px = x[index] - x[a];
+                double area = Math.abs((ax - bx) * (y[index] - ay) - (ax - px) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = index;
+                }
+            }
+            selected[bucket + 1] = chosen;
+            a = chosen;
+        }
+
+        selected[threshold - 1] = valid[count - 1];
+        return selected;
+    }
+}
@@ -0,0 +1,126 @@
+package com.kklsqm.webssh.common;
+
+/**
+ * 功能: 固定容量的时间序列环形缓冲区
+ * 作者: 沙琪马
+ * 日期: 2025/9/25 10:20
+ *
+ * 一列 long 时间戳加上每个指标一列 double，全部是预先分配的基本类型数组，
+ * 写入不分配对象，写满后覆盖最旧的数据。一个写线程、多个读线程，通过对象锁同步。
+ */
+public final class MetricRingBuffer {
+
+    private final long[] timestamps;
+    // [指标][槽位]
+    private final double[][] columns;
+    // 下一次写入的槽位
+    private int head;
+    private int size;
+
+    public MetricRingBuffer(int capacity, int metricCount) {
+        if (capacity <= 0 || metricCount <= 0) {
+            throw new IllegalArgumentException("容量和指标数必须大于 0");
+        }
+        this.timestamps = new long[capacity];
+        this.columns = new double[metricCount][capacity];
+    }
+
+    /**
+     * 追加一个采样点，values 按指标下标排列，缺失的指标用 NaN
+     */
+    public synchronized void append(long timestamp, double[] values) {
+        timestamps[head] = timestamp;
+        for (int metric = 0; metric < columns.length; metric++) {
+            columns[metric][head] = values[metric];
+        }
+        head = (head + 1) % timestamps.length;
+        if (size < timestamps.length) {
+            size++;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+
+    public int metricCount() {
+        return columns.length;
+    }
+
+    /**
+     * 最新采样点的时间戳，没有数据时返回 -1
+     */
+    public synchronized long latestTimestamp() {
+        return size == 0 ? -1 : timestamps[slot(size - 1)];
+    }
+
+    /**
+     * 把最新采样点复制到 dest，返回其时间戳，没有数据时返回 -1 且不修改 dest
+     */
+    public synchronized long latest(double[] dest) {
+        if (size == 0) {
+            return -1;
+        }
+        int slot = slot(size - 1);
+        for (int metric = 0; metric < columns.length; metric++) {
+            dest[metric] = columns[metric][slot];
+        }
+        return timestamps[slot];
+    }
+
+    /**
+     * 复制 [from, to] 时间范围内的采样点，按时间升序
+     */
+    public synchronized Range range(long from, long to) {
+        // 时间戳单调递增，二分找到起止位置
+        int start = lowerBound(from);
+        int end = lowerBound(to == Long.MAX_VALUE ? to : to + 1);
+        int count = end - start;
+
+        long[] times = new long[count];
+        double[][] values = new double[columns.length][count];
+        for (int i = 0; i < count; i++) {
+            int slot = slot(start + i);
+            times[i] = timestamps[slot];
+            for (int metric = 0; metric < columns.length; metric++) {
+                values[metric][i] = columns[metric][slot];
+            }
+        }
+        return new Range(times, values);
+    }
+
+    // 第 index 旧的数据所在槽位 (0 为最旧)
+    private int slot(int index) {
+        int oldest = size < timestamps.length ? 0 : head;
+        return (oldest + index) % timestamps.length;
+    }
+
+    // 第一个时间戳 >= time 的逻辑下标
+    private int lowerBound(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[slot(mid)] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 一段时间范围内的数据，values[指标][点]
+     */
+    public record Range(long[] timestamps, double[][] values) {
+
+        public int size() {
+            return timestamps.length;
+        }
+    }
+}
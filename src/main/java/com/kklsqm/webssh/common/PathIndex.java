@@ -0,0 +1,343 @@
+package com.kklsqm.webssh.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 功能: 前缀压缩的有序路径索引
+ * 作者: 沙琪马
+ * 日期: 2025/9/22 10:00
+ *
+ * 路径按 UTF-8 字节序排序后分块存储，每块第一条保存完整路径，
+ * 其余只保存与前一条的公共前缀长度和剩余后缀 (front coding)，
+ * 文件系统路径前缀重复度很高，通常能压缩到原始大小的 20% 左右。
+ * 前缀查询先二分查找块头；文件名子串查询在单独的小写文件名数组上顺序扫描。
+ * 构建后不可变，可被多个线程同时查询。
+ */
+public final class PathIndex {
+
+    private static final int BLOCK = 16;
+    private static final byte NAME_SEPARATOR = '\n';
+
+    private final int size;
+    private final byte[] data;
+    private final int[] blockOffsets;
+    // 所有文件名 (ASCII 小写) 以换行分隔连续存放，nameStarts[i] 为第 i 条的起点
+    private final byte[] names;
+    private final int[] nameStarts;
+    private final boolean[] directories;
+    private final int[] mtimes;
+
+    private PathIndex(int size, byte[] data, int[] blockOffsets, byte[] names, int[] nameStarts,
+                      boolean[] directories, int[] mtimes) {
+        this.size = size;
+        this.data = data;
+        this.blockOffsets = blockOffsets;
+        this.names = names;
+        this.nameStarts = nameStarts;
+        this.directories = directories;
+        this.mtimes = mtimes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 索引占用的大致内存字节数
+     */
+    public long memoryBytes() {
+        return data.length + names.length + (long) blockOffsets.length * 4
+                + (long) nameStarts.length * 4 + directories.length + (long) mtimes.length * 4;
+    }
+
+    /**
+     * 查找以 prefix 开头的路径
+     */
+    public List<Entry> searchPrefix(String prefix, int limit) {
+        byte[] target = prefix.getBytes(StandardCharsets.UTF_8);
+        List<Entry> results = new ArrayList<>();
+        if (size == 0 || limit <= 0) {
+            return results;
+        }
+
+        // 找到最后一个块头 <= target 的块，匹配项只可能从这里开始
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (Arrays.compareUnsigned(blockHead(mid), target) <= 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        Cursor cursor = new Cursor(low * BLOCK);
+        while (cursor.next()) {
+            int cmp = compareToPrefix(cursor.current, cursor.length, target);
+            if (cmp < 0) {
+                continue;
+            }
+            if (cmp > 0) {
+                break;
+            }
+            results.add(cursor.entry());
+            if (results.size() >= limit) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 查找文件名 (路径最后一级) 包含 query 的条目，ASCII 字母不区分大小写
+     */
+    public List<Entry> searchName(String query, int limit) {
+        byte[] needle = lowerAscii(query.getBytes(StandardCharsets.UTF_8));
+        List<Entry> results = new ArrayList<>();
+        if (needle.length == 0 || limit <= 0) {
+            return results;
+        }
+        byte first = needle[0];
+        int last = names.length - needle.length;
+        int pos = 0;
+        outer:
+        while (pos <= last) {
+            if (names[pos] != first) {
+                pos++;
+                continue;
+            }
+            for (int k = 1; k < needle.length; k++) {
+                if (names[pos + k] != needle[k]) {
+                    pos++;
+                    continue outer;
+                }
+            }
+            int index = entryAtNamePosition(pos);
+            results.add(entry(index));
+            if (results.size() >= limit) {
+                break;
+            }
+            // 同一个文件名只记一次
+            pos = index + 1 < size ? nameStarts[index + 1] : names.length;
+        }
+        return results;
+    }
+
+    /**
+     * 按排序顺序遍历所有条目
+     */
+    public void forEach(EntryConsumer consumer) {
+        Cursor cursor = new Cursor(0);
+        while (cursor.next()) {
+            consumer.accept(new String(cursor.current, 0, cursor.length, StandardCharsets.UTF_8),
+                    directories[cursor.index], mtimes[cursor.index]);
+        }
+    }
+
+    public Entry entry(int index) {
+        // 从块头解码到目标条目，最多解码 BLOCK 条
+        Cursor cursor = new Cursor(index - index % BLOCK);
+        for (int i = index - index % BLOCK; i <= index; i++) {
+            cursor.next();
+        }
+        return cursor.entry();
+    }
+
+    private byte[] blockHead(int block) {
+        int[] pos = {blockOffsets[block]};
+        int length = readVarint(pos);
+        return Arrays.copyOfRange(data, pos[0], pos[0] + length);
+    }
+
+    private int entryAtNamePosition(int position) {
+        int index = Arrays.binarySearch(nameStarts, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * path 以 prefix 开头返回 0，否则返回 path 与 prefix 的字节序比较结果
+     */
+    private static int compareToPrefix(byte[] path, int length, byte[] prefix) {
+        int n = Math.min(length, prefix.length);
+        int cmp = Arrays.compareUnsigned(path, 0, n, prefix, 0, n);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return length >= prefix.length ? 0 : -1;
+    }
+
+    private int readVarint(int[] pos) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private static byte[] lowerAscii(byte[] bytes) {
+        byte[] result = bytes.clone();
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] >= 'A' && result[i] <= 'Z') {
+                result[i] += 'a' - 'A';
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 顺序解码器，从某个块头开始逐条还原路径
+     */
+    private class Cursor {
+        private int index;
+        private int position;
+        private byte[] current = new byte[256];
+        private int length;
+
+        Cursor(int startIndex) {
+            this.index = startIndex - 1;
+            this.position = startIndex < size ? blockOffsets[startIndex / BLOCK] : data.length;
+        }
+
+        boolean next() {
+            if (index + 1 >= size) {
+                return false;
+            }
+            index++;
+            int[] pos = {position};
+            int shared = index % BLOCK == 0 ? 0 : readVarint(pos);
+            int suffix = readVarint(pos);
+            int newLength = shared + suffix;
+            if (newLength > current.length) {
+                current = Arrays.copyOf(current, Math.max(newLength, current.length * 2));
+            }
+            System.arraycopy(data, pos[0], current, shared, suffix);
+            length = newLength;
+            position = pos[0] + suffix;
+            return true;
+        }
+
+        Entry entry() {
+            return new Entry(new String(current, 0, length, StandardCharsets.UTF_8), directories[index], mtimes[index]);
+        }
+    }
+
+    public record Entry(String path, boolean directory, int mtime) {
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(String path, boolean directory, int mtime);
+    }
+
+    /**
+     * 收集条目后一次性排序、去重并编码
+     */
+    public static class Builder {
+        private final List<byte[]> paths = new ArrayList<>();
+        private boolean[] directories = new boolean[1024];
+        private int[] mtimes = new int[1024];
+
+        public Builder add(String path, boolean directory, int mtime) {
+            int i = paths.size();
+            if (i == mtimes.length) {
+                directories = Arrays.copyOf(directories, i * 2);
+                mtimes = Arrays.copyOf(mtimes, i * 2);
+            }
+            paths.add(path.getBytes(StandardCharsets.UTF_8));
+            directories[i] = directory;
+            mtimes[i] = mtime;
+            return this;
+        }
+
+        public int size() {
+            return paths.size();
+        }
+
+        public PathIndex build() {
+            Integer[] order = new Integer[paths.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(paths.get(a), paths.get(b)));
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            ByteArrayOutputStream names = new ByteArrayOutputStream();
+            int[] blockOffsets = new int[(order.length + BLOCK - 1) / BLOCK];
+            int[] nameStarts = new int[order.length];
+            boolean[] sortedDirectories = new boolean[order.length];
+            int[] sortedMtimes = new int[order.length];
+
+            byte[] previous = null;
+            int count = 0;
+            for (Integer i : order) {
+                byte[] path = paths.get(i);
+                if (previous != null && Arrays.equals(previous, path)) {
+                    // 重复路径保留后添加的属性
+                    sortedDirectories[count - 1] = directories[i];
+                    sortedMtimes[count - 1] = mtimes[i];
+                    continue;
+                }
+                if (count % BLOCK == 0) {
+                    blockOffsets[count / BLOCK] = data.size();
+                    writeVarint(data, path.length);
+                    data.write(path, 0, path.length);
+                } else {
+                    int shared = Arrays.mismatch(previous, path);
+                    shared = shared < 0 ? Math.min(previous.length, path.length) : shared;
+                    writeVarint(data, shared);
+                    writeVarint(data, path.length - shared);
+                    data.write(path, shared, path.length - shared);
+                }
+
+                nameStarts[count] = names.size();
+                int nameStart = lastSlash(path) + 1;
+                byte[] name = lowerAscii(Arrays.copyOfRange(path, nameStart, path.length));
+                names.write(name, 0, name.length);
+                names.write(NAME_SEPARATOR);
+
+                sortedDirectories[count] = directories[i];
+                sortedMtimes[count] = mtimes[i];
+                previous = path;
+                count++;
+            }
+
+            return new PathIndex(count, data.toByteArray(),
+                    Arrays.copyOf(blockOffsets, (count + BLOCK - 1) / BLOCK),
+                    names.toByteArray(), Arrays.copyOf(nameStarts, count),
+                    Arrays.copyOf(sortedDirectories, count), Arrays.copyOf(sortedMtimes, count));
+        }
+
+        private static int lastSlash(byte[] path) {
+            // 忽略末尾的 "/"，根目录 "/" 的文件名为 "/"
+            for (int i = path.length - 2; i >= 0; i--) {
+                if (path[i] == '/') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, int value) {
+            int v = value;
+            while ((v & ~0x7F) != 0) {
+                out.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.write(v);
+        }
+    }
+}
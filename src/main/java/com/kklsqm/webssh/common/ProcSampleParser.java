@@ -0,0 +1,356 @@
+package com.kklsqm.webssh.common;
+
+import com.kklsqm.webssh.domain.HostMetric;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 功能: 解析一次 exec 输出的 /proc 快照
+ * 作者: 沙琪马
+ * 日期: 2025/9/25 15:00
+ *
+ * COMMAND 在远程一次性输出 /proc/stat、meminfo、loadavg、uptime、net/dev、diskstats、根分区的 statfs，
+ * 以及进程数和监听中的 TCP/UDP 端口数，各段以 @名称 行分隔。解析直接在字节数组上按下标进行，
+ * 不创建字符串和对象；CPU、网络和磁盘读写速率由与上一次采样的计数差值计算，
+ * 因此每台服务器使用一个实例，且不能并发调用。
+ */
+public final class ProcSampleParser {
+
+    public static final String COMMAND = "echo @cpu; head -n 1 /proc/stat; "
+            + "echo @mem; cat /proc/meminfo; "
+            + "echo @load; cat /proc/loadavg; "
+            + "echo @uptime; cat /proc/uptime; "
+            + "echo @net; cat /proc/net/dev; "
+            // 与 ps aux、ss -tuln 的口径一致 (不含表头)：进程而不是线程；TCP 只计 LISTEN (0A)，UDP 只计未连接 (07)
+            + "echo @procs; ls -d /proc/[0-9]* 2>/dev/null | wc -l; "
+            + "echo @listen; { cat /proc/net/tcp /proc/net/tcp6 2>/dev/null | awk '$4 == \"0A\"'; "
+            + "cat /proc/net/udp /proc/net/udp6 2>/dev/null | awk '$4 == \"07\"'; } | wc -l; "
+            + "echo @diskstats; cat /proc/diskstats; "
+            + "echo @statfs; stat -f -c '%b %f %a %S' /";
+
+    // 没有上一次的 CPU 计数时先记下一次计数，隔半秒再采样，仍然只有一次往返
+    public static final String FIRST_COMMAND = "echo @cpu0; head -n 1 /proc/stat; "
+            + "sleep 0.5 2>/dev/null || sleep 1; " + COMMAND;
+
+    private static final int SECTOR_SIZE = 512;
+
+    private static final int NONE = 0;
+    private static final int CPU0 = 1;
+    private static final int CPU = 2;
+    private static final int MEM = 3;
+    private static final int LOAD = 4;
+    private static final int UPTIME = 5;
+    private static final int NET = 6;
+    private static final int PROCS = 7;
+    private static final int LISTEN = 8;
+    private static final int DISKSTATS = 9;
+    private static final int STATFS = 10;
+
+    private static final byte[][] SECTION_NAMES = {
+            null, ascii("@cpu0"), ascii("@cpu"), ascii("@mem"), ascii("@load"), ascii("@uptime"),
+            ascii("@net"), ascii("@procs"), ascii("@listen"), ascii("@diskstats"), ascii("@statfs")
+    };
+    private static final byte[] CPU_PREFIX = ascii("cpu ");
+    private static final byte[] MEM_TOTAL = ascii("MemTotal:");
+    private static final byte[] MEM_AVAILABLE = ascii("MemAvailable:");
+    private static final byte[] LOOPBACK = ascii("lo");
+    // 不参与磁盘吞吐统计的虚拟设备 (dm / md 与底层磁盘重复计数)
+    private static final byte[][] VIRTUAL_DISKS = {
+            ascii("loop"), ascii("ram"), ascii("zram"), ascii("dm-"), ascii("md"), ascii("sr"), ascii("fd"), ascii("nbd")
+    };
+    private static final byte[] NVME = ascii("nvme");
+    private static final byte[] MMCBLK = ascii("mmcblk");
+
+    private long prevCpuTotal = -1;
+    private long prevCpuIdle;
+    private long prevRxBytes;
+    private long prevTxBytes;
+    private long prevSectorsRead;
+    private long prevSectorsWritten;
+    // 上一次网络 / 磁盘计数的采样时间，0 表示还没有
+    private long prevNetTime;
+    private long prevDiskTime;
+
+    // 当前解析位置，由各个读取方法推进
+    private int cursor;
+
+    public boolean hasBaseline() {
+        return prevCpuTotal >= 0;
+    }
+
+    /**
+     * 解析 buf[0, length) 并按 HostMetric 下标写入 out，缺失的指标为 NaN
+     */
+    public void parse(byte[] buf, int length, long now, double[] out) {
+        Arrays.fill(out, Double.NaN);
+        int section = NONE;
+        long memTotal = -1;
+        long memAvailable = -1;
+        long rxBytes = 0;
+        long txBytes = 0;
+        boolean netSeen = false;
+        long sectorsRead = 0;
+        long sectorsWritten = 0;
+        boolean diskSeen = false;
+
+        int pos = 0;
+        while (pos < length) {
+            int end = pos;
+            while (end < length && buf[end] != '\n') {
+                end++;
+            }
+
+            if (end > pos && buf[pos] == '@') {
+                section = sectionOf(buf, pos, end);
+            } else {
+                cursor = pos;
+                switch (section) {
+                    case CPU0, CPU -> parseCpu(buf, end, section == CPU, out);
+                    case MEM -> {
+                        if (startsWith(buf, pos, end, MEM_TOTAL)) {
+                            cursor = pos + MEM_TOTAL.length;
+                            memTotal = nextLong(buf, end);
+                        } else if (startsWith(buf, pos, end, MEM_AVAILABLE)) {
+                            cursor = pos + MEM_AVAILABLE.length;
+                            memAvailable = nextLong(buf, end);
+                        }
+                    }
+                    case LOAD -> {
+                        // 1.37 0.84 0.78 1/74 6587，第四列的总数包含线程，进程数取自 @procs
+                        out[HostMetric.LOAD1.ordinal()] = nextDecimal(buf, end);
+                        out[HostMetric.LOAD5.ordinal()] = nextDecimal(buf, end);
+                        out[HostMetric.LOAD15.ordinal()] = nextDecimal(buf, end);
+                    }
+                    case UPTIME -> out[HostMetric.UPTIME.ordinal()] = Math.floor(nextDecimal(buf, end));
+                    case NET -> {
+                        int colon = indexOf(buf, pos, end, (byte) ':');
+                        if (colon > 0 && !isLoopback(buf, pos, colon)) {
+                            cursor = colon + 1;
+                            long rx = nextLong(buf, end);
+                            for (int i = 0; i < 7; i++) {
+                                nextLong(buf, end);
+                            }
+                            long tx = nextLong(buf, end);
+                            if (rx >= 0 && tx >= 0) {
+                                rxBytes += rx;
+                                txBytes += tx;
+                                netSeen = true;
+                            }
+                        }
+                    }
+                    case PROCS, LISTEN -> {
+                        long count = nextLong(buf, end);
+                        if (count >= 0) {
+                            out[(section == PROCS ? HostMetric.PROCESSES : HostMetric.CONNECTIONS).ordinal()] = count;
+                        }
+                    }
+                    case DISKSTATS -> {
+                        // major minor name reads merged sectors_read ms writes merged sectors_written ...
+                        nextLong(buf, end);
+                        nextLong(buf, end);
+                        skipSpaces(buf, end);
+                        int nameStart = cursor;
+                        while (cursor < end && buf[cursor] != ' ') {
+                            cursor++;
+                        }
+                        if (isWholeDisk(buf, nameStart, cursor)) {
+                            nextLong(buf, end);
+                            nextLong(buf, end);
+                            long read = nextLong(buf, end);
+                            nextLong(buf, end);
+                            nextLong(buf, end);
+                            nextLong(buf, end);
+                            long written = nextLong(buf, end);
+                            if (read >= 0 && written >= 0) {
+                                sectorsRead += read;
+                                sectorsWritten += written;
+                                diskSeen = true;
+                            }
+                        }
+                    }
+                    case STATFS -> {
+                        // 总块数 空闲块数 非特权可用块数 块大小，与 df 一致：已用 / (已用 + 可用)
+                        long blocks = nextLong(buf, end);
+                        long free = nextLong(buf, end);
+                        long available = nextLong(buf, end);
+                        long used = blocks - free;
+                        if (blocks > 0 && available >= 0 && used + available > 0) {
+                            out[HostMetric.DISK.ordinal()] = round(used * 100.0 / (used + available));
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+            pos = end + 1;
+        }
+
+        if (memTotal > 0 && memAvailable >= 0) {
+            out[HostMetric.MEMORY.ordinal()] = round((memTotal - memAvailable) * 100.0 / memTotal);
+        }
+        if (netSeen) {
+            if (prevNetTime > 0 && now > prevNetTime && rxBytes >= prevRxBytes && txBytes >= prevTxBytes) {
+                double seconds = (now - prevNetTime) / 1000.0;
+                out[HostMetric.NET_RX.ordinal()] = round((rxBytes - prevRxBytes) / seconds);
+                out[HostMetric.NET_TX.ordinal()] = round((txBytes - prevTxBytes) / seconds);
+            }
+            prevRxBytes = rxBytes;
+            prevTxBytes = txBytes;
+            prevNetTime = now;
+        }
+        if (diskSeen) {
+            if (prevDiskTime > 0 && now > prevDiskTime && sectorsRead >= prevSectorsRead && sectorsWritten >= prevSectorsWritten) {
+                double seconds = (now - prevDiskTime) / 1000.0;
+                out[HostMetric.DISK_READ.ordinal()] = round((sectorsRead - prevSectorsRead) * SECTOR_SIZE / seconds);
+                out[HostMetric.DISK_WRITE.ordinal()] = round((sectorsWritten - prevSectorsWritten) * SECTOR_SIZE / seconds);
+            }
+            prevSectorsRead = sectorsRead;
+            prevSectorsWritten = sectorsWritten;
+            prevDiskTime = now;
+        }
+    }
+
+    /**
+     * cpu  user nice system idle iowait irq softirq steal ...
+     * CPU0 段只记录计数作为基准，CPU 段与上一次计数相减得到使用率
+     */
+    private void parseCpu(byte[] buf, int end, boolean compute, double[] out) {
+        if (!startsWith(buf, cursor, end, CPU_PREFIX)) {
+            return;
+        }
+        cursor += CPU_PREFIX.length;
+        long total = 0;
+        long idle = 0;
+        for (int i = 0; i < 8; i++) {
+            long value = nextLong(buf, end);
+            if (value < 0) {
+                break;
+            }
+            total += value;
+            // 第 4、5 列为 idle 和 iowait
+            if (i == 3 || i == 4) {
+                idle += value;
+            }
+        }
+        if (compute && prevCpuTotal >= 0 && total > prevCpuTotal) {
+            double busy = 1.0 - (double) (idle - prevCpuIdle) / (total - prevCpuTotal);
+            out[HostMetric.CPU.ordinal()] = round(Math.max(0, Math.min(1, busy)) * 100);
+        }
+        prevCpuTotal = total;
+        prevCpuIdle = idle;
+    }
+
+    private static int sectionOf(byte[] buf, int start, int end) {
+        for (int section = 1; section < SECTION_NAMES.length; section++) {
+            byte[] name = SECTION_NAMES[section];
+            if (end - start == name.length && startsWith(buf, start, end, name)) {
+                return section;
+            }
+        }
+        return NONE;
+    }
+
+    private void skipSpaces(byte[] buf, int end) {
+        while (cursor < end && (buf[cursor] == ' ' || buf[cursor] == '\t')) {
+            cursor++;
+        }
+    }
+
+    /**
+     * 读取下一个非负整数，跳过前导空白，没有数字时返回 -1
+     */
+    private long nextLong(byte[] buf, int end) {
+        skipSpaces(buf, end);
+        if (cursor >= end || buf[cursor] < '0' || buf[cursor] > '9') {
+            return -1;
+        }
+        long value = 0;
+        while (cursor < end && buf[cursor] >= '0' && buf[cursor] <= '9') {
+            value = value * 10 + (buf[cursor] - '0');
+            cursor++;
+        }
+        return value;
+    }
+
+    /**
+     * 读取下一个形如 123.45 的非负小数，没有数字时返回 NaN
+     */
+    private double nextDecimal(byte[] buf, int end) {
+        long integer = nextLong(buf, end);
+        if (integer < 0) {
+            return Double.NaN;
+        }
+        if (cursor >= end || buf[cursor] != '.') {
+            return integer;
+        }
+        cursor++;
+        // 小数部分按整数累加后一次相除，避免逐位累加的误差
+        long fraction = 0;
+        long scale = 1;
+        while (cursor < end && buf[cursor] >= '0' && buf[cursor] <= '9') {
+            if (scale < 1_000_000_000L) {
+                fraction = fraction * 10 + (buf[cursor] - '0');
+                scale *= 10;
+            }
+            cursor++;
+        }
+        return integer + (double) fraction / scale;
+    }
+
+    private static boolean isLoopback(byte[] buf, int start, int colon) {
+        while (start < colon && buf[start] == ' ') {
+            start++;
+        }
+        return colon - start == LOOPBACK.length && startsWith(buf, start, colon, LOOPBACK);
+    }
+
+    /**
+     * 只统计整块磁盘 (sda、vdb、nvme0n1、mmcblk0)，跳过分区和虚拟设备
+     */
+    static boolean isWholeDisk(byte[] buf, int start, int end) {
+        if (end <= start) {
+            return false;
+        }
+        for (byte[] prefix : VIRTUAL_DISKS) {
+            if (startsWith(buf, start, end, prefix)) {
+                return false;
+            }
+        }
+        if (startsWith(buf, start, end, NVME) || startsWith(buf, start, end, MMCBLK)) {
+            // nvme0n1p1、mmcblk0p1 为分区
+            return indexOf(buf, start + NVME.length, end, (byte) 'p') < 0;
+        }
+        byte last = buf[end - 1];
+        return last < '0' || last > '9';
+    }
+
+    private static boolean startsWith(byte[] buf, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] buf, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (buf[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
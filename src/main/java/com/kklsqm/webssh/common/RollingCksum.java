@@ -0,0 +1,125 @@
+package com.kklsqm.webssh.common;
+
+/**
+ * 功能: 与 POSIX cksum 命令兼容的可滚动 CRC 校验
+ * 作者: 沙琪马
+ * 日期: 2025/9/16 14:20
+ *
+ * cksum 使用多项式 0x04C11DB7、初值 0 的 MSB-first CRC32，末尾追加长度字节后取反。
+ * 初值为 0 时 CRC 对数据是线性的，因此固定窗口可以 O(1) 滑动：
+ * 移入新字节做一次普通更新，移出旧字节异或 OUT[旧字节] (旧字节后跟 windowSize 个 0 的 CRC)。
+ * 这样远程只需 `split --filter=cksum` 就能给出可被本地滚动匹配的弱校验。
+ */
+public final class RollingCksum {
+
+    private static final int POLY = 0x04C11DB7;
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c = i << 24;
+            for (int k = 0; k < 8; k++) {
+                c = (c & 0x80000000) != 0 ? (c << 1) ^ POLY : c << 1;
+            }
+            TABLE[i] = c;
+        }
+    }
+
+    private final int windowSize;
+    private final int[] outTable = new int[256];
+    private final byte[] lengthBytes;
+
+    public RollingCksum(int windowSize) {
+        this.windowSize = windowSize;
+
+        // OUT[b] 对 b 线性，只需计算 8 个单比特的值再组合
+        int[] bitValues = new int[8];
+        for (int bit = 0; bit < 8; bit++) {
+            int r = update(0, (byte) (1 << bit));
+            for (int i = 0; i < windowSize; i++) {
+                r = update(r, (byte) 0);
+            }
+            bitValues[bit] = r;
+        }
+        for (int b = 0; b < 256; b++) {
+            int value = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((b & (1 << bit)) != 0) {
+                    value ^= bitValues[bit];
+                }
+            }
+            outTable[b] = value;
+        }
+
+        // cksum 按低字节在前的顺序追加长度，只追加有效字节
+        int count = 0;
+        for (long len = windowSize; len != 0; len >>>= 8) {
+            count++;
+        }
+        lengthBytes = new byte[count];
+        long len = windowSize;
+        for (int i = 0; i < count; i++) {
+            lengthBytes[i] = (byte) len;
+            len >>>= 8;
+        }
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * 计算窗口的原始 CRC 寄存器值 (未追加长度、未取反)
+     */
+    public static int raw(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = update(crc, data[i]);
+        }
+        return crc;
+    }
+
+    /**
+     * 在已有寄存器值上继续累加数据，用于分段读取的场景
+     */
+    public static int raw(int crc, byte[] data, int offset, int length) {
+        int result = crc;
+        for (int i = offset; i < offset + length; i++) {
+            result = update(result, data[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 窗口向后滑动一个字节
+     */
+    public int roll(int crc, byte out, byte in) {
+        return update(crc, in) ^ outTable[out & 0xFF];
+    }
+
+    /**
+     * 把窗口寄存器值转换为 cksum 命令输出的校验值
+     */
+    public int finish(int crc) {
+        int result = crc;
+        for (byte b : lengthBytes) {
+            result = update(result, b);
+        }
+        return ~result;
+    }
+
+    /**
+     * 计算任意长度数据的 cksum 值
+     */
+    public static int cksum(byte[] data, int offset, int length) {
+        int crc = raw(data, offset, length);
+        for (long len = length; len != 0; len >>>= 8) {
+            crc = update(crc, (byte) len);
+        }
+        return ~crc;
+    }
+
+    private static int update(int crc, byte b) {
+        return (crc << 8) ^ TABLE[((crc >>> 24) ^ b) & 0xFF];
+    }
+}
@@ -0,0 +1,50 @@
+package com.kklsqm.webssh.common;
+
+/**
+ * 功能: 远程 Shell 命令辅助工具
+ * 作者: 沙琪马
+ * 日期: 2025/9/15 09:40
+ */
+public final class ShellUtils {
+
+    private ShellUtils() {
+    }
+
+    /**
+     * 用单引号包裹参数，避免路径中的空格、$、` 等字符被远程 shell 解释
+     */
+    public static String quote(String arg) {
+        return "'" + arg.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * 拆分远程路径的父目录，"/var/log" -> "/var"，"/var" -> "/"
+     */
+    public static String parentOf(String path) {
+        String normalized = trimTrailingSlash(path);
+        int idx = normalized.lastIndexOf('/');
+        if (idx <= 0) {
+            return "/";
+        }
+        return normalized.substring(0, idx);
+    }
+
+    /**
+     * 获取远程路径的最后一级名称，"/var/log/" -> "log"
+     */
+    public static String nameOf(String path) {
+        String normalized = trimTrailingSlash(path);
+        return normalized.substring(normalized.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * 去掉末尾的 "/"（根目录除外）
+     */
+    public static String trimTrailingSlash(String path) {
+        String result = path;
+        while (result.length() > 1 && result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,136 @@
+package com.kklsqm.webssh.common;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * 功能: 合并相同的并发请求
+ * 作者: 沙琪马
+ * 日期: 2025/9/26 16:00
+ *
+ * 同一个 key 同时只执行一次加载，期间到达的相同请求等待同一个结果；
+ * 成功的结果在 ttlMs 内继续直接返回，失败不缓存。加载在第一个调用者的线程上执行。
+ * 等待者最多等待 waitTimeoutMs，超时后丢弃这次加载，之后的请求重新加载，卡住的加载不会拖住所有人。
+ * 多人同时打开同一台服务器的页面时，SSH 命令只执行一次。
+ */
+public class SingleFlight<K, V> {
+
+    // 超过这么多条目时插入前清理过期结果
+    private static final int PURGE_THRESHOLD = 256;
+    private static final long DEFAULT_WAIT_TIMEOUT_MS = 60_000;
+
+    private final long ttlMs;
+    private final long waitTimeoutMs;
+    private final Map<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    public SingleFlight(long ttlMs) {
+        this(ttlMs, DEFAULT_WAIT_TIMEOUT_MS);
+    }
+
+    public SingleFlight(long ttlMs, long waitTimeoutMs) {
+        this.ttlMs = ttlMs;
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    /**
+     * 返回 key 的结果：有进行中的加载时等待它，有未过期的结果时直接返回，否则在当前线程执行 loader
+     */
+    public V get(K key, Callable<V> loader) throws Exception {
+        while (true) {
+            Flight<V> existing = flights.get(key);
+            if (existing != null && !existing.isExpired(ttlMs)) {
+                return await(key, existing);
+            }
+
+            Flight<V> flight = new Flight<>();
+            boolean owner = existing == null
+                    ? flights.putIfAbsent(key, flight) == null
+                    : flights.replace(key, existing, flight);
+            if (!owner) {
+                // 其他线程刚开始加载，重新读取
+                continue;
+            }
+            if (flights.size() > PURGE_THRESHOLD) {
+                purgeExpired();
+            }
+            return load(key, flight, loader);
+        }
+    }
+
+    /**
+     * 丢弃 key 的缓存结果，进行中的加载不受影响 (完成后也不再缓存)
+     */
+    public void invalidate(K key) {
+        flights.remove(key);
+    }
+
+    /**
+     * 丢弃满足条件的缓存结果，例如某台服务器的全部目录列表
+     */
+    public void invalidateIf(Predicate<K> predicate) {
+        flights.keySet().removeIf(predicate);
+    }
+
+    /**
+     * 当前缓存和进行中的条目数
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    private V load(K key, Flight<V> flight, Callable<V> loader) throws Exception {
+        try {
+            V value = loader.call();
+            flight.completedAt = System.currentTimeMillis();
+            flight.future.complete(value);
+            if (ttlMs <= 0) {
+                flights.remove(key, flight);
+            }
+            return value;
+        } catch (Throwable e) {
+            flights.remove(key, flight);
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private V await(K key, Flight<V> flight) throws Exception {
+        try {
+            return flight.future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 加载仍未返回，不再让后来的请求等待它
+            flights.remove(key, flight);
+            throw new TimeoutException("等待进行中的加载超过 " + waitTimeoutMs + " ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private void purgeExpired() {
+        flights.values().removeIf(flight -> flight.isExpired(ttlMs));
+    }
+
+    private static class Flight<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        // 加载完成的时间，0 表示还在进行中
+        private volatile long completedAt;
+
+        boolean isExpired(long ttlMs) {
+            long done = completedAt;
+            return done > 0 && System.currentTimeMillis() - done > ttlMs;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.kklsqm.webssh.common;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.function.Predicate;
+
+/**
+ * 功能: exec 通道执行辅助方法
+ * 作者: 沙琪马
+ * 日期: 2025/9/17 10:30
+ */
+public final class SshExecUtils {
+
+    private static final long EXIT_WAIT_MS = 10000;
+
+    private SshExecUtils() {
+    }
+
+    /**
+     * 在 exec 通道执行命令，标准输出写入 stdout，可选写入标准输入，返回退出码
+     */
+    public static int exec(Session session, String command, byte[] stdin,
+                           OutputStream stdout, OutputStream stderr) throws Exception {
+        ChannelExec execChannel = (ChannelExec) session.openChannel("exec");
+        try {
+            execChannel.setCommand(command);
+            execChannel.setErrStream(stderr);
+            if (stdin != null) {
+                execChannel.setInputStream(new ByteArrayInputStream(stdin));
+            }
+            try (InputStream inputStream = execChannel.getInputStream()) {
+                execChannel.connect();
+                inputStream.transferTo(stdout);
+            }
+            return waitForExitStatus(execChannel);
+        } finally {
+            execChannel.disconnect();
+        }
+    }
+
+    /**
+     * 在 exec 通道执行命令并逐行处理标准输出，stderr 丢弃。
+     * handler 返回 false 时提前结束远程进程并返回 -1，否则返回退出码。
+     * 读取线程被中断时同样结束远程进程并抛出 InterruptedException。
+     */
+    public static int execLines(Session session, String command, byte[] stdin, int maxLineLength,
+                                Predicate<String> handler) throws Exception {
+        ChannelExec execChannel = (ChannelExec) session.openChannel("exec");
+        try {
+            execChannel.setCommand(command);
+            execChannel.setErrStream(OutputStream.nullOutputStream());
+            if (stdin != null) {
+                execChannel.setInputStream(new ByteArrayInputStream(stdin));
+            }
+            try (InputStream inputStream = execChannel.getInputStream()) {
+                execChannel.connect();
+                LineReader reader = new LineReader(inputStream, maxLineLength);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException();
+                    }
+                    if (!handler.test(line)) {
+                        kill(execChannel);
+                        return -1;
+                    }
+                }
+            } catch (InterruptedIOException e) {
+                throw new InterruptedException();
+            }
+            return waitForExitStatus(execChannel);
+        } finally {
+            execChannel.disconnect();
+        }
+    }
+
+    /**
+     * 结束远程进程：先请求 KILL 信号 (服务端不支持时忽略)，再关闭通道
+     */
+    public static void kill(ChannelExec channel) {
+        try {
+            channel.sendSignal("KILL");
+        } catch (Exception ignored) {
+            // 部分 sshd 不支持 signal 请求，关闭通道后远程进程写入时会收到 SIGPIPE
+        }
+        channel.disconnect();
+    }
+
+    /**
+     * 等待 exec 通道结束并返回退出码，超时返回 -1
+     */
+    public static int waitForExitStatus(ChannelExec channel) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + EXIT_WAIT_MS;
+        while (!channel.isClosed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        return channel.isClosed() ? channel.getExitStatus() : -1;
+    }
+}
@@ -0,0 +1,37 @@
+package com.kklsqm.webssh.common;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.domain.SshService;
+import org.springframework.stereotype.Component;
+
+import java.util.Properties;
+
+/**
+ * 功能: 根据服务器配置创建 SSH 会话
+ * 作者: 沙琪马
+ * 日期: 2025/9/17 10:15
+ */
+@Component
+public class SshSessionFactory {
+
+    private static final int CONNECT_TIMEOUT_MS = 10000; // 10秒超时
+
+    /**
+     * 创建并连接一个新的 SSH 会话，调用方负责断开
+     */
+    public Session createSession(SshService server) throws JSchException {
+        JSch jsch = new JSch();
+        Session session = jsch.getSession(server.getUsername(), server.getHost(), server.getPort());
+        session.setPassword(server.getPassword());
+
+        Properties config = new Properties();
+        config.put("StrictHostKeyChecking", "no");
+        config.put("PreferredAuthentications", "password");
+        session.setConfig(config);
+        session.connect(CONNECT_TIMEOUT_MS);
+
+        return session;
+    }
+}
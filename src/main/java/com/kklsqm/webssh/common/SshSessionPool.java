@@ -0,0 +1,166 @@
+package com.kklsqm.webssh.common;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能: 按服务器复用的 SSH 会话
+ * 作者: 沙琪马
+ * 日期: 2025/9/25 10:00
+ *
+ * 每台服务器保持一个已连接的会话，后台采集等频繁的短命令在同一会话上各开 exec 通道，
+ * 不再每次重新握手。会话断开或服务器配置变化时在下次取用时重连，长时间未使用的会话自动关闭。
+ * docker events 等长期运行的 exec 通过 lease / release 登记，有登记的会话不会因空闲被关闭。
+ */
+@Component
+@Slf4j
+public class SshSessionPool {
+
+    private static final int SERVER_ALIVE_INTERVAL_MS = 30000;
+
+    private final SshSessionFactory sessionFactory;
+    private final long idleTimeoutMs;
+    private final Map<Integer, PooledSession> sessions = new ConcurrentHashMap<>();
+
+    public SshSessionPool(SshSessionFactory sessionFactory,
+                          @Value("${webssh.ssh.pool-idle-timeout:600000}") long idleTimeoutMs) {
+        this.sessionFactory = sessionFactory;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * 取得服务器的共享会话，会话由池管理，调用方只关闭自己打开的通道，不要断开会话
+     */
+    public Session acquire(SshService server) throws JSchException {
+        return acquire(server, false);
+    }
+
+    /**
+     * 取得共享会话并登记一个长期使用者，登记期间会话不会因空闲被关闭。用完后调用 release
+     */
+    public Session lease(SshService server) throws JSchException {
+        return acquire(server, true);
+    }
+
+    /**
+     * 结束 lease 的登记。会话已被替换 (invalidate 或重连) 时忽略
+     */
+    public void release(Integer serverId, Session session) {
+        PooledSession pooled = sessions.get(serverId);
+        if (pooled == null) {
+            return;
+        }
+        synchronized (pooled) {
+            if (pooled.session == session && pooled.leases > 0) {
+                pooled.leases--;
+                pooled.lastUsed = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private Session acquire(SshService server, boolean lease) throws JSchException {
+        String fingerprint = fingerprint(server);
+        PooledSession pooled = sessions.computeIfAbsent(server.getId(), id -> new PooledSession());
+        synchronized (pooled) {
+            if (pooled.session == null || !pooled.session.isConnected() || !fingerprint.equals(pooled.fingerprint)) {
+                disconnect(pooled.session);
+                pooled.session = null;
+                pooled.leases = 0;
+                Session session = sessionFactory.createSession(server);
+                session.setServerAliveInterval(SERVER_ALIVE_INTERVAL_MS);
+                pooled.session = session;
+                pooled.fingerprint = fingerprint;
+                log.debug("建立共享 SSH 会话: {}@{}:{}", server.getUsername(), server.getHost(), server.getPort());
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            if (lease) {
+                pooled.leases++;
+            }
+            return pooled.session;
+        }
+    }
+
+    /**
+     * 会话上的操作失败 (如通道打不开) 时丢弃该会话，下次 acquire 重新连接。
+     * 只有池中仍是同一个会话时才丢弃，避免误关其他线程刚重连的会话
+     */
+    public void invalidate(Integer serverId, Session session) {
+        PooledSession pooled = sessions.get(serverId);
+        if (pooled == null) {
+            return;
+        }
+        synchronized (pooled) {
+            if (pooled.session == session) {
+                disconnect(pooled.session);
+                pooled.session = null;
+                pooled.leases = 0;
+            }
+        }
+    }
+
+    /**
+     * 服务器被删除时关闭其会话
+     */
+    public void remove(Integer serverId) {
+        PooledSession pooled = sessions.remove(serverId);
+        if (pooled != null) {
+            synchronized (pooled) {
+                disconnect(pooled.session);
+                pooled.session = null;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        sessions.forEach((serverId, pooled) -> {
+            synchronized (pooled) {
+                if (pooled.session != null && pooled.leases == 0 && now - pooled.lastUsed > idleTimeoutMs) {
+                    log.debug("关闭空闲的共享 SSH 会话: {}", serverId);
+                    disconnect(pooled.session);
+                    pooled.session = null;
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.values().forEach(pooled -> {
+            synchronized (pooled) {
+                disconnect(pooled.session);
+                pooled.session = null;
+            }
+        });
+        sessions.clear();
+    }
+
+    private static String fingerprint(SshService server) {
+        return server.getUsername() + "@" + server.getHost() + ":" + server.getPort() + "#" + Objects.hashCode(server.getPassword());
+    }
+
+    private static void disconnect(Session session) {
+        if (session != null && session.isConnected()) {
+            session.disconnect();
+        }
+    }
+
+    private static class PooledSession {
+        private Session session;
+        private String fingerprint;
+        private long lastUsed;
+        // 当前会话上 lease 未 release 的数量
+        private int leases;
+    }
+}
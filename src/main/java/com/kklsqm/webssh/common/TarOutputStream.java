@@ -0,0 +1,239 @@
+package com.kklsqm.webssh.common;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 功能: 流式 tar 归档写入器 (ustar 格式，超长路径使用 GNU LongLink 扩展)
+ * 作者: 沙琪马
+ * 日期: 2025/9/15 10:05
+ *
+ * 只负责按顺序写出 512 字节头部和数据块，不做任何缓存，
+ * 调用方必须在 putNextEntry 之后写入与声明大小完全一致的字节数。
+ */
+public class TarOutputStream extends FilterOutputStream {
+
+    public static final int BLOCK_SIZE = 512;
+
+    public static final char TYPE_FILE = '0';
+    public static final char TYPE_SYMLINK = '2';
+    public static final char TYPE_DIRECTORY = '5';
+    private static final char TYPE_GNU_LONGNAME = 'L';
+    private static final char TYPE_GNU_LONGLINK = 'K';
+
+    // 八进制 11 位能表示的最大值，超过后使用 GNU base-256 编码
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private long entryRemaining;
+    private long entrySize;
+    private boolean entryOpen;
+    private boolean finished;
+
+    public TarOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * 写入普通文件头部，随后需写入 size 个字节
+     */
+    public void putFileEntry(String name, long size, int mode, long mtimeSeconds) throws IOException {
+        putEntry(name, null, size, mode, mtimeSeconds, TYPE_FILE);
+    }
+
+    /**
+     * 写入目录头部
+     */
+    public void putDirectoryEntry(String name, int mode, long mtimeSeconds) throws IOException {
+        String dirName = name.endsWith("/") ? name : name + "/";
+        putEntry(dirName, null, 0, mode, mtimeSeconds, TYPE_DIRECTORY);
+        closeEntry();
+    }
+
+    /**
+     * 写入符号链接头部
+     */
+    public void putSymlinkEntry(String name, String target, long mtimeSeconds) throws IOException {
+        putEntry(name, target, 0, 0777, mtimeSeconds, TYPE_SYMLINK);
+        closeEntry();
+    }
+
+    /**
+     * 结束当前条目，按 512 字节对齐补零
+     */
+    public void closeEntry() throws IOException {
+        if (!entryOpen) {
+            return;
+        }
+        if (entryRemaining > 0) {
+            throw new IOException("tar 条目数据不完整，还差 " + entryRemaining + " 字节");
+        }
+        writePadding(entrySize);
+        entryOpen = false;
+    }
+
+    /**
+     * 写入归档结束标记 (两个全零块)，不关闭底层流
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        closeEntry();
+        Arrays.fill(header, (byte) 0);
+        out.write(header);
+        out.write(header);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkWritable(1);
+        out.write(b);
+        entryRemaining--;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkWritable(len);
+        out.write(b, off, len);
+        entryRemaining -= len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        super.close();
+    }
+
+    private void checkWritable(int len) throws IOException {
+        if (!entryOpen) {
+            throw new IOException("当前没有打开的 tar 条目");
+        }
+        if (len > entryRemaining) {
+            throw new IOException("写入字节数超过 tar 条目声明的大小");
+        }
+    }
+
+    private void putEntry(String name, String linkName, long size, int mode, long mtimeSeconds, char type) throws IOException {
+        if (finished) {
+            throw new IOException("tar 归档已结束");
+        }
+        closeEntry();
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] linkBytes = linkName == null ? new byte[0] : linkName.getBytes(StandardCharsets.UTF_8);
+
+        if (linkBytes.length > 100) {
+            writeLongLinkEntry(linkBytes, TYPE_GNU_LONGLINK);
+        }
+
+        byte[] prefixBytes = new byte[0];
+        if (nameBytes.length > 100) {
+            int split = findPrefixSplit(nameBytes);
+            if (split > 0) {
+                prefixBytes = Arrays.copyOfRange(nameBytes, 0, split);
+                nameBytes = Arrays.copyOfRange(nameBytes, split + 1, nameBytes.length);
+            } else {
+                writeLongLinkEntry(nameBytes, TYPE_GNU_LONGNAME);
+                nameBytes = Arrays.copyOf(nameBytes, 100);
+            }
+        }
+
+        writeHeader(nameBytes, prefixBytes, linkBytes, size, mode, mtimeSeconds, type);
+        entrySize = size;
+        entryRemaining = size;
+        entryOpen = true;
+    }
+
+    /**
+     * GNU 扩展：先写一个类型为 L/K 的伪条目承载完整路径
+     */
+    private void writeLongLinkEntry(byte[] value, char type) throws IOException {
+        byte[] longName = "././@LongLink".getBytes(StandardCharsets.US_ASCII);
+        // 数据部分以 NUL 结尾
+        writeHeader(longName, new byte[0], new byte[0], value.length + 1, 0, 0, type);
+        out.write(value);
+        out.write(0);
+        writePadding(value.length + 1);
+    }
+
+    /**
+     * 按 ustar 规则把路径拆为 prefix(<=155) + "/" + name(<=100)，无法拆分时返回 -1
+     */
+    private int findPrefixSplit(byte[] path) {
+        int limit = Math.min(path.length - 1, 155);
+        for (int i = limit; i > 0; i--) {
+            if (path[i] == '/' && path.length - i - 1 <= 100 && path.length - i - 1 > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeHeader(byte[] name, byte[] prefix, byte[] linkName,
+                             long size, int mode, long mtimeSeconds, char type) throws IOException {
+        Arrays.fill(header, (byte) 0);
+        System.arraycopy(name, 0, header, 0, Math.min(name.length, 100));
+        writeOctal(mode & 07777, 100, 8);
+        writeOctal(0, 108, 8);   // uid
+        writeOctal(0, 116, 8);   // gid
+        writeSize(size);
+        writeOctal(Math.max(0, mtimeSeconds), 136, 12);
+        header[156] = (byte) type;
+        System.arraycopy(linkName, 0, header, 157, Math.min(linkName.length, 100));
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+        System.arraycopy(prefix, 0, header, 345, Math.min(prefix.length, 155));
+
+        // 校验和：计算时校验和字段按 8 个空格处理
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        writeOctal(checksum, 148, 7);
+        header[155] = ' ';
+
+        out.write(header);
+    }
+
+    private void writeSize(long size) {
+        if (size <= MAX_OCTAL_SIZE) {
+            writeOctal(size, 124, 12);
+            return;
+        }
+        // GNU base-256：首字节最高位置 1，其余按大端存储
+        long value = size;
+        for (int i = 124 + 11; i > 124; i--) {
+            header[i] = (byte) (value & 0xFF);
+            value >>>= 8;
+        }
+        header[124] = (byte) 0x80;
+    }
+
+    /**
+     * 以 NUL 结尾的定长八进制数字段
+     */
+    private void writeOctal(long value, int offset, int length) {
+        int pos = offset + length - 1;
+        header[pos--] = 0;
+        long v = value;
+        while (pos >= offset) {
+            header[pos--] = (byte) ('0' + (v & 7));
+            v >>>= 3;
+        }
+    }
+
+    private void writePadding(long written) throws IOException {
+        int remainder = (int) (written % BLOCK_SIZE);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK_SIZE - remainder]);
+        }
+    }
+}
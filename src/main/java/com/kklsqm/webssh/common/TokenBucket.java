@@ -0,0 +1,49 @@
+package com.kklsqm.webssh.common;
+
+/**
+ * 功能: 令牌桶限速器
+ * 作者: 沙琪马
+ * 日期: 2025/9/19 10:20
+ *
+ * 采用预支方式：acquire 直接扣减令牌，余额为负时睡眠到补足为止，
+ * 多个线程共享同一个桶时总速率不超过 ratePerSecond，突发量最多一秒的配额。
+ */
+public class TokenBucket {
+
+    private final long ratePerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param ratePerSecond 每秒令牌数，<= 0 表示不限速
+     */
+    public TokenBucket(long ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+        this.tokens = ratePerSecond;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public boolean isUnlimited() {
+        return ratePerSecond <= 0;
+    }
+
+    /**
+     * 获取 permits 个令牌，不足时阻塞
+     */
+    public void acquire(long permits) throws InterruptedException {
+        if (isUnlimited() || permits <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(ratePerSecond, tokens + (now - lastRefillNanos) * ratePerSecond / 1e9);
+            lastRefillNanos = now;
+            tokens -= permits;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens * 1e9 / ratePerSecond);
+        }
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.kklsqm.webssh.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 功能: STOMP 主题订阅引用计数
+ * 作者: 沙琪马
+ * 日期: 2025/9/26 14:00
+ *
+ * 记录每个主题当前的订阅数，某个前缀下的主题出现第一个订阅者、失去最后一个订阅者时通知对应的监听器，
+ * 用于按需启动和停止共享的后台数据源 (一个数据源服务所有订阅者)。
+ * 取消订阅和连接断开 (包括浏览器直接关闭) 都会减少计数。
+ * 通知在计数锁之外发出，同一主题的通知按分段锁串行，并以发出时的最新计数为准，
+ * 快速的取消订阅再订阅不会让停止通知排在启动通知之后。
+ */
+@Component
+@Slf4j
+public class TopicSubscriptionTracker {
+
+    private static final int NOTIFY_LOCK_STRIPES = 64;
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+    // 主题 -> 订阅数
+    private final Map<String, Integer> counts = new HashMap<>();
+    // 会话ID -> (订阅ID -> 主题)
+    private final Map<String, Map<String, String>> sessions = new HashMap<>();
+    // 已通知监听器有订阅者的主题，只在对应主题的通知锁内修改
+    private final Set<String> notifiedActive = ConcurrentHashMap.newKeySet();
+    private final Object[] notifyLocks = new Object[NOTIFY_LOCK_STRIPES];
+
+    {
+        Arrays.setAll(notifyLocks, i -> new Object());
+    }
+
+    /**
+     * 订阅变化的回调，在订阅事件线程上同步调用，实现中不要阻塞。
+     * 同一主题的回调不会并发，且启动和停止交替出现
+     */
+    public interface Listener {
+        void onFirstSubscriber(String destination);
+
+        void onLastUnsubscribed(String destination);
+    }
+
+    /**
+     * 监听以 prefix 开头的主题
+     */
+    public void register(String prefix, Listener listener) {
+        registrations.add(new Registration(prefix, listener));
+    }
+
+    /**
+     * 主题当前的订阅数
+     */
+    public synchronized int subscriberCount(String destination) {
+        return counts.getOrDefault(destination, 0);
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = headers.getDestination();
+        String sessionId = headers.getSessionId();
+        String subscriptionId = headers.getSubscriptionId();
+        if (destination == null || sessionId == null || subscriptionId == null || !isTracked(destination)) {
+            return;
+        }
+
+        boolean first;
+        String emptied = null;
+        synchronized (this) {
+            String previous = sessions.computeIfAbsent(sessionId, id -> new HashMap<>()).put(subscriptionId, destination);
+            // 同一订阅ID重复订阅，先撤销旧的
+            if (previous != null && decrement(previous)) {
+                emptied = previous;
+            }
+            first = counts.merge(destination, 1, Integer::sum) == 1;
+        }
+        if (emptied != null) {
+            reconcile(emptied);
+        }
+        if (first) {
+            reconcile(destination);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String sessionId = headers.getSessionId();
+        String subscriptionId = headers.getSubscriptionId();
+        if (sessionId == null || subscriptionId == null) {
+            return;
+        }
+
+        String emptied = null;
+        synchronized (this) {
+            Map<String, String> subscriptions = sessions.get(sessionId);
+            String destination = subscriptions == null ? null : subscriptions.remove(subscriptionId);
+            if (destination != null && decrement(destination)) {
+                emptied = destination;
+            }
+            if (subscriptions != null && subscriptions.isEmpty()) {
+                sessions.remove(sessionId);
+            }
+        }
+        if (emptied != null) {
+            reconcile(emptied);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        List<String> emptied = new ArrayList<>();
+        synchronized (this) {
+            Map<String, String> subscriptions = sessions.remove(event.getSessionId());
+            if (subscriptions == null) {
+                return;
+            }
+            for (String destination : subscriptions.values()) {
+                if (decrement(destination)) {
+                    emptied.add(destination);
+                }
+            }
+        }
+        emptied.forEach(this::reconcile);
+    }
+
+    // 减少计数，返回是否减到 0
+    private boolean decrement(String destination) {
+        Integer count = counts.get(destination);
+        if (count == null) {
+            return false;
+        }
+        if (count <= 1) {
+            counts.remove(destination);
+            return true;
+        }
+        counts.put(destination, count - 1);
+        return false;
+    }
+
+    private boolean isTracked(String destination) {
+        for (Registration registration : registrations) {
+            if (destination.startsWith(registration.prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按主题当前的订阅数通知监听器。两个线程的通知先后颠倒时，后执行的一方看到的是最终计数，
+     * 与已通知的状态相同则什么都不做，监听器不会在仍有订阅者时收到停止通知
+     */
+    private void reconcile(String destination) {
+        Object lock = notifyLocks[Math.floorMod(destination.hashCode(), NOTIFY_LOCK_STRIPES)];
+        synchronized (lock) {
+            boolean active = subscriberCount(destination) > 0;
+            boolean changed = active ? notifiedActive.add(destination) : notifiedActive.remove(destination);
+            if (changed) {
+                notifyListeners(destination, active);
+            }
+        }
+    }
+
+    private void notifyListeners(String destination, boolean first) {
+        for (Registration registration : registrations) {
+            if (!destination.startsWith(registration.prefix)) {
+                continue;
+            }
+            try {
+                if (first) {
+                    registration.listener.onFirstSubscriber(destination);
+                } else {
+                    registration.listener.onLastUnsubscribed(destination);
+                }
+            } catch (RuntimeException e) {
+                log.warn("处理主题 {} 的订阅变化失败: {}", destination, e.getMessage());
+            }
+        }
+    }
+
+    private record Registration(String prefix, Listener listener) {
+    }
+}
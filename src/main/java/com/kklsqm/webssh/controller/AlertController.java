@@ -0,0 +1,82 @@
+package com.kklsqm.webssh.controller;
+
+import com.kklsqm.webssh.domain.AlertRule;
+import com.kklsqm.webssh.service.AlertEngineService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 功能: 告警规则与告警记录
+ * 作者: 沙琪马
+ * 日期: 2025/9/28 11:30
+ *
+ * 告警通过 /topic/alerts 和 /topic/alerts/{serverId} 推送，配置了 webhook 时同时发送到 webhook
+ */
+@RestController
+@RequestMapping("/api/alerts")
+@RequiredArgsConstructor
+public class AlertController {
+
+    private final AlertEngineService alertEngineService;
+
+    @GetMapping("/rules")
+    public ResponseEntity<?> listRules() {
+        return ResponseEntity.ok(Map.of("success", true, "data", alertEngineService.getRules()));
+    }
+
+    @PostMapping("/rules")
+    public ResponseEntity<?> createRule(@RequestBody AlertRule rule) {
+        rule.setId(null);
+        return save(rule);
+    }
+
+    @PutMapping("/rules/{id}")
+    public ResponseEntity<?> updateRule(@PathVariable String id, @RequestBody AlertRule rule) {
+        rule.setId(id);
+        return save(rule);
+    }
+
+    @DeleteMapping("/rules/{id}")
+    public ResponseEntity<?> deleteRule(@PathVariable String id) {
+        try {
+            if (!alertEngineService.deleteRule(id)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("success", false, "message", "规则不存在"));
+            }
+            return ResponseEntity.ok(Map.of("success", true, "message", "规则已删除"));
+        } catch (IOException e) {
+            return ResponseEntity.status(500).body(Map.of("success", false, "message", "保存规则失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 正在告警中的条目
+     */
+    @GetMapping("/active")
+    public ResponseEntity<?> listActive() {
+        return ResponseEntity.ok(Map.of("success", true, "data", alertEngineService.getActiveAlerts()));
+    }
+
+    /**
+     * 最近发出的通知
+     */
+    @GetMapping("/events")
+    public ResponseEntity<?> listEvents() {
+        return ResponseEntity.ok(Map.of("success", true, "data", alertEngineService.getRecentEvents()));
+    }
+
+    private ResponseEntity<?> save(AlertRule rule) {
+        try {
+            return ResponseEntity.ok(Map.of("success", true, "data", alertEngineService.saveRule(rule)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(500).body(Map.of("success", false, "message", "保存规则失败: " + e.getMessage()));
+        }
+    }
+}
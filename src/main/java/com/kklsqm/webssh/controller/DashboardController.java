@@ -4,20 +4,29 @@ import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 import com.kklsqm.webssh.common.SSHConnectionManager;
+import com.kklsqm.webssh.domain.HostMetric;
 import com.kklsqm.webssh.domain.SshService;
+import com.kklsqm.webssh.domain.dto.BulkContainerActionRequest;
+import com.kklsqm.webssh.domain.dto.ContainerActionItem;
+import com.kklsqm.webssh.service.BulkContainerActionService;
+import com.kklsqm.webssh.service.ContainerInventoryService;
+import com.kklsqm.webssh.service.ContainerStatsService;
+import com.kklsqm.webssh.service.FleetDashboardService;
+import com.kklsqm.webssh.service.MetricStoreService;
+import com.kklsqm.webssh.service.MetricsCollectorService;
 import com.kklsqm.webssh.service.SshServiceService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 功能: 服务器仪表盘
@@ -34,82 +43,63 @@ public class DashboardController {
 
     private final SSHConnectionManager connectionManager; // 重用现有的 SSH 连接管理器
 
-    // 可选：用于缓存历史数据，避免频繁执行命令
-    private final Map<Long, List<Map<String, Object>>> historyCache = new ConcurrentHashMap<>();
-    private final Map<Long, Long> lastFetchTime = new ConcurrentHashMap<>();
-    private static final long CACHE_DURATION_MS = 5 * 60 * 1000; // 5分钟缓存
+    private final MetricsCollectorService metricsCollectorService; // 后台采集的指标
+
+    private final FleetDashboardService fleetDashboardService;
+
+    private final ContainerStatsService containerStatsService;
+
+    private final ContainerInventoryService containerInventoryService;
+
+    private final BulkContainerActionService bulkContainerActionService;
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    // 历史接口每个指标最多返回的点数
+    private static final int MAX_HISTORY_POINTS = 5000;
+
+    /**
+     * 多台服务器概览 (指标、系统信息、服务状态)，按 NDJSON 流式返回，每台服务器响应后立即输出一行
+     * @param ids 服务器ID列表，为空时为全部服务器
+     * @param q 按名称或主机过滤
+     * @param services 是否同时检查服务状态
+     */
+    @GetMapping("/fleet")
+    public ResponseEntity<StreamingResponseBody> getFleetOverview(
+            @RequestParam(required = false) List<Long> ids,
+            @RequestParam(required = false) String q,
+            @RequestParam(defaultValue = "true") boolean services) {
+        List<SshService> servers = ids == null || ids.isEmpty() ? serverService.list() : serverService.listByIds(ids);
+        if (q != null && !q.isBlank()) {
+            String keyword = q.trim().toLowerCase(Locale.ROOT);
+            servers = servers.stream()
+                    .filter(server -> contains(server.getName(), keyword) || contains(server.getHost(), keyword))
+                    .toList();
+        }
+        List<SshService> targets = servers;
+        StreamingResponseBody body = out -> fleetDashboardService.stream(targets, services, out);
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    private static boolean contains(String value, String keyword) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(keyword);
+    }
 
     /**
-     * 获取服务器性能指标 (CPU, Memory, Disk)
+     * 获取服务器性能指标 (CPU, Memory, Disk, 负载, 网络)
+     * 直接返回后台采集的最新值，服务器还没有采样数据时立即采集一次
      * @param serverId 服务器ID
      * @return 包含指标的 ResponseEntity
      */
     @GetMapping("/server/{serverId}/metrics")
     public ResponseEntity<Map<String, Object>> getServerMetrics(@PathVariable Long serverId) {
-        log.info("获取服务器 {} 性能指标", serverId);
         Map<String, Object> response = new HashMap<>();
         try {
             SshService server = Optional.ofNullable(serverService.getById(serverId))
                     .orElseThrow(() -> new RuntimeException("服务器未找到"));
 
-            // 通过 SSH 连接管理器创建临时连接来执行命令
-            String connectionId = connectionManager.createConnection(
-                    server.getHost(), server.getPort(), server.getUsername(), server.getPassword()
-            );
-
-            try {
-                Session session = connectionManager.getSession(connectionId);
-                if (session == null || !session.isConnected()) {
-                    throw new JSchException("无法建立或获取有效的SSH会话");
-                }
-
-                Map<String, Double> metrics = new HashMap<>();
-
-                // 并行执行命令以提高效率
-                CompletableFuture<Double> cpuFuture = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        return executeCommandForValue(session, "vmstat 1 2 | tail -1 | awk '{print 100-$15}'");
-                    } catch (Exception e) {
-                        log.warn("获取CPU使用率失败: {}", e.getMessage());
-                        return -1.0; // 用-1表示获取失败
-                    }
-                });
-
-                CompletableFuture<Double> memFuture = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        // 使用 free 命令计算内存使用率
-                        return executeCommandForValue(session, "free | awk 'NR==2{printf \"%.2f\", $3*100/$2 }'");
-                    } catch (Exception e) {
-                        log.warn("获取内存使用率失败: {}", e.getMessage());
-                        return -1.0;
-                    }
-                });
-
-                CompletableFuture<Double> diskFuture = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        // 获取根分区使用率
-                        return executeCommandForValue(session, "df -h / | awk 'NR==2{print $5}' | sed 's/%//'");
-                    } catch (Exception e) {
-                        log.warn("获取磁盘使用率失败: {}", e.getMessage());
-                        return -1.0;
-                    }
-                });
-
-                // 等待所有命令执行完成
-                CompletableFuture.allOf(cpuFuture, memFuture, diskFuture).join();
-
-                metrics.put("cpu", cpuFuture.get());
-                metrics.put("memory", memFuture.get());
-                metrics.put("disk", diskFuture.get());
-
-                response.put("success", true);
-                response.put("data", metrics);
-
-            } finally {
-                // 确保临时连接被关闭
-                connectionManager.closeConnection(connectionId);
-            }
-
+            response.put("success", true);
+            response.put("data", metricsCollectorService.getLatest(server));
             return ResponseEntity.ok(response);
 
         } catch (Exception e) {
@@ -121,7 +111,7 @@ public class DashboardController {
     }
 
     /**
-     * 获取特定服务的状态 (MySQL, Redis, Docker)
+     * 获取特定服务的状态 (MySQL, Redis, Docker)，一次 systemctl 调用查询全部服务
      * @param serverId 服务器ID
      * @return 包含服务状态的 ResponseEntity
      */
@@ -136,49 +126,8 @@ public class DashboardController {
                 return ResponseEntity.ok(response);
             }
 
-            String connectionId = connectionManager.createConnection(
-                    server.getHost(), server.getPort(), server.getUsername(), server.getPassword()
-            );
-
-            try {
-                Session session = Optional.ofNullable(connectionManager.getSession(connectionId))
-                        .orElseThrow(() -> new RuntimeException("无法建立或获取有效的SSH会话"));
-
-                Map<String, String> services = new HashMap<>();
-                // 定义要检查的服务及其对应的systemctl命令
-                Map<String, String> serviceCommands = Map.of(
-                        "mysql", "systemctl is-active mysql",
-                        "redis", "systemctl is-active redis",
-                        "docker", "systemctl is-active docker"
-                        // 可以根据实际服务名称调整命令，例如 mysqld, redis-server
-                );
-
-                // 并行检查服务状态
-                List<CompletableFuture<Void>> futures = serviceCommands.entrySet().stream()
-                        .map(entry -> CompletableFuture.runAsync(() -> {
-                            try {
-                                String serviceName = entry.getKey();
-                                String command = entry.getValue();
-                                String status = executeSimpleCommand(session, command).trim().toLowerCase();
-                                // 标准化输出，通常 'active' 表示运行，'inactive'/'failed' 表示停止
-                                services.put(serviceName, status);
-                            } catch (Exception e) {
-                                log.warn("检查服务 {} 状态失败: {}", entry.getKey(), e.getMessage());
-                                services.put(entry.getKey(), "unknown");
-                            }
-                        }))
-                        .toList();
-
-                // 等待所有服务检查完成
-                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-
-                response.put("success", true);
-                response.put("data", services);
-
-            } finally {
-                connectionManager.closeConnection(connectionId);
-            }
-
+            response.put("success", true);
+            response.put("data", fleetDashboardService.getServiceStatus(server));
             return ResponseEntity.ok(response);
 
         } catch (Exception e) {
@@ -201,39 +150,9 @@ public class DashboardController {
             SshService server = Optional.ofNullable(serverService.getById(serverId))
                     .orElseThrow(() -> new RuntimeException("服务器未找到"));
 
-            String connectionId = connectionManager.createConnection(
-                    server.getHost(), server.getPort(), server.getUsername(), server.getPassword()
-            );
-
-            try {
-                Session session = Optional.ofNullable(connectionManager.getSession(connectionId))
-                        .orElseThrow(() -> new RuntimeException("无法建立或获取有效的SSH会话"));
-
-                List<Map<String, Object>> containers = new ArrayList<>();
-
-                // 执行 docker ps -a --format 命令获取所有容器的详细信息
-                // 使用 Go 模板格式化输出，方便解析
-                String command = "docker ps -a --format \"{{.ID}}|{{.Names}}|{{.Status}}|{{.Ports}}|{{.Image}}\"";
-                String output = executeSimpleCommand(session, command);
-
-                if (output != null && !output.trim().isEmpty()) {
-                    String[] lines = output.split("\n");
-                    for (String line : lines) {
-                        String[] parts = line.split("\\|");
-                        if (parts.length >= 5) {
-                            Map<String, Object> container = getStringObjectMap(parts);
-                            containers.add(container);
-                        }
-                    }
-                }
-
-                response.put("success", true);
-                response.put("data", containers);
-
-            } finally {
-                connectionManager.closeConnection(connectionId);
-            }
-
+            // 从内存中的容器清单读取，由 docker events 保持最新
+            response.put("success", true);
+            response.put("data", containerInventoryService.list(server));
             return ResponseEntity.ok(response);
 
         } catch (Exception e) {
@@ -244,101 +163,90 @@ public class DashboardController {
         }
     }
 
-    private static Map<String, Object> getStringObjectMap(String[] parts) {
-        Map<String, Object> container = new HashMap<>();
-        container.put("id", parts[0].substring(0, Math.min(parts[0].length(), 12))); // 取短ID
-        container.put("name", parts[1]);
-        container.put("status", parts[2]);
-
-        // 解析端口信息
-        String portsRaw = parts[3];
-        List<String> ports = new ArrayList<>();
-        if (!portsRaw.isEmpty()) {
-            // 简单处理，实际可能更复杂 (e.g., 8080/tcp, 0.0.0.0:80->80/tcp)
-            // 这里直接存储原始字符串，前端可以进一步解析或显示
-            ports.add(portsRaw);
+    /**
+     * 各容器资源占用的近期历史，订阅 /topic/container-stats/{serverId} 后用来补齐图表；
+     * 没有订阅者时 docker stats 未在运行，返回空
+     */
+    @GetMapping("/server/{serverId}/docker/stats")
+    public ResponseEntity<Map<String, Object>> getDockerStats(@PathVariable Long serverId) {
+        Map<String, Object> response = new HashMap<>();
+        SshService server = serverService.getById(serverId);
+        if (server == null) {
+            response.put("success", false);
+            response.put("message", "服务器未找到");
+            return ResponseEntity.status(404).body(response);
         }
-        container.put("ports", ports);
-
-        container.put("image", parts[4]);
-        // 简单判断是否运行中
-        container.put("isRunning", parts[2].toLowerCase().contains("up"));
-        return container;
+        response.put("success", true);
+        response.put("data", containerStatsService.getHistory(server.getId()));
+        return ResponseEntity.ok(response);
     }
 
     /**
-     * (可选) 获取服务器历史性能数据 (带缓存)
+     * 获取服务器历史性能数据，按时间升序
+     * 不指定 from 和 points 时返回内存环形缓冲区中的最近数据；
+     * 否则从本地时间序列存储查询，每个指标返回一组 [时间戳, 值]
      * @param serverId 服务器ID
+     * @param from 起始时间 (毫秒时间戳)，默认为 to 之前一小时
+     * @param to 结束时间 (毫秒时间戳)，默认为当前时间
+     * @param resolution 精度: auto / raw / 1m / 1h，auto 按时间跨度选择
+     * @param points 每个指标最多返回的点数 (LTTB 降采样)，不指定时不降采样
      * @return 包含历史数据的 ResponseEntity
      */
     @GetMapping("/server/{serverId}/history")
-    public ResponseEntity<Map<String, Object>> getPerformanceHistory(@PathVariable Long serverId) {
+    public ResponseEntity<Map<String, Object>> getPerformanceHistory(
+            @PathVariable Long serverId,
+            @RequestParam(required = false) Long from,
+            @RequestParam(required = false) Long to,
+            @RequestParam(defaultValue = "auto") String resolution,
+            @RequestParam(required = false) Integer points) {
         Map<String, Object> response = new HashMap<>();
-        try {
-            SshService server = Optional.ofNullable(serverService.getById(serverId))
-                    .orElseThrow(() -> new RuntimeException("服务器未找到"));
-
-            long now = System.currentTimeMillis();
-            long lastTime = lastFetchTime.getOrDefault(serverId, 0L);
-
-            // 检查缓存是否有效
-            if (now - lastTime < CACHE_DURATION_MS && historyCache.containsKey(serverId)) {
-                response.put("success", true);
-                response.put("data", historyCache.get(serverId));
-                response.put("cached", true);
-                log.debug("从缓存返回服务器 {} 的历史数据", serverId);
-                return ResponseEntity.ok(response);
-            }
-
-            String connectionId = connectionManager.createConnection(
-                    server.getHost(), server.getPort(), server.getUsername(), server.getPassword()
-            );
+        SshService server = serverService.getById(serverId);
+        if (server == null) {
+            response.put("success", false);
+            response.put("message", "服务器未找到");
+            return ResponseEntity.status(404).body(response);
+        }
 
+        if (from != null || points != null) {
             try {
-                Session session = Optional.ofNullable(connectionManager.getSession(connectionId))
-                        .orElseThrow(() -> new JSchException("无法建立或获取有效的SSH会话"));
-
-                List<Map<String, Object>> historyData = new ArrayList<>();
-                // 模拟获取最近几次的数据点 (实际应用中可能需要从数据库或时序数据库查询)
-                // 这里简化为获取当前数据并添加几个历史点
-                for (int i = 4; i >= 0; i--) {
-                    Map<String, Object> point = new HashMap<>();
-                    point.put("timestamp", now - i * 60 * 1000); // 每分钟一个点
-
-                    // 模拟数据，实际应调用 getServerMetrics 并存储结果
-                    // 注意：真实场景下，您不应在此处再次执行SSH命令来获取历史数据，
-                    // 而应将实时数据存储到数据库或内存队列中供查询。
-                    // 此处仅为演示API结构。
-                    point.put("cpu", 20.0 + (Math.random() * 30)); // 模拟CPU 20-50%
-                    point.put("memory", 40.0 + (Math.random() * 20)); // 模拟内存 40-60%
-                    point.put("disk", 50.0 + (Math.random() * 20)); // 模拟磁盘 50-70%
-                    historyData.add(point);
+                if (points != null && (points < 2 || points > MAX_HISTORY_POINTS)) {
+                    throw new IllegalArgumentException("points 必须在 2 到 " + MAX_HISTORY_POINTS + " 之间");
                 }
-
-                // 更新缓存
-                historyCache.put(serverId, historyData);
-                lastFetchTime.put(serverId, now);
-
+                long end = to != null ? to : System.currentTimeMillis();
+                long start = from != null ? from : end - 3_600_000;
+                if (start > end) {
+                    throw new IllegalArgumentException("from 不能晚于 to");
+                }
+                MetricStoreService.Resolution level = "auto".equalsIgnoreCase(resolution)
+                        ? null : MetricStoreService.Resolution.fromKey(resolution);
+                response.put("data", metricsCollectorService.getHistory(server.getId(), level, start, end,
+                        points != null ? points : 0));
                 response.put("success", true);
-                response.put("data", historyData);
-                response.put("cached", false);
-
-            } finally {
-                connectionManager.closeConnection(connectionId);
+                return ResponseEntity.ok(response);
+            } catch (IllegalArgumentException e) {
+                response.put("success", false);
+                response.put("message", e.getMessage());
+                return ResponseEntity.badRequest().body(response);
+            } catch (IOException e) {
+                log.error("查询服务器 {} 历史数据失败", serverId, e);
+                response.put("success", false);
+                response.put("message", "查询历史数据失败: " + e.getMessage());
+                return ResponseEntity.status(500).body(response);
             }
+        }
 
-            return ResponseEntity.ok(response);
-
-        } catch (Exception e) {
-            log.error("获取服务器 {} 历史数据失败", serverId, e);
-            response.put("success", false);
-            response.put("message", "获取历史数据失败: " + e.getMessage());
-            return ResponseEntity.status(500).body(response);
+        response.put("success", true);
+        response.put("data", metricsCollectorService.getHistory(server.getId()));
+        String lastError = metricsCollectorService.getLastError(server.getId());
+        if (lastError != null) {
+            response.put("message", "最近一次采集失败: " + lastError);
         }
+        return ResponseEntity.ok(response);
     }
 
     /**
      * 获取服务器系统信息 (运行时间、负载、进程数等)
+     * 与性能指标来自同一次 /proc 采样，不再单独执行命令
      * @param serverId 服务器ID
      * @return 包含系统信息的 ResponseEntity
      */
@@ -346,81 +254,26 @@ public class DashboardController {
     public ResponseEntity<Map<String, Object>> getSystemInfo(@PathVariable Long serverId) {
         Map<String, Object> response = new HashMap<>();
         try {
-            SshService server = Optional.ofNullable(serverService.getById(serverId))
-                    .orElseThrow(() -> new RuntimeException("服务器未找到"));
-
-            String connectionId = connectionManager.createConnection(
-                    server.getHost(), server.getPort(), server.getUsername(), server.getPassword()
-            );
-
-            try {
-                Session session = Optional.ofNullable(connectionManager.getSession(connectionId))
-                        .orElseThrow(() -> new JSchException("无法建立或获取有效的SSH会话"));
-
-                Map<String, Object> systemInfo = new HashMap<>();
-
-                // 并行获取系统信息
-                CompletableFuture<Long> uptimeFuture = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        String uptimeStr = executeSimpleCommand(session, "cat /proc/uptime").trim();
-                        String[] parts = uptimeStr.split("\\s+");
-                        return (long) Double.parseDouble(parts[0]);
-                    } catch (Exception e) {
-                        log.warn("获取运行时间失败: {}", e.getMessage());
-                        return 0L;
-                    }
-                });
-
-                CompletableFuture<double[]> loadFuture = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        String loadStr = executeSimpleCommand(session, "cat /proc/loadavg").trim();
-                        String[] parts = loadStr.split("\\s+");
-                        return new double[]{
-                            Double.parseDouble(parts[0]), // 1分钟负载
-                            Double.parseDouble(parts[1]), // 5分钟负载
-                            Double.parseDouble(parts[2])  // 15分钟负载
-                        };
-                    } catch (Exception e) {
-                        log.warn("获取负载信息失败: {}", e.getMessage());
-                        return new double[]{0.0, 0.0, 0.0};
-                    }
-                });
-
-                CompletableFuture<Integer> processFuture = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        String processStr = executeSimpleCommand(session, "ps aux | wc -l").trim();
-                        return Integer.parseInt(processStr) - 1; // 减去标题行
-                    } catch (Exception e) {
-                        log.warn("获取进程数失败: {}", e.getMessage());
-                        return 0;
-                    }
-                });
-
-                CompletableFuture<Integer> connectionFuture = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        String connStr = executeSimpleCommand(session, "ss -tuln | wc -l").trim();
-                        return Integer.parseInt(connStr) - 1; // 减去标题行
-                    } catch (Exception e) {
-                        log.warn("获取连接数失败: {}", e.getMessage());
-                        return 0;
-                    }
-                });
-
-                // 等待所有命令执行完成
-                CompletableFuture.allOf(uptimeFuture, loadFuture, processFuture, connectionFuture).join();
-
-                systemInfo.put("uptime", uptimeFuture.get());
-                systemInfo.put("loadAverage", loadFuture.get());
-                systemInfo.put("processCount", processFuture.get());
-                systemInfo.put("connectionCount", connectionFuture.get());
-
-                response.put("success", true);
-                response.put("data", systemInfo);
-
-            } finally {
-                connectionManager.closeConnection(connectionId);
+            SshService server = serverService.getById(serverId);
+            if (server == null) {
+                response.put("success", false);
+                response.put("message", "服务器未找到");
+                return ResponseEntity.ok(response);
             }
 
+            Map<String, Object> latest = metricsCollectorService.getLatest(server);
+            Map<String, Object> systemInfo = new HashMap<>();
+            systemInfo.put("uptime", toLong(latest.get(HostMetric.UPTIME.getKey())));
+            systemInfo.put("loadAverage", new double[]{
+                    toDouble(latest.get(HostMetric.LOAD1.getKey())), // 1分钟负载
+                    toDouble(latest.get(HostMetric.LOAD5.getKey())), // 5分钟负载
+                    toDouble(latest.get(HostMetric.LOAD15.getKey()))  // 15分钟负载
+            });
+            systemInfo.put("processCount", toLong(latest.get(HostMetric.PROCESSES.getKey())));
+            systemInfo.put("connectionCount", toLong(latest.get(HostMetric.CONNECTIONS.getKey())));
+
+            response.put("success", true);
+            response.put("data", systemInfo);
             return ResponseEntity.ok(response);
 
         } catch (Exception e) {
@@ -431,6 +284,14 @@ public class DashboardController {
         }
     }
 
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof Number number ? number.doubleValue() : 0.0;
+    }
+
     /**
      * Docker 容器操作 (启动、停止、重启)
      * @param serverId 服务器ID
@@ -446,10 +307,12 @@ public class DashboardController {
         
         Map<String, Object> response = new HashMap<>();
         
-        // 验证操作类型
-        if (!action.matches("start|stop|restart")) {
+        // 验证操作类型和容器ID
+        ContainerActionItem item = new ContainerActionItem(serverId, containerId, action);
+        String error = BulkContainerActionService.validate(item);
+        if (error != null) {
             response.put("success", false);
-            response.put("message", "不支持的操作类型: " + action);
+            response.put("message", error);
             return ResponseEntity.badRequest().body(response);
         }
 
@@ -457,44 +320,11 @@ public class DashboardController {
             SshService server = Optional.ofNullable(serverService.getById(serverId))
                     .orElseThrow(() -> new RuntimeException("服务器未找到"));
 
-            String connectionId = connectionManager.createConnection(
-                    server.getHost(), server.getPort(), server.getUsername(), server.getPassword()
-            );
-
-            try {
-                Session session = Optional.ofNullable(connectionManager.getSession(connectionId))
-                        .orElseThrow(() -> new JSchException("无法建立或获取有效的SSH会话"));
-
-                // 构建 Docker 命令
-                String command = String.format("docker %s %s", action, containerId);
-                String output = executeSimpleCommand(session, command);
-
-                // 检查操作是否成功
-                boolean success = true;
-                String message = String.format("容器 %s 已%s", containerId.substring(0, Math.min(12, containerId.length())), action);
-
-                // 对于某些操作，检查容器状态来确认是否成功
-                if ("start".equals(action) || "restart".equals(action)) {
-                    try {
-                        String statusCmd = String.format("docker inspect --format='{{.State.Status}}' %s", containerId);
-                        String status = executeSimpleCommand(session, statusCmd).trim();
-                        if (!"running".equals(status)) {
-                            success = false;
-                            message = String.format("容器 %s %s 失败，当前状态: %s", 
-                                containerId.substring(0, Math.min(12, containerId.length())), action, status);
-                        }
-                    } catch (Exception e) {
-                        log.warn("检查容器状态失败: {}", e.getMessage());
-                    }
-                }
-
-                response.put("success", success);
-                response.put("message", message);
-                response.put("output", output);
-
-            } finally {
-                connectionManager.closeConnection(connectionId);
-            }
+            // 操作和状态确认在池化会话上一次 exec 完成
+            Map<String, Object> result = bulkContainerActionService.execute(server, List.of(item), null).get(0);
+            response.put("success", result.get("success"));
+            response.put("message", result.get("message"));
+            response.put("status", result.get("status"));
 
             return ResponseEntity.ok(response);
 
@@ -506,6 +336,22 @@ public class DashboardController {
         }
     }
 
+    /**
+     * 批量容器操作，可跨多台服务器。同一台服务器上同一操作的容器合并为一条 docker 命令，
+     * 按 NDJSON 流式返回每个容器的结果
+     */
+    @PostMapping("/docker/bulk")
+    public ResponseEntity<?> bulkContainerAction(@RequestBody BulkContainerActionRequest request) {
+        if (request.getItems() == null || request.getItems().isEmpty()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "操作列表不能为空");
+            return ResponseEntity.badRequest().body(response);
+        }
+        StreamingResponseBody body = out -> bulkContainerActionService.stream(request.getItems(), request.getStopTimeout(), out);
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
     /**
      * 获取 Docker 容器日志
      * @param serverId 服务器ID
@@ -607,44 +453,6 @@ public class DashboardController {
 
     // --- 辅助方法 ---
 
-    /**
-     * 在给定的 SSH Session 上执行命令并解析返回的数值。
-     * @param session 已连接的 JSch Session
-     * @param command 要执行的命令
-     * @return 解析后的 double 值，失败则返回 -1.0
-     * @throws JSchException
-     * @throws IOException
-     */
-    private double executeCommandForValue(Session session, String command) throws JSchException, IOException {
-        ChannelExec channel = (ChannelExec) session.openChannel("exec");
-        channel.setCommand(command);
-        try (InputStream in = channel.getInputStream();
-             BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
-
-            channel.connect();
-
-            StringBuilder outputBuffer = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                outputBuffer.append(line);
-            }
-
-            String output = outputBuffer.toString().trim();
-            if (output.isEmpty()) {
-                return -1.0;
-            }
-            return Double.parseDouble(output);
-
-        } catch (NumberFormatException e) {
-            log.warn("命令 '{}' 返回非数字输出: {}", command, e.getMessage());
-            return -1.0;
-        } finally {
-            if (channel.isConnected()) {
-                channel.disconnect();
-            }
-        }
-    }
-
     /**
      * 在给定的 SSH Session 上执行简单命令并返回标准输出的第一行。
      * @param session 已连接的 JSch Session
@@ -0,0 +1,77 @@
+package com.kklsqm.webssh.controller;
+
+import com.kklsqm.webssh.domain.SshService;
+import com.kklsqm.webssh.service.DiskUsageService;
+import com.kklsqm.webssh.service.SshServiceService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 功能: 磁盘占用分析
+ * 作者: 沙琪马
+ * 日期: 2025/9/23 11:00
+ *
+ * 扫描进度推送到 /topic/disk-usage/{scanId}
+ */
+@RestController
+@RequestMapping("/api/dashboard")
+@RequiredArgsConstructor
+public class DiskUsageController {
+
+    private final SshServiceService serverService;
+    private final DiskUsageService diskUsageService;
+
+    /**
+     * 开始扫描目录
+     */
+    @PostMapping("/server/{serverId}/disk-usage")
+    public ResponseEntity<?> startScan(@PathVariable Long serverId,
+                                       @RequestParam(defaultValue = "/") String path) {
+        SshService server = serverService.getById(serverId);
+        if (server == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("success", false, "message", "服务器未找到"));
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(diskUsageService.start(server, path));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
+    /**
+     * 最后一次扫描结果 (扫描中为部分结果)
+     */
+    @GetMapping("/server/{serverId}/disk-usage")
+    public ResponseEntity<?> getLastScan(@PathVariable Long serverId) {
+        DiskUsageService.Report report = diskUsageService.getLast(serverId.intValue());
+        if (report == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("success", false, "message", "还没有扫描结果"));
+        }
+        return ResponseEntity.ok(report);
+    }
+
+    /**
+     * 展开目录树中的某个目录
+     */
+    @GetMapping("/server/{serverId}/disk-usage/children")
+    public ResponseEntity<?> getChildren(@PathVariable Long serverId, @RequestParam String path) {
+        List<DiskUsageService.DirUsage> children = diskUsageService.getChildren(serverId.intValue(), path);
+        if (children == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("success", false, "message", "目录不在扫描结果中"));
+        }
+        return ResponseEntity.ok(children);
+    }
+
+    @PostMapping("/disk-usage/{scanId}/cancel")
+    public ResponseEntity<?> cancelScan(@PathVariable String scanId) {
+        if (!diskUsageService.cancel(scanId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("success", false, "message", "扫描不存在或已结束"));
+        }
+        return ResponseEntity.ok(Map.of("success", true));
+    }
+}
@@ -1,18 +1,36 @@
 package com.kklsqm.webssh.controller;
 
+import com.kklsqm.webssh.common.ShellUtils;
 import com.kklsqm.webssh.domain.SshService;
+import com.kklsqm.webssh.domain.dto.CopyRequest;
 import com.kklsqm.webssh.domain.dto.DeleteRequest;
 import com.kklsqm.webssh.domain.dto.RenameRequest;
+import com.kklsqm.webssh.service.BulkTransferService;
+import com.kklsqm.webssh.service.FileIndexService;
 import com.kklsqm.webssh.service.FileTransferService;
+import com.kklsqm.webssh.service.FileViewerService;
 import com.kklsqm.webssh.service.SshServiceService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 功能: 文件上传下载
@@ -27,6 +45,13 @@ public class FileUploadController {
 
     private final SshServiceService sshServiceService;
     private final FileTransferService fileTransferService;
+    private final BulkTransferService bulkTransferService;
+    private final FileViewerService fileViewerService;
+    private final FileIndexService fileIndexService;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // 进度推送的最小间隔，避免大文件复制时刷屏
+    private static final long PROGRESS_INTERVAL_MS = 500;
 
     // ========== 文件操作 ==========
 
@@ -48,44 +73,376 @@ public class FileUploadController {
 
     /**
      * 上传文件
+     * sync=true 时对已存在的远程文件做增量同步，只传输变化的数据块
+     * 返回每个文件的 SHA-256，verify=true 时再与远程 sha256sum 比对
      */
     @PostMapping("/{id}/upload")
     public ResponseEntity<?> uploadFile(
+            @PathVariable Long id,
+            @RequestParam("path") String remotePath,
+            @RequestParam("files") MultipartFile[] uploadFiles,
+            @RequestParam(defaultValue = "false") boolean sync,
+            @RequestParam(defaultValue = "false") boolean verify) {
+        SshService server = getSshService(id);
+        try {
+            if (sync) {
+                List<FileTransferService.SyncResult> results = new ArrayList<>();
+                for (MultipartFile file : uploadFiles) {
+                    if (!file.isEmpty()) {
+                        results.add(fileTransferService.syncFile(server, file, remotePath, verify));
+                    }
+                }
+                boolean verified = results.stream().noneMatch(result -> Boolean.FALSE.equals(result.getVerified()));
+                return ResponseEntity.ok(Map.of(
+                        "success", verified,
+                        "message", verified ? "同步成功" : "同步完成，但部分文件校验失败",
+                        "data", results
+                ));
+            }
+            List<FileTransferService.UploadResult> results = fileTransferService.uploadFiles(server, uploadFiles, remotePath, verify);
+            boolean verified = results.stream().noneMatch(result -> Boolean.FALSE.equals(result.getVerified()));
+            return ResponseEntity.ok(Map.of(
+                    "success", verified,
+                    "message", verified ? "上传成功" : "上传完成，但部分文件校验失败",
+                    "data", results
+            ));
+        } catch (Exception e) {
+            return error("上传失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 批量上传大量小文件 (自动在 tar 流和 SFTP 之间选择)
+     */
+    @PostMapping("/{id}/upload-bulk")
+    public ResponseEntity<?> uploadBulk(
             @PathVariable Long id,
             @RequestParam("path") String remotePath,
             @RequestParam("files") MultipartFile[] uploadFiles) {
         SshService server = getSshService(id);
         try {
-            fileTransferService.uploadFiles(server, uploadFiles, remotePath);
+            BulkTransferService.BulkResult result = bulkTransferService.upload(server, uploadFiles, remotePath);
             return ResponseEntity.ok(Map.of(
                     "success", true,
-                    "message", "上传成功"
+                    "message", "上传成功",
+                    "data", result
             ));
         } catch (Exception e) {
             return error("上传失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 批量下载同一目录下的多个文件/目录，打包为一个 tar 流
+     */
+    @GetMapping("/{id}/download-bulk")
+    public ResponseEntity<?> downloadBulk(
+            @PathVariable Long id,
+            @RequestParam String path,
+            @RequestParam List<String> names) {
+        SshService server = getSshService(id);
+        if (names.isEmpty()) {
+            return error("请选择要下载的文件");
+        }
+
+        StreamingResponseBody body = out -> {
+            try {
+                bulkTransferService.download(server, path, names, out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("批量下载失败: " + e.getMessage(), e);
+            }
+        };
+
+        String dirName = ShellUtils.nameOf(path);
+        String filename = (dirName.isEmpty() ? "root" : dirName) + ".tar";
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build().toString())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    /**
+     * 在文件索引中搜索，mode=name 按文件名子串，mode=prefix 按完整路径前缀
+     * 首次搜索会在后台建立索引，建立完成前返回空结果和索引状态
+     */
+    @GetMapping("/{id}/search")
+    public ResponseEntity<?> searchFiles(
+            @PathVariable Long id,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "name") String mode,
+            @RequestParam(required = false) Integer limit) {
+        SshService server = getSshService(id);
+        if (server == null) {
+            return error("服务器未找到");
+        }
+        return ResponseEntity.ok(Map.of("success", true, "data", fileIndexService.search(server, q, mode, limit)));
+    }
+
+    /**
+     * 查看文件索引状态
+     */
+    @GetMapping("/{id}/index")
+    public ResponseEntity<?> indexStatus(@PathVariable Long id) {
+        return ResponseEntity.ok(Map.of("success", true, "data", fileIndexService.getStatus(id.intValue())));
+    }
+
+    /**
+     * 立即刷新文件索引
+     */
+    @PostMapping("/{id}/index/refresh")
+    public ResponseEntity<?> refreshIndex(@PathVariable Long id) {
+        SshService server = getSshService(id);
+        if (server == null) {
+            return error("服务器未找到");
+        }
+        return ResponseEntity.ok(Map.of("success", true, "data", fileIndexService.refresh(server)));
+    }
+
+    /**
+     * 按字节范围查看文件，适合超大文件分页
+     */
+    @GetMapping("/{id}/view/bytes")
+    public ResponseEntity<?> viewBytes(
+            @PathVariable Long id,
+            @RequestParam String path,
+            @RequestParam(defaultValue = "0") long offset,
+            @RequestParam(defaultValue = "65536") int length) {
+        SshService server = getSshService(id);
+        try {
+            return ResponseEntity.ok(Map.of("success", true,
+                    "data", fileViewerService.readBytes(server, path, offset, length)));
+        } catch (Exception e) {
+            return error("读取失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按行号查看文件，start 从 0 开始
+     */
+    @GetMapping("/{id}/view/lines")
+    public ResponseEntity<?> viewLines(
+            @PathVariable Long id,
+            @RequestParam String path,
+            @RequestParam(defaultValue = "0") long start,
+            @RequestParam(defaultValue = "200") int count) {
+        SshService server = getSshService(id);
+        try {
+            return ResponseEntity.ok(Map.of("success", true,
+                    "data", fileViewerService.readLines(server, path, start, count)));
+        } catch (Exception e) {
+            return error("读取失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 开始 tail -f，新增内容推送到 /user/queue/tail
+     */
+    @MessageMapping("/file/tail/start")
+    @SendToUser("/queue/tail")
+    public Map<String, Object> startTail(@Payload Map<String, Object> payload, Principal principal) {
+        try {
+            SshService server = getSshService(((Number) payload.get("serverId")).longValue());
+            if (server == null) {
+                return Map.of("type", "error", "message", "服务器未找到");
+            }
+            String path = (String) payload.get("path");
+            long initialBytes = payload.get("initialBytes") != null
+                    ? ((Number) payload.get("initialBytes")).longValue() : 8192;
+            String tailId = fileViewerService.startTail(principal.getName(), server, path, initialBytes);
+            return Map.of("type", "accepted", "tailId", tailId, "path", path);
+        } catch (Exception e) {
+            return Map.of("type", "error", "message", "tail 启动失败: " + e.getMessage());
+        }
+    }
+
+    @MessageMapping("/file/tail/stop")
+    public void stopTail(@Payload Map<String, Object> payload, Principal principal) {
+        fileViewerService.stopTail(principal.getName(), (String) payload.get("tailId"));
+    }
+
     /**
      * 下载文件
+     * 响应头 X-Checksum-SHA256 为下载内容的 SHA-256，verify=true 时先与远程 sha256sum 比对，不一致返回错误
+     * compress: auto 按文件类型和大小决定是否在远程 gzip/zstd 压缩后传输，gzip / zstd 强制压缩，none 不压缩；
+     * 浏览器支持时带 Content-Encoding 直接返回压缩数据，否则在网关上解压 (压缩传输时不计算校验和)
      */
     @GetMapping("/{id}/download")
-    public ResponseEntity<byte[]> downloadFile(
+    public ResponseEntity<?> downloadFile(
             @PathVariable Long id,
-            @RequestParam String path) {
+            @RequestParam String path,
+            @RequestParam(defaultValue = "false") boolean verify,
+            @RequestParam(defaultValue = "auto") String compress,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         SshService server = getSshService(id);
         try {
-            byte[] data = fileTransferService.downloadFile(server, path);
+            FileTransferService.Download download = fileTransferService.download(server, path, verify, compress,
+                    acceptsEncoding(acceptEncoding, "gzip"), acceptsEncoding(acceptEncoding, "zstd"));
+            if (download.getPlan() != null) {
+                return compressedDownload(path, download);
+            }
+
+            FileTransferService.DownloadResult result = download.getResult();
+            if (Boolean.FALSE.equals(result.getVerified())) {
+                return ResponseEntity.badRequest()
+                        .body(("下载失败: SHA-256 校验不一致，远程文件可能在读取期间被修改").getBytes());
+            }
             String filename = path.substring(path.lastIndexOf("/") + 1);
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .body(data);
+                    .header("X-Checksum-SHA256", result.getSha256())
+                    .body(result.getData());
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                     .body(("下载失败: " + e.getMessage()).getBytes());
         }
     }
 
+    private ResponseEntity<StreamingResponseBody> compressedDownload(String path, FileTransferService.Download download) {
+        FileTransferService.CompressedDownload plan = download.getPlan();
+        StreamingResponseBody body = out -> {
+            try {
+                download.getWriter().writeTo(out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("压缩下载失败: " + e.getMessage(), e);
+            }
+        };
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(ShellUtils.nameOf(path), StandardCharsets.UTF_8).build().toString())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        if (!plan.isDecompress()) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, plan.getEncoding().getToken());
+        }
+        return builder.body(body);
+    }
+
+    /**
+     * Accept-Encoding 是否包含指定编码 (q=0 视为不接受)
+     */
+    static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            if (params[0].trim().equalsIgnoreCase(encoding)) {
+                for (int i = 1; i < params.length; i++) {
+                    String param = params[i].trim().replace(" ", "");
+                    if (param.matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 下载目录 (打包为 zip 或 tar.gz，边读边写直接流式返回)
+     * mode=sftp 通过单个 SFTP 通道遍历目录；mode=exec 在远程执行 tar czf -，仅支持 tar.gz
+     */
+    @GetMapping("/{id}/download-folder")
+    public ResponseEntity<?> downloadFolder(
+            @PathVariable Long id,
+            @RequestParam String path,
+            @RequestParam(defaultValue = "zip") String format,
+            @RequestParam(defaultValue = "sftp") String mode) {
+        SshService server = getSshService(id);
+        FileTransferService.ArchiveFormat archiveFormat;
+        try {
+            archiveFormat = FileTransferService.ArchiveFormat.fromValue(format);
+        } catch (IllegalArgumentException e) {
+            return error(e.getMessage());
+        }
+
+        boolean useExec = "exec".equalsIgnoreCase(mode);
+        if (useExec && archiveFormat != FileTransferService.ArchiveFormat.TAR_GZ) {
+            return error("exec 模式仅支持 tar.gz 格式");
+        }
+
+        String dirName = ShellUtils.nameOf(path);
+        String filename = (dirName.isEmpty() ? "root" : dirName) + archiveFormat.getExtension();
+
+        StreamingResponseBody body = out -> {
+            try {
+                if (useExec) {
+                    fileTransferService.downloadDirectoryWithTar(server, path, out);
+                } else {
+                    fileTransferService.downloadDirectory(server, path, archiveFormat, out);
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("目录下载失败: " + e.getMessage(), e);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build().toString())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    /**
+     * 服务器间直接复制文件 (数据经网关流式转发，不经过浏览器)
+     * 进度推送到 /topic/transfer/{taskId}
+     */
+    @PostMapping("/copy")
+    public ResponseEntity<?> copyBetweenServers(@RequestBody CopyRequest copyRequest) {
+        SshService source = getSshService(copyRequest.getSourceId());
+        SshService target = getSshService(copyRequest.getTargetId());
+        if (source == null || target == null) {
+            return error("服务器未找到");
+        }
+        if (copyRequest.getPaths() == null || copyRequest.getPaths().isEmpty()) {
+            return error("请选择要复制的文件");
+        }
+
+        String taskId = copyRequest.getTaskId() != null && !copyRequest.getTaskId().isBlank()
+                ? copyRequest.getTaskId() : UUID.randomUUID().toString();
+        String destination = "/topic/transfer/" + taskId;
+        Map<String, Long> lastPushTime = new ConcurrentHashMap<>();
+
+        FileTransferService.TransferProgressListener listener = (path, transferred, total) -> {
+            long now = System.currentTimeMillis();
+            Long last = lastPushTime.get(path);
+            if (transferred < total && last != null && now - last < PROGRESS_INTERVAL_MS) {
+                return;
+            }
+            lastPushTime.put(path, now);
+            messagingTemplate.convertAndSend(destination, Map.of(
+                    "type", "progress",
+                    "taskId", taskId,
+                    "path", path,
+                    "transferred", transferred,
+                    "total", total
+            ));
+        };
+
+        try {
+            List<FileTransferService.CopyResult> results = fileTransferService.copyBetweenServers(
+                    source, target, copyRequest.getPaths(), copyRequest.getTargetPath(), copyRequest.isVerify(), listener);
+            boolean allSuccess = results.stream().allMatch(FileTransferService.CopyResult::isSuccess);
+            messagingTemplate.convertAndSend(destination, Map.of("type", "done", "taskId", taskId, "results", results));
+            return ResponseEntity.ok(Map.of(
+                    "success", allSuccess,
+                    "message", allSuccess ? "复制成功" : "部分文件复制失败",
+                    "taskId", taskId,
+                    "data", results
+            ));
+        } catch (Exception e) {
+            return error("复制失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 创建目录
      */
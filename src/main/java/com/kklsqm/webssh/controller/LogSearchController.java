@@ -0,0 +1,73 @@
+package com.kklsqm.webssh.controller;
+
+import com.kklsqm.webssh.domain.SshService;
+import com.kklsqm.webssh.domain.dto.LogSearchRequest;
+import com.kklsqm.webssh.service.LogSearchService;
+import com.kklsqm.webssh.service.SshServiceService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 功能: 多服务器日志搜索
+ * 作者: 沙琪马
+ * 日期: 2025/9/21 11:10
+ *
+ * 结果按 NDJSON 流式返回，每行一个事件：started / match / server-done / done
+ */
+@RestController
+@RequestMapping("/api/log-search")
+@RequiredArgsConstructor
+public class LogSearchController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final SshServiceService sshServiceService;
+    private final LogSearchService logSearchService;
+
+    @PostMapping
+    public ResponseEntity<?> search(@RequestBody LogSearchRequest request) {
+        if (request.getServerIds() == null || request.getServerIds().isEmpty()) {
+            return error("请选择服务器");
+        }
+        if (request.getPath() == null || request.getPath().isBlank()) {
+            return error("请输入日志路径");
+        }
+        if (request.getPattern() == null || request.getPattern().isEmpty()) {
+            return error("请输入搜索内容");
+        }
+        List<SshService> servers = sshServiceService.listByIds(request.getServerIds());
+        if (servers.size() != request.getServerIds().stream().distinct().count()) {
+            return error("服务器未找到");
+        }
+
+        String searchId = request.getSearchId() != null && !request.getSearchId().isBlank()
+                ? request.getSearchId() : UUID.randomUUID().toString();
+        StreamingResponseBody body = out -> logSearchService.search(searchId, servers, request, out);
+        return ResponseEntity.ok()
+                .header("X-Search-Id", searchId)
+                .contentType(NDJSON)
+                .body(body);
+    }
+
+    /**
+     * 取消搜索，结束所有远程 grep 进程
+     */
+    @PostMapping("/{searchId}/cancel")
+    public ResponseEntity<?> cancel(@PathVariable String searchId) {
+        if (!logSearchService.cancel(searchId)) {
+            return error("搜索不存在或已结束");
+        }
+        return ResponseEntity.ok(Map.of("success", true, "message", "已取消"));
+    }
+
+    private ResponseEntity<Map<String, Object>> error(String message) {
+        return ResponseEntity.badRequest().body(Map.of("success", false, "message", message));
+    }
+}
@@ -0,0 +1,97 @@
+package com.kklsqm.webssh.controller;
+
+import com.kklsqm.webssh.domain.SshService;
+import com.kklsqm.webssh.domain.dto.EditRequest;
+import com.kklsqm.webssh.service.RemoteEditorService;
+import com.kklsqm.webssh.service.SshServiceService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 功能: 远程文件编辑
+ * 作者: 沙琪马
+ * 日期: 2025/9/24 11:00
+ *
+ * 偏移和长度均以 UTF-8 字节计算
+ */
+@RestController
+@RequestMapping("/api/editor")
+@RequiredArgsConstructor
+public class RemoteEditorController {
+
+    private final SshServiceService sshServiceService;
+    private final RemoteEditorService remoteEditorService;
+
+    @PostMapping("/open")
+    public ResponseEntity<?> open(@RequestParam Long serverId, @RequestParam String path) {
+        SshService server = sshServiceService.getById(serverId);
+        if (server == null) {
+            return error(HttpStatus.NOT_FOUND, "服务器未找到");
+        }
+        try {
+            return ResponseEntity.ok(Map.of("success", true, "data", remoteEditorService.open(server, path)));
+        } catch (Exception e) {
+            return error(HttpStatus.BAD_REQUEST, "打开文件失败: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/{editId}")
+    public ResponseEntity<?> read(@PathVariable String editId,
+                                  @RequestParam(defaultValue = "0") long offset,
+                                  @RequestParam(defaultValue = "1048576") int length) {
+        try {
+            return ResponseEntity.ok(Map.of("success", true, "data", remoteEditorService.read(editId, offset, length)));
+        } catch (NoSuchElementException e) {
+            return error(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (Exception e) {
+            return error(HttpStatus.BAD_REQUEST, "读取失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 替换一段内容，只修改服务端工作副本
+     */
+    @PatchMapping("/{editId}")
+    public ResponseEntity<?> edit(@PathVariable String editId, @RequestBody EditRequest request) {
+        try {
+            return ResponseEntity.ok(Map.of("success", true, "data",
+                    remoteEditorService.edit(editId, request.getOffset(), request.getDeleteLength(), request.getText())));
+        } catch (NoSuchElementException e) {
+            return error(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (Exception e) {
+            return error(HttpStatus.BAD_REQUEST, "编辑失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 把修改写回远程文件，远程文件被他人修改时返回 409，force=true 强制覆盖
+     */
+    @PostMapping("/{editId}/save")
+    public ResponseEntity<?> save(@PathVariable String editId, @RequestParam(defaultValue = "false") boolean force) {
+        try {
+            return ResponseEntity.ok(Map.of("success", true, "message", "保存成功",
+                    "data", remoteEditorService.save(editId, force)));
+        } catch (NoSuchElementException e) {
+            return error(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (RemoteEditorService.ConflictException e) {
+            return error(HttpStatus.CONFLICT, e.getMessage());
+        } catch (Exception e) {
+            return error(HttpStatus.BAD_REQUEST, "保存失败: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{editId}")
+    public ResponseEntity<?> close(@PathVariable String editId) {
+        remoteEditorService.close(editId);
+        return ResponseEntity.ok(Map.of("success", true));
+    }
+
+    private ResponseEntity<Map<String, Object>> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of("success", false, "message", message));
+    }
+}
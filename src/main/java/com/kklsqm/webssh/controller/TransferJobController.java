@@ -0,0 +1,134 @@
+package com.kklsqm.webssh.controller;
+
+import com.kklsqm.webssh.domain.SshService;
+import com.kklsqm.webssh.domain.TransferJob;
+import com.kklsqm.webssh.domain.dto.CopyRequest;
+import com.kklsqm.webssh.service.SshServiceService;
+import com.kklsqm.webssh.service.TransferJobService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 功能: 异步传输任务
+ * 作者: 沙琪马
+ * 日期: 2025/9/19 11:40
+ *
+ * 提交后立即返回任务ID，进度通过 /topic/transfer-jobs 推送
+ */
+@RestController
+@RequestMapping("/api/transfers")
+@RequiredArgsConstructor
+public class TransferJobController {
+
+    private final SshServiceService sshServiceService;
+    private final TransferJobService transferJobService;
+
+    /**
+     * 提交上传任务
+     * mode: upload 普通上传，sync 增量同步，bulk 大量小文件批量上传
+     * verify=true 时上传后用远程 sha256sum 校验 (bulk 模式不支持)，不一致时任务失败
+     */
+    @PostMapping("/upload")
+    public ResponseEntity<?> submitUpload(
+            @RequestParam Long serverId,
+            @RequestParam("path") String remotePath,
+            @RequestParam("files") MultipartFile[] uploadFiles,
+            @RequestParam(defaultValue = "upload") String mode,
+            @RequestParam(defaultValue = "false") boolean verify) {
+        SshService server = sshServiceService.getById(serverId);
+        if (server == null) {
+            return error("服务器未找到");
+        }
+        TransferJob.Type type = switch (mode) {
+            case "upload" -> TransferJob.Type.UPLOAD;
+            case "sync" -> TransferJob.Type.SYNC;
+            case "bulk" -> TransferJob.Type.BULK_UPLOAD;
+            default -> null;
+        };
+        if (type == null) {
+            return error("不支持的上传模式: " + mode);
+        }
+        try {
+            TransferJob job = transferJobService.submitUpload(server, uploadFiles, remotePath, type, verify);
+            return accepted(job);
+        } catch (Exception e) {
+            return error("提交上传任务失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 提交服务器间复制任务
+     */
+    @PostMapping("/copy")
+    public ResponseEntity<?> submitCopy(@RequestBody CopyRequest copyRequest) {
+        SshService source = sshServiceService.getById(copyRequest.getSourceId());
+        SshService target = sshServiceService.getById(copyRequest.getTargetId());
+        if (source == null || target == null) {
+            return error("服务器未找到");
+        }
+        if (copyRequest.getPaths() == null || copyRequest.getPaths().isEmpty()) {
+            return error("请选择要复制的文件");
+        }
+        TransferJob job = transferJobService.submitCopy(source, target, copyRequest.getPaths(),
+                copyRequest.getTargetPath(), copyRequest.isVerify());
+        return accepted(job);
+    }
+
+    @GetMapping
+    public ResponseEntity<?> listJobs() {
+        return ResponseEntity.ok(Map.of("success", true, "data", transferJobService.listJobs()));
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getJob(@PathVariable String jobId) {
+        TransferJob job = transferJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("success", false, "message", "任务不存在"));
+        }
+        return ResponseEntity.ok(Map.of("success", true, "data", job));
+    }
+
+    @PostMapping("/{jobId}/cancel")
+    public ResponseEntity<?> cancel(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(Map.of("success", true, "data", transferJobService.cancel(jobId)));
+        } catch (NoSuchElementException e) {
+            return error(e.getMessage());
+        }
+    }
+
+    @PostMapping("/{jobId}/retry")
+    public ResponseEntity<?> retry(@PathVariable String jobId) {
+        try {
+            return accepted(transferJobService.retry(jobId));
+        } catch (NoSuchElementException | IllegalStateException e) {
+            return error(e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<?> remove(@PathVariable String jobId) {
+        try {
+            transferJobService.remove(jobId);
+            return ResponseEntity.ok(Map.of("success", true, "message", "任务已删除"));
+        } catch (NoSuchElementException | IllegalStateException e) {
+            return error(e.getMessage());
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> accepted(TransferJob job) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(Map.of("success", true, "message", "任务已提交", "data", job));
+    }
+
+    private ResponseEntity<Map<String, Object>> error(String message) {
+        return ResponseEntity.badRequest().body(Map.of("success", false, "message", message));
+    }
+}
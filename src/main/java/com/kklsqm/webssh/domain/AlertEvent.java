@@ -0,0 +1,30 @@
+package com.kklsqm.webssh.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 功能: 告警通知
+ * 作者: 沙琪马
+ * 日期: 2025/9/28 10:10
+ */
+@Data
+@AllArgsConstructor
+public class AlertEvent {
+
+    public enum State {
+        FIRING, RESOLVED, CHANGED
+    }
+
+    private String ruleId;
+    private String ruleName;
+    private Integer serverId;
+    private String serverName;
+    // 指标、容器或服务名
+    private String subject;
+    private State state;
+    private String severity;
+    private Double value;
+    private String message;
+    private long timestamp;
+}
@@ -0,0 +1,44 @@
+package com.kklsqm.webssh.domain;
+
+import lombok.Data;
+
+/**
+ * 功能: 告警规则
+ * 作者: 沙琪马
+ * 日期: 2025/9/28 10:00
+ */
+@Data
+public class AlertRule {
+
+    public enum Type {
+        // 指标超过阈值并持续一段时间，例如 cpu > 90 持续 5 分钟
+        THRESHOLD,
+        // 指标在时间窗口内的变化率 (每小时) 超过阈值，例如磁盘使用率每小时增长超过 5%
+        RATE,
+        // 容器不在运行
+        CONTAINER_NOT_RUNNING,
+        // 服务状态发生变化
+        SERVICE_CHANGE
+    }
+
+    private String id;
+    private String name;
+    private Type type;
+    // 为空时作用于全部服务器
+    private Integer serverId;
+    // THRESHOLD / RATE 的指标，HostMetric 的 key
+    private String metric;
+    // > >= < <=
+    private String operator = ">";
+    private double threshold;
+    // 条件持续多久才告警 (毫秒)，0 表示立即
+    private long durationMs;
+    // RATE 计算变化率的时间窗口 (毫秒)
+    private long windowMs = 3_600_000;
+    // 容器名或服务名，* 表示全部
+    private String target = "*";
+    private String severity = "warning";
+    // 同一告警两次通知的最小间隔 (毫秒)
+    private long cooldownMs = 600_000;
+    private boolean enabled = true;
+}
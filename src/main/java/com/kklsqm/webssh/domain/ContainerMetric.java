@@ -0,0 +1,42 @@
+package com.kklsqm.webssh.domain;
+
+/**
+ * 功能: docker stats 输出的容器指标，顺序即环形缓冲区中的列下标
+ * 作者: 沙琪马
+ * 日期: 2025/9/29 10:00
+ */
+public enum ContainerMetric {
+    // 百分比
+    CPU("cpu"),
+    MEMORY("memory"),
+    // 字节
+    MEMORY_USAGE("memoryUsage"),
+    MEMORY_LIMIT("memoryLimit"),
+    // 容器启动以来的累计字节数
+    NET_RX("netRx"),
+    NET_TX("netTx"),
+    BLOCK_READ("blockRead"),
+    BLOCK_WRITE("blockWrite"),
+    PIDS("pids");
+
+    private static final ContainerMetric[] VALUES = values();
+
+    // 接口返回中的字段名
+    private final String key;
+
+    ContainerMetric(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public static int count() {
+        return VALUES.length;
+    }
+
+    public static ContainerMetric of(int index) {
+        return VALUES[index];
+    }
+}
@@ -0,0 +1,50 @@
+package com.kklsqm.webssh.domain;
+
+/**
+ * 功能: 后台采集的主机指标，顺序即环形缓冲区中的列下标
+ * 作者: 沙琪马
+ * 日期: 2025/9/25 10:10
+ */
+public enum HostMetric {
+    // 百分比
+    CPU("cpu"),
+    MEMORY("memory"),
+    DISK("disk"),
+    // 平均负载
+    LOAD1("load1"),
+    LOAD5("load5"),
+    LOAD15("load15"),
+    // 网卡收发速率 (字节/秒，不含 lo)
+    NET_RX("netRx"),
+    NET_TX("netTx"),
+    // 整块磁盘的读写速率 (字节/秒)
+    DISK_READ("diskRead"),
+    DISK_WRITE("diskWrite"),
+    // 运行时间 (秒)
+    UPTIME("uptime"),
+    // 进程数 (/proc 下的 PID 目录，不含线程)
+    PROCESSES("processCount"),
+    // 监听中的 TCP + UDP 端口数，与 ss -tuln 一致
+    CONNECTIONS("connectionCount");
+
+    private static final HostMetric[] VALUES = values();
+
+    // 接口返回中的字段名
+    private final String key;
+
+    HostMetric(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public static int count() {
+        return VALUES.length;
+    }
+
+    public static HostMetric of(int index) {
+        return VALUES[index];
+    }
+}
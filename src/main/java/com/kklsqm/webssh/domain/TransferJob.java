@@ -0,0 +1,42 @@
+package com.kklsqm.webssh.domain;
+
+import lombok.Data;
+
+/**
+ * 功能: 异步传输任务
+ * 作者: 沙琪马
+ * 日期: 2025/9/19 10:40
+ */
+@Data
+public class TransferJob {
+
+    public enum Type {
+        UPLOAD, SYNC, BULK_UPLOAD, COPY
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    private String id;
+    private Type type;
+    private volatile Status status;
+    private Long serverId;
+    // 仅服务器间复制任务有目标服务器
+    private Long targetServerId;
+    private String remotePath;
+    private String description;
+    private volatile long totalBytes;
+    private volatile long transferredBytes;
+    private volatile long bytesPerSecond;
+    private volatile int attempts;
+    private volatile String message;
+    private volatile Object result;
+    private long createdAt;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+}
@@ -0,0 +1,21 @@
+package com.kklsqm.webssh.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 功能: 批量容器操作请求
+ * 作者: 沙琪马
+ * 日期: 2025/10/1 10:00
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkContainerActionRequest {
+    private List<ContainerActionItem> items;
+    // docker stop / restart 的 -t 秒数，为空时使用容器自身的设置
+    private Integer stopTimeout;
+}
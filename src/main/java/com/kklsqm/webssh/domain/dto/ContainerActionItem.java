@@ -0,0 +1,21 @@
+package com.kklsqm.webssh.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 功能: 批量容器操作中的一项
+ * 作者: 沙琪马
+ * 日期: 2025/10/1 10:00
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ContainerActionItem {
+    private Long serverId;
+    // 容器ID或名称
+    private String containerId;
+    // start / stop / restart
+    private String action;
+}
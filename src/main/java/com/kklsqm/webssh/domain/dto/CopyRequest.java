@@ -0,0 +1,28 @@
+package com.kklsqm.webssh.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 功能: 服务器间文件复制请求
+ * 作者: 沙琪马
+ * 日期: 2025/9/18 15:00
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CopyRequest {
+    private Long sourceId;
+    private Long targetId;
+    // 源服务器上的文件路径
+    private List<String> paths;
+    // 目标服务器上的目录
+    private String targetPath;
+    // 进度推送的任务ID，为空时由服务端生成
+    private String taskId;
+    // 复制完成后在目标服务器上用 sha256sum 校验
+    private boolean verify;
+}
@@ -0,0 +1,21 @@
+package com.kklsqm.webssh.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 功能: 远程文件编辑请求，把 [offset, offset + deleteLength) 替换为 text
+ * 作者: 沙琪马
+ * 日期: 2025/9/24 11:05
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EditRequest {
+    // 字节偏移
+    private long offset;
+    // 删除的字节数
+    private long deleteLength;
+    private String text;
+}
@@ -0,0 +1,31 @@
+package com.kklsqm.webssh.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 功能: 多服务器日志搜索请求
+ * 作者: 沙琪马
+ * 日期: 2025/9/21 10:00
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LogSearchRequest {
+    private List<Long> serverIds;
+    // 远程路径通配符，如 /var/log/nginx/*.log*，由远程 shell 展开
+    private String path;
+    private String pattern;
+    // true 按扩展正则匹配，false 按固定字符串匹配
+    private boolean regex;
+    private boolean ignoreCase;
+    // 所有服务器合计最多返回的匹配行数
+    private Integer maxResults;
+    // 单台服务器最多返回的匹配行数
+    private Integer maxPerServer;
+    // 用于取消搜索的ID，为空时由服务端生成
+    private String searchId;
+}
@@ -0,0 +1,636 @@
+package com.kklsqm.webssh.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kklsqm.webssh.domain.AlertEvent;
+import com.kklsqm.webssh.domain.AlertRule;
+import com.kklsqm.webssh.domain.HostMetric;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能: 告警引擎
+ * 作者: 沙琪马
+ * 日期: 2025/9/28 11:00
+ *
+ * 每次采样、服务状态查询、容器列表查询后增量评估规则，不回查历史：
+ * 阈值规则只记录条件开始成立的时间，变化率规则用固定个数的时间桶记录窗口内的首个值，
+ * 内存占用与采样频率和窗口长度无关。规则编译成按类型分组的数组，每台服务器的状态数组与之一一对应，
+ * 评估一次采样只是遍历数组，没有查找和分配。
+ *
+ * 去重：同一告警只在开始和恢复时各通知一次；限流：同一告警两次通知至少间隔 cooldownMs，
+ * 全局每分钟最多 max-per-minute 条 (恢复通知不受全局限制，保证成对)。
+ */
+@Service
+@Slf4j
+public class AlertEngineService {
+
+    private static final int RECENT_EVENTS = 200;
+    // 变化率窗口切分的桶数
+    private static final int RATE_BUCKETS = 12;
+
+    private final List<AlertNotifier> notifiers;
+    private final SshServiceService sshServiceService;
+    private final ObjectMapper objectMapper;
+    private final Path rulesFile;
+    private final int maxPerMinute;
+
+    private volatile RuleSet ruleSet = new RuleSet(new CompiledRule[0], new CompiledRule[0], new CompiledRule[0]);
+    private final Map<String, AlertRule> rules = new LinkedHashMap<>();
+    private final Map<Integer, ServerState> states = new ConcurrentHashMap<>();
+    private final Map<String, AlertEvent> active = new ConcurrentHashMap<>();
+    private final Deque<AlertEvent> recent = new ArrayDeque<>();
+
+    // 全局限流
+    private long minuteStart;
+    private int sentThisMinute;
+
+    public AlertEngineService(List<AlertNotifier> notifiers,
+                              SshServiceService sshServiceService,
+                              ObjectMapper objectMapper,
+                              @Value("${webssh.alerts.rules-file:data/alert-rules.json}") String rulesFile,
+                              @Value("${webssh.alerts.max-per-minute:60}") int maxPerMinute) {
+        this.notifiers = notifiers;
+        this.sshServiceService = sshServiceService;
+        this.objectMapper = objectMapper;
+        this.rulesFile = Paths.get(rulesFile);
+        this.maxPerMinute = maxPerMinute;
+    }
+
+    @PostConstruct
+    public void init() {
+        List<AlertRule> loaded;
+        if (Files.exists(rulesFile)) {
+            try {
+                loaded = objectMapper.readValue(rulesFile.toFile(), new TypeReference<List<AlertRule>>() {
+                });
+            } catch (IOException e) {
+                log.error("读取告警规则 {} 失败，使用默认规则", rulesFile, e);
+                loaded = defaultRules();
+            }
+        } else {
+            loaded = defaultRules();
+        }
+        synchronized (rules) {
+            for (AlertRule rule : loaded) {
+                try {
+                    validate(rule);
+                    rules.put(rule.getId(), rule);
+                } catch (IllegalArgumentException e) {
+                    log.warn("忽略无效的告警规则 {}: {}", rule.getName(), e.getMessage());
+                }
+            }
+            compile();
+        }
+    }
+
+    public List<AlertRule> getRules() {
+        synchronized (rules) {
+            return new ArrayList<>(rules.values());
+        }
+    }
+
+    /**
+     * 新增或修改规则 (id 为空时新增)，保存到规则文件。写文件失败时内存中的规则不变
+     */
+    public AlertRule saveRule(AlertRule rule) throws IOException {
+        if (rule.getId() == null || rule.getId().isBlank()) {
+            rule.setId(UUID.randomUUID().toString());
+        }
+        validate(rule);
+        synchronized (rules) {
+            Map<String, AlertRule> updated = new LinkedHashMap<>(rules);
+            updated.put(rule.getId(), rule);
+            persist(updated.values());
+            rules.put(rule.getId(), rule);
+            compile();
+        }
+        return rule;
+    }
+
+    public boolean deleteRule(String id) throws IOException {
+        synchronized (rules) {
+            if (!rules.containsKey(id)) {
+                return false;
+            }
+            Map<String, AlertRule> updated = new LinkedHashMap<>(rules);
+            updated.remove(id);
+            persist(updated.values());
+            rules.remove(id);
+            compile();
+        }
+        active.keySet().removeIf(key -> key.startsWith(id + "|"));
+        return true;
+    }
+
+    /**
+     * 清理已删除服务器的告警状态和告警中的条目
+     */
+    @Scheduled(fixedDelayString = "${webssh.alerts.server-sync-interval:60000}", initialDelay = 60000)
+    public void syncServers() {
+        Set<Integer> ids = new HashSet<>();
+        try {
+            for (SshService server : sshServiceService.list()) {
+                ids.add(server.getId());
+            }
+        } catch (RuntimeException e) {
+            log.warn("同步告警的服务器列表失败: {}", e.getMessage());
+            return;
+        }
+        states.keySet().retainAll(ids);
+        active.values().removeIf(event -> !ids.contains(event.getServerId()));
+    }
+
+    /**
+     * 正在告警中的条目
+     */
+    public List<AlertEvent> getActiveAlerts() {
+        return new ArrayList<>(active.values());
+    }
+
+    /**
+     * 最近的通知，最新的在前
+     */
+    public List<AlertEvent> getRecentEvents() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+
+    /**
+     * 评估一次主机指标采样，values 按 HostMetric 下标排列
+     */
+    public void onSample(SshService server, long timestamp, double[] values) {
+        RuleSet current = ruleSet;
+        if (current.metricRules.length == 0) {
+            return;
+        }
+        ServerState state = stateOf(server.getId());
+        synchronized (state) {
+            MetricState[] metricStates = state.align(current);
+            CompiledRule[] metricRules = current.metricRules;
+            for (int i = 0; i < metricRules.length; i++) {
+                CompiledRule rule = metricRules[i];
+                if (!rule.appliesTo(server.getId())) {
+                    continue;
+                }
+                double value = values[rule.metricIndex];
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+                MetricState metricState = metricStates[i];
+                if (metricState == null) {
+                    metricState = new MetricState(rule);
+                    metricStates[i] = metricState;
+                }
+                if (rule.type == AlertRule.Type.RATE) {
+                    value = metricState.rate(timestamp, value);
+                    if (Double.isNaN(value)) {
+                        continue;
+                    }
+                }
+                evaluate(rule, server, rule.metric, metricState, rule.compare(value), value, timestamp);
+            }
+        }
+    }
+
+    /**
+     * 评估容器运行状态，running 为容器名到是否运行中
+     */
+    public void onContainerStates(SshService server, Map<String, Boolean> running) {
+        CompiledRule[] containerRules = ruleSet.containerRules;
+        if (containerRules.length == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ServerState state = stateOf(server.getId());
+        synchronized (state) {
+            for (CompiledRule rule : containerRules) {
+                if (!rule.appliesTo(server.getId())) {
+                    continue;
+                }
+                for (Map.Entry<String, Boolean> entry : running.entrySet()) {
+                    if (!rule.matchesTarget(entry.getKey())) {
+                        continue;
+                    }
+                    ConditionState condition = state.conditions.computeIfAbsent(rule.id + "|" + entry.getKey(),
+                            key -> new ConditionState());
+                    evaluate(rule, server, entry.getKey(), condition, !entry.getValue(), null, now);
+                }
+                purgeContainers(rule, server, state, running.keySet(), now);
+            }
+        }
+    }
+
+    // 已删除的容器不再出现在列表中，丢弃它的状态，告警中的按恢复处理
+    private void purgeContainers(CompiledRule rule, SshService server, ServerState state, Set<String> names, long now) {
+        String prefix = rule.id + "|";
+        Iterator<Map.Entry<String, ConditionState>> iterator = state.conditions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ConditionState> entry = iterator.next();
+            if (!entry.getKey().startsWith(prefix)) {
+                continue;
+            }
+            String name = entry.getKey().substring(prefix.length());
+            if (names.contains(name)) {
+                continue;
+            }
+            iterator.remove();
+            ConditionState condition = entry.getValue();
+            if (active.remove(rule.id + "|" + server.getId() + "|" + name) != null && condition.notified) {
+                publish(new AlertEvent(rule.id, rule.name, server.getId(), server.getName(), name,
+                        AlertEvent.State.RESOLVED, rule.severity, null, "容器 " + name + " 已删除", now));
+            }
+        }
+    }
+
+    /**
+     * 评估服务状态，状态与上一次不同时通知 (第一次只记录)
+     */
+    public void onServiceStatus(SshService server, Map<String, String> statuses) {
+        CompiledRule[] serviceRules = ruleSet.serviceRules;
+        if (serviceRules.length == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ServerState state = stateOf(server.getId());
+        synchronized (state) {
+            for (CompiledRule rule : serviceRules) {
+                if (!rule.appliesTo(server.getId())) {
+                    continue;
+                }
+                for (Map.Entry<String, String> entry : statuses.entrySet()) {
+                    if (!rule.matchesTarget(entry.getKey())) {
+                        continue;
+                    }
+                    String key = rule.id + "|" + entry.getKey();
+                    String previous = state.serviceStatuses.put(key, entry.getValue());
+                    if (previous == null || previous.equals(entry.getValue())) {
+                        continue;
+                    }
+                    ConditionState condition = state.conditions.computeIfAbsent(key, k -> new ConditionState());
+                    if (now - condition.lastNotified < rule.cooldownMs || !allowGlobal(now)) {
+                        continue;
+                    }
+                    condition.lastNotified = now;
+                    publish(new AlertEvent(rule.id, rule.name, server.getId(), server.getName(), entry.getKey(),
+                            AlertEvent.State.CHANGED, rule.severity, null,
+                            String.format("服务 %s 状态变化: %s -> %s", entry.getKey(), previous, entry.getValue()), now));
+                }
+            }
+        }
+    }
+
+    // 条件持续 durationMs 后告警，条件不再成立时恢复
+    private void evaluate(CompiledRule rule, SshService server, String subject, ConditionState condition,
+                          boolean breached, Double value, long timestamp) {
+        String key = rule.id + "|" + server.getId() + "|" + subject;
+        if (breached) {
+            if (condition.breachSince < 0) {
+                condition.breachSince = timestamp;
+            }
+            if (condition.firing || timestamp - condition.breachSince < rule.durationMs) {
+                return;
+            }
+            condition.firing = true;
+            AlertEvent event = new AlertEvent(rule.id, rule.name, server.getId(), server.getName(), subject,
+                    AlertEvent.State.FIRING, rule.severity, value, rule.describe(subject, value), timestamp);
+            active.put(key, event);
+            // 冷却期内或超过全局限额时不通知，恢复时也不再通知
+            condition.notified = timestamp - condition.lastNotified >= rule.cooldownMs && allowGlobal(timestamp);
+            if (condition.notified) {
+                condition.lastNotified = timestamp;
+                publish(event);
+            }
+            return;
+        }
+
+        condition.breachSince = -1;
+        if (!condition.firing) {
+            return;
+        }
+        condition.firing = false;
+        active.remove(key);
+        if (condition.notified) {
+            // 冷却从恢复时重新计算，避免条件反复抖动时频繁通知
+            condition.lastNotified = timestamp;
+            publish(new AlertEvent(rule.id, rule.name, server.getId(), server.getName(), subject,
+                    AlertEvent.State.RESOLVED, rule.severity, value, "已恢复: " + rule.describe(subject, value), timestamp));
+        }
+    }
+
+    private synchronized boolean allowGlobal(long now) {
+        if (now - minuteStart >= 60_000) {
+            minuteStart = now;
+            sentThisMinute = 0;
+        }
+        if (sentThisMinute >= maxPerMinute) {
+            return false;
+        }
+        sentThisMinute++;
+        return true;
+    }
+
+    private void publish(AlertEvent event) {
+        synchronized (recent) {
+            recent.addFirst(event);
+            if (recent.size() > RECENT_EVENTS) {
+                recent.removeLast();
+            }
+        }
+        for (AlertNotifier notifier : notifiers) {
+            try {
+                notifier.notify(event);
+            } catch (RuntimeException e) {
+                log.warn("发送告警通知失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private ServerState stateOf(Integer serverId) {
+        return states.computeIfAbsent(serverId, id -> new ServerState());
+    }
+
+    private void validate(AlertRule rule) {
+        if (rule.getType() == null) {
+            throw new IllegalArgumentException("规则类型不能为空");
+        }
+        if (rule.getName() == null || rule.getName().isBlank()) {
+            rule.setName(rule.getType().name());
+        }
+        if (rule.getType() == AlertRule.Type.THRESHOLD || rule.getType() == AlertRule.Type.RATE) {
+            metricIndex(rule.getMetric());
+            CompiledRule.operatorCode(rule.getOperator());
+        }
+        if (rule.getType() == AlertRule.Type.RATE && rule.getWindowMs() < RATE_BUCKETS * 1000L) {
+            throw new IllegalArgumentException("变化率窗口不能小于 " + RATE_BUCKETS + " 秒");
+        }
+        if (rule.getDurationMs() < 0 || rule.getCooldownMs() < 0) {
+            throw new IllegalArgumentException("时间不能为负数");
+        }
+        if (rule.getTarget() == null || rule.getTarget().isBlank()) {
+            rule.setTarget("*");
+        }
+    }
+
+    private static int metricIndex(String key) {
+        for (HostMetric metric : HostMetric.values()) {
+            if (metric.getKey().equals(key)) {
+                return metric.ordinal();
+            }
+        }
+        throw new IllegalArgumentException("未知的指标: " + key);
+    }
+
+    // 在 rules 锁内调用
+    private void compile() {
+        List<CompiledRule> metricRules = new ArrayList<>();
+        List<CompiledRule> containerRules = new ArrayList<>();
+        List<CompiledRule> serviceRules = new ArrayList<>();
+        for (AlertRule rule : rules.values()) {
+            if (!rule.isEnabled()) {
+                continue;
+            }
+            CompiledRule compiled = new CompiledRule(rule);
+            switch (rule.getType()) {
+                case THRESHOLD, RATE -> metricRules.add(compiled);
+                case CONTAINER_NOT_RUNNING -> containerRules.add(compiled);
+                case SERVICE_CHANGE -> serviceRules.add(compiled);
+            }
+        }
+        ruleSet = new RuleSet(metricRules.toArray(new CompiledRule[0]), containerRules.toArray(new CompiledRule[0]),
+                serviceRules.toArray(new CompiledRule[0]));
+    }
+
+    // 在 rules 锁内调用，先写临时文件再替换
+    private void persist(Collection<AlertRule> content) throws IOException {
+        Path parent = rulesFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "alert-rules", ".tmp");
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), new ArrayList<>(content));
+            Files.move(temp, rulesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static List<AlertRule> defaultRules() {
+        AlertRule cpu = new AlertRule();
+        cpu.setId("default-cpu");
+        cpu.setName("CPU 使用率过高");
+        cpu.setType(AlertRule.Type.THRESHOLD);
+        cpu.setMetric(HostMetric.CPU.getKey());
+        cpu.setThreshold(90);
+        cpu.setDurationMs(300_000);
+        cpu.setSeverity("critical");
+
+        AlertRule disk = new AlertRule();
+        disk.setId("default-disk-growth");
+        disk.setName("磁盘使用率增长过快");
+        disk.setType(AlertRule.Type.RATE);
+        disk.setMetric(HostMetric.DISK.getKey());
+        // 每小时增长超过 5 个百分点
+        disk.setThreshold(5);
+        disk.setWindowMs(3_600_000);
+
+        AlertRule container = new AlertRule();
+        container.setId("default-container");
+        container.setName("容器未运行");
+        container.setType(AlertRule.Type.CONTAINER_NOT_RUNNING);
+        container.setDurationMs(60_000);
+        // 已停止的容器往往是有意为之，按需指定容器名后启用
+        container.setEnabled(false);
+
+        AlertRule service = new AlertRule();
+        service.setId("default-service");
+        service.setName("服务状态变化");
+        service.setType(AlertRule.Type.SERVICE_CHANGE);
+        return List.of(cpu, disk, container, service);
+    }
+
+    private record RuleSet(CompiledRule[] metricRules, CompiledRule[] containerRules, CompiledRule[] serviceRules) {
+    }
+
+    /**
+     * 规则编译后的只读副本，比较运算换成整数
+     */
+    private static final class CompiledRule {
+
+        private final String id;
+        private final String name;
+        private final AlertRule.Type type;
+        private final Integer serverId;
+        private final String metric;
+        private final int metricIndex;
+        private final String operator;
+        private final int operatorCode;
+        private final double threshold;
+        private final long durationMs;
+        private final long windowMs;
+        private final String target;
+        private final String severity;
+        private final long cooldownMs;
+
+        CompiledRule(AlertRule rule) {
+            this.id = rule.getId();
+            this.name = rule.getName();
+            this.type = rule.getType();
+            this.serverId = rule.getServerId();
+            this.metric = rule.getMetric();
+            boolean metricRule = type == AlertRule.Type.THRESHOLD || type == AlertRule.Type.RATE;
+            this.metricIndex = metricRule ? metricIndex(rule.getMetric()) : -1;
+            this.operator = rule.getOperator();
+            this.operatorCode = metricRule ? operatorCode(rule.getOperator()) : 0;
+            this.threshold = rule.getThreshold();
+            this.durationMs = rule.getDurationMs();
+            this.windowMs = rule.getWindowMs();
+            this.target = rule.getTarget();
+            this.severity = rule.getSeverity();
+            this.cooldownMs = rule.getCooldownMs();
+        }
+
+        static int operatorCode(String operator) {
+            return switch (operator == null ? "" : operator) {
+                case ">" -> 0;
+                case ">=" -> 1;
+                case "<" -> 2;
+                case "<=" -> 3;
+                default -> throw new IllegalArgumentException("不支持的比较运算: " + operator);
+            };
+        }
+
+        boolean appliesTo(Integer id) {
+            return serverId == null || serverId.equals(id);
+        }
+
+        boolean matchesTarget(String name) {
+            return "*".equals(target) || target.equals(name);
+        }
+
+        boolean compare(double value) {
+            return switch (operatorCode) {
+                case 0 -> value > threshold;
+                case 1 -> value >= threshold;
+                case 2 -> value < threshold;
+                default -> value <= threshold;
+            };
+        }
+
+        String describe(String subject, Double value) {
+            return switch (type) {
+                case THRESHOLD -> String.format("%s = %.2f %s %s%s", subject, value, operator, threshold,
+                        durationMs > 0 ? " (持续 " + durationMs / 1000 + " 秒)" : "");
+                case RATE -> String.format("%s 变化率 %.2f/小时 %s %s", subject, value, operator, threshold);
+                case CONTAINER_NOT_RUNNING -> "容器 " + subject + " 未运行"
+                        + (durationMs > 0 ? " (持续 " + durationMs / 1000 + " 秒)" : "");
+                case SERVICE_CHANGE -> "服务 " + subject + " 状态变化";
+            };
+        }
+    }
+
+    /**
+     * 一个告警条目的状态：条件开始成立的时间、是否告警中、上次通知时间
+     */
+    private static class ConditionState {
+        private long breachSince = -1;
+        private boolean firing;
+        private boolean notified;
+        private long lastNotified = Long.MIN_VALUE / 2;
+    }
+
+    /**
+     * 指标规则的状态，变化率规则额外保存 RATE_BUCKETS 个时间桶中各自的第一个采样
+     */
+    private static final class MetricState extends ConditionState {
+
+        private final long bucketWidth;
+        private final long[] bucketIds;
+        private final long[] times;
+        private final double[] values;
+        // 最新的桶和有效桶数
+        private int head = -1;
+        private int size;
+
+        MetricState(CompiledRule rule) {
+            if (rule.type == AlertRule.Type.RATE) {
+                bucketWidth = Math.max(rule.windowMs / RATE_BUCKETS, 1);
+                bucketIds = new long[RATE_BUCKETS];
+                times = new long[RATE_BUCKETS];
+                values = new double[RATE_BUCKETS];
+            } else {
+                bucketWidth = 0;
+                bucketIds = null;
+                times = null;
+                values = null;
+            }
+        }
+
+        /**
+         * 记录采样并返回窗口内的每小时变化率，数据不足一个桶宽时为 NaN
+         */
+        double rate(long timestamp, double value) {
+            long bucketId = Math.floorDiv(timestamp, bucketWidth);
+            if (head < 0 || bucketIds[head] != bucketId) {
+                head = (head + 1) % RATE_BUCKETS;
+                bucketIds[head] = bucketId;
+                times[head] = timestamp;
+                values[head] = value;
+                size = Math.min(size + 1, RATE_BUCKETS);
+            }
+            // 最旧的有效桶：跳过超出窗口的桶 (采样中断过)
+            int oldest = Math.floorMod(head - size + 1, RATE_BUCKETS);
+            while (oldest != head && bucketId - bucketIds[oldest] >= RATE_BUCKETS) {
+                oldest = (oldest + 1) % RATE_BUCKETS;
+                size--;
+            }
+            long elapsed = timestamp - times[oldest];
+            if (elapsed < bucketWidth) {
+                return Double.NaN;
+            }
+            return (value - values[oldest]) * 3_600_000.0 / elapsed;
+        }
+    }
+
+    /**
+     * 一台服务器的全部告警状态，metricStates 与 RuleSet.metricRules 下标一一对应
+     */
+    private static final class ServerState {
+        private RuleSet ruleSet;
+        private MetricState[] metricStates = new MetricState[0];
+        private final Map<String, ConditionState> conditions = new HashMap<>();
+        private final Map<String, String> serviceStatuses = new HashMap<>();
+
+        // 规则变化后按规则ID保留已有状态
+        MetricState[] align(RuleSet current) {
+            if (ruleSet == current) {
+                return metricStates;
+            }
+            Map<String, MetricState> previous = new HashMap<>();
+            if (ruleSet != null) {
+                for (int i = 0; i < ruleSet.metricRules.length; i++) {
+                    previous.put(ruleSet.metricRules[i].id, metricStates[i]);
+                }
+            }
+            MetricState[] aligned = new MetricState[current.metricRules.length];
+            for (int i = 0; i < aligned.length; i++) {
+                aligned[i] = previous.get(current.metricRules[i].id);
+            }
+            ruleSet = current;
+            metricStates = aligned;
+            return aligned;
+        }
+    }
+}
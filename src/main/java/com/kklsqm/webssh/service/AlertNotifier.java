@@ -0,0 +1,15 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.domain.AlertEvent;
+
+/**
+ * 功能: 告警通知渠道
+ * 作者: 沙琪马
+ * 日期: 2025/9/28 10:20
+ *
+ * 在告警引擎的评估线程上调用，实现中不要阻塞 (网络发送放到其他线程)
+ */
+public interface AlertNotifier {
+
+    void notify(AlertEvent event);
+}
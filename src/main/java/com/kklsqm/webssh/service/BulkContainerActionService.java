@@ -0,0 +1,398 @@
+package com.kklsqm.webssh.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionPool;
+import com.kklsqm.webssh.domain.SshService;
+import com.kklsqm.webssh.domain.dto.ContainerActionItem;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 功能: 跨服务器批量启动、停止、重启容器
+ * 作者: 沙琪马
+ * 日期: 2025/10/1 10:00
+ *
+ * 请求按服务器分组，每台服务器只在池化会话上执行一次 exec：同一操作的容器合并为一条
+ * docker restart a b c，最后用一条 docker inspect 确认全部容器的状态。服务器之间并行执行，
+ * 同时进行的服务器数受信号量限制，单台超时不影响其他服务器。每台服务器完成后立即以 NDJSON
+ * 输出其中每个容器的结果 (item)，最后输出汇总 (done)。
+ */
+@Service
+@Slf4j
+public class BulkContainerActionService {
+
+    private static final Set<String> ACTIONS = Set.of("start", "stop", "restart");
+    private static final Pattern CONTAINER = Pattern.compile("[a-zA-Z0-9][a-zA-Z0-9_.-]*");
+    private static final String ACTION_MARKER = "@action ";
+    private static final String INSPECT_MARKER = "@inspect";
+    private static final String INSPECT_FORMAT = "'{{.Id}}|{{.Name}}|{{.State.Status}}'";
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final SshServiceService sshServiceService;
+    private final SshSessionPool sessionPool;
+    private final ContainerInventoryService containerInventoryService;
+    private final ObjectMapper objectMapper;
+    private final Semaphore permits;
+    private final long serverTimeoutMs;
+
+    public BulkContainerActionService(SshServiceService sshServiceService,
+                                      SshSessionPool sessionPool,
+                                      ContainerInventoryService containerInventoryService,
+                                      ObjectMapper objectMapper,
+                                      @Value("${webssh.containers.bulk-max-concurrent:16}") int maxConcurrent,
+                                      @Value("${webssh.containers.bulk-server-timeout:300000}") long serverTimeoutMs) {
+        this.sshServiceService = sshServiceService;
+        this.sessionPool = sessionPool;
+        this.containerInventoryService = containerInventoryService;
+        this.objectMapper = objectMapper;
+        this.permits = new Semaphore(maxConcurrent);
+        this.serverTimeoutMs = serverTimeoutMs;
+    }
+
+    /**
+     * 执行批量操作并按 NDJSON 写入 out，每行一个事件：started / item / done。
+     * 重复的项只执行一次，不合法的项直接输出失败结果
+     */
+    public void stream(List<ContainerActionItem> items, Integer stopTimeout, OutputStream out) throws IOException {
+        long startTime = System.currentTimeMillis();
+        List<ContainerActionItem> distinct = items.stream().filter(Objects::nonNull).distinct().toList();
+        Map<Long, SshService> servers = new HashMap<>();
+        List<Long> serverIds = distinct.stream().map(ContainerActionItem::getServerId).filter(Objects::nonNull).distinct().toList();
+        if (!serverIds.isEmpty()) {
+            sshServiceService.listByIds(serverIds).forEach(server -> servers.put(server.getId().longValue(), server));
+        }
+
+        List<Map<String, Object>> rejected = new ArrayList<>();
+        Map<Long, List<ContainerActionItem>> grouped = new LinkedHashMap<>();
+        for (ContainerActionItem item : distinct) {
+            String error = validate(item);
+            if (error == null && !servers.containsKey(item.getServerId())) {
+                error = "服务器未找到";
+            }
+            if (error != null) {
+                rejected.add(failure(item, error));
+            } else {
+                grouped.computeIfAbsent(item.getServerId(), id -> new ArrayList<>()).add(item);
+            }
+        }
+
+        BlockingQueue<List<Map<String, Object>>> results = new LinkedBlockingQueue<>();
+        List<ServerTask> tasks = new ArrayList<>(grouped.size());
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            write(out, Map.of("type", "started", "items", distinct.size(), "servers", grouped.size()));
+            int succeeded = 0;
+            int failed = rejected.size();
+            for (Map<String, Object> result : rejected) {
+                write(out, result);
+            }
+            out.flush();
+
+            for (Map.Entry<Long, List<ContainerActionItem>> entry : grouped.entrySet()) {
+                ServerTask task = new ServerTask(servers.get(entry.getKey()), entry.getValue());
+                tasks.add(task);
+                task.future = executor.submit(() -> runServer(task, stopTimeout, results));
+            }
+
+            int remaining = tasks.size();
+            while (remaining > 0) {
+                List<Map<String, Object>> serverResults = results.poll(200, TimeUnit.MILLISECONDS);
+                if (serverResults != null) {
+                    remaining--;
+                    for (Map<String, Object> result : serverResults) {
+                        if (Boolean.TRUE.equals(result.get("success"))) {
+                            succeeded++;
+                        } else {
+                            failed++;
+                        }
+                        write(out, result);
+                    }
+                    if (results.isEmpty()) {
+                        out.flush();
+                    }
+                    continue;
+                }
+
+                long now = System.currentTimeMillis();
+                for (ServerTask task : tasks) {
+                    long started = task.startedAt;
+                    if (started > 0 && now - started > serverTimeoutMs && task.reported.compareAndSet(false, true)) {
+                        task.future.cancel(true);
+                        remaining--;
+                        for (ContainerActionItem item : task.items) {
+                            failed++;
+                            write(out, failure(item, "超时 (" + serverTimeoutMs + " ms)，docker 端的操作可能仍在进行，请稍后查看容器状态"));
+                        }
+                        // cancel 只断开 SSH 通道，已交给 docker daemon 的 stop / restart 会继续执行；
+                        // 先刷新一次已完成的部分，之后的状态变化由清单的 docker events 更新
+                        containerInventoryService.refresh(task.server.getId(), containerIds(task.items));
+                    }
+                }
+                out.flush();
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("type", "done");
+            summary.put("total", distinct.size());
+            summary.put("succeeded", succeeded);
+            summary.put("failed", failed);
+            summary.put("elapsedMs", System.currentTimeMillis() - startTime);
+            write(out, summary);
+            out.flush();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 在一台服务器上执行一组操作，返回每个容器的结果。items 须已通过 validate 且属于同一台服务器
+     */
+    public List<Map<String, Object>> execute(SshService server, List<ContainerActionItem> items, Integer stopTimeout)
+            throws Exception {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (ContainerActionItem item : items) {
+            List<String> ids = groups.computeIfAbsent(item.getAction(), action -> new ArrayList<>());
+            if (!ids.contains(item.getContainerId())) {
+                ids.add(item.getContainerId());
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+        Session session = sessionPool.acquire(server);
+        try {
+            // 有容器操作失败时 docker 退出码非 0，只看输出
+            SshExecUtils.execLines(session, buildCommand(groups, stopTimeout), null, MAX_LINE_LENGTH, line -> {
+                lines.add(line);
+                return true;
+            });
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            sessionPool.invalidate(server.getId(), session);
+            throw e;
+        } finally {
+            // 不等 docker events 到达，立即更新清单中的这些容器
+            containerInventoryService.refresh(server.getId(), containerIds(items));
+        }
+        return parse(server.getId(), groups, lines);
+    }
+
+    /**
+     * 检查操作类型和容器ID，合法时返回 null
+     */
+    public static String validate(ContainerActionItem item) {
+        if (item.getServerId() == null) {
+            return "缺少服务器ID";
+        }
+        if (item.getAction() == null || !ACTIONS.contains(item.getAction())) {
+            return "不支持的操作类型: " + item.getAction();
+        }
+        if (item.getContainerId() == null || !CONTAINER.matcher(item.getContainerId()).matches()) {
+            return "容器ID不合法";
+        }
+        return null;
+    }
+
+    // 每种操作一条 docker 命令，最后一次 inspect 全部容器，各段之间用标记行分隔
+    static String buildCommand(Map<String, List<String>> groups, Integer stopTimeout) {
+        StringBuilder command = new StringBuilder();
+        Set<String> all = new LinkedHashSet<>();
+        for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+            command.append("echo '").append(ACTION_MARKER).append(entry.getKey()).append("'; docker ").append(entry.getKey());
+            if (stopTimeout != null && !"start".equals(entry.getKey())) {
+                command.append(" -t ").append(Math.max(0, stopTimeout));
+            }
+            command.append(' ').append(String.join(" ", entry.getValue())).append(" 2>&1; ");
+            all.addAll(entry.getValue());
+        }
+        command.append("echo '").append(INSPECT_MARKER).append("'; docker inspect --format ").append(INSPECT_FORMAT)
+                .append(' ').append(String.join(" ", all)).append(" 2>&1");
+        return command.toString();
+    }
+
+    /**
+     * 解析 buildCommand 的输出。操作段中提到该容器的 Error 行视为失败；
+     * 否则按 inspect 得到的状态确认，start / restart 应为 running，stop 应不是 running。
+     * 同一容器有多个操作时只有最后一个按状态确认
+     */
+    static List<Map<String, Object>> parse(Integer serverId, Map<String, List<String>> groups, List<String> lines) {
+        Map<String, Map<String, String>> errors = new HashMap<>();
+        List<String[]> inspected = new ArrayList<>();
+        String section = null;
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.startsWith(ACTION_MARKER)) {
+                section = line.substring(ACTION_MARKER.length());
+            } else if (line.equals(INSPECT_MARKER)) {
+                section = INSPECT_MARKER;
+            } else if (INSPECT_MARKER.equals(section)) {
+                String[] parts = line.split("\\|", 3);
+                if (parts.length == 3 && parts[1].startsWith("/")) {
+                    inspected.add(new String[]{parts[0], parts[1].substring(1), parts[2]});
+                }
+            } else if (section != null && line.startsWith("Error") && groups.containsKey(section)) {
+                for (String id : groups.get(section)) {
+                    if (mentions(line, id)) {
+                        errors.computeIfAbsent(section, s -> new HashMap<>()).putIfAbsent(id, line);
+                    }
+                }
+            }
+        }
+
+        Map<String, String> lastAction = new HashMap<>();
+        groups.forEach((action, ids) -> ids.forEach(id -> lastAction.put(id, action)));
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+            String action = entry.getKey();
+            for (String id : entry.getValue()) {
+                String[] container = findInspected(inspected, id);
+                String status = container == null ? null : container[2];
+                String error = errors.getOrDefault(action, Map.of()).get(id);
+                String shortId = id.substring(0, Math.min(12, id.length()));
+                boolean success;
+                String message;
+                if (error != null) {
+                    success = false;
+                    message = error;
+                } else if (status == null) {
+                    success = false;
+                    message = "容器 " + shortId + " 不存在";
+                } else if (!action.equals(lastAction.get(id)) || ("stop".equals(action) != "running".equals(status))) {
+                    success = true;
+                    message = String.format("容器 %s 已%s", shortId, action);
+                } else {
+                    success = false;
+                    message = String.format("容器 %s %s 失败，当前状态: %s", shortId, action, status);
+                }
+                Map<String, Object> result = itemResult(serverId, id, action, success, message);
+                result.put("status", status);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 按 docker 的解析顺序查找：完整 ID、容器名、ID 前缀。
+     * 名称 cafe 不会匹配到 ID 恰好以 cafe 开头的另一个容器
+     */
+    private static String[] findInspected(List<String[]> inspected, String id) {
+        for (String[] container : inspected) {
+            if (container[0].equals(id)) {
+                return container;
+            }
+        }
+        for (String[] container : inspected) {
+            if (container[1].equals(id)) {
+                return container;
+            }
+        }
+        for (String[] container : inspected) {
+            if (container[0].startsWith(id)) {
+                return container;
+            }
+        }
+        return null;
+    }
+
+    private void runServer(ServerTask task, Integer stopTimeout, BlockingQueue<List<Map<String, Object>>> results) {
+        boolean acquired = false;
+        try {
+            permits.acquire();
+            acquired = true;
+            task.startedAt = System.currentTimeMillis();
+
+            List<Map<String, Object>> serverResults = execute(task.server, task.items, stopTimeout);
+            if (task.reported.compareAndSet(false, true)) {
+                results.add(serverResults);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("服务器 {} 批量容器操作失败: {}", task.server.getId(), e.getMessage());
+            if (task.reported.compareAndSet(false, true)) {
+                results.add(task.items.stream().map(item -> failure(item, e.getMessage())).toList());
+            }
+        } finally {
+            if (acquired) {
+                permits.release();
+            }
+        }
+    }
+
+    // id 在行中作为一个完整的词出现，避免 web 匹配到 web-2
+    private static boolean mentions(String line, String id) {
+        int from = 0;
+        int index;
+        while ((index = line.indexOf(id, from)) >= 0) {
+            int end = index + id.length();
+            boolean startOk = index == 0 || !isIdChar(line.charAt(index - 1));
+            boolean endOk = end == line.length() || !isIdChar(line.charAt(end));
+            if (startOk && endOk) {
+                return true;
+            }
+            from = index + 1;
+        }
+        return false;
+    }
+
+    private static boolean isIdChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-';
+    }
+
+    private static List<String> containerIds(List<ContainerActionItem> items) {
+        return items.stream().map(ContainerActionItem::getContainerId).collect(Collectors.toList());
+    }
+
+    private static Map<String, Object> failure(ContainerActionItem item, String message) {
+        Integer serverId = item.getServerId() == null ? null : item.getServerId().intValue();
+        return itemResult(serverId, item.getContainerId(), item.getAction(), false, message);
+    }
+
+    private static Map<String, Object> itemResult(Integer serverId, String containerId, String action,
+                                                  boolean success, String message) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("type", "item");
+        result.put("serverId", serverId);
+        result.put("containerId", containerId);
+        result.put("action", action);
+        result.put("success", success);
+        result.put("message", message);
+        return result;
+    }
+
+    private void write(OutputStream out, Map<String, Object> event) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(event));
+        out.write('\n');
+    }
+
+    // 单台服务器的操作任务，reported 保证结果和超时只输出其一
+    private static class ServerTask {
+        private final SshService server;
+        private final List<ContainerActionItem> items;
+        private final AtomicBoolean reported = new AtomicBoolean();
+        // 拿到信号量的时间，0 表示还在排队
+        private volatile long startedAt;
+        private Future<?> future;
+
+        ServerTask(SshService server, List<ContainerActionItem> items) {
+            this.server = server;
+            this.items = items;
+        }
+    }
+}
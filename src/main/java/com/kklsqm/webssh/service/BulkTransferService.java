@@ -0,0 +1,309 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+import com.kklsqm.webssh.common.ShellUtils;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionFactory;
+import com.kklsqm.webssh.common.TarOutputStream;
+import com.kklsqm.webssh.domain.SshService;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能: 大量小文件的批量传输引擎
+ * 作者: 沙琪马
+ * 日期: 2025/9/17 11:00
+ *
+ * SFTP 每个文件至少需要 open/write/close 多次往返，文件数量一多就被网络延迟拖垮。
+ * 这里把文件打成 tar 流，通过一个 exec 通道交给远程 tar 解包 (下载则反过来)，
+ * 整批文件只需要一次往返的开销。远程没有 tar 时回退为 SFTP 逐个传输。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class BulkTransferService {
+
+    // 文件数达到该值且平均大小不超过 TAR_MAX_AVERAGE_SIZE 时使用 tar
+    static final int TAR_MIN_FILES = 8;
+    static final long TAR_MAX_AVERAGE_SIZE = 4 * 1024 * 1024;
+
+    private final SshSessionFactory sessionFactory;
+
+    private final FileTransferService fileTransferService;
+
+    // 远程是否有 tar 的探测结果缓存
+    private final Map<String, Boolean> tarAvailability = new ConcurrentHashMap<>();
+
+    public enum Strategy {
+        TAR, SFTP
+    }
+
+    /**
+     * 根据文件数量和平均大小选择传输方式：
+     * 小文件多时往返延迟占主导，打包为 tar 流；少量大文件时 SFTP 与 tar 吞吐相当，保持 SFTP
+     */
+    static Strategy chooseStrategy(int fileCount, long totalBytes, boolean tarAvailable) {
+        if (!tarAvailable || fileCount < TAR_MIN_FILES) {
+            return Strategy.SFTP;
+        }
+        return totalBytes / fileCount <= TAR_MAX_AVERAGE_SIZE ? Strategy.TAR : Strategy.SFTP;
+    }
+
+    /**
+     * 批量上传，文件名可以带相对路径 (浏览器上传文件夹时为 "dir/sub/file")
+     */
+    public BulkResult upload(SshService server, MultipartFile[] files, String remoteDir) throws Exception {
+        return upload(server, files, remoteDir, null);
+    }
+
+    /**
+     * 批量上传，forced 不为空时跳过自动选择 (用于基准测试)
+     */
+    public BulkResult upload(SshService server, MultipartFile[] files, String remoteDir, Strategy forced) throws Exception {
+        // 文件夹上传允许空文件，这里只校验路径
+        List<MultipartFile> accepted = new ArrayList<>();
+        long totalBytes = 0;
+        for (MultipartFile file : files) {
+            sanitizeRelativePath(file.getOriginalFilename());
+            accepted.add(file);
+            totalBytes += file.getSize();
+        }
+
+        long startTime = System.currentTimeMillis();
+        Session session = null;
+        try {
+            session = sessionFactory.createSession(server);
+
+            Strategy strategy = forced != null ? forced
+                    : chooseStrategy(accepted.size(), totalBytes, isTarAvailable(server, session));
+            if (strategy == Strategy.TAR) {
+                uploadWithTar(session, accepted, remoteDir);
+            } else {
+                uploadWithSftp(session, accepted, remoteDir);
+            }
+
+            long elapsed = System.currentTimeMillis() - startTime;
+            log.info("批量上传完成: {} 个文件, {} 字节, 方式: {}, 耗时: {} ms",
+                    accepted.size(), totalBytes, strategy, elapsed);
+            return new BulkResult(strategy.name(), accepted.size(), totalBytes, elapsed);
+
+        } finally {
+            if (session != null && session.isConnected()) {
+                session.disconnect();
+            }
+            fileTransferService.invalidateListings(server);
+        }
+    }
+
+    /**
+     * 批量下载同一目录下的多个文件/目录，以 tar 流写出
+     * 下载前无法廉价地得知文件数量，远程有 tar 时总是使用 tar，否则回退为 SFTP 遍历打包
+     */
+    public Strategy download(SshService server, String remoteDir, List<String> names, OutputStream out) throws Exception {
+        Session session = null;
+        try {
+            session = sessionFactory.createSession(server);
+            if (isTarAvailable(server, session) && downloadWithTar(session, remoteDir, names, out)) {
+                return Strategy.TAR;
+            }
+        } finally {
+            if (session != null && session.isConnected()) {
+                session.disconnect();
+            }
+        }
+
+        fileTransferService.downloadEntries(server, remoteDir, names, FileTransferService.ArchiveFormat.TAR, out);
+        return Strategy.SFTP;
+    }
+
+    private void uploadWithTar(Session session, List<MultipartFile> files, String remoteDir) throws Exception {
+        String dir = ShellUtils.quote(remoteDir);
+        ChannelExec execChannel = (ChannelExec) session.openChannel("exec");
+        ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+        try {
+            execChannel.setCommand("mkdir -p " + dir + " && tar xf - -C " + dir);
+            execChannel.setErrStream(errorOutput);
+            OutputStream channelOut = execChannel.getOutputStream();
+            execChannel.connect();
+
+            long now = System.currentTimeMillis() / 1000;
+            try (TarOutputStream tar = new TarOutputStream(new BufferedOutputStream(channelOut, 64 * 1024))) {
+                for (MultipartFile file : files) {
+                    tar.putFileEntry(sanitizeRelativePath(file.getOriginalFilename()), file.getSize(), 0644, now);
+                    try (InputStream inputStream = file.getInputStream()) {
+                        inputStream.transferTo(tar);
+                    }
+                    tar.closeEntry();
+                }
+            }
+
+            int exitStatus = SshExecUtils.waitForExitStatus(execChannel);
+            if (exitStatus != 0) {
+                throw new IOException("远程 tar 解包失败: " + errorOutput.toString(StandardCharsets.UTF_8).trim());
+            }
+        } finally {
+            execChannel.disconnect();
+        }
+    }
+
+    private void uploadWithSftp(Session session, List<MultipartFile> files, String remoteDir) throws Exception {
+        ChannelSftp sftpChannel = (ChannelSftp) session.openChannel("sftp");
+        try {
+            sftpChannel.connect();
+            Set<String> createdDirs = new HashSet<>();
+            mkdirs(sftpChannel, remoteDir, createdDirs);
+
+            for (MultipartFile file : files) {
+                String relative = sanitizeRelativePath(file.getOriginalFilename());
+                String remoteFilePath = ShellUtils.trimTrailingSlash(remoteDir) + "/" + relative;
+                mkdirs(sftpChannel, ShellUtils.parentOf(remoteFilePath), createdDirs);
+                try (InputStream inputStream = file.getInputStream()) {
+                    sftpChannel.put(inputStream, remoteFilePath);
+                }
+            }
+        } finally {
+            disconnect(sftpChannel);
+        }
+    }
+
+    /**
+     * 远程执行 tar cf -，文件名通过标准输入以 NUL 分隔传入，避免命令行过长和转义问题
+     * 若 tar 不支持 --null/-T 且尚未输出任何数据，返回 false 由调用方回退
+     */
+    private boolean downloadWithTar(Session session, String remoteDir, List<String> names, OutputStream out) throws Exception {
+        StringBuilder fileList = new StringBuilder();
+        for (String name : names) {
+            fileList.append(sanitizeRelativePath(name)).append('\0');
+        }
+
+        CountingOutputStream counting = new CountingOutputStream(out);
+        ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+        int exitStatus = SshExecUtils.exec(session,
+                "tar cf - -C " + ShellUtils.quote(remoteDir) + " --null -T -",
+                fileList.toString().getBytes(StandardCharsets.UTF_8), counting, errorOutput);
+
+        if (exitStatus < 0) {
+            // 等不到退出码时无法确认输出完整，不能当作成功
+            throw new IOException("未收到远程 tar 的退出码，归档可能不完整");
+        }
+        if (exitStatus > 1) {
+            if (counting.count == 0) {
+                log.info("远程 tar 打包不可用，回退 SFTP: {}", errorOutput.toString(StandardCharsets.UTF_8).trim());
+                return false;
+            }
+            throw new IOException("远程 tar 打包失败: " + errorOutput.toString(StandardCharsets.UTF_8).trim());
+        }
+        return true;
+    }
+
+    private boolean isTarAvailable(SshService server, Session session) {
+        String key = server.getHost() + ":" + server.getPort();
+        return tarAvailability.computeIfAbsent(key, k -> {
+            try {
+                return SshExecUtils.exec(session, "command -v tar >/dev/null 2>&1", null,
+                        OutputStream.nullOutputStream(), OutputStream.nullOutputStream()) == 0;
+            } catch (Exception e) {
+                log.warn("检测远程 tar 失败: {}", e.getMessage());
+                return false;
+            }
+        });
+    }
+
+    private void mkdirs(ChannelSftp sftpChannel, String dir, Set<String> createdDirs) {
+        if (dir.isEmpty() || "/".equals(dir) || createdDirs.contains(dir)) {
+            return;
+        }
+        mkdirs(sftpChannel, ShellUtils.parentOf(dir), createdDirs);
+        try {
+            sftpChannel.mkdir(dir);
+        } catch (SftpException e) {
+            // 目录已存在
+        }
+        createdDirs.add(dir);
+    }
+
+    /**
+     * 规范化相对路径，拒绝绝对路径和 .. 以免写到目标目录之外
+     */
+    static String sanitizeRelativePath(String path) {
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("文件名为空");
+        }
+        StringBuilder result = new StringBuilder();
+        for (String part : path.replace('\\', '/').split("/")) {
+            if (part.isEmpty() || part.equals(".")) {
+                continue;
+            }
+            if (part.equals("..")) {
+                throw new IllegalArgumentException("非法的文件路径: " + path);
+            }
+            if (!result.isEmpty()) {
+                result.append('/');
+            }
+            result.append(part);
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("非法的文件路径: " + path);
+        }
+        return result.toString();
+    }
+
+    private void disconnect(Channel channel) {
+        if (channel != null && channel.isConnected()) {
+            channel.disconnect();
+        }
+    }
+
+    // 批量传输结果
+    @Data
+    @AllArgsConstructor
+    public static class BulkResult {
+        private String strategy;
+        private int fileCount;
+        private long totalBytes;
+        private long elapsedMs;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
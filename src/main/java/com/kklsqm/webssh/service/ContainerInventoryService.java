@@ -0,0 +1,500 @@
+package com.kklsqm.webssh.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionPool;
+import com.kklsqm.webssh.common.TopicSubscriptionTracker;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 功能: 内存中的 Docker 容器清单
+ * 作者: 沙琪马
+ * 日期: 2025/9/29 15:00
+ *
+ * 每台服务器一个长期运行的 exec 通道：先 docker ps 得到初始清单，再在同一条命令里接着 docker events，
+ * events 从 docker ps 之前的时间点开始，两者之间不会漏掉事件。收到容器事件后把涉及的容器
+ * 合并成一次 docker ps --filter 查询更新清单 (查不到的容器移除)，变化通过 /topic/containers/{serverId} 推送。
+ * 同一清单同时只有一次查询在进行，期间到达的事件在它结束后再查，结果按顺序生效。
+ * 容器列表接口直接读取内存；最后一次访问超过 inventory-idle-timeout 且没有订阅者时关闭通道。
+ * 通道意外结束后间隔一段时间重连，重连时重新获取完整清单。
+ */
+@Service
+@Slf4j
+public class ContainerInventoryService implements TopicSubscriptionTracker.Listener {
+
+    public static final String TOPIC_PREFIX = "/topic/containers/";
+
+    static final String PS_FORMAT = "'{{.ID}}|{{.Names}}|{{.Status}}|{{.Ports}}|{{.Image}}'";
+
+    private static final String EVENTS_MARKER = "@events";
+
+    private static final String COMMAND = "since=$(date +%s); docker ps -a --format " + PS_FORMAT
+            + " && echo " + EVENTS_MARKER
+            + " && exec docker events --since \"$since\" --filter type=container --format '{{json .}}'";
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    // 同一时间段内的多个事件合并成一次查询
+    private static final long REFRESH_DELAY_MS = 150;
+
+    // 不影响容器状态的事件
+    private static final Set<String> IGNORED_ACTIONS = Set.of(
+            "attach", "detach", "resize", "top", "archive-path", "extract-to-dir", "copy", "export", "commit");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final TopicSubscriptionTracker subscriptionTracker;
+    private final SshServiceService sshServiceService;
+    private final SshSessionPool sessionPool;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final AlertEngineService alertEngineService;
+    private final HostMetricsExporter hostMetricsExporter;
+    private final long idleTimeoutMs;
+    private final long seedTimeoutMs;
+    private final long retryDelayMs;
+
+    private final Map<Integer, Inventory> inventories = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("container-inventory").daemon().factory());
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ContainerInventoryService(TopicSubscriptionTracker subscriptionTracker,
+                                     SshServiceService sshServiceService,
+                                     SshSessionPool sessionPool,
+                                     SimpMessagingTemplate messagingTemplate,
+                                     AlertEngineService alertEngineService,
+                                     HostMetricsExporter hostMetricsExporter,
+                                     @Value("${webssh.containers.inventory-idle-timeout:600000}") long idleTimeoutMs,
+                                     @Value("${webssh.containers.seed-timeout:15000}") long seedTimeoutMs,
+                                     @Value("${webssh.containers.stream-retry-delay:5000}") long retryDelayMs) {
+        this.subscriptionTracker = subscriptionTracker;
+        this.sshServiceService = sshServiceService;
+        this.sessionPool = sessionPool;
+        this.messagingTemplate = messagingTemplate;
+        this.alertEngineService = alertEngineService;
+        this.hostMetricsExporter = hostMetricsExporter;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.seedTimeoutMs = seedTimeoutMs;
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    @PostConstruct
+    public void init() {
+        subscriptionTracker.register(TOPIC_PREFIX, this);
+    }
+
+    /**
+     * 容器列表，第一次访问时建立清单并等待初始 docker ps 完成
+     */
+    public List<Map<String, Object>> list(SshService server) throws Exception {
+        Inventory inventory = inventoryOf(server.getId());
+        inventory.lastAccess = System.currentTimeMillis();
+        try {
+            inventory.seeded.get(seedTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("获取容器列表超时");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+        synchronized (inventory) {
+            List<Map<String, Object>> containers = new ArrayList<>(inventory.containers.size());
+            for (Map<String, Object> container : inventory.containers.values()) {
+                containers.add(new HashMap<>(container));
+            }
+            return containers;
+        }
+    }
+
+    /**
+     * 立即重新查询指定容器 (例如执行操作之后)，不等待 docker events
+     */
+    public void refresh(Integer serverId, Collection<String> containerIds) {
+        Inventory inventory = inventories.get(serverId);
+        if (inventory != null) {
+            containerIds.forEach(id -> markDirty(inventory, shortId(id)));
+        }
+    }
+
+    @Override
+    public void onFirstSubscriber(String destination) {
+        Integer serverId = parseServerId(destination);
+        if (serverId != null) {
+            inventoryOf(serverId).lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public void onLastUnsubscribed(String destination) {
+        // 不立即关闭，空闲超时后由 evictIdle 关闭
+        Integer serverId = parseServerId(destination);
+        Inventory inventory = serverId == null ? null : inventories.get(serverId);
+        if (inventory != null) {
+            inventory.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 关闭长时间没有访问且没有订阅者的清单
+     */
+    @Scheduled(fixedDelayString = "${webssh.containers.inventory-idle-check:60000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Inventory inventory : new ArrayList<>(inventories.values())) {
+            if (now - inventory.lastAccess > idleTimeoutMs
+                    && subscriptionTracker.subscriberCount(inventory.destination) == 0) {
+                stop(inventory);
+            }
+        }
+    }
+
+    /**
+     * 正在维护清单的服务器数
+     */
+    public int activeCount() {
+        return inventories.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        new ArrayList<>(inventories.values()).forEach(this::stop);
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private Inventory inventoryOf(Integer serverId) {
+        return inventories.computeIfAbsent(serverId, id -> {
+            Inventory inventory = new Inventory(id, TOPIC_PREFIX + id);
+            inventory.thread = Thread.ofVirtual().name("docker-events-" + id).start(() -> run(inventory));
+            log.debug("开始维护服务器 {} 的容器清单", id);
+            return inventory;
+        });
+    }
+
+    private void stop(Inventory inventory) {
+        if (inventories.remove(inventory.serverId, inventory)) {
+            inventory.stopped = true;
+            inventory.thread.interrupt();
+            inventory.seeded.completeExceptionally(new IllegalStateException("容器清单已关闭"));
+            log.debug("停止维护服务器 {} 的容器清单", inventory.serverId);
+        }
+    }
+
+    private void run(Inventory inventory) {
+        while (!inventory.stopped) {
+            SshService server = sshServiceService.getById(inventory.serverId.longValue());
+            if (server == null) {
+                fail(inventory, "服务器未找到");
+                return;
+            }
+            Session session = null;
+            String message;
+            try {
+                session = sessionPool.lease(server);
+                inventory.seeding = true;
+                inventory.seedBuffer.clear();
+                int exitCode = SshExecUtils.execLines(session, COMMAND, null, MAX_LINE_LENGTH, line -> {
+                    if (inventory.stopped) {
+                        return false;
+                    }
+                    accept(inventory, server, line);
+                    return true;
+                });
+                message = inventory.seeding
+                        ? "docker ps 执行失败 (退出码 " + exitCode + ")"
+                        : "docker events 已退出 (退出码 " + exitCode + ")";
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                if (session != null) {
+                    sessionPool.invalidate(server.getId(), session);
+                }
+                message = "读取 docker events 失败: " + e.getMessage();
+            } finally {
+                if (session != null) {
+                    sessionPool.release(server.getId(), session);
+                }
+            }
+            if (inventory.stopped) {
+                return;
+            }
+            if (!inventory.seeded.isDone()) {
+                // 一次都没有成功获取清单 (例如没有安装 docker)，不再重试，下次访问时重新建立
+                fail(inventory, message);
+                return;
+            }
+            sendError(inventory, message);
+            try {
+                Thread.sleep(retryDelayMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void fail(Inventory inventory, String message) {
+        inventory.seeded.completeExceptionally(new IllegalStateException(message));
+        stop(inventory);
+    }
+
+    // 读取线程处理一行输出：先是 docker ps 的清单，标记行之后是事件
+    void accept(Inventory inventory, SshService server, String line) {
+        if (inventory.seeding) {
+            if (EVENTS_MARKER.equals(line.trim())) {
+                inventory.seeding = false;
+                applySnapshot(inventory, server, inventory.seedBuffer);
+                inventory.seedBuffer.clear();
+                inventory.seeded.complete(null);
+            } else {
+                Map<String, Object> container = parseContainer(line);
+                if (container != null) {
+                    inventory.seedBuffer.add(container);
+                }
+            }
+            return;
+        }
+
+        JsonNode event;
+        try {
+            event = MAPPER.readTree(line);
+        } catch (Exception e) {
+            return;
+        }
+        String action = event.path("Action").asText(event.path("status").asText(""));
+        String id = event.path("id").asText(event.path("Actor").path("ID").asText(""));
+        if (id.isEmpty() || action.startsWith("exec_") || IGNORED_ACTIONS.contains(action)) {
+            return;
+        }
+        // destroy 也走查询：与进行中的查询排队执行，过时的 docker ps 结果不会把已删除的容器放回清单
+        markDirty(inventory, shortId(id));
+    }
+
+    private void markDirty(Inventory inventory, String id) {
+        if (!id.matches("[0-9a-f]+")) {
+            return;
+        }
+        synchronized (inventory) {
+            inventory.dirty.add(id);
+            if (inventory.refreshScheduled) {
+                return;
+            }
+            inventory.refreshScheduled = true;
+        }
+        scheduleRefresh(inventory);
+    }
+
+    private void scheduleRefresh(Inventory inventory) {
+        try {
+            scheduler.schedule(() -> workers.submit(() -> refreshDirty(inventory)), REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 应用正在关闭
+        }
+    }
+
+    // 一次 docker ps --filter 查询所有待更新的容器，查不到的已被删除。
+    // refreshScheduled 直到查询结束才清除，期间新标记的容器在结束后再查
+    private void refreshDirty(Inventory inventory) {
+        List<String> ids;
+        long generation;
+        synchronized (inventory) {
+            ids = new ArrayList<>(inventory.dirty);
+            inventory.dirty.clear();
+            generation = inventory.generation;
+        }
+        try {
+            SshService server = ids.isEmpty() || inventory.stopped
+                    ? null : sshServiceService.getById(inventory.serverId.longValue());
+            List<String> lines = server == null ? null : queryContainers(server, ids);
+            if (lines != null) {
+                applyRefresh(inventory, server, ids, lines, generation);
+            }
+        } finally {
+            boolean again;
+            synchronized (inventory) {
+                again = !inventory.dirty.isEmpty() && !inventory.stopped;
+                inventory.refreshScheduled = again;
+            }
+            if (again) {
+                scheduleRefresh(inventory);
+            }
+        }
+    }
+
+    // 查询失败时返回 null，清单保持不变。退出码非 0 (daemon 不可用、命令被拒绝、等待超时) 时输出为空，
+    // 不能当作容器都已删除
+    List<String> queryContainers(SshService server, List<String> ids) {
+        StringBuilder command = new StringBuilder("docker ps -a");
+        ids.forEach(id -> command.append(" --filter id=").append(id));
+        command.append(" --format ").append(PS_FORMAT);
+
+        Session session = null;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+        try {
+            session = sessionPool.acquire(server);
+            int exitCode = SshExecUtils.exec(session, command.toString(), null, output, errorOutput);
+            if (exitCode != 0) {
+                log.warn("更新服务器 {} 的容器 {} 失败 (exit {}): {}", server.getId(), ids, exitCode,
+                        errorOutput.toString(StandardCharsets.UTF_8).trim());
+                return null;
+            }
+        } catch (Exception e) {
+            if (session != null) {
+                sessionPool.invalidate(server.getId(), session);
+            }
+            log.debug("更新服务器 {} 的容器 {} 失败: {}", server.getId(), ids, e.getMessage());
+            return null;
+        }
+        return List.of(output.toString(StandardCharsets.UTF_8).split("\n"));
+    }
+
+    /**
+     * 把一次 docker ps --filter 的结果合并到清单。generation 是查询开始时的值，
+     * 期间重新获取过完整清单时这次结果已过时，直接丢弃
+     */
+    void applyRefresh(Inventory inventory, SshService server, List<String> ids, List<String> lines, long generation) {
+        Set<String> missing = new HashSet<>(ids);
+        List<Map<String, Object>> updated = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        synchronized (inventory) {
+            if (inventory.generation != generation) {
+                return;
+            }
+            for (String line : lines) {
+                Map<String, Object> container = parseContainer(line);
+                if (container == null) {
+                    continue;
+                }
+                missing.remove((String) container.get("id"));
+                inventory.containers.put((String) container.get("id"), container);
+                updated.add(container);
+            }
+            for (String id : missing) {
+                if (inventory.containers.remove(id) != null) {
+                    removed.add(id);
+                }
+            }
+        }
+        updated.forEach(container -> send(inventory, "upsert", container));
+        removed.forEach(id -> send(inventory, "remove", Map.of("id", id)));
+        if (!updated.isEmpty() || !removed.isEmpty()) {
+            publishStates(inventory, server);
+        }
+    }
+
+    private void applySnapshot(Inventory inventory, SshService server, List<Map<String, Object>> containers) {
+        synchronized (inventory) {
+            inventory.generation++;
+            inventory.containers.clear();
+            for (Map<String, Object> container : containers) {
+                inventory.containers.put((String) container.get("id"), container);
+            }
+        }
+        send(inventory, "snapshot", containers);
+        publishStates(inventory, server);
+    }
+
+    // 容器运行状态交给告警和指标导出
+    private void publishStates(Inventory inventory, SshService server) {
+        Map<String, Boolean> running = new HashMap<>();
+        synchronized (inventory) {
+            for (Map<String, Object> container : inventory.containers.values()) {
+                running.put((String) container.get("name"), (Boolean) container.get("isRunning"));
+            }
+        }
+        alertEngineService.onContainerStates(server, running);
+        hostMetricsExporter.onContainerStates(server, running);
+    }
+
+    private void send(Inventory inventory, String type, Object data) {
+        if (subscriptionTracker.subscriberCount(inventory.destination) == 0) {
+            return;
+        }
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", type);
+        payload.put("serverId", inventory.serverId);
+        payload.put("data", data);
+        messagingTemplate.convertAndSend(inventory.destination, payload);
+    }
+
+    private void sendError(Inventory inventory, String message) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", "error");
+        payload.put("serverId", inventory.serverId);
+        payload.put("message", message);
+        messagingTemplate.convertAndSend(inventory.destination, payload);
+    }
+
+    /**
+     * 解析一行 PS_FORMAT 格式的 docker ps 输出，格式不对时返回 null
+     */
+    static Map<String, Object> parseContainer(String line) {
+        String[] parts = line.split("\\|", -1);
+        if (parts.length < 5 || parts[0].isBlank()) {
+            return null;
+        }
+        Map<String, Object> container = new HashMap<>();
+        container.put("id", shortId(parts[0].trim())); // 取短ID
+        container.put("name", parts[1]);
+        container.put("status", parts[2]);
+
+        // 端口保存原始字符串，前端进一步解析
+        List<String> ports = new ArrayList<>();
+        if (!parts[3].isEmpty()) {
+            ports.add(parts[3]);
+        }
+        container.put("ports", ports);
+
+        container.put("image", parts[4].trim());
+        container.put("isRunning", parts[2].toLowerCase(Locale.ROOT).startsWith("up"));
+        return container;
+    }
+
+    private static String shortId(String id) {
+        return id.substring(0, Math.min(id.length(), 12));
+    }
+
+    private static Integer parseServerId(String destination) {
+        try {
+            return Integer.valueOf(destination.substring(TOPIC_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // 一台服务器的容器清单，containers、dirty 和 generation 通过对象锁同步，seedBuffer 只由读取线程访问
+    static class Inventory {
+        private final Integer serverId;
+        private final String destination;
+        final Map<String, Map<String, Object>> containers = new LinkedHashMap<>();
+        final CompletableFuture<Void> seeded = new CompletableFuture<>();
+        private final List<Map<String, Object>> seedBuffer = new ArrayList<>();
+        final Set<String> dirty = new HashSet<>();
+        // 已安排或正在进行查询
+        private boolean refreshScheduled;
+        // 每次应用完整清单加一
+        private long generation;
+        volatile boolean seeding;
+        private volatile boolean stopped;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private Thread thread;
+
+        Inventory(Integer serverId, String destination) {
+            this.serverId = serverId;
+            this.destination = destination;
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionPool;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 功能: 容器日志实时跟随
+ * 作者: 沙琪马
+ * 日期: 2025/9/30 10:00
+ *
+ * 浏览器订阅 /user/queue/container-logs/{serverId}/{containerId}，可在 SUBSCRIBE 帧中带上
+ * filter (过滤文本)、regex (true 时 filter 按正则匹配)、tail (先补发的行数)、mode (drop / pause)。
+ * 同一容器的所有订阅者共享一个 docker logs -f 通道，最近的行保存在共享的历史中，新订阅者从中补发，
+ * 最后一个订阅者离开时结束远程进程。通道结束 (例如容器停止) 后用 --since 从最后一行的时间继续，不重复不遗漏。
+ *
+ * 每个订阅者有独立的有界队列和发送线程，读取线程只把原始行放入队列，过滤在订阅者自己的发送线程中进行，
+ * 代价很高的正则只拖慢该订阅者。发送线程按固定间隔批量推送，单个订阅者的推送速率有上限。
+ * 队列满时 drop 模式丢弃最旧的行并在下一批中报告丢弃数；pause 模式让读取线程等待 (SSH 流控随之让远程 docker 暂停输出)，
+ * 等待超过 log-pause-timeout 后对该订阅者改为丢弃，直到它的队列排空，避免一个慢订阅者拖住同一通道的其他订阅者。
+ * 容器不存在时通道结束；docker logs 反复立即退出时重连间隔逐次加倍。
+ */
+@Service
+@Slf4j
+public class ContainerLogService {
+
+    public static final String DESTINATION_PREFIX = "/user/queue/container-logs/";
+
+    private static final String QUEUE_PREFIX = "/queue/container-logs/";
+    private static final int MAX_LINE_LENGTH = 16 * 1024;
+    private static final int MAX_TAIL = 5000;
+    private static final Pattern CONTAINER = Pattern.compile("[a-zA-Z0-9][a-zA-Z0-9_.-]*");
+    // docker logs 连续失败时重连间隔的上限
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+
+    private final SshServiceService sshServiceService;
+    private final SshSessionPool sessionPool;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final int historyLines;
+    private final int bufferLines;
+    private final int maxBatch;
+    private final long flushIntervalMs;
+    private final long pauseTimeoutMs;
+    private final long retryDelayMs;
+
+    // serverId/containerId -> 通道
+    private final Map<String, LogChannel> channels = new HashMap<>();
+    // 会话ID -> (订阅ID -> 订阅者)
+    private final Map<String, Map<String, Subscriber>> sessions = new HashMap<>();
+
+    public ContainerLogService(SshServiceService sshServiceService,
+                               SshSessionPool sessionPool,
+                               SimpMessagingTemplate messagingTemplate,
+                               @Value("${webssh.containers.log-history-lines:1000}") int historyLines,
+                               @Value("${webssh.containers.log-buffer-lines:2000}") int bufferLines,
+                               @Value("${webssh.containers.log-max-batch:500}") int maxBatch,
+                               @Value("${webssh.containers.log-flush-interval:100}") long flushIntervalMs,
+                               @Value("${webssh.containers.log-pause-timeout:2000}") long pauseTimeoutMs,
+                               @Value("${webssh.containers.stream-retry-delay:5000}") long retryDelayMs) {
+        this.sshServiceService = sshServiceService;
+        this.sessionPool = sessionPool;
+        this.messagingTemplate = messagingTemplate;
+        this.historyLines = historyLines;
+        this.bufferLines = bufferLines;
+        this.maxBatch = maxBatch;
+        this.flushIntervalMs = flushIntervalMs;
+        this.pauseTimeoutMs = pauseTimeoutMs;
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = headers.getDestination();
+        String sessionId = headers.getSessionId();
+        String subscriptionId = headers.getSubscriptionId();
+        if (destination == null || !destination.startsWith(DESTINATION_PREFIX)
+                || sessionId == null || subscriptionId == null || event.getUser() == null) {
+            return;
+        }
+        String[] parts = destination.substring(DESTINATION_PREFIX.length()).split("/");
+        String user = event.getUser().getName();
+        String queue = QUEUE_PREFIX + destination.substring(DESTINATION_PREFIX.length());
+        if (parts.length != 2 || !parts[0].matches("\\d+") || !CONTAINER.matcher(parts[1]).matches()) {
+            sendTo(user, queue, Map.of("type", "error", "message", "无效的订阅地址"));
+            return;
+        }
+
+        Subscriber subscriber;
+        try {
+            subscriber = new Subscriber(user, queue, filter(headers.getFirstNativeHeader("filter"),
+                    "true".equals(headers.getFirstNativeHeader("regex"))),
+                    "pause".equals(headers.getFirstNativeHeader("mode")), bufferLines);
+        } catch (PatternSyntaxException e) {
+            sendTo(user, queue, Map.of("type", "error", "message", "无效的正则表达式: " + e.getDescription()));
+            return;
+        }
+        int tail = parseTail(headers.getFirstNativeHeader("tail"));
+
+        Subscriber replaced;
+        LogChannel channel;
+        synchronized (this) {
+            replaced = sessions.computeIfAbsent(sessionId, id -> new HashMap<>()).put(subscriptionId, subscriber);
+            channel = channels.computeIfAbsent(parts[0] + "/" + parts[1],
+                    key -> startChannel(Integer.valueOf(parts[0]), parts[1], key, tail));
+            // 占位，补发历史期间其他订阅者离开也不会关闭通道
+            channel.reserve();
+            subscriber.channel = channel;
+        }
+        // 先补发历史再加入，加入之前读取线程不会向它投递，保证顺序
+        channel.attach(subscriber, tail);
+        subscriber.thread = Thread.ofVirtual().name("container-logs-sender").start(() -> drain(subscriber));
+        if (replaced != null) {
+            detach(replaced);
+        }
+        if (subscriber.closed) {
+            // 补发期间已经退订
+            detach(subscriber);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String sessionId = headers.getSessionId();
+        String subscriptionId = headers.getSubscriptionId();
+        if (sessionId == null || subscriptionId == null) {
+            return;
+        }
+        Subscriber subscriber;
+        synchronized (this) {
+            Map<String, Subscriber> subscriptions = sessions.get(sessionId);
+            subscriber = subscriptions == null ? null : subscriptions.remove(subscriptionId);
+            if (subscriptions != null && subscriptions.isEmpty()) {
+                sessions.remove(sessionId);
+            }
+        }
+        if (subscriber != null) {
+            detach(subscriber);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, Subscriber> subscriptions;
+        synchronized (this) {
+            subscriptions = sessions.remove(event.getSessionId());
+        }
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::detach);
+        }
+    }
+
+    /**
+     * 当前打开的 docker logs 通道数
+     */
+    public synchronized int activeCount() {
+        return channels.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<LogChannel> open;
+        synchronized (this) {
+            open = new ArrayList<>(channels.values());
+            channels.clear();
+        }
+        open.forEach(LogChannel::close);
+    }
+
+    private void detach(Subscriber subscriber) {
+        subscriber.closed = true;
+        if (subscriber.thread != null) {
+            subscriber.thread.interrupt();
+        }
+        LogChannel channel = subscriber.channel;
+        boolean last;
+        synchronized (this) {
+            last = channel.detach(subscriber) && channels.remove(channel.key, channel);
+        }
+        if (last) {
+            channel.close();
+            log.debug("关闭容器 {} 的日志通道", channel.key);
+        }
+    }
+
+    private LogChannel startChannel(Integer serverId, String container, String key, int tail) {
+        LogChannel channel = new LogChannel(serverId, container, key, historyLines);
+        channel.thread = Thread.ofVirtual().name("container-logs-" + key).start(() -> read(channel, tail));
+        log.debug("打开容器 {} 的日志通道", key);
+        return channel;
+    }
+
+    // 读取线程：docker logs -f 结束后从最后一行的时间继续，没有读到新行时逐次加倍等待
+    private void read(LogChannel channel, int tail) {
+        int failures = 0;
+        Map<String, Object> lastNotice = null;
+        while (!channel.closed) {
+            SshService server = sshServiceService.getById(channel.serverId.longValue());
+            if (server == null) {
+                broadcast(channel, Map.of("type", "error", "message", "服务器未找到"));
+                return;
+            }
+            Instant since = channel.lastTimestamp;
+            String command = since == null
+                    ? String.format("docker logs -f -t --tail %d %s 2>&1", tail, channel.container)
+                    : String.format("docker logs -f -t --since %s %s 2>&1", since, channel.container);
+            long received = channel.received;
+            channel.lastError = null;
+            Map<String, Object> notice;
+            Session session = null;
+            try {
+                session = sessionPool.lease(server);
+                int exitCode = SshExecUtils.execLines(session, command, null, MAX_LINE_LENGTH, line -> {
+                    if (channel.closed) {
+                        return false;
+                    }
+                    try {
+                        channel.accept(line, pauseTimeoutMs);
+                        return true;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                });
+                if (channel.closed) {
+                    return;
+                }
+                String error = channel.lastError;
+                if (error != null && error.contains("No such container")) {
+                    broadcast(channel, Map.of("type", "error", "message", error));
+                    synchronized (this) {
+                        channels.remove(channel.key, channel);
+                    }
+                    channel.close();
+                    return;
+                }
+                notice = Map.of("type", "status", "message", "日志流已结束 (退出码 " + exitCode + ")"
+                        + (error == null ? "" : ": " + error) + "，等待容器重新输出");
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                if (channel.closed) {
+                    return;
+                }
+                if (session != null) {
+                    sessionPool.invalidate(server.getId(), session);
+                }
+                notice = Map.of("type", "error", "message", "读取容器日志失败: " + e.getMessage());
+            } finally {
+                if (session != null) {
+                    sessionPool.release(server.getId(), session);
+                }
+            }
+
+            boolean progressed = channel.received > received;
+            failures = progressed ? 0 : failures + 1;
+            // 同样的提示只推送一次，直到再次读到新行
+            if (progressed || !notice.equals(lastNotice)) {
+                broadcast(channel, notice);
+                lastNotice = notice;
+            }
+            long delay = failures == 0 ? retryDelayMs : Math.min(MAX_RETRY_DELAY_MS, retryDelayMs << Math.min(failures - 1, 4));
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // 发送线程：取出原始行按订阅者的条件过滤后批量推送，每批最多处理 maxBatch 行
+    private void drain(Subscriber subscriber) {
+        List<String> raw = new ArrayList<>(maxBatch);
+        try {
+            while (!subscriber.closed) {
+                String first = subscriber.queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                raw.add(first);
+                subscriber.queue.drainTo(raw, maxBatch - 1);
+                if (subscriber.queue.isEmpty()) {
+                    // 队列已排空，pause 模式恢复等待
+                    subscriber.overflowed = false;
+                }
+                List<String> batch = new ArrayList<>(raw.size());
+                for (String line : raw) {
+                    if (subscriber.filter.test(line)) {
+                        batch.add(line);
+                    }
+                }
+                raw.clear();
+                long dropped = subscriber.takeDropped();
+                if (batch.isEmpty() && dropped == 0) {
+                    continue;
+                }
+                Map<String, Object> payload = new LinkedHashMap<>();
+                payload.put("type", "lines");
+                payload.put("lines", batch);
+                if (dropped > 0) {
+                    payload.put("dropped", dropped);
+                }
+                sendTo(subscriber.user, subscriber.queueDestination, payload);
+                Thread.sleep(flushIntervalMs);
+            }
+        } catch (InterruptedException ignored) {
+            // 订阅已取消
+        } catch (RuntimeException e) {
+            // 推送失败或过滤被中断，不再向它投递，避免 pause 模式下拖住读取线程
+            if (!subscriber.closed) {
+                log.warn("推送容器 {} 日志失败，取消该订阅: {}", subscriber.channel.key, e.getMessage());
+                detach(subscriber);
+            }
+        }
+    }
+
+    private void broadcast(LogChannel channel, Map<String, Object> payload) {
+        for (Subscriber subscriber : channel.subscribers()) {
+            try {
+                sendTo(subscriber.user, subscriber.queueDestination, payload);
+            } catch (RuntimeException e) {
+                log.debug("推送容器 {} 日志状态失败: {}", channel.key, e.getMessage());
+            }
+        }
+    }
+
+    private void sendTo(String user, String queue, Map<String, Object> payload) {
+        messagingTemplate.convertAndSendToUser(user, queue, payload);
+    }
+
+    private int parseTail(String value) {
+        try {
+            return value == null ? 200 : Math.max(0, Math.min(MAX_TAIL, Integer.parseInt(value)));
+        } catch (NumberFormatException e) {
+            return 200;
+        }
+    }
+
+    /**
+     * 订阅的过滤条件：为空时全部通过，否则不区分大小写的包含匹配，regex 为 true 时按正则查找。
+     * 正则匹配过程中线程被中断 (订阅已取消) 时抛出异常结束匹配
+     */
+    static Predicate<String> filter(String text, boolean regex) {
+        if (text == null || text.isEmpty()) {
+            return line -> true;
+        }
+        if (regex) {
+            Pattern pattern = Pattern.compile(text);
+            return line -> pattern.matcher(new InterruptibleText(line)).find();
+        }
+        String needle = text.toLowerCase(Locale.ROOT);
+        return line -> line.toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    // 每次读取字符时检查中断，回溯失控的正则也能被取消
+    private record InterruptibleText(CharSequence text) implements CharSequence {
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IllegalStateException("过滤已取消");
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new InterruptibleText(text.subSequence(start, end));
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    /**
+     * 一个容器的 docker logs -f 通道，history 和 subscribers 通过对象锁同步
+     */
+    static final class LogChannel {
+        private final Integer serverId;
+        private final String container;
+        private final String key;
+        private final int historyLimit;
+        private final ArrayDeque<String> history = new ArrayDeque<>();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        // 已登记但还在补发历史的订阅者数
+        private int reserved;
+        private volatile Instant lastTimestamp;
+        // 读取到的带时间戳的行数，只由读取线程修改
+        private volatile long received;
+        // 本次 docker logs 输出的最后一行不带时间戳的内容 (docker 自身的错误信息)
+        private volatile String lastError;
+        private volatile boolean closed;
+        private Thread thread;
+
+        LogChannel(Integer serverId, String container, String key, int historyLimit) {
+            this.serverId = serverId;
+            this.container = container;
+            this.key = key;
+            this.historyLimit = historyLimit;
+        }
+
+        synchronized void reserve() {
+            reserved++;
+        }
+
+        // 补发最近 tail 行，再开始接收新行；过滤由订阅者的发送线程进行
+        synchronized void attach(Subscriber subscriber, int tail) {
+            int skip = Math.max(0, history.size() - tail);
+            for (String line : history) {
+                if (skip-- > 0) {
+                    continue;
+                }
+                subscriber.offerDropping(line);
+            }
+            reserved--;
+            subscribers.add(subscriber);
+        }
+
+        // 返回是否已没有订阅者
+        synchronized boolean detach(Subscriber subscriber) {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() && reserved == 0;
+        }
+
+        synchronized List<Subscriber> subscribers() {
+            return new ArrayList<>(subscribers);
+        }
+
+        // 拆出 -t 加上的时间戳，重连后跳过已经读过的行；不带时间戳的是 docker 自身的错误信息，不进入历史
+        void accept(String line, long pauseTimeoutMs) throws InterruptedException {
+            int space = line.indexOf(' ');
+            Instant timestamp = null;
+            if (space > 0) {
+                try {
+                    timestamp = Instant.parse(line.substring(0, space));
+                } catch (DateTimeParseException ignored) {
+                    // 不是 docker 加的时间戳
+                }
+            }
+            if (timestamp == null) {
+                if (!line.isBlank()) {
+                    lastError = line.trim();
+                }
+                return;
+            }
+            Instant last = lastTimestamp;
+            if (last != null && !timestamp.isAfter(last)) {
+                return;
+            }
+            lastTimestamp = timestamp;
+            received++;
+            publish(line.substring(space + 1), pauseTimeoutMs);
+        }
+
+        void publish(String line, long pauseTimeoutMs) throws InterruptedException {
+            List<Subscriber> targets;
+            synchronized (this) {
+                history.addLast(line);
+                if (history.size() > historyLimit) {
+                    history.removeFirst();
+                }
+                targets = new ArrayList<>(subscribers);
+            }
+            for (Subscriber subscriber : targets) {
+                if (subscriber.closed) {
+                    continue;
+                }
+                if (subscriber.pause && !subscriber.overflowed) {
+                    if (!subscriber.queue.offer(line, pauseTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        // 等待超时后改为丢弃，直到发送线程把队列排空
+                        subscriber.overflowed = true;
+                        subscriber.offerDropping(line);
+                    }
+                } else {
+                    subscriber.offerDropping(line);
+                }
+            }
+        }
+
+        void close() {
+            closed = true;
+            thread.interrupt();
+        }
+    }
+
+    // 一个订阅者：过滤条件、有界队列和丢弃计数
+    static final class Subscriber {
+        private final String user;
+        private final String queueDestination;
+        private final Predicate<String> filter;
+        private final boolean pause;
+        final BlockingQueue<String> queue;
+        private long dropped;
+        // pause 模式等待超时后置位，队列排空前不再等待
+        private volatile boolean overflowed;
+        private volatile boolean closed;
+        private LogChannel channel;
+        private Thread thread;
+
+        Subscriber(String user, String queueDestination, Predicate<String> filter, boolean pause, int capacity) {
+            this.user = user;
+            this.queueDestination = queueDestination;
+            this.filter = filter;
+            this.pause = pause;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        // 队列满时丢弃最旧的行
+        synchronized void offerDropping(String line) {
+            while (!queue.offer(line)) {
+                if (queue.poll() != null) {
+                    dropped++;
+                }
+            }
+        }
+
+        synchronized long takeDropped() {
+            long value = dropped;
+            dropped = 0;
+            return value;
+        }
+    }
+}
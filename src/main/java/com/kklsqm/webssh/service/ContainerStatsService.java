@@ -0,0 +1,313 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.common.DockerStatsParser;
+import com.kklsqm.webssh.common.MetricRingBuffer;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionPool;
+import com.kklsqm.webssh.common.TopicSubscriptionTracker;
+import com.kklsqm.webssh.domain.ContainerMetric;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 功能: 容器资源占用实时推送
+ * 作者: 沙琪马
+ * 日期: 2025/9/29 10:30
+ *
+ * 浏览器订阅 /topic/container-stats/{serverId} 后，每台服务器开一个长期运行的 docker stats exec 通道，
+ * 逐行解析输出写入每个容器的环形缓冲区，每轮刷新结束后把整轮结果推送给所有订阅者。
+ * 第一个订阅者出现时启动，最后一个离开时结束远程进程并释放缓冲区；通道意外结束时间隔一段时间重连。
+ */
+@Service
+@Slf4j
+public class ContainerStatsService implements TopicSubscriptionTracker.Listener {
+
+    public static final String TOPIC_PREFIX = "/topic/container-stats/";
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final TopicSubscriptionTracker subscriptionTracker;
+    private final SshServiceService sshServiceService;
+    private final SshSessionPool sessionPool;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final int capacity;
+    private final long retryDelayMs;
+
+    private final Map<Integer, StatsStream> streams = new ConcurrentHashMap<>();
+
+    public ContainerStatsService(TopicSubscriptionTracker subscriptionTracker,
+                                 SshServiceService sshServiceService,
+                                 SshSessionPool sessionPool,
+                                 SimpMessagingTemplate messagingTemplate,
+                                 @Value("${webssh.containers.stats-capacity:300}") int capacity,
+                                 @Value("${webssh.containers.stream-retry-delay:5000}") long retryDelayMs) {
+        this.subscriptionTracker = subscriptionTracker;
+        this.sshServiceService = sshServiceService;
+        this.sessionPool = sessionPool;
+        this.messagingTemplate = messagingTemplate;
+        this.capacity = capacity;
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    @PostConstruct
+    public void init() {
+        subscriptionTracker.register(TOPIC_PREFIX, this);
+    }
+
+    @Override
+    public void onFirstSubscriber(String destination) {
+        Integer serverId = parseServerId(destination);
+        if (serverId == null) {
+            return;
+        }
+        streams.computeIfAbsent(serverId, id -> {
+            StatsStream stream = new StatsStream(id, destination);
+            stream.thread = Thread.ofVirtual().name("docker-stats-" + id).start(() -> run(stream));
+            log.debug("开始读取服务器 {} 的 docker stats", id);
+            return stream;
+        });
+    }
+
+    @Override
+    public void onLastUnsubscribed(String destination) {
+        Integer serverId = parseServerId(destination);
+        if (serverId != null) {
+            stop(serverId);
+        }
+    }
+
+    /**
+     * 正在读取 docker stats 的服务器数
+     */
+    public int activeCount() {
+        return streams.size();
+    }
+
+    /**
+     * 缓冲区中各容器的历史，容器名 -> 按时间升序的采样点；没有订阅者时为空
+     */
+    public Map<String, List<Map<String, Object>>> getHistory(Integer serverId) {
+        StatsStream stream = streams.get(serverId);
+        if (stream == null) {
+            return Map.of();
+        }
+        Map<String, List<Map<String, Object>>> history = new TreeMap<>();
+        for (Map.Entry<String, MetricRingBuffer> entry : stream.buffers.entrySet()) {
+            MetricRingBuffer.Range range = entry.getValue().range(0, Long.MAX_VALUE);
+            List<Map<String, Object>> points = new ArrayList<>(range.size());
+            double[] values = new double[ContainerMetric.count()];
+            for (int i = 0; i < range.size(); i++) {
+                for (int metric = 0; metric < values.length; metric++) {
+                    values[metric] = range.values()[metric][i];
+                }
+                Map<String, Object> point = new LinkedHashMap<>();
+                point.put("timestamp", range.timestamps()[i]);
+                putValues(point, values);
+                points.add(point);
+            }
+            history.put(entry.getKey(), points);
+        }
+        return history;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        new ArrayList<>(streams.keySet()).forEach(this::stop);
+    }
+
+    private void stop(Integer serverId) {
+        StatsStream stream = streams.remove(serverId);
+        if (stream != null) {
+            stream.stopped = true;
+            stream.thread.interrupt();
+            log.debug("停止读取服务器 {} 的 docker stats", serverId);
+        }
+    }
+
+    private void run(StatsStream stream) {
+        while (!stream.stopped) {
+            SshService server = sshServiceService.getById(stream.serverId.longValue());
+            if (server == null) {
+                sendError(stream, "服务器未找到");
+                return;
+            }
+            Session session = null;
+            try {
+                session = sessionPool.lease(server);
+                int exitCode = SshExecUtils.execLines(session, DockerStatsParser.COMMAND, null, MAX_LINE_LENGTH, line -> {
+                    if (stream.stopped) {
+                        return false;
+                    }
+                    accept(stream, line);
+                    return true;
+                });
+                if (!stream.stopped) {
+                    sendError(stream, "docker stats 已退出 (退出码 " + exitCode + ")");
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                if (stream.stopped) {
+                    return;
+                }
+                if (session != null) {
+                    sessionPool.invalidate(server.getId(), session);
+                }
+                sendError(stream, "读取 docker stats 失败: " + e.getMessage());
+            } finally {
+                if (session != null) {
+                    sessionPool.release(server.getId(), session);
+                }
+            }
+            try {
+                Thread.sleep(retryDelayMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // 处理一行输出，整帧的划分由 FrameAssembler 完成
+    private void accept(StatsStream stream, String line) {
+        DockerStatsParser.Entry entry = DockerStatsParser.parse(line);
+        if (entry != null) {
+            stream.frames.accept(entry);
+        }
+    }
+
+    // 把本帧新增的容器写入缓冲区，推送本帧目前为止的全部容器
+    private void push(StatsStream stream, List<DockerStatsParser.Entry> appended, List<DockerStatsParser.Entry> frame) {
+        long now = System.currentTimeMillis();
+        for (DockerStatsParser.Entry entry : appended) {
+            stream.buffers.computeIfAbsent(entry.name(), name -> new MetricRingBuffer(capacity, ContainerMetric.count()))
+                    .append(now, entry.values());
+        }
+        List<Map<String, Object>> data = new ArrayList<>(frame.size());
+        for (DockerStatsParser.Entry entry : frame) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", entry.id());
+            item.put("name", entry.name());
+            putValues(item, entry.values());
+            data.add(item);
+        }
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", "stats");
+        payload.put("serverId", stream.serverId);
+        payload.put("timestamp", now);
+        payload.put("data", data);
+        messagingTemplate.convertAndSend(stream.destination, payload);
+    }
+
+    private void sendError(StatsStream stream, String message) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", "error");
+        payload.put("serverId", stream.serverId);
+        payload.put("message", message);
+        messagingTemplate.convertAndSend(stream.destination, payload);
+    }
+
+    private static void putValues(Map<String, Object> target, double[] values) {
+        for (int metric = 0; metric < values.length; metric++) {
+            // 缺失的值返回 null，NaN 不是合法的 JSON 数字
+            target.put(ContainerMetric.of(metric).getKey(), Double.isNaN(values[metric]) ? null : values[metric]);
+        }
+    }
+
+    private static Integer parseServerId(String destination) {
+        try {
+            return Integer.valueOf(destination.substring(TOPIC_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // 一台服务器的 docker stats 通道，frames 只由读取线程访问
+    private class StatsStream {
+        private final Integer serverId;
+        private final String destination;
+        private final Map<String, MetricRingBuffer> buffers = new ConcurrentHashMap<>();
+        private final FrameAssembler frames;
+        private volatile boolean stopped;
+        private Thread thread;
+
+        StatsStream(Integer serverId, String destination) {
+            this.serverId = serverId;
+            this.destination = destination;
+            this.frames = new FrameAssembler(
+                    (appended, frame) -> push(this, appended, frame),
+                    // 只有完整的一帧才能确定哪些容器已经不在运行
+                    names -> buffers.keySet().retainAll(names));
+        }
+    }
+
+    /**
+     * 把 docker stats 的输出行组成帧。一帧从清屏标记 (或同一容器再次出现) 开始，到下一帧开始为止。
+     * 帧内容器数达到上一个完整帧的大小时提前推送，不必等下一帧开始；之后新出现的容器在帧结束时
+     * 连同整帧再推送一次，帧大小只由完整的帧更新
+     */
+    static class FrameAssembler {
+
+        interface Handler {
+            /**
+             * @param appended 上次推送之后新加入本帧的条目
+             * @param frame 本帧目前为止的全部条目
+             */
+            void push(List<DockerStatsParser.Entry> appended, List<DockerStatsParser.Entry> frame);
+        }
+
+        private final Handler handler;
+        private final Consumer<Set<String>> onComplete;
+        private final List<DockerStatsParser.Entry> frame = new ArrayList<>();
+        private final Set<String> names = new HashSet<>();
+        private int pushed;
+        private int lastFrameSize;
+
+        FrameAssembler(Handler handler, Consumer<Set<String>> onComplete) {
+            this.handler = handler;
+            this.onComplete = onComplete;
+        }
+
+        void accept(DockerStatsParser.Entry entry) {
+            if (entry.frameStart() || names.contains(entry.name())) {
+                complete();
+            }
+            frame.add(entry);
+            names.add(entry.name());
+            if (frame.size() == lastFrameSize) {
+                push();
+            }
+        }
+
+        private void push() {
+            if (pushed == frame.size()) {
+                return;
+            }
+            List<DockerStatsParser.Entry> appended = List.copyOf(frame.subList(pushed, frame.size()));
+            pushed = frame.size();
+            handler.push(appended, List.copyOf(frame));
+        }
+
+        private void complete() {
+            if (frame.isEmpty()) {
+                return;
+            }
+            push();
+            onComplete.accept(Set.copyOf(names));
+            lastFrameSize = frame.size();
+            frame.clear();
+            names.clear();
+            pushed = 0;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.common.TopicSubscriptionTracker;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 功能: 仪表盘实时推送
+ * 作者: 沙琪马
+ * 日期: 2025/9/26 14:30
+ *
+ * 浏览器订阅 /topic/dashboard/{serverId} 后按固定间隔收到该服务器的指标，服务状态按较长的间隔推送。
+ * 每台被订阅的服务器只有一个采样任务，所有订阅者共享；第一个订阅者出现时启动，最后一个离开时停止。
+ * 上一次采样还没结束时跳过本次，慢服务器不会堆积任务。
+ */
+@Service
+@Slf4j
+public class DashboardPushService implements TopicSubscriptionTracker.Listener {
+
+    public static final String TOPIC_PREFIX = "/topic/dashboard/";
+
+    private final TopicSubscriptionTracker subscriptionTracker;
+    private final MetricsCollectorService metricsCollectorService;
+    private final FleetDashboardService fleetDashboardService;
+    private final SshServiceService sshServiceService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long pushIntervalMs;
+    private final long servicesIntervalMs;
+
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("dashboard-push").daemon().factory());
+    private final ExecutorService samplers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public DashboardPushService(TopicSubscriptionTracker subscriptionTracker,
+                                MetricsCollectorService metricsCollectorService,
+                                FleetDashboardService fleetDashboardService,
+                                SshServiceService sshServiceService,
+                                SimpMessagingTemplate messagingTemplate,
+                                @Value("${webssh.dashboard.push-interval:2000}") long pushIntervalMs,
+                                @Value("${webssh.dashboard.services-interval:10000}") long servicesIntervalMs) {
+        this.subscriptionTracker = subscriptionTracker;
+        this.metricsCollectorService = metricsCollectorService;
+        this.fleetDashboardService = fleetDashboardService;
+        this.sshServiceService = sshServiceService;
+        this.messagingTemplate = messagingTemplate;
+        this.pushIntervalMs = pushIntervalMs;
+        this.servicesIntervalMs = servicesIntervalMs;
+    }
+
+    @PostConstruct
+    public void init() {
+        subscriptionTracker.register(TOPIC_PREFIX, this);
+    }
+
+    @Override
+    public void onFirstSubscriber(String destination) {
+        Integer serverId = parseServerId(destination);
+        if (serverId == null) {
+            return;
+        }
+        watches.computeIfAbsent(destination, key -> {
+            Watch watch = new Watch(serverId, destination);
+            watch.future = scheduler.scheduleAtFixedRate(() -> tick(watch), 0, pushIntervalMs, TimeUnit.MILLISECONDS);
+            log.debug("开始推送服务器 {} 的仪表盘数据", serverId);
+            return watch;
+        });
+    }
+
+    @Override
+    public void onLastUnsubscribed(String destination) {
+        stop(destination);
+    }
+
+    /**
+     * 当前正在推送的服务器数
+     */
+    public int activeCount() {
+        return watches.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        samplers.shutdownNow();
+    }
+
+    private void stop(String destination) {
+        Watch watch = watches.remove(destination);
+        if (watch != null) {
+            watch.future.cancel(false);
+            log.debug("停止推送服务器 {} 的仪表盘数据", watch.serverId);
+        }
+    }
+
+    private void tick(Watch watch) {
+        if (!watch.running.compareAndSet(false, true)) {
+            return;
+        }
+        samplers.submit(() -> {
+            try {
+                push(watch);
+            } finally {
+                watch.running.set(false);
+            }
+        });
+    }
+
+    private void push(Watch watch) {
+        SshService server = sshServiceService.getById(watch.serverId.longValue());
+        if (server == null) {
+            send(watch, "error", null, "服务器未找到");
+            return;
+        }
+
+        try {
+            // 允许使用半个推送间隔内的采样，后台采集刚好采过时不再重复采样
+            send(watch, "metrics", metricsCollectorService.getLatest(server, pushIntervalMs / 2), null);
+        } catch (Exception e) {
+            send(watch, "error", null, "获取指标失败: " + e.getMessage());
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - watch.lastServicesAt >= servicesIntervalMs) {
+            watch.lastServicesAt = now;
+            try {
+                send(watch, "services", fleetDashboardService.getServiceStatus(server), null);
+            } catch (Exception e) {
+                log.debug("获取服务器 {} 服务状态失败: {}", watch.serverId, e.getMessage());
+            }
+        }
+    }
+
+    private void send(Watch watch, String type, Object data, String message) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", type);
+        payload.put("serverId", watch.serverId);
+        if (data != null) {
+            payload.put("data", data);
+        }
+        if (message != null) {
+            payload.put("message", message);
+        }
+        messagingTemplate.convertAndSend(watch.destination, payload);
+    }
+
+    private static Integer parseServerId(String destination) {
+        try {
+            return Integer.valueOf(destination.substring(TOPIC_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // 一台被订阅的服务器
+    private static class Watch {
+        private final Integer serverId;
+        private final String destination;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile long lastServicesAt;
+        private ScheduledFuture<?> future;
+
+        Watch(Integer serverId, String destination) {
+            this.serverId = serverId;
+            this.destination = destination;
+        }
+    }
+}
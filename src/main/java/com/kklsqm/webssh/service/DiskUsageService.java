@@ -0,0 +1,403 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.common.ShellUtils;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionFactory;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能: 磁盘占用分析
+ * 作者: 沙琪马
+ * 日期: 2025/9/23 10:00
+ *
+ * 远程执行 find -xdev -type f -printf 逐行读取每个文件的占用块数、大小和路径，
+ * 边读边累加到目录树，每秒把扫描进度、最大目录和最大文件推送到 /topic/disk-usage/{scanId}，
+ * 不必等 10TB 的卷扫完就能看到主要占用。
+ * 目录树只保留到扫描根目录以下 MAX_DEPTH 层，更深的占用计入该层目录，内存有上限。
+ * 每台服务器保留最后一次扫描结果 (包括被取消的部分结果)。
+ */
+@Service
+@Slf4j
+public class DiskUsageService {
+
+    private static final int MAX_DEPTH = 8;
+    private static final int TOP_N = 20;
+    private static final long PUBLISH_INTERVAL_MS = 1000;
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private final SshSessionFactory sessionFactory;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private final Map<String, Scan> scans = new ConcurrentHashMap<>();
+    private final Map<Integer, Scan> lastScans = new ConcurrentHashMap<>();
+
+    public DiskUsageService(SshSessionFactory sessionFactory, SimpMessagingTemplate messagingTemplate) {
+        this.sessionFactory = sessionFactory;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * 开始扫描，同一台服务器同时只允许一次扫描
+     */
+    public Report start(SshService server, String path) {
+        // 内部以 "" 表示根目录，便于拼接子路径
+        String trimmed = ShellUtils.trimTrailingSlash(path);
+        String root = trimmed.equals("/") ? "" : trimmed;
+        // 检查和登记在同一次 compute 中完成，并发的两个请求只有一个能开始扫描
+        Scan scan = lastScans.compute(server.getId(), (serverId, previous) -> {
+            if (previous != null && previous.running) {
+                throw new IllegalStateException("该服务器已有扫描在进行中");
+            }
+            return new Scan(UUID.randomUUID().toString(), serverId, root);
+        });
+        scans.put(scan.scanId, scan);
+        scan.thread = Thread.ofVirtual().name("disk-usage-" + server.getId()).start(() -> run(server, scan));
+        return scan.report();
+    }
+
+    public boolean cancel(String scanId) {
+        Scan scan = scans.get(scanId);
+        if (scan == null || !scan.running) {
+            return false;
+        }
+        scan.cancelled = true;
+        scan.thread.interrupt();
+        return true;
+    }
+
+    /**
+     * 最后一次扫描的结果，扫描中返回当前的部分结果
+     */
+    public Report getLast(Integer serverId) {
+        Scan scan = lastScans.get(serverId);
+        return scan == null ? null : scan.report();
+    }
+
+    /**
+     * 最后一次扫描中某个目录的直接子目录，按占用从大到小排序
+     */
+    public List<DirUsage> getChildren(Integer serverId, String path) {
+        Scan scan = lastScans.get(serverId);
+        if (scan == null) {
+            return null;
+        }
+        synchronized (scan) {
+            DirNode node = scan.find(ShellUtils.trimTrailingSlash(path));
+            if (node == null) {
+                return null;
+            }
+            return node.sortedChildren().stream().map(DirNode::toUsage).toList();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scans.values().forEach(scan -> {
+            if (scan.running) {
+                scan.cancelled = true;
+                scan.thread.interrupt();
+            }
+        });
+    }
+
+    private void run(SshService server, Scan scan) {
+        Session session = null;
+        try {
+            session = sessionFactory.createSession(server);
+            String command = "find " + ShellUtils.quote(scan.root.isEmpty() ? "/" : scan.root)
+                    + " -xdev -type f -printf '%b %s %h/%f\\n' 2>/dev/null";
+            int exitCode = SshExecUtils.execLines(session, command, null, MAX_LINE_LENGTH, line -> {
+                scan.accept(line);
+                if (System.currentTimeMillis() - scan.lastPublished >= PUBLISH_INTERVAL_MS) {
+                    publish(scan, "progress");
+                }
+                return true;
+            });
+            // find 遇到无权限目录时退出码为 1，但结果仍然有效
+            if (exitCode > 1 && scan.files == 0) {
+                scan.error = "find 执行失败 (exit " + exitCode + ")";
+            }
+        } catch (InterruptedException e) {
+            scan.cancelled = true;
+        } catch (Exception e) {
+            if (scan.cancelled) {
+                log.debug("磁盘扫描已取消: {}", scan.root);
+            } else {
+                scan.error = e.getMessage();
+                log.warn("服务器 {} 磁盘扫描失败: {}", server.getHost(), e.getMessage());
+            }
+        } finally {
+            if (session != null) {
+                session.disconnect();
+            }
+            scan.finishedAt = System.currentTimeMillis();
+            scan.running = false;
+            scans.remove(scan.scanId);
+            publish(scan, scan.cancelled ? "cancelled" : scan.error != null ? "error" : "completed");
+        }
+    }
+
+    private void publish(Scan scan, String type) {
+        scan.lastPublished = System.currentTimeMillis();
+        try {
+            Report report = scan.report();
+            report.setType(type);
+            messagingTemplate.convertAndSend("/topic/disk-usage/" + scan.scanId, report);
+        } catch (Exception e) {
+            log.debug("推送磁盘扫描进度失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 一次扫描的状态，目录树由扫描线程写入，读取方对 scan 加锁
+     */
+    private static class Scan {
+        private final String scanId;
+        private final Integer serverId;
+        private final String root;
+        private final DirNode rootNode;
+        private final long startedAt = System.currentTimeMillis();
+        // 最大文件的小顶堆
+        private final PriorityQueue<FileUsage> topFiles = new PriorityQueue<>(Comparator.comparingLong(FileUsage::getBytes));
+        private volatile boolean running = true;
+        private volatile boolean cancelled;
+        private volatile String error;
+        private volatile long finishedAt;
+        private volatile long lastPublished;
+        private volatile Thread thread;
+        private long files;
+        private long bytes;
+        private long apparentBytes;
+        private int directories = 1;
+        // find 按目录顺序输出，缓存上一行的目录避免重复拆分路径
+        private String lastDir;
+        private DirNode lastNode;
+
+        Scan(String scanId, Integer serverId, String root) {
+            this.scanId = scanId;
+            this.serverId = serverId;
+            this.root = root;
+            this.rootNode = new DirNode(root.isEmpty() ? "/" : root, null, 0);
+        }
+
+        /**
+         * 解析 "块数 字节数 路径" 一行
+         */
+        synchronized void accept(String line) {
+            int first = line.indexOf(' ');
+            int second = first < 0 ? -1 : line.indexOf(' ', first + 1);
+            if (second < 0) {
+                return;
+            }
+            long used;
+            long size;
+            try {
+                used = Long.parseLong(line, 0, first, 10) * 512;
+                size = Long.parseLong(line, first + 1, second, 10);
+            } catch (NumberFormatException e) {
+                return;
+            }
+            String path = line.substring(second + 1);
+            int slash = path.lastIndexOf('/');
+            String dir = slash <= 0 ? "/" : path.substring(0, slash);
+
+            DirNode node;
+            if (dir.equals(lastDir)) {
+                node = lastNode;
+            } else {
+                node = resolve(dir);
+                lastDir = dir;
+                lastNode = node;
+            }
+            node.ownBytes += used;
+            for (DirNode n = node; n != null; n = n.parent) {
+                n.totalBytes += used;
+                n.files++;
+            }
+            files++;
+            bytes += used;
+            apparentBytes += size;
+
+            if (topFiles.size() < TOP_N) {
+                topFiles.add(new FileUsage(path, used, size));
+            } else if (used > topFiles.peek().getBytes()) {
+                topFiles.poll();
+                topFiles.add(new FileUsage(path, used, size));
+            }
+        }
+
+        /**
+         * 按路径找到或创建目录节点，超过 MAX_DEPTH 的部分归入最深一层
+         */
+        private DirNode resolve(String dir) {
+            DirNode node = rootNode;
+            String rest = dir.length() > root.length() ? dir.substring(root.length() + 1) : "";
+            int start = 0;
+            while (start < rest.length() && node.depth < MAX_DEPTH) {
+                int end = rest.indexOf('/', start);
+                if (end < 0) {
+                    end = rest.length();
+                }
+                String name = rest.substring(start, end);
+                DirNode parent = node;
+                node = parent.children.computeIfAbsent(name, key -> {
+                    directories++;
+                    return new DirNode(key, parent, parent.depth + 1);
+                });
+                start = end + 1;
+            }
+            return node;
+        }
+
+        synchronized DirNode find(String path) {
+            String normalized = path.isEmpty() ? "/" : path;
+            String rootPath = root.isEmpty() ? "/" : root;
+            if (normalized.equals(rootPath)) {
+                return rootNode;
+            }
+            String prefix = root + "/";
+            if (!normalized.startsWith(prefix)) {
+                return null;
+            }
+            DirNode node = rootNode;
+            for (String name : normalized.substring(prefix.length()).split("/")) {
+                node = node.children.get(name);
+                if (node == null) {
+                    return null;
+                }
+            }
+            return node;
+        }
+
+        synchronized Report report() {
+            Report report = new Report();
+            report.setScanId(scanId);
+            report.setServerId(serverId);
+            report.setPath(rootNode.name);
+            report.setRunning(running);
+            report.setCancelled(cancelled);
+            report.setError(error);
+            report.setFiles(files);
+            report.setDirectories(directories);
+            report.setBytes(bytes);
+            report.setApparentBytes(apparentBytes);
+            report.setStartedAt(startedAt);
+            report.setElapsedMs((running ? System.currentTimeMillis() : finishedAt) - startedAt);
+            report.setChildren(rootNode.sortedChildren().stream().limit(TOP_N).map(DirNode::toUsage).toList());
+            report.setTopDirectories(topDirectories());
+            List<FileUsage> largest = new ArrayList<>(topFiles);
+            largest.sort(Comparator.comparingLong(FileUsage::getBytes).reversed());
+            report.setTopFiles(largest);
+            return report;
+        }
+
+        /**
+         * 按目录自身 (不含子目录) 占用排序的前 N 个目录，通常就是要找的 "罪魁"
+         */
+        private List<DirUsage> topDirectories() {
+            PriorityQueue<DirNode> heap = new PriorityQueue<>(Comparator.comparingLong(node -> node.ownBytes));
+            Deque<DirNode> pending = new ArrayDeque<>();
+            pending.push(rootNode);
+            while (!pending.isEmpty()) {
+                DirNode node = pending.pop();
+                pending.addAll(node.children.values());
+                if (heap.size() < TOP_N) {
+                    heap.add(node);
+                } else if (node.ownBytes > heap.peek().ownBytes) {
+                    heap.poll();
+                    heap.add(node);
+                }
+            }
+            List<DirNode> nodes = new ArrayList<>(heap);
+            nodes.sort(Comparator.comparingLong((DirNode node) -> node.ownBytes).reversed());
+            return nodes.stream().map(DirNode::toUsage).toList();
+        }
+    }
+
+    private static class DirNode {
+        private final String name;
+        private final DirNode parent;
+        private final int depth;
+        private final Map<String, DirNode> children = new HashMap<>();
+        private long ownBytes;
+        private long totalBytes;
+        private long files;
+
+        DirNode(String name, DirNode parent, int depth) {
+            this.name = name;
+            this.parent = parent;
+            this.depth = depth;
+        }
+
+        List<DirNode> sortedChildren() {
+            List<DirNode> sorted = new ArrayList<>(children.values());
+            sorted.sort(Comparator.comparingLong((DirNode node) -> node.totalBytes).reversed());
+            return sorted;
+        }
+
+        String path() {
+            if (parent == null) {
+                return name;
+            }
+            String parentPath = parent.path();
+            return parentPath.endsWith("/") ? parentPath + name : parentPath + "/" + name;
+        }
+
+        DirUsage toUsage() {
+            return new DirUsage(path(), totalBytes, ownBytes, files, !children.isEmpty(), depth == MAX_DEPTH);
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class DirUsage {
+        private String path;
+        // 包含子目录的占用
+        private long bytes;
+        // 目录下直接文件的占用 (最深一层还包括更深的子目录)
+        private long ownBytes;
+        private long files;
+        private boolean hasChildren;
+        private boolean depthLimited;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class FileUsage {
+        private String path;
+        // 实际占用的磁盘空间
+        private long bytes;
+        private long apparentBytes;
+    }
+
+    @Data
+    public static class Report {
+        // progress / completed / cancelled / error，仅推送消息使用
+        private String type;
+        private String scanId;
+        private Integer serverId;
+        private String path;
+        private boolean running;
+        private boolean cancelled;
+        private String error;
+        private long files;
+        private int directories;
+        private long bytes;
+        private long apparentBytes;
+        private long startedAt;
+        private long elapsedMs;
+        private List<DirUsage> children;
+        private List<DirUsage> topDirectories;
+        private List<FileUsage> topFiles;
+    }
+}
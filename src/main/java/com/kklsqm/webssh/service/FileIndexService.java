@@ -0,0 +1,387 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.kklsqm.webssh.common.PathIndex;
+import com.kklsqm.webssh.common.ShellUtils;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionFactory;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 功能: 远程文件系统索引
+ * 作者: 沙琪马
+ * 日期: 2025/9/22 11:00
+ *
+ * 每台服务器在首次搜索时建立一份路径索引 (PathIndex)，之后在后台定期刷新。
+ * 首次建立用一条 find -printf 输出全部路径；刷新时只列出目录及其修改时间，
+ * 目录修改时间变化说明其直接子项有增删，只重新列出这些目录的子项再与旧索引合并。
+ * 远程没有 GNU find 时退化为 SFTP 逐级遍历 (每次都是完整遍历)。
+ */
+@Service
+@Slf4j
+public class FileIndexService {
+
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    // 变化的目录超过该比例时直接完整重建，比逐个目录列出更快
+    private static final double FULL_REBUILD_RATIO = 0.3;
+
+    private final SshSessionFactory sessionFactory;
+    private final SshServiceService sshServiceService;
+    private final String root;
+    private final List<String> excludes;
+    private final int maxEntries;
+    private final long refreshIntervalMs;
+
+    private final Map<Integer, IndexState> states = new ConcurrentHashMap<>();
+    private final ExecutorService crawlers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public FileIndexService(SshSessionFactory sessionFactory,
+                            SshServiceService sshServiceService,
+                            @Value("${webssh.index.root:/}") String root,
+                            @Value("${webssh.index.excludes:/proc,/sys,/dev,/run}") List<String> excludes,
+                            @Value("${webssh.index.max-entries:5000000}") int maxEntries,
+                            @Value("${webssh.index.refresh-interval:600000}") long refreshIntervalMs) {
+        this.sessionFactory = sessionFactory;
+        this.sshServiceService = sshServiceService;
+        this.root = root;
+        this.excludes = excludes;
+        this.maxEntries = maxEntries;
+        this.refreshIntervalMs = refreshIntervalMs;
+    }
+
+    /**
+     * 搜索文件，mode 为 prefix 时按完整路径前缀匹配，否则按文件名子串匹配。
+     * 还没有索引时触发建立索引并返回空结果。
+     */
+    public SearchResult search(SshService server, String query, String mode, Integer limit) {
+        long start = System.nanoTime();
+        IndexState state = stateOf(server.getId());
+        if (state.index == null) {
+            startCrawl(server, state);
+        }
+
+        SearchResult result = new SearchResult();
+        result.setStatus(status(state));
+        PathIndex index = state.index;
+        if (index != null && query != null && !query.isEmpty()) {
+            int max = limit == null || limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+            result.setResults("prefix".equals(mode) ? index.searchPrefix(query, max) : index.searchName(query, max));
+        } else {
+            result.setResults(List.of());
+        }
+        result.setElapsedMicros((System.nanoTime() - start) / 1000);
+        return result;
+    }
+
+    /**
+     * 立即刷新索引
+     */
+    public IndexStatus refresh(SshService server) {
+        IndexState state = stateOf(server.getId());
+        startCrawl(server, state);
+        return status(state);
+    }
+
+    public IndexStatus getStatus(Integer serverId) {
+        return status(stateOf(serverId));
+    }
+
+    /**
+     * 定期刷新已建立过索引的服务器
+     */
+    @Scheduled(fixedDelayString = "${webssh.index.refresh-check:60000}")
+    public void refreshStale() {
+        long now = System.currentTimeMillis();
+        states.forEach((serverId, state) -> {
+            if (state.index != null && !state.crawling && now - state.builtAt > refreshIntervalMs) {
+                SshService server = sshServiceService.getById(serverId);
+                if (server == null) {
+                    states.remove(serverId);
+                } else {
+                    startCrawl(server, state);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        crawlers.shutdownNow();
+    }
+
+    private IndexState stateOf(Integer serverId) {
+        return states.computeIfAbsent(serverId, id -> new IndexState());
+    }
+
+    private void startCrawl(SshService server, IndexState state) {
+        synchronized (state) {
+            if (state.crawling) {
+                return;
+            }
+            state.crawling = true;
+        }
+        crawlers.submit(() -> crawl(server, state));
+    }
+
+    private void crawl(SshService server, IndexState state) {
+        long start = System.currentTimeMillis();
+        Session session = null;
+        try {
+            session = sessionFactory.createSession(server);
+            PathIndex previous = state.index;
+            // 上次索引不完整或来自 SFTP 时无法增量合并
+            boolean incremental = previous != null && "find".equals(state.method) && !state.truncated;
+            PathIndex.Builder builder = incremental
+                    ? incrementalWithFind(session, previous, state)
+                    : fullWithFind(session, state);
+            String method = "find";
+            if (builder == null) {
+                builder = fullWithSftp(session, state);
+                method = "sftp";
+            }
+
+            state.index = builder.build();
+            state.method = method;
+            state.builtAt = System.currentTimeMillis();
+            state.buildMillis = state.builtAt - start;
+            state.error = null;
+            log.info("服务器 {} 文件索引完成: {} 条, {} KB, 用时 {} ms ({})", server.getHost(),
+                    state.index.size(), state.index.memoryBytes() / 1024, state.buildMillis, method);
+        } catch (Exception e) {
+            state.error = e.getMessage();
+            log.warn("服务器 {} 文件索引失败: {}", server.getHost(), e.getMessage());
+        } finally {
+            if (session != null) {
+                session.disconnect();
+            }
+            state.crawling = false;
+        }
+    }
+
+    /**
+     * 完整遍历，远程 find 不支持 -printf 时返回 null
+     */
+    private PathIndex.Builder fullWithFind(Session session, IndexState state) throws Exception {
+        PathIndex.Builder builder = PathIndex.builder();
+        state.truncated = false;
+        int exitCode = SshExecUtils.execLines(session,
+                findCommand(ShellUtils.quote(root), "-printf '%y\\t%T@\\t%p\\n'"), null, MAX_LINE_LENGTH,
+                line -> addFindLine(builder, line, state));
+        if (builder.size() == 0 && exitCode != 0) {
+            return null;
+        }
+        return builder;
+    }
+
+    /**
+     * 增量刷新：列出所有目录的修改时间，只重新列出有变化的目录
+     */
+    private PathIndex.Builder incrementalWithFind(Session session, PathIndex previous, IndexState state) throws Exception {
+        Map<String, Integer> directories = new HashMap<>();
+        int exitCode = SshExecUtils.execLines(session,
+                findCommand(ShellUtils.quote(root), "-type d -printf '%T@\\t%p\\n'"), null, MAX_LINE_LENGTH,
+                line -> {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        directories.put(line.substring(tab + 1), parseMtime(line.substring(0, tab)));
+                    }
+                    return directories.size() < maxEntries;
+                });
+        if (directories.isEmpty()) {
+            throw new IllegalStateException("目录列表为空 (exit " + exitCode + ")");
+        }
+
+        Map<String, Integer> knownDirectories = new HashMap<>();
+        previous.forEach((path, directory, mtime) -> {
+            if (directory) {
+                knownDirectories.put(path, mtime);
+            }
+        });
+        List<String> changed = new ArrayList<>();
+        directories.forEach((path, mtime) -> {
+            if (!mtime.equals(knownDirectories.get(path))) {
+                changed.add(path);
+            }
+        });
+        if (changed.size() > directories.size() * FULL_REBUILD_RATIO) {
+            return fullWithFind(session, state);
+        }
+
+        Set<String> changedSet = new HashSet<>(changed);
+        PathIndex.Builder builder = PathIndex.builder();
+        state.truncated = false;
+        // 保留父目录未变化的旧文件，目录本身以最新列表为准
+        previous.forEach((path, directory, mtime) -> {
+            if (!directory) {
+                String parent = ShellUtils.parentOf(path);
+                if (directories.containsKey(parent) && !changedSet.contains(parent)) {
+                    builder.add(path, false, mtime);
+                }
+            }
+        });
+        directories.forEach((path, mtime) -> builder.add(path, true, mtime));
+
+        if (!changed.isEmpty()) {
+            String script = "while IFS= read -r d; do find \"$d\" -mindepth 1 -maxdepth 1 ! -type d "
+                    + "-printf '%y\\t%T@\\t%p\\n' 2>/dev/null; done";
+            byte[] stdin = (String.join("\n", changed) + "\n").getBytes(StandardCharsets.UTF_8);
+            SshExecUtils.execLines(session, "sh -c " + ShellUtils.quote(script), stdin, MAX_LINE_LENGTH,
+                    line -> addFindLine(builder, line, state));
+        }
+        log.debug("增量刷新: {} 个目录, {} 个有变化", directories.size(), changed.size());
+        return builder;
+    }
+
+    /**
+     * SFTP 逐级遍历，用于没有 GNU find 的系统
+     */
+    private PathIndex.Builder fullWithSftp(Session session, IndexState state) throws Exception {
+        PathIndex.Builder builder = PathIndex.builder();
+        state.truncated = false;
+        ChannelSftp sftp = (ChannelSftp) session.openChannel("sftp");
+        try {
+            sftp.connect();
+            SftpATTRS rootAttrs = sftp.stat(root);
+            builder.add(root, true, rootAttrs.getMTime());
+
+            Deque<String> pending = new ArrayDeque<>();
+            pending.add(root);
+            while (!pending.isEmpty() && builder.size() < maxEntries) {
+                String dir = pending.poll();
+                Vector<ChannelSftp.LsEntry> entries;
+                try {
+                    entries = sftp.ls(dir);
+                } catch (Exception e) {
+                    // 没有权限的目录跳过
+                    continue;
+                }
+                for (ChannelSftp.LsEntry entry : entries) {
+                    String name = entry.getFilename();
+                    if (name.equals(".") || name.equals("..")) {
+                        continue;
+                    }
+                    String path = dir.endsWith("/") ? dir + name : dir + "/" + name;
+                    if (excludes.contains(path)) {
+                        continue;
+                    }
+                    SftpATTRS attrs = entry.getAttrs();
+                    builder.add(path, attrs.isDir(), attrs.getMTime());
+                    if (attrs.isDir()) {
+                        pending.add(path);
+                    }
+                }
+            }
+            state.truncated = !pending.isEmpty();
+            return builder;
+        } finally {
+            sftp.disconnect();
+        }
+    }
+
+    /**
+     * 生成跳过排除目录的 find 命令
+     */
+    private String findCommand(String start, String action) {
+        StringBuilder command = new StringBuilder("find ").append(start);
+        if (!excludes.isEmpty()) {
+            command.append(" \\(");
+            for (int i = 0; i < excludes.size(); i++) {
+                command.append(i == 0 ? " -path " : " -o -path ").append(ShellUtils.quote(excludes.get(i)));
+            }
+            command.append(" \\) -prune -o");
+        }
+        return command.append(' ').append(action).append(" 2>/dev/null").toString();
+    }
+
+    /**
+     * 解析 "类型\t修改时间\t路径" 格式的一行，达到条目上限时返回 false 停止读取
+     */
+    private boolean addFindLine(PathIndex.Builder builder, String line, IndexState state) {
+        int first = line.indexOf('\t');
+        int second = first < 0 ? -1 : line.indexOf('\t', first + 1);
+        if (first != 1 || second < 0) {
+            return true;
+        }
+        builder.add(line.substring(second + 1), line.charAt(0) == 'd', parseMtime(line.substring(first + 1, second)));
+        if (builder.size() >= maxEntries) {
+            state.truncated = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * %T@ 输出带小数的秒数，只取整数部分
+     */
+    private static int parseMtime(String value) {
+        int dot = value.indexOf('.');
+        try {
+            return (int) Long.parseLong(dot < 0 ? value : value.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private IndexStatus status(IndexState state) {
+        IndexStatus status = new IndexStatus();
+        PathIndex index = state.index;
+        status.setReady(index != null);
+        status.setCrawling(state.crawling);
+        status.setEntries(index == null ? 0 : index.size());
+        status.setMemoryBytes(index == null ? 0 : index.memoryBytes());
+        status.setBuiltAt(state.builtAt);
+        status.setBuildMillis(state.buildMillis);
+        status.setMethod(state.method);
+        status.setTruncated(state.truncated);
+        status.setError(state.error);
+        return status;
+    }
+
+    private static class IndexState {
+        private volatile PathIndex index;
+        private volatile boolean crawling;
+        private volatile String method;
+        private volatile long builtAt;
+        private volatile long buildMillis;
+        private volatile boolean truncated;
+        private volatile String error;
+    }
+
+    @Data
+    public static class IndexStatus {
+        private boolean ready;
+        private boolean crawling;
+        private int entries;
+        private long memoryBytes;
+        private long builtAt;
+        private long buildMillis;
+        // find 或 sftp
+        private String method;
+        // 达到 webssh.index.max-entries 上限，索引不完整
+        private boolean truncated;
+        private String error;
+    }
+
+    @Data
+    public static class SearchResult {
+        private IndexStatus status;
+        private List<PathIndex.Entry> results;
+        private long elapsedMicros;
+    }
+}
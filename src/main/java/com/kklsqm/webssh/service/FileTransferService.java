@@ -2,18 +2,36 @@ package com.kklsqm.webssh.service;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.jcraft.jsch.*;
+import com.kklsqm.webssh.common.BufferPairPump;
+import com.kklsqm.webssh.common.DeltaEncoder;
+import com.kklsqm.webssh.common.RollingCksum;
+import com.kklsqm.webssh.common.ShellUtils;
+import com.kklsqm.webssh.common.SingleFlight;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionFactory;
+import com.kklsqm.webssh.common.TarOutputStream;
 import com.kklsqm.webssh.domain.SshService;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Properties;
-import java.util.Vector;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * 功能: 文件传输服务
@@ -22,8 +40,45 @@ import java.util.Vector;
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class FileTransferService {
 
+    // 小于该大小的文件直接全量上传，增量同步的签名开销不划算
+    private static final long DELTA_MIN_SIZE = 256 * 1024;
+    // 增量同步的块数上限，远程 split --filter 每个块都要起进程
+    private static final long MAX_SIGNATURE_BLOCKS = 8192;
+    private static final int MIN_BLOCK_SIZE = 4 * 1024;
+    private static final int MAX_BLOCK_SIZE = 8 * 1024 * 1024;
+
+    // 服务器间复制：同时复制的文件数和每个文件的缓冲区大小 (每个文件两块)
+    private static final int COPY_CONCURRENCY = 4;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    // 压缩下载：已知文本类文件超过该大小才压缩，未知类型需要更大才值得尝试
+    private static final long COMPRESS_MIN_SIZE = 64 * 1024;
+    private static final long COMPRESS_UNKNOWN_MIN_SIZE = 4 * 1024 * 1024;
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of(
+            "txt", "log", "out", "err", "csv", "tsv", "json", "ndjson", "jsonl", "xml", "html", "htm", "sql",
+            "dump", "md", "yaml", "yml", "conf", "cfg", "ini", "properties", "toml", "sh", "py", "java",
+            "js", "css", "svg", "c", "h", "go", "trace", "hprof", "tar", "pcap");
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "gz", "tgz", "zst", "xz", "bz2", "lz4", "zip", "7z", "rar", "jar", "war", "png", "jpg", "jpeg",
+            "gif", "webp", "mp3", "mp4", "mkv", "avi", "pdf", "iso", "rpm", "deb", "apk");
+
+    // 远程可用压缩命令的缓存时间
+    private static final long COMPRESS_TOOLS_TTL_MS = 10 * 60 * 1000;
+
+    // 目录列表的结果缓存时间，多人同时打开同一目录时只列一次
+    private static final long LISTING_TTL_MS = 2000;
+
+    private final SshSessionFactory sessionFactory;
+
+    // key 为 [服务器ID, 路径]
+    private final SingleFlight<List<Object>, List<FileInfo>> listings = new SingleFlight<>(LISTING_TTL_MS);
+
+    // 服务器ID -> 远程可用的压缩命令
+    private final Map<Integer, CompressTools> compressTools = new ConcurrentHashMap<>();
+
     /**
      * 上传文件到远程服务器
      */
@@ -32,7 +87,7 @@ public class FileTransferService {
         ChannelSftp sftpChannel = null;
 
         try {
-            session = createSession(server);
+            session = sessionFactory.createSession(server);
             sftpChannel = (ChannelSftp) session.openChannel("sftp");
             sftpChannel.connect();
 
@@ -49,50 +104,476 @@ public class FileTransferService {
 
         } finally {
             closeConnections(sftpChannel, session);
+            invalidateListings(server);
         }
     }
 
     /**
-     * 从远程服务器下载文件
+     * 增量同步上传 (rsync 风格)
+     * 远程文件已存在时只上传变化的数据块，未变化的部分在远程从旧文件复制，
+     * 最终写入临时文件后整体 mv 覆盖，保证目标文件不会出现半写状态
+     *
+     * @param verify 为 true 时同步完成后用远程 sha256sum 校验目标文件
      */
-    public byte[] downloadFile(SshService server, String remoteFilePath) throws Exception {
+    public SyncResult syncFile(SshService server, MultipartFile file, String remotePath, boolean verify) throws Exception {
         Session session = null;
         ChannelSftp sftpChannel = null;
 
         try {
-            session = createSession(server);
+            session = sessionFactory.createSession(server);
             sftpChannel = (ChannelSftp) session.openChannel("sftp");
             sftpChannel.connect();
 
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                 InputStream inputStream = sftpChannel.get(remoteFilePath)) {
+            createRemoteDirectory(sftpChannel, remotePath);
+            String remoteFilePath = joinPath(remotePath, file.getOriginalFilename());
+
+            SyncResult result = deltaOrFullUpload(session, sftpChannel, file, remoteFilePath);
+            if (verify) {
+                String remoteSha256 = remoteSha256(session, List.of(remoteFilePath)).get(0);
+                result.setRemoteSha256(remoteSha256);
+                result.setVerified(checksumMatches(remoteFilePath, result.getSha256(), remoteSha256));
+            }
+            return result;
 
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
+        } finally {
+            closeConnections(sftpChannel, session);
+            invalidateListings(server);
+        }
+    }
+
+    private SyncResult deltaOrFullUpload(Session session, ChannelSftp sftpChannel, MultipartFile file,
+                                         String remoteFilePath) throws Exception {
+        MessageDigest sha256 = newSha256();
+        SftpATTRS attrs = statOrNull(sftpChannel, remoteFilePath);
+        if (attrs == null || !attrs.isReg() || attrs.getSize() < DELTA_MIN_SIZE) {
+            return fullUpload(sftpChannel, file, remoteFilePath, "远程文件不存在或过小", sha256);
+        }
+
+        int blockSize = chooseBlockSize(attrs.getSize());
+        String signatureSource = "exec";
+        BlockSignatures signatures = fetchSignaturesWithExec(session, remoteFilePath, blockSize, attrs.getSize());
+        if (signatures == null) {
+            signatureSource = "sftp";
+            signatures = computeSignaturesWithSftp(sftpChannel, remoteFilePath, blockSize);
+        }
+
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        String deltaPath = remoteFilePath + ".delta-" + suffix;
+        String tempPath = remoteFilePath + ".sync-" + suffix;
+
+        // 字面数据边编码边顺序写入远程 delta 文件，新文件的 SHA-256 在同一次读取中顺带计算
+        List<DeltaEncoder.DeltaOp> ops;
+        try (InputStream inputStream = new DigestInputStream(file.getInputStream(), sha256);
+             OutputStream deltaOut = sftpChannel.put(deltaPath)) {
+            ops = new DeltaEncoder(blockSize, signatures.sums, signatures.digests).encode(inputStream, deltaOut);
+        } catch (Exception e) {
+            removeQuietly(sftpChannel, deltaPath);
+            throw e;
+        }
+
+        long literalBytes = 0;
+        long reusedBytes = 0;
+        for (DeltaEncoder.DeltaOp op : ops) {
+            if (op.isLiteral()) {
+                literalBytes += op.getLength();
+            } else {
+                reusedBytes += op.getLength();
+            }
+        }
+
+        ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+        String script = buildPatchScript(remoteFilePath, deltaPath, tempPath, ops);
+        int exitStatus = -1;
+        try {
+            exitStatus = SshExecUtils.exec(session, "sh -s", script.getBytes(StandardCharsets.UTF_8),
+                    OutputStream.nullOutputStream(), errorOutput);
+        } finally {
+            if (exitStatus != 0) {
+                // 脚本失败、超时或通道异常时远程 trap 不一定执行，由这里清理临时文件
+                removeQuietly(sftpChannel, deltaPath);
+                removeQuietly(sftpChannel, tempPath);
+            }
+        }
+        if (exitStatus != 0) {
+            // 远程缺少 GNU dd 等情况，回退为全量上传
+            return fullUpload(sftpChannel, file, remoteFilePath,
+                    "远程合并失败: " + errorOutput.toString(StandardCharsets.UTF_8).trim(), sha256);
+        }
+
+        log.info("增量同步完成: {}, 块大小: {}, 上传: {} 字节, 复用: {} 字节, 签名来源: {}",
+                remoteFilePath, blockSize, literalBytes, reusedBytes, signatureSource);
+        return new SyncResult(file.getOriginalFilename(), "delta", signatureSource, blockSize,
+                file.getSize(), literalBytes, reusedBytes, hex(sha256), null, null);
+    }
+
+    /**
+     * 下载文件，值得压缩时改为远程 gzip / zstd 压缩后传输。判断和传输共用一个会话：
+     * 先用 SFTP stat 取得大小，按文件名和大小不值得压缩时直接在同一通道上普通下载，
+     * 需要压缩时才确认远程可用的压缩命令 (每台服务器缓存一段时间)
+     *
+     * @param mode       auto 按文件类型和大小自动选择，gzip / zstd 强制使用，none 不压缩；verify 为 true 时总是普通下载
+     * @param acceptGzip 浏览器是否接受 Content-Encoding: gzip
+     * @param acceptZstd 浏览器是否接受 Content-Encoding: zstd
+     */
+    public Download download(SshService server, String remoteFilePath, boolean verify, String mode,
+                             boolean acceptGzip, boolean acceptZstd) throws Exception {
+        Session session = null;
+        ChannelSftp sftpChannel = null;
+        boolean handedOff = false;
+
+        try {
+            session = sessionFactory.createSession(server);
+            sftpChannel = (ChannelSftp) session.openChannel("sftp");
+            sftpChannel.connect();
+
+            if (!verify && mayCompress(ShellUtils.nameOf(remoteFilePath), mode)) {
+                CompressedDownload plan = planCompressedDownload(server, session, sftpChannel, remoteFilePath,
+                        mode, acceptGzip, acceptZstd);
+                if (plan != null) {
+                    sftpChannel.disconnect();
+                    Session streamSession = session;
+                    handedOff = true;
+                    // 会话交给 writer，写完后关闭
+                    return new Download(null, plan, out -> {
+                        try {
+                            downloadCompressed(streamSession, remoteFilePath, plan, out);
+                        } finally {
+                            closeConnections(null, streamSession);
+                        }
+                    });
                 }
+            }
+            return new Download(readFile(session, sftpChannel, remoteFilePath, verify), null, null);
+
+        } finally {
+            if (!handedOff) {
+                closeConnections(sftpChannel, session);
+            }
+        }
+    }
+
+    // 读取文件内容，顺带计算 SHA-256；verify 为 true 时再用远程 sha256sum 计算一次并比对
+    private DownloadResult readFile(Session session, ChannelSftp sftpChannel, String remoteFilePath,
+                                    boolean verify) throws Exception {
+        MessageDigest sha256 = newSha256();
+        byte[] data;
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+             InputStream inputStream = new DigestInputStream(sftpChannel.get(remoteFilePath), sha256)) {
+
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, bytesRead);
+            }
+            data = outputStream.toByteArray();
+        }
+
+        DownloadResult result = new DownloadResult(data, hex(sha256), null, null);
+        if (verify) {
+            String remoteSha256 = remoteSha256(session, List.of(remoteFilePath)).get(0);
+            result.setRemoteSha256(remoteSha256);
+            result.setVerified(checksumMatches(remoteFilePath, result.getSha256(), remoteSha256));
+        }
+        log.info("文件下载成功: {}, sha256: {}", remoteFilePath, result.getSha256());
+        return result;
+    }
+
+    // 不值得压缩或远程没有可用的压缩命令时返回 null
+    private CompressedDownload planCompressedDownload(SshService server, Session session, ChannelSftp sftpChannel,
+                                                      String remoteFilePath, String mode,
+                                                      boolean acceptGzip, boolean acceptZstd) throws Exception {
+        SftpATTRS attrs = sftpChannel.stat(remoteFilePath);
+        if (attrs.isDir()) {
+            return null;
+        }
+        String name = ShellUtils.nameOf(remoteFilePath);
+        long size = attrs.getSize();
+        // 假设压缩命令都可用也不值得压缩时，不必再去确认
+        if (chooseEncoding(name, size, mode, true, acceptZstd) == null) {
+            return null;
+        }
+
+        Set<String> tools = compressTools(server, session);
+        TransferEncoding encoding = chooseEncoding(name, size, mode, tools.contains("gzip"), tools.contains("zstd") && acceptZstd);
+        if (encoding == null) {
+            return null;
+        }
+        // zstd 只在浏览器能直接解码时使用；gzip 浏览器不接受时在网关上流式解压
+        boolean decompress = encoding == TransferEncoding.GZIP && !acceptGzip;
+        return new CompressedDownload(encoding, decompress, size);
+    }
+
+    // 远程可用的 gzip / zstd，结果按服务器缓存
+    private Set<String> compressTools(SshService server, Session session) throws Exception {
+        CompressTools cached = compressTools.get(server.getId());
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.checkedAt() < COMPRESS_TOOLS_TTL_MS) {
+            return cached.names();
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SshExecUtils.exec(session, "for t in gzip zstd; do command -v $t >/dev/null 2>&1 && echo $t; done; exit 0",
+                null, output, OutputStream.nullOutputStream());
+        Set<String> names = new HashSet<>();
+        for (String line : output.toString(StandardCharsets.US_ASCII).split("\\s+")) {
+            if (!line.isEmpty()) {
+                names.add(line);
+            }
+        }
+        compressTools.put(server.getId(), new CompressTools(names, now));
+        return names;
+    }
+
+    /**
+     * 远程执行 gzip -c / zstd -c 压缩文件，压缩后的字节经 exec 通道传输，
+     * decompress 为 true 时在网关上边读边解压，否则原样写入输出流
+     */
+    private void downloadCompressed(Session session, String remoteFilePath, CompressedDownload plan,
+                                    OutputStream out) throws Exception {
+        ChannelExec execChannel = null;
+
+        try {
+            execChannel = (ChannelExec) session.openChannel("exec");
+            execChannel.setCommand(plan.getEncoding().getCommand() + " -- " + ShellUtils.quote(remoteFilePath));
+            ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+            execChannel.setErrStream(errorOutput);
+
+            long transferred;
+            try (InputStream inputStream = execChannel.getInputStream()) {
+                execChannel.connect();
+                CountingInputStream counting = new CountingInputStream(inputStream);
+                InputStream source = plan.isDecompress() ? new GZIPInputStream(counting, 64 * 1024) : counting;
+                source.transferTo(out);
+                transferred = counting.count;
+            }
+            out.flush();
+
+            int exitStatus = SshExecUtils.waitForExitStatus(execChannel);
+            if (exitStatus != 0) {
+                throw new IOException("远程压缩失败: " + errorOutput.toString(StandardCharsets.UTF_8).trim());
+            }
+            log.info("压缩下载完成: {}, 编码: {}, 原始: {} 字节, 传输: {} 字节, 网关解压: {}",
+                    remoteFilePath, plan.getEncoding(), plan.getSize(), transferred, plan.isDecompress());
+
+        } finally {
+            closeConnections(execChannel, null);
+        }
+    }
+
+    /**
+     * 只看文件名和模式是否可能压缩：none 或已压缩格式 (auto 模式下) 不压缩，不需要任何远程操作
+     */
+    static boolean mayCompress(String name, String mode) {
+        if ("gzip".equalsIgnoreCase(mode) || "zstd".equalsIgnoreCase(mode)) {
+            return true;
+        }
+        return "auto".equalsIgnoreCase(mode) && !COMPRESSED_EXTENSIONS.contains(extensionOf(name));
+    }
+
+    /**
+     * 按文件名和大小选择压缩编码，返回 null 表示不压缩
+     */
+    static TransferEncoding chooseEncoding(String name, long size, String mode, boolean gzipAvailable, boolean zstdUsable) {
+        TransferEncoding preferred = zstdUsable ? TransferEncoding.ZSTD : gzipAvailable ? TransferEncoding.GZIP : null;
+        if ("gzip".equalsIgnoreCase(mode)) {
+            return gzipAvailable ? TransferEncoding.GZIP : null;
+        }
+        if ("zstd".equalsIgnoreCase(mode)) {
+            return preferred;
+        }
+        if (!"auto".equalsIgnoreCase(mode)) {
+            return null;
+        }
+
+        String extension = extensionOf(name);
+        if (COMPRESSED_EXTENSIONS.contains(extension)) {
+            return null;
+        }
+        // 轮转日志 app.log.1 / app.log.2025-09-01 之类
+        boolean compressible = COMPRESSIBLE_EXTENSIONS.contains(extension) || name.toLowerCase(Locale.ROOT).contains(".log.");
+        long minSize = compressible ? COMPRESS_MIN_SIZE : COMPRESS_UNKNOWN_MIN_SIZE;
+        return size >= minSize ? preferred : null;
+    }
+
+    private static String extensionOf(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        int dot = lower.lastIndexOf('.');
+        return dot >= 0 ? lower.substring(dot + 1) : "";
+    }
 
-                log.info("文件下载成功: {}", remoteFilePath);
-                return outputStream.toByteArray();
+    /**
+     * 将远程目录打包为 zip / tar.gz 并直接写入输出流
+     * 整个目录树只使用一个 SFTP 通道遍历，边读边写，不产生临时文件
+     */
+    public void downloadDirectory(SshService server, String remoteDir, ArchiveFormat format, OutputStream out) throws Exception {
+        Session session = null;
+        ChannelSftp sftpChannel = null;
+
+        try {
+            session = sessionFactory.createSession(server);
+            sftpChannel = (ChannelSftp) session.openChannel("sftp");
+            sftpChannel.connect();
+
+            String rootDir = ShellUtils.trimTrailingSlash(remoteDir);
+            SftpATTRS rootAttrs = sftpChannel.stat(rootDir);
+            if (!rootAttrs.isDir()) {
+                throw new IllegalArgumentException("不是目录: " + rootDir);
             }
 
+            String rootName = archiveRootName(rootDir);
+            ArchiveWriter writer = createArchiveWriter(format, out);
+            int fileCount = writeTree(sftpChannel, writer, rootDir, rootName, rootAttrs);
+
+            writer.finish();
+            log.info("目录打包下载完成: {}, 格式: {}, 文件数: {}", rootDir, format, fileCount);
+
         } finally {
             closeConnections(sftpChannel, session);
         }
     }
 
     /**
-     * 列出远程目录内容
+     * 将同一目录下选中的多个文件/目录打包写入输出流 (单个 SFTP 通道遍历)
+     */
+    public void downloadEntries(SshService server, String baseDir, List<String> names,
+                                ArchiveFormat format, OutputStream out) throws Exception {
+        for (String name : names) {
+            if (name.isEmpty() || name.contains("/") || name.equals(".") || name.equals("..")) {
+                throw new IllegalArgumentException("非法的文件名: " + name);
+            }
+        }
+
+        Session session = null;
+        ChannelSftp sftpChannel = null;
+
+        try {
+            session = sessionFactory.createSession(server);
+            sftpChannel = (ChannelSftp) session.openChannel("sftp");
+            sftpChannel.connect();
+
+            ArchiveWriter writer = createArchiveWriter(format, out);
+            int fileCount = 0;
+            for (String name : names) {
+                String path = joinPath(baseDir, name);
+                fileCount += writeTree(sftpChannel, writer, path, name, sftpChannel.lstat(path));
+            }
+
+            writer.finish();
+            log.info("批量打包下载完成: {}, 条目数: {}, 文件数: {}", baseDir, names.size(), fileCount);
+
+        } finally {
+            closeConnections(sftpChannel, session);
+        }
+    }
+
+    /**
+     * 通过 exec 通道在远程执行 tar czf - 打包目录，输出直接写入输出流 (速度最快，需要远程有 tar)
+     */
+    public void downloadDirectoryWithTar(SshService server, String remoteDir, OutputStream out) throws Exception {
+        Session session = null;
+        ChannelExec execChannel = null;
+
+        try {
+            session = sessionFactory.createSession(server);
+
+            String rootDir = ShellUtils.trimTrailingSlash(remoteDir);
+            String command = "/".equals(rootDir)
+                    ? "tar czf - -C / ."
+                    : "tar czf - -C " + ShellUtils.quote(ShellUtils.parentOf(rootDir)) + " -- " + ShellUtils.quote(ShellUtils.nameOf(rootDir));
+
+            execChannel = (ChannelExec) session.openChannel("exec");
+            execChannel.setCommand(command);
+            ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+            execChannel.setErrStream(errorOutput);
+
+            try (InputStream inputStream = execChannel.getInputStream()) {
+                execChannel.connect();
+                inputStream.transferTo(out);
+            }
+            out.flush();
+
+            // tar 退出码 1 表示打包过程中有文件发生变化，归档本身仍然可用
+            int exitStatus = SshExecUtils.waitForExitStatus(execChannel);
+            if (exitStatus < 0) {
+                // 等不到退出码时无法确认输出完整，不能当作成功
+                throw new IOException("未收到远程 tar 的退出码，归档可能不完整");
+            }
+            if (exitStatus > 1) {
+                throw new IOException("远程 tar 打包失败: " + errorOutput.toString(StandardCharsets.UTF_8).trim());
+            }
+            log.info("目录 tar 打包下载完成: {}, 退出码: {}", rootDir, exitStatus);
+
+        } finally {
+            closeConnections(execChannel, session);
+        }
+    }
+
+    /**
+     * 服务器间直接复制文件
+     * 源 SFTP 输入流经网关上的一对固定大小缓冲区直接写入目标 SFTP 输出流，
+     * 数据不经过浏览器，也不会整体加载到内存；多个文件在同一对会话上并发复制。
+     * SHA-256 在读线程填充缓冲区时计算，与写线程的网络写入重叠
+     *
+     * @param verify 为 true 时复制完成后用目标服务器上的 sha256sum 校验，不一致的文件记为失败
+     */
+    public List<CopyResult> copyBetweenServers(SshService source, SshService target, List<String> sourcePaths,
+                                               String targetDir, boolean verify, TransferProgressListener listener) throws Exception {
+        Session sourceSession = null;
+        Session targetSession = null;
+        ExecutorService executor = null;
+
+        try {
+            sourceSession = sessionFactory.createSession(source);
+            targetSession = sessionFactory.createSession(target);
+
+            ChannelSftp targetChannel = (ChannelSftp) targetSession.openChannel("sftp");
+            try {
+                targetChannel.connect();
+                createRemoteDirectory(targetChannel, targetDir);
+            } finally {
+                targetChannel.disconnect();
+            }
+
+            executor = Executors.newFixedThreadPool(Math.min(COPY_CONCURRENCY, Math.max(1, sourcePaths.size())));
+            List<Future<CopyResult>> futures = new ArrayList<>();
+            for (String sourcePath : sourcePaths) {
+                Session srcSession = sourceSession;
+                Session dstSession = targetSession;
+                futures.add(executor.submit(() -> copyFile(srcSession, dstSession, sourcePath, targetDir, verify, listener)));
+            }
+
+            List<CopyResult> results = new ArrayList<>();
+            for (Future<CopyResult> future : futures) {
+                results.add(future.get());
+            }
+
+            log.info("服务器间复制完成: {} -> {}, 文件数: {}", source.getHost(), target.getHost(), results.size());
+            return results;
+
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            closeConnections(null, sourceSession);
+            closeConnections(null, targetSession);
+            invalidateListings(target);
+        }
+    }
+
+    /**
+     * 列出远程目录内容，相同服务器和路径的并发请求共享一次 SFTP 列表
      */
-    @SuppressWarnings("unchecked")
     public List<FileInfo> listDirectory(SshService server, String remotePath) throws Exception {
+        return listings.get(List.of(server.getId(), remotePath), () -> listDirectoryUncached(server, remotePath));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<FileInfo> listDirectoryUncached(SshService server, String remotePath) throws Exception {
         Session session = null;
         ChannelSftp sftpChannel = null;
         List<FileInfo> files = new ArrayList<>();
 
         try {
-            session = createSession(server);
+            session = sessionFactory.createSession(server);
             sftpChannel = (ChannelSftp) session.openChannel("sftp");
             sftpChannel.connect();
 
@@ -113,7 +594,7 @@ public class FileTransferService {
             }
 
             log.info("目录列表获取成功: {}, 文件数: {}", remotePath, files.size());
-            return files;
+            return Collections.unmodifiableList(files);
 
         } finally {
             closeConnections(sftpChannel, session);
@@ -128,7 +609,7 @@ public class FileTransferService {
         ChannelSftp sftpChannel = null;
 
         try {
-            session = createSession(server);
+            session = sessionFactory.createSession(server);
             sftpChannel = (ChannelSftp) session.openChannel("sftp");
             sftpChannel.connect();
 
@@ -137,6 +618,7 @@ public class FileTransferService {
 
         } finally {
             closeConnections(sftpChannel, session);
+            invalidateListings(server);
         }
     }
 
@@ -148,7 +630,7 @@ public class FileTransferService {
         ChannelSftp sftpChannel = null;
 
         try {
-            session = createSession(server);
+            session = sessionFactory.createSession(server);
             sftpChannel = (ChannelSftp) session.openChannel("sftp");
             sftpChannel.connect();
 
@@ -162,6 +644,7 @@ public class FileTransferService {
 
         } finally {
             closeConnections(sftpChannel, session);
+            invalidateListings(server);
         }
     }
 
@@ -173,7 +656,7 @@ public class FileTransferService {
         ChannelSftp sftpChannel = null;
 
         try {
-            session = createSession(server);
+            session = sessionFactory.createSession(server);
             sftpChannel = (ChannelSftp) session.openChannel("sftp");
             sftpChannel.connect();
 
@@ -182,57 +665,72 @@ public class FileTransferService {
 
         } finally {
             closeConnections(sftpChannel, session);
+            invalidateListings(server);
         }
     }
 
     /**
-     * 批量上传文件
+     * 批量上传文件，上传时顺带计算每个文件的 SHA-256
+     *
+     * @param verify 为 true 时全部上传后用一次远程 sha256sum 校验所有文件
      */
-    public void uploadFiles(SshService server, MultipartFile[] files, String remotePath) throws Exception {
+    public List<UploadResult> uploadFiles(SshService server, MultipartFile[] files, String remotePath,
+                                          boolean verify) throws Exception {
         Session session = null;
         ChannelSftp sftpChannel = null;
 
         try {
-            session = createSession(server);
+            session = sessionFactory.createSession(server);
             sftpChannel = (ChannelSftp) session.openChannel("sftp");
             sftpChannel.connect();
 
             // 确保远程目录存在
             createRemoteDirectory(sftpChannel, remotePath);
 
+            List<UploadResult> results = new ArrayList<>();
             for (MultipartFile file : files) {
                 if (!file.isEmpty()) {
                     String remoteFilePath = remotePath + "/" + file.getOriginalFilename();
-                    try (InputStream inputStream = file.getInputStream()) {
+                    // JSch 的 put 会流水线发送写请求，摘要计算与等待服务端确认重叠
+                    MessageDigest sha256 = newSha256();
+                    try (InputStream inputStream = new DigestInputStream(file.getInputStream(), sha256)) {
                         sftpChannel.put(inputStream, remoteFilePath);
                         log.info("文件上传成功: {}", file.getOriginalFilename());
                     }
+                    results.add(new UploadResult(file.getOriginalFilename(), remoteFilePath, file.getSize(),
+                            hex(sha256), null, null));
+                }
+            }
+
+            if (verify && !results.isEmpty()) {
+                List<String> remoteSums = remoteSha256(session,
+                        results.stream().map(UploadResult::getRemotePath).toList());
+                for (int i = 0; i < results.size(); i++) {
+                    UploadResult result = results.get(i);
+                    result.setRemoteSha256(remoteSums.get(i));
+                    result.setVerified(checksumMatches(result.getRemotePath(), result.getSha256(), remoteSums.get(i)));
                 }
             }
 
             log.info("批量上传完成，共上传 {} 个文件", files.length);
+            return results;
 
         } finally {
             closeConnections(sftpChannel, session);
+            invalidateListings(server);
         }
     }
 
-    // 私有辅助方法
-
-    private Session createSession(SshService server) throws JSchException {
-        JSch jsch = new JSch();
-        Session session = jsch.getSession(server.getUsername(), server.getHost(), server.getPort());
-        session.setPassword(server.getPassword());
-
-        Properties config = new Properties();
-        config.put("StrictHostKeyChecking", "no");
-        config.put("PreferredAuthentications", "password");
-        session.setConfig(config);
-        session.connect(10000); // 10秒超时
-
-        return session;
+    /**
+     * 修改过远程文件后丢弃该服务器的目录列表缓存，其他服务中写远程文件的路径同样需要调用
+     */
+    public void invalidateListings(SshService server) {
+        Integer serverId = server.getId();
+        listings.invalidateIf(key -> serverId.equals(key.get(0)));
     }
 
+    // 私有辅助方法
+
     private void createRemoteDirectory(ChannelSftp sftpChannel, String remotePath) {
         try {
             String[] pathParts = remotePath.split("/");
@@ -253,15 +751,334 @@ public class FileTransferService {
         }
     }
 
-    private void closeConnections(ChannelSftp sftpChannel, Session session) {
-        if (sftpChannel != null && sftpChannel.isConnected()) {
-            sftpChannel.disconnect();
+    private void closeConnections(Channel channel, Session session) {
+        if (channel != null && channel.isConnected()) {
+            channel.disconnect();
         }
         if (session != null && session.isConnected()) {
             session.disconnect();
         }
     }
 
+    private CopyResult copyFile(Session sourceSession, Session targetSession, String sourcePath,
+                                String targetDir, boolean verify, TransferProgressListener listener) {
+        long startTime = System.currentTimeMillis();
+        String targetFilePath = joinPath(targetDir, ShellUtils.nameOf(sourcePath));
+        ChannelSftp sourceChannel = null;
+        ChannelSftp targetChannel = null;
+
+        try {
+            sourceChannel = (ChannelSftp) sourceSession.openChannel("sftp");
+            sourceChannel.connect();
+            targetChannel = (ChannelSftp) targetSession.openChannel("sftp");
+            targetChannel.connect();
+
+            SftpATTRS attrs = sourceChannel.stat(sourcePath);
+            if (!attrs.isReg()) {
+                return new CopyResult(sourcePath, targetFilePath, false, 0, "不是普通文件",
+                        System.currentTimeMillis() - startTime, null, null, null);
+            }
+
+            long total = attrs.getSize();
+            listener.onProgress(sourcePath, 0, total);
+            long copied;
+            MessageDigest sha256 = newSha256();
+            try (InputStream inputStream = new DigestInputStream(sourceChannel.get(sourcePath), sha256);
+                 OutputStream outputStream = targetChannel.put(targetFilePath)) {
+                copied = BufferPairPump.pump(inputStream, outputStream, COPY_BUFFER_SIZE,
+                        written -> listener.onProgress(sourcePath, written, total));
+            }
+
+            String digest = hex(sha256);
+            String remoteSha256 = verify ? remoteSha256(targetSession, List.of(targetFilePath)).get(0) : null;
+            Boolean verified = verify ? checksumMatches(targetFilePath, digest, remoteSha256) : null;
+            if (Boolean.FALSE.equals(verified)) {
+                return new CopyResult(sourcePath, targetFilePath, false, copied, "校验失败: 目标文件 SHA-256 不一致",
+                        System.currentTimeMillis() - startTime, digest, remoteSha256, false);
+            }
+
+            log.info("文件复制成功: {} -> {}, {} 字节, sha256: {}", sourcePath, targetFilePath, copied, digest);
+            return new CopyResult(sourcePath, targetFilePath, true, copied, "复制成功",
+                    System.currentTimeMillis() - startTime, digest, remoteSha256, verified);
+
+        } catch (Exception e) {
+            log.warn("文件复制失败: {} -> {}: {}", sourcePath, targetFilePath, e.getMessage());
+            return new CopyResult(sourcePath, targetFilePath, false, 0, e.getMessage(),
+                    System.currentTimeMillis() - startTime, null, null, null);
+        } finally {
+            closeConnections(sourceChannel, null);
+            closeConnections(targetChannel, null);
+        }
+    }
+
+    private SyncResult fullUpload(ChannelSftp sftpChannel, MultipartFile file, String remoteFilePath, String reason,
+                                  MessageDigest sha256) throws Exception {
+        // 增量合并失败回退时摘要里已有上一次读取的数据
+        sha256.reset();
+        try (InputStream inputStream = new DigestInputStream(file.getInputStream(), sha256)) {
+            sftpChannel.put(inputStream, remoteFilePath);
+        }
+        log.info("全量上传: {} ({})", remoteFilePath, reason);
+        return new SyncResult(file.getOriginalFilename(), "full", null, 0, file.getSize(), file.getSize(), 0,
+                hex(sha256), null, null);
+    }
+
+    /**
+     * 一次 exec 在远程计算多个文件的 SHA-256，结果与 paths 顺序一致，
+     * 文件不可读或远程没有 sha256sum / shasum 时对应位置为 null
+     */
+    private List<String> remoteSha256(Session session, List<String> paths) {
+        StringBuilder script = new StringBuilder();
+        script.append("S=sha256sum; command -v sha256sum >/dev/null 2>&1 || S='shasum -a 256'\n");
+        script.append("for f in");
+        for (String path : paths) {
+            script.append(' ').append(ShellUtils.quote(path));
+        }
+        script.append("; do h=$($S < \"$f\" 2>/dev/null) && echo \"${h%% *}\" || echo -; done\n");
+
+        List<String> sums = new ArrayList<>(Collections.nCopies(paths.size(), null));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            SshExecUtils.exec(session, "sh -s", script.toString().getBytes(StandardCharsets.UTF_8),
+                    output, OutputStream.nullOutputStream());
+        } catch (Exception e) {
+            log.warn("远程 SHA-256 计算失败: {}", e.getMessage());
+            return sums;
+        }
+
+        String[] lines = output.toString(StandardCharsets.US_ASCII).split("\n");
+        for (int i = 0; i < Math.min(lines.length, paths.size()); i++) {
+            String line = lines[i].trim();
+            if (line.length() == 64 && line.chars().allMatch(HexFormat::isHexDigit)) {
+                sums.set(i, line.toLowerCase(Locale.ROOT));
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * 远程摘要不可用时返回 null (未校验)
+     */
+    private Boolean checksumMatches(String remoteFilePath, String localSha256, String remoteSha256) {
+        if (remoteSha256 == null) {
+            log.warn("无法在远程计算 SHA-256，跳过校验: {}", remoteFilePath);
+            return null;
+        }
+        if (!remoteSha256.equals(localSha256)) {
+            log.error("SHA-256 校验失败: {}, 本地: {}, 远程: {}", remoteFilePath, localSha256, remoteSha256);
+            return false;
+        }
+        return true;
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 块数控制在 MAX_SIGNATURE_BLOCKS 以内，块大小取 2 的幂
+     */
+    private int chooseBlockSize(long fileSize) {
+        long target = fileSize / MAX_SIGNATURE_BLOCKS;
+        int blockSize = MIN_BLOCK_SIZE;
+        while (blockSize < target && blockSize < MAX_BLOCK_SIZE) {
+            blockSize <<= 1;
+        }
+        return blockSize;
+    }
+
+    /**
+     * 通过 split --filter 在远程逐块计算 cksum 和 md5sum，失败返回 null
+     */
+    private BlockSignatures fetchSignaturesWithExec(Session session, String remoteFilePath, int blockSize, long fileSize) {
+        String file = ShellUtils.quote(remoteFilePath);
+        String command = "SHELL=/bin/sh; export SHELL; "
+                + "split -b " + blockSize + " --filter=cksum -- " + file + " && echo -- && "
+                + "split -b " + blockSize + " --filter=md5sum -- " + file;
+
+        int fullBlocks = (int) (fileSize / blockSize);
+        int totalBlocks = (int) ((fileSize + blockSize - 1) / blockSize);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            int exitStatus = SshExecUtils.exec(session, command, null, output, new ByteArrayOutputStream());
+            if (exitStatus != 0) {
+                log.debug("远程 split 计算签名失败，退出码: {}", exitStatus);
+                return null;
+            }
+
+            String[] lines = output.toString(StandardCharsets.US_ASCII).split("\n");
+            if (lines.length != totalBlocks * 2 + 1 || !"--".equals(lines[totalBlocks])) {
+                log.debug("远程签名输出行数不符: {}", lines.length);
+                return null;
+            }
+
+            BlockSignatures signatures = new BlockSignatures(fullBlocks);
+            for (int i = 0; i < fullBlocks; i++) {
+                String[] cksum = lines[i].trim().split("\\s+");
+                signatures.sums[i] = (int) Long.parseLong(cksum[0]);
+                String md5 = lines[totalBlocks + 1 + i].trim().split("\\s+")[0];
+                System.arraycopy(HexFormat.of().parseHex(md5), 0, signatures.digests, i * 16, 16);
+            }
+            return signatures;
+
+        } catch (Exception e) {
+            log.debug("远程签名计算失败，回退到 SFTP 读取: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 回退方案：通过 SFTP 顺序读取远程文件在本地计算块签名
+     */
+    private BlockSignatures computeSignaturesWithSftp(ChannelSftp sftpChannel, String remoteFilePath, int blockSize) throws Exception {
+        SftpATTRS attrs = sftpChannel.stat(remoteFilePath);
+        int fullBlocks = (int) (attrs.getSize() / blockSize);
+        BlockSignatures signatures = new BlockSignatures(fullBlocks);
+
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        byte[] block = new byte[blockSize];
+        try (InputStream inputStream = sftpChannel.get(remoteFilePath)) {
+            for (int i = 0; i < fullBlocks; i++) {
+                if (inputStream.readNBytes(block, 0, blockSize) < blockSize) {
+                    // 文件在读取期间变短，剩余块不参与匹配
+                    return signatures.truncate(i);
+                }
+                signatures.sums[i] = RollingCksum.cksum(block, 0, blockSize);
+                md5.update(block, 0, blockSize);
+                System.arraycopy(md5.digest(), 0, signatures.digests, i * 16, 16);
+            }
+        }
+        return signatures;
+    }
+
+    /**
+     * 生成远程合并脚本：按顺序用 dd 从旧文件或 delta 文件拷贝到临时文件，最后 mv 覆盖
+     */
+    private String buildPatchScript(String targetPath, String deltaPath, String tempPath, List<DeltaEncoder.DeltaOp> ops) {
+        String target = ShellUtils.quote(targetPath);
+        String delta = ShellUtils.quote(deltaPath);
+        String temp = ShellUtils.quote(tempPath);
+
+        StringBuilder script = new StringBuilder();
+        script.append("set -e\n");
+        script.append("trap 'rm -f ").append(temp.replace("'", "'\\''")).append(' ')
+                .append(delta.replace("'", "'\\''")).append("' EXIT\n");
+        script.append(": > ").append(temp).append('\n');
+        for (DeltaEncoder.DeltaOp op : ops) {
+            script.append("dd if=").append(op.isLiteral() ? delta : target)
+                    .append(" of=").append(temp)
+                    .append(" bs=1M iflag=skip_bytes,count_bytes oflag=seek_bytes conv=notrunc status=none")
+                    .append(" skip=").append(op.getSourceOffset())
+                    .append(" seek=").append(op.getTargetOffset())
+                    .append(" count=").append(op.getLength())
+                    .append('\n');
+        }
+        script.append("chmod --reference=").append(target).append(' ').append(temp).append(" 2>/dev/null || true\n");
+        script.append("mv -f ").append(temp).append(' ').append(target).append('\n');
+        return script.toString();
+    }
+
+    private SftpATTRS statOrNull(ChannelSftp sftpChannel, String remotePath) throws SftpException {
+        try {
+            return sftpChannel.stat(remotePath);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void removeQuietly(ChannelSftp sftpChannel, String remotePath) {
+        try {
+            sftpChannel.rm(remotePath);
+        } catch (SftpException e) {
+            log.debug("清理远程临时文件失败: {}", remotePath);
+        }
+    }
+
+    private ArchiveWriter createArchiveWriter(ArchiveFormat format, OutputStream out) throws IOException {
+        return switch (format) {
+            case ZIP -> new ZipArchiveWriter(out);
+            case TAR -> new TarArchiveWriter(out, false);
+            case TAR_GZ -> new TarArchiveWriter(out, true);
+        };
+    }
+
+    /**
+     * 把一个远程路径 (文件、链接或整个目录树) 写入归档，返回写入的普通文件数
+     * 深度优先遍历，只保存待处理目录的相对路径，内存占用与目录层级相关而非文件数量
+     */
+    @SuppressWarnings("unchecked")
+    private int writeTree(ChannelSftp sftpChannel, ArchiveWriter writer,
+                          String rootPath, String rootName, SftpATTRS rootAttrs) throws Exception {
+        if (!rootAttrs.isDir()) {
+            return writeEntry(sftpChannel, writer, rootPath, rootName, rootAttrs);
+        }
+
+        writer.directory(rootName, rootAttrs);
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push("");
+        int fileCount = 0;
+
+        while (!pending.isEmpty()) {
+            String relativeDir = pending.pop();
+            String dirPath = relativeDir.isEmpty() ? rootPath : joinPath(rootPath, relativeDir);
+
+            Vector<ChannelSftp.LsEntry> entries = sftpChannel.ls(dirPath);
+            for (ChannelSftp.LsEntry entry : entries) {
+                String filename = entry.getFilename();
+                if (filename.equals(".") || filename.equals("..")) {
+                    continue;
+                }
+
+                SftpATTRS attrs = entry.getAttrs();
+                String relative = relativeDir.isEmpty() ? filename : relativeDir + "/" + filename;
+                String archiveName = rootName + "/" + relative;
+
+                if (attrs.isDir()) {
+                    writer.directory(archiveName, attrs);
+                    pending.push(relative);
+                } else {
+                    fileCount += writeEntry(sftpChannel, writer, joinPath(dirPath, filename), archiveName, attrs);
+                }
+            }
+        }
+        return fileCount;
+    }
+
+    private int writeEntry(ChannelSftp sftpChannel, ArchiveWriter writer,
+                           String fullPath, String archiveName, SftpATTRS attrs) throws Exception {
+        if (attrs.isLink()) {
+            // 不跟随符号链接，避免目录环
+            writer.symlink(archiveName, sftpChannel.readlink(fullPath), attrs);
+        } else if (attrs.isReg()) {
+            try (InputStream inputStream = sftpChannel.get(fullPath)) {
+                writer.file(archiveName, attrs, inputStream);
+            }
+            return 1;
+        }
+        // 跳过设备文件、管道等特殊文件
+        return 0;
+    }
+
+    private String joinPath(String dir, String name) {
+        return dir.endsWith("/") ? dir + name : dir + "/" + name;
+    }
+
+    private String archiveRootName(String rootDir) {
+        String name = ShellUtils.nameOf(rootDir);
+        return name.isEmpty() ? "root" : name;
+    }
+
     private String getPermissionString(int permissions) {
         StringBuilder sb = new StringBuilder();
 
@@ -307,4 +1124,291 @@ public class FileTransferService {
         }
 
     }
-}
\ No newline at end of file
+
+    // 目录归档格式
+    public enum ArchiveFormat {
+        ZIP(".zip"),
+        TAR(".tar"),
+        TAR_GZ(".tar.gz");
+
+        private final String extension;
+
+        ArchiveFormat(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static ArchiveFormat fromValue(String value) {
+            return switch (value.toLowerCase()) {
+                case "zip" -> ZIP;
+                case "tar" -> TAR;
+                case "tar.gz", "tgz", "targz" -> TAR_GZ;
+                default -> throw new IllegalArgumentException("不支持的归档格式: " + value);
+            };
+        }
+    }
+
+    // 归档写入抽象，屏蔽 zip 与 tar.gz 的差异
+    private interface ArchiveWriter {
+        void directory(String name, SftpATTRS attrs) throws IOException;
+
+        void file(String name, SftpATTRS attrs, InputStream content) throws IOException;
+
+        void symlink(String name, String target, SftpATTRS attrs) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static class ZipArchiveWriter implements ArchiveWriter {
+        private final ZipOutputStream zip;
+
+        ZipArchiveWriter(OutputStream out) {
+            this.zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void directory(String name, SftpATTRS attrs) throws IOException {
+            ZipEntry entry = new ZipEntry(name + "/");
+            entry.setTime(attrs.getMTime() * 1000L);
+            zip.putNextEntry(entry);
+            zip.closeEntry();
+        }
+
+        @Override
+        public void file(String name, SftpATTRS attrs, InputStream content) throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setTime(attrs.getMTime() * 1000L);
+            zip.putNextEntry(entry);
+            content.transferTo(zip);
+            zip.closeEntry();
+        }
+
+        @Override
+        public void symlink(String name, String target, SftpATTRS attrs) {
+            // zip 没有通用的符号链接表示，直接跳过
+        }
+
+        @Override
+        public void finish() throws IOException {
+            zip.finish();
+            zip.flush();
+        }
+    }
+
+    private static class TarArchiveWriter implements ArchiveWriter {
+        private final GZIPOutputStream gzip;
+        private final TarOutputStream tar;
+        private final byte[] buffer = new byte[32 * 1024];
+
+        TarArchiveWriter(OutputStream out, boolean compress) throws IOException {
+            this.gzip = compress ? new GZIPOutputStream(out, 64 * 1024) : null;
+            this.tar = new TarOutputStream(compress ? gzip : out);
+        }
+
+        @Override
+        public void directory(String name, SftpATTRS attrs) throws IOException {
+            tar.putDirectoryEntry(name, attrs.getPermissions(), attrs.getMTime());
+        }
+
+        @Override
+        public void file(String name, SftpATTRS attrs, InputStream content) throws IOException {
+            long size = attrs.getSize();
+            tar.putFileEntry(name, size, attrs.getPermissions(), attrs.getMTime());
+
+            // tar 头部已声明大小，文件在读取期间被截断则补零，变长则截断
+            long remaining = size;
+            while (remaining > 0) {
+                int read = content.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    Arrays.fill(buffer, (byte) 0);
+                    while (remaining > 0) {
+                        int len = (int) Math.min(buffer.length, remaining);
+                        tar.write(buffer, 0, len);
+                        remaining -= len;
+                    }
+                    break;
+                }
+                tar.write(buffer, 0, read);
+                remaining -= read;
+            }
+            tar.closeEntry();
+        }
+
+        @Override
+        public void symlink(String name, String target, SftpATTRS attrs) throws IOException {
+            tar.putSymlinkEntry(name, target, attrs.getMTime());
+        }
+
+        @Override
+        public void finish() throws IOException {
+            tar.finish();
+            if (gzip != null) {
+                gzip.finish();
+                gzip.flush();
+            }
+        }
+    }
+
+    // 增量同步结果
+    @Data
+    @AllArgsConstructor
+    public static class SyncResult {
+        private String name;
+        // delta 或 full
+        private String mode;
+        // exec 或 sftp，全量上传时为空
+        private String signatureSource;
+        private int blockSize;
+        private long fileSize;
+        private long transferredBytes;
+        private long reusedBytes;
+        private String sha256;
+        // 远程 sha256sum 结果，未校验时为空
+        private String remoteSha256;
+        // 未校验或远程无法计算时为空
+        private Boolean verified;
+    }
+
+    // 上传结果
+    @Data
+    @AllArgsConstructor
+    public static class UploadResult {
+        private String name;
+        private String remotePath;
+        private long size;
+        private String sha256;
+        private String remoteSha256;
+        private Boolean verified;
+    }
+
+    // 压缩下载编码
+    public enum TransferEncoding {
+        GZIP("gzip", "gzip -c"),
+        ZSTD("zstd", "zstd -q -c -T0");
+
+        // Content-Encoding 取值
+        private final String token;
+        private final String command;
+
+        TransferEncoding(String token, String command) {
+            this.token = token;
+            this.command = command;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+    }
+
+    // 压缩下载方案
+    @Data
+    @AllArgsConstructor
+    public static class CompressedDownload {
+        private TransferEncoding encoding;
+        // 为 true 时网关解压后返回原始内容，否则带 Content-Encoding 原样返回压缩数据
+        private boolean decompress;
+        private long size;
+    }
+
+    // 一次下载：普通下载时 result 为读取到的内容；压缩下载时 plan 为编码选择，由 writer 写出数据并关闭会话
+    @Data
+    @AllArgsConstructor
+    public static class Download {
+        private DownloadResult result;
+        private CompressedDownload plan;
+        private DownloadWriter writer;
+    }
+
+    @FunctionalInterface
+    public interface DownloadWriter {
+        void writeTo(OutputStream out) throws Exception;
+    }
+
+    private record CompressTools(Set<String> names, long checkedAt) {
+    }
+
+    // 统计经过的字节数
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    // 下载结果
+    @Data
+    @AllArgsConstructor
+    public static class DownloadResult {
+        private byte[] data;
+        private String sha256;
+        private String remoteSha256;
+        private Boolean verified;
+    }
+
+    // 传输进度回调
+    @FunctionalInterface
+    public interface TransferProgressListener {
+        void onProgress(String path, long transferred, long total);
+    }
+
+    // 服务器间复制结果
+    @Data
+    @AllArgsConstructor
+    public static class CopyResult {
+        private String sourcePath;
+        private String targetPath;
+        private boolean success;
+        private long bytes;
+        private String message;
+        private long elapsedMs;
+        private String sha256;
+        private String remoteSha256;
+        private Boolean verified;
+    }
+
+    // 远程文件的块签名
+    private static class BlockSignatures {
+        private final int[] sums;
+        private final byte[] digests;
+
+        BlockSignatures(int blocks) {
+            this.sums = new int[blocks];
+            this.digests = new byte[blocks * 16];
+        }
+
+        private BlockSignatures(int[] sums, byte[] digests) {
+            this.sums = sums;
+            this.digests = digests;
+        }
+
+        BlockSignatures truncate(int blocks) {
+            return new BlockSignatures(Arrays.copyOf(sums, blocks), Arrays.copyOf(digests, blocks * 16));
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.kklsqm.webssh.common.LineIndex;
+import com.kklsqm.webssh.common.SshSessionFactory;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能: 大文件查看
+ * 作者: 沙琪马
+ * 日期: 2025/9/20 10:40
+ *
+ * 按字节或行号读取远程文件的任意片段，只用 SFTP 偏移读取，不下载整个文件。
+ * 行号定位依赖按 (服务器, 路径) 缓存的稀疏换行索引，索引只在需要时向后扩展；
+ * tail 模式轮询文件大小，把新增内容推送到 /user/queue/tail。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class FileViewerService {
+
+    private static final int MAX_BYTE_RANGE = 1024 * 1024;
+    private static final int MAX_LINES = 5000;
+    // 超长的行截断显示，但偏移仍按完整行计算
+    private static final int MAX_LINE_LENGTH = 16 * 1024;
+    private static final int SCAN_BUFFER_SIZE = 256 * 1024;
+    private static final int INDEX_CACHE_SIZE = 64;
+
+    private static final long TAIL_POLL_INTERVAL_MS = 500;
+    private static final int TAIL_MAX_CHUNK = 256 * 1024;
+    private static final int TAIL_MAX_PER_USER = 5;
+    private static final String TAIL_DESTINATION = "/queue/tail";
+
+    private final SshSessionFactory sessionFactory;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // 访问顺序的 LRU，只保留最近查看的文件索引
+    private final Map<String, IndexEntry> indexCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, IndexEntry> eldest) {
+                    return size() > INDEX_CACHE_SIZE;
+                }
+            });
+
+    private final Map<String, TailTask> tails = new ConcurrentHashMap<>();
+
+    /**
+     * 读取字节范围，结尾落在多字节字符中间时回退到字符边界
+     */
+    public ByteRange readBytes(SshService server, String path, long offset, int length) throws Exception {
+        if (offset < 0 || length <= 0) {
+            throw new IllegalArgumentException("offset/length 参数无效");
+        }
+        Session session = null;
+        ChannelSftp sftp = null;
+        try {
+            session = sessionFactory.createSession(server);
+            sftp = (ChannelSftp) session.openChannel("sftp");
+            sftp.connect();
+
+            long fileSize = sftp.stat(path).getSize();
+            long start = Math.min(offset, fileSize);
+            int toRead = (int) Math.min(Math.min(length, MAX_BYTE_RANGE), fileSize - start);
+
+            byte[] data = new byte[0];
+            if (toRead > 0) {
+                try (InputStream in = sftp.get(path, null, start)) {
+                    data = in.readNBytes(toRead);
+                }
+            }
+            int usable = start + data.length < fileSize ? utf8Boundary(data, data.length) : data.length;
+            return new ByteRange(start, usable, start + usable, fileSize,
+                    new String(data, 0, usable, StandardCharsets.UTF_8));
+        } finally {
+            closeQuietly(sftp, session);
+        }
+    }
+
+    /**
+     * 读取从 startLine (从 0 开始) 起的 count 行
+     */
+    public LineRange readLines(SshService server, String path, long startLine, int count) throws Exception {
+        if (startLine < 0 || count <= 0) {
+            throw new IllegalArgumentException("start/count 参数无效");
+        }
+        int lineCount = Math.min(count, MAX_LINES);
+        Session session = null;
+        ChannelSftp sftp = null;
+        try {
+            session = sessionFactory.createSession(server);
+            sftp = (ChannelSftp) session.openChannel("sftp");
+            sftp.connect();
+
+            SftpATTRS attrs = sftp.stat(path);
+            long fileSize = attrs.getSize();
+            IndexEntry entry = indexFor(sftp, server, path, attrs);
+
+            long offset;
+            long skip;
+            synchronized (entry) {
+                extendIndex(sftp, path, entry.index, startLine, fileSize);
+                offset = entry.index.checkpointOffset(startLine);
+                skip = entry.index.linesAfterCheckpoint(startLine);
+            }
+
+            LineRange range = new LineRange();
+            range.setStartLine(startLine);
+            range.setFileSize(fileSize);
+            range.setLines(new ArrayList<>(Math.min(lineCount, 1024)));
+            if (offset < fileSize) {
+                try (InputStream in = sftp.get(path, null, offset)) {
+                    collectLines(in, offset, fileSize, skip, lineCount, range);
+                }
+            } else {
+                range.setStartOffset(fileSize);
+                range.setEndOffset(fileSize);
+            }
+            synchronized (entry) {
+                range.setIndexedLines(entry.index.getNewlineCount());
+                range.setIndexedBytes(entry.index.getIndexedBytes());
+            }
+            range.setEndOfFile(range.getEndOffset() >= fileSize);
+            return range;
+        } finally {
+            closeQuietly(sftp, session);
+        }
+    }
+
+    /**
+     * 开始跟踪文件末尾，返回 tailId
+     *
+     * @param user          STOMP 用户名，推送到该用户的 /user/queue/tail
+     * @param initialBytes  先回放文件末尾的字节数
+     */
+    public String startTail(String user, SshService server, String path, long initialBytes) {
+        long active = tails.values().stream().filter(task -> task.user.equals(user)).count();
+        if (active >= TAIL_MAX_PER_USER) {
+            throw new IllegalStateException("同时跟踪的文件数不能超过 " + TAIL_MAX_PER_USER);
+        }
+        String tailId = UUID.randomUUID().toString();
+        TailTask task = new TailTask(tailId, user, server, path, Math.max(0, initialBytes));
+        tails.put(tailId, task);
+        task.thread = Thread.ofVirtual().name("file-tail-" + tailId).start(task);
+        return tailId;
+    }
+
+    /**
+     * 停止跟踪，只允许发起者停止
+     */
+    public boolean stopTail(String user, String tailId) {
+        TailTask task = tails.get(tailId);
+        if (task == null || !task.user.equals(user)) {
+            return false;
+        }
+        task.stop();
+        return true;
+    }
+
+    /**
+     * WebSocket 断开时停止该用户的所有 tail
+     */
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        if (event.getUser() == null) {
+            return;
+        }
+        String user = event.getUser().getName();
+        tails.values().stream().filter(task -> task.user.equals(user)).forEach(TailTask::stop);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tails.values().forEach(TailTask::stop);
+    }
+
+    /**
+     * 取缓存的索引；文件变小说明被截断或轮转，重建索引。
+     * 修改时间变化时抽查最后一个已索引换行是否还在原位，其余情况按追加写处理。
+     */
+    private IndexEntry indexFor(ChannelSftp sftp, SshService server, String path, SftpATTRS attrs) throws Exception {
+        String key = server.getId() + ":" + path;
+        IndexEntry entry = indexCache.get(key);
+        if (entry != null) {
+            synchronized (entry) {
+                boolean valid = attrs.getSize() >= entry.index.getIndexedBytes();
+                if (valid && attrs.getMTime() != entry.mtime) {
+                    long probe = entry.index.getLastNewlineOffset();
+                    if (probe >= 0) {
+                        try (InputStream in = sftp.get(path, null, probe)) {
+                            valid = in.read() == '\n';
+                        }
+                    }
+                    entry.mtime = attrs.getMTime();
+                }
+                if (valid) {
+                    return entry;
+                }
+            }
+        }
+        entry = new IndexEntry(new LineIndex(), attrs.getMTime());
+        indexCache.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * 从已索引位置继续扫描，直到能定位 line 或到达文件末尾
+     */
+    private void extendIndex(ChannelSftp sftp, String path, LineIndex index, long line, long fileSize) throws Exception {
+        if (index.covers(line) || index.getIndexedBytes() >= fileSize) {
+            return;
+        }
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        try (InputStream in = sftp.get(path, null, index.getIndexedBytes())) {
+            while (!index.covers(line) && index.getIndexedBytes() < fileSize) {
+                int want = (int) Math.min(buffer.length, fileSize - index.getIndexedBytes());
+                int read = in.read(buffer, 0, want);
+                if (read == -1) {
+                    break;
+                }
+                index.scan(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * 从检查点开始跳过 skip 行，再收集 count 行
+     */
+    private void collectLines(InputStream in, long offset, long fileSize, long skip, int count,
+                              LineRange range) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        byte[] line = new byte[MAX_LINE_LENGTH];
+        int lineLength = 0;
+        boolean truncated = false;
+        long position = offset;
+        long skipped = 0;
+        range.setStartOffset(skip == 0 ? offset : -1);
+
+        int read;
+        outer:
+        while (position < fileSize && (read = in.read(buffer, 0, (int) Math.min(buffer.length, fileSize - position))) != -1) {
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                long current = position + i;
+                if (skipped < skip) {
+                    if (b == '\n' && ++skipped == skip) {
+                        range.setStartOffset(current + 1);
+                    }
+                    continue;
+                }
+                if (b == '\n') {
+                    range.getLines().add(toLine(line, lineLength, truncated));
+                    lineLength = 0;
+                    truncated = false;
+                    range.setEndOffset(current + 1);
+                    if (range.getLines().size() >= count) {
+                        break outer;
+                    }
+                } else if (lineLength < line.length) {
+                    line[lineLength++] = b;
+                } else {
+                    truncated = true;
+                }
+            }
+            position += read;
+        }
+
+        if (range.getStartOffset() < 0) {
+            // 文件行数不足 startLine
+            range.setStartOffset(fileSize);
+            range.setEndOffset(fileSize);
+            return;
+        }
+        if (range.getLines().size() < count && (lineLength > 0 || truncated)) {
+            // 没有换行结尾的最后一行
+            range.getLines().add(toLine(line, lineLength, truncated));
+            range.setEndOffset(fileSize);
+        } else if (range.getLines().isEmpty()) {
+            range.setEndOffset(range.getStartOffset());
+        }
+    }
+
+    private String toLine(byte[] line, int length, boolean truncated) {
+        int end = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+        if (truncated) {
+            end = utf8Boundary(line, end);
+        }
+        String text = new String(line, 0, end, StandardCharsets.UTF_8);
+        return truncated ? text + " …[行过长已截断]" : text;
+    }
+
+    /**
+     * 返回不截断多字节 UTF-8 字符的最大长度
+     */
+    static int utf8Boundary(byte[] data, int length) {
+        // 最多向前检查 3 个字节找到最后一个字符的起始字节
+        for (int i = length - 1; i >= Math.max(0, length - 4); i--) {
+            int b = data[i] & 0xFF;
+            if ((b & 0xC0) == 0x80) {
+                continue;
+            }
+            int charLength = b < 0x80 ? 1 : b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return i + charLength <= length ? length : i;
+        }
+        return length;
+    }
+
+    private void closeQuietly(ChannelSftp sftp, Session session) {
+        if (sftp != null && sftp.isConnected()) {
+            sftp.disconnect();
+        }
+        if (session != null && session.isConnected()) {
+            session.disconnect();
+        }
+    }
+
+    private static class IndexEntry {
+        private final LineIndex index;
+        private int mtime;
+
+        IndexEntry(LineIndex index, int mtime) {
+            this.index = index;
+            this.mtime = mtime;
+        }
+    }
+
+    /**
+     * 单个 tail 任务：保持一个 SFTP 通道，按固定间隔检查文件大小并推送新增内容
+     */
+    private class TailTask implements Runnable {
+        private final String tailId;
+        private final String user;
+        private final SshService server;
+        private final String path;
+        private final long initialBytes;
+        private volatile boolean running = true;
+        private volatile Thread thread;
+
+        TailTask(String tailId, String user, SshService server, String path, long initialBytes) {
+            this.tailId = tailId;
+            this.user = user;
+            this.server = server;
+            this.path = path;
+            this.initialBytes = initialBytes;
+        }
+
+        void stop() {
+            running = false;
+            Thread current = thread;
+            if (current != null) {
+                current.interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            Session session = null;
+            ChannelSftp sftp = null;
+            try {
+                session = sessionFactory.createSession(server);
+                sftp = (ChannelSftp) session.openChannel("sftp");
+                sftp.connect();
+
+                long offset = Math.max(0, sftp.stat(path).getSize() - initialBytes);
+                send(Map.of("type", "started", "tailId", tailId, "path", path, "offset", offset));
+
+                while (running) {
+                    long size = sftp.stat(path).getSize();
+                    if (size < offset) {
+                        // 文件被截断或轮转，从头开始
+                        offset = 0;
+                        send(Map.of("type", "truncated", "tailId", tailId, "offset", 0L));
+                    }
+                    if (size > offset) {
+                        int toRead = (int) Math.min(size - offset, TAIL_MAX_CHUNK);
+                        byte[] data;
+                        try (InputStream in = sftp.get(path, null, offset)) {
+                            data = in.readNBytes(toRead);
+                        }
+                        int usable = utf8Boundary(data, data.length);
+                        if (usable > 0) {
+                            send(Map.of("type", "data", "tailId", tailId, "offset", offset,
+                                    "content", new String(data, 0, usable, StandardCharsets.UTF_8)));
+                            offset += usable;
+                        }
+                        // 还有积压时立即继续读取
+                        if (offset < size && usable > 0) {
+                            continue;
+                        }
+                    }
+                    Thread.sleep(TAIL_POLL_INTERVAL_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                if (running) {
+                    log.warn("tail {} 失败: {}", path, e.getMessage());
+                    send(Map.of("type", "error", "tailId", tailId, "message", String.valueOf(e.getMessage())));
+                }
+            } finally {
+                tails.remove(tailId);
+                closeQuietly(sftp, session);
+                send(Map.of("type", "stopped", "tailId", tailId));
+            }
+        }
+
+        private void send(Map<String, Object> message) {
+            try {
+                messagingTemplate.convertAndSendToUser(user, TAIL_DESTINATION, message);
+            } catch (Exception e) {
+                log.debug("tail 推送失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class ByteRange {
+        private long offset;
+        private int length;
+        private long nextOffset;
+        private long fileSize;
+        private String content;
+    }
+
+    @Data
+    public static class LineRange {
+        private long startLine;
+        private List<String> lines;
+        private long startOffset;
+        // 最后一行之后的偏移，可直接用于按字节继续读取
+        private long endOffset;
+        private long fileSize;
+        private boolean endOfFile;
+        // 当前索引覆盖的范围，索引扫描到文件末尾前总行数未知
+        private long indexedLines;
+        private long indexedBytes;
+    }
+}
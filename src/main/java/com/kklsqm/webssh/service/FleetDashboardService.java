@@ -0,0 +1,228 @@
+package com.kklsqm.webssh.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.common.SingleFlight;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionPool;
+import com.kklsqm.webssh.domain.SshService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 功能: 全部服务器的仪表盘概览
+ * 作者: 沙琪马
+ * 日期: 2025/9/26 10:00
+ *
+ * 每台服务器一个虚拟线程收集指标、系统信息和服务状态，同时进行的服务器数受全局信号量限制。
+ * 指标优先使用后台采集的缓存，过旧时才现场采样。结果按完成顺序以 NDJSON 写出，
+ * 单台服务器超过时限 (从拿到信号量开始计算) 时中断其任务并输出超时结果，不影响其他服务器。
+ */
+@Service
+@Slf4j
+public class FleetDashboardService {
+
+    // 仪表盘展示的服务，可按实际服务名调整 (例如 mysqld、redis-server)
+    private static final List<String> SERVICES = List.of("mysql", "redis", "docker");
+    private static final String SERVICE_COMMAND = "systemctl is-active " + String.join(" ", SERVICES);
+    // 服务状态的结果缓存时间，仪表盘、实时推送和概览同时查询同一台服务器时只执行一次
+    private static final long SERVICE_STATUS_TTL_MS = 2000;
+
+    private final MetricsCollectorService metricsCollectorService;
+    private final SshSessionPool sessionPool;
+    private final AlertEngineService alertEngineService;
+    private final ObjectMapper objectMapper;
+    private final Semaphore permits;
+    private final long hostTimeoutMs;
+    private final long maxSampleAgeMs;
+    private final SingleFlight<Integer, Map<String, String>> serviceStatuses = new SingleFlight<>(SERVICE_STATUS_TTL_MS);
+
+    public FleetDashboardService(MetricsCollectorService metricsCollectorService,
+                                 SshSessionPool sessionPool,
+                                 AlertEngineService alertEngineService,
+                                 ObjectMapper objectMapper,
+                                 @Value("${webssh.fleet.max-concurrent:64}") int maxConcurrent,
+                                 @Value("${webssh.fleet.host-timeout:10000}") long hostTimeoutMs,
+                                 @Value("${webssh.fleet.max-sample-age:15000}") long maxSampleAgeMs) {
+        this.metricsCollectorService = metricsCollectorService;
+        this.sessionPool = sessionPool;
+        this.alertEngineService = alertEngineService;
+        this.objectMapper = objectMapper;
+        this.permits = new Semaphore(maxConcurrent);
+        this.hostTimeoutMs = hostTimeoutMs;
+        this.maxSampleAgeMs = maxSampleAgeMs;
+    }
+
+    /**
+     * 收集多台服务器的概览并按 NDJSON 写入 out，每行一个事件：started / host / done
+     */
+    public void stream(List<SshService> servers, boolean includeServices, OutputStream out) throws IOException {
+        long startTime = System.currentTimeMillis();
+        BlockingQueue<Map<String, Object>> results = new LinkedBlockingQueue<>();
+        List<HostTask> tasks = new ArrayList<>(servers.size());
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            write(out, Map.of("type", "started", "servers", servers.size()));
+            out.flush();
+
+            for (SshService server : servers) {
+                HostTask task = new HostTask(server);
+                tasks.add(task);
+                task.future = executor.submit(() -> runHost(task, includeServices, results));
+            }
+
+            int succeeded = 0;
+            int failed = 0;
+            int timedOut = 0;
+            int remaining = servers.size();
+            while (remaining > 0) {
+                Map<String, Object> result = results.poll(200, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    remaining--;
+                    if (Boolean.TRUE.equals(result.get("success"))) {
+                        succeeded++;
+                    } else {
+                        failed++;
+                    }
+                    write(out, result);
+                    if (results.isEmpty()) {
+                        out.flush();
+                    }
+                    continue;
+                }
+
+                long now = System.currentTimeMillis();
+                for (HostTask task : tasks) {
+                    long started = task.startedAt;
+                    if (started > 0 && now - started > hostTimeoutMs && task.reported.compareAndSet(false, true)) {
+                        task.future.cancel(true);
+                        remaining--;
+                        timedOut++;
+                        Map<String, Object> timeout = hostResult(task.server, false, now - started);
+                        timeout.put("message", "超时 (" + hostTimeoutMs + " ms)");
+                        write(out, timeout);
+                    }
+                }
+                out.flush();
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("type", "done");
+            summary.put("total", servers.size());
+            summary.put("succeeded", succeeded);
+            summary.put("failed", failed);
+            summary.put("timedOut", timedOut);
+            summary.put("elapsedMs", System.currentTimeMillis() - startTime);
+            write(out, summary);
+            out.flush();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // 客户端断开或出错时中断仍在进行的任务，不等待它们结束
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 一次 exec 查询所有服务的 systemctl 状态，无法获取的服务为 unknown。
+     * 同一台服务器的并发查询共享一次 exec
+     */
+    public Map<String, String> getServiceStatus(SshService server) throws Exception {
+        return serviceStatuses.get(server.getId(), () -> queryServiceStatus(server));
+    }
+
+    private Map<String, String> queryServiceStatus(SshService server) throws Exception {
+        Session session = sessionPool.acquire(server);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            // 有服务不是 active 时 systemctl 退出码非 0，只看输出
+            SshExecUtils.exec(session, SERVICE_COMMAND, null, output, OutputStream.nullOutputStream());
+        } catch (Exception e) {
+            sessionPool.invalidate(server.getId(), session);
+            throw e;
+        }
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        Map<String, String> services = new LinkedHashMap<>();
+        for (int i = 0; i < SERVICES.size(); i++) {
+            String status = i < lines.length ? lines[i].trim().toLowerCase(Locale.ROOT) : "";
+            services.put(SERVICES.get(i), status.isEmpty() ? "unknown" : status);
+        }
+        alertEngineService.onServiceStatus(server, services);
+        return Collections.unmodifiableMap(services);
+    }
+
+    private void runHost(HostTask task, boolean includeServices, BlockingQueue<Map<String, Object>> results) {
+        boolean acquired = false;
+        try {
+            permits.acquire();
+            acquired = true;
+            task.startedAt = System.currentTimeMillis();
+
+            Map<String, Object> metrics = metricsCollectorService.getLatest(task.server, maxSampleAgeMs);
+            Map<String, String> services = includeServices ? getServiceStatus(task.server) : null;
+
+            if (task.reported.compareAndSet(false, true)) {
+                Map<String, Object> result = hostResult(task.server, true, System.currentTimeMillis() - task.startedAt);
+                result.put("metrics", metrics);
+                if (services != null) {
+                    result.put("services", services);
+                }
+                results.add(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (task.reported.compareAndSet(false, true)) {
+                long elapsed = task.startedAt > 0 ? System.currentTimeMillis() - task.startedAt : 0;
+                Map<String, Object> result = hostResult(task.server, false, elapsed);
+                result.put("message", e.getMessage());
+                results.add(result);
+            }
+        } finally {
+            if (acquired) {
+                permits.release();
+            }
+        }
+    }
+
+    private static Map<String, Object> hostResult(SshService server, boolean success, long elapsedMs) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("type", "host");
+        result.put("serverId", server.getId());
+        result.put("name", server.getName());
+        result.put("host", server.getHost());
+        result.put("success", success);
+        result.put("elapsedMs", elapsedMs);
+        return result;
+    }
+
+    private void write(OutputStream out, Map<String, Object> event) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(event));
+        out.write('\n');
+    }
+
+    // 单台服务器的收集任务，reported 保证结果和超时只输出其一
+    private static class HostTask {
+        private final SshService server;
+        private final AtomicBoolean reported = new AtomicBoolean();
+        // 拿到信号量的时间，0 表示还在排队
+        private volatile long startedAt;
+        private Future<?> future;
+
+        HostTask(SshService server) {
+            this.server = server;
+        }
+    }
+}
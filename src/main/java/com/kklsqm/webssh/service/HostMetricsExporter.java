@@ -0,0 +1,239 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.domain.HostMetric;
+import com.kklsqm.webssh.domain.SshService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能: 把后台采集的主机指标注册为 Micrometer 指标，由 /actuator/prometheus 导出
+ * 作者: 沙琪马
+ * 日期: 2025/9/28 15:00
+ *
+ * 每台服务器一组带 server、server_id、host 标签的 Gauge，抓取时只读取 MetricsCollectorService
+ * 缓存的最新采样，从不触发 SSH；超过 export-max-age 没有新采样时导出 NaN，Prometheus 中显示为断点。
+ * 容器状态由 ContainerInventoryService 在清单变化时更新。服务器列表定时同步，增删改名后注册或移除对应的指标。
+ * 单位遵循 Prometheus 约定：使用率导出为 0~1 的比例 (ratio)，速率为 bytes_per_second。
+ */
+@Service
+@Slf4j
+public class HostMetricsExporter {
+
+    // 同一台服务器的各个 Gauge 在一次抓取中共享一次读取
+    private static final long SNAPSHOT_REUSE_MS = 500;
+
+    private final MeterRegistry registry;
+    private final SshServiceService sshServiceService;
+    private final MetricsCollectorService metricsCollectorService;
+    private final long maxAgeMs;
+
+    private final Map<Integer, ServerMeters> servers = new ConcurrentHashMap<>();
+
+    public HostMetricsExporter(MeterRegistry registry,
+                               SshServiceService sshServiceService,
+                               MetricsCollectorService metricsCollectorService,
+                               @Value("${webssh.metrics.export-max-age:30000}") long maxAgeMs) {
+        this.registry = registry;
+        this.sshServiceService = sshServiceService;
+        this.metricsCollectorService = metricsCollectorService;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * 按服务器列表注册或移除指标
+     */
+    @Scheduled(fixedDelayString = "${webssh.metrics.export-sync-interval:30000}", initialDelay = 5000)
+    public void syncServers() {
+        List<SshService> list;
+        try {
+            list = sshServiceService.list();
+        } catch (RuntimeException e) {
+            log.warn("同步导出指标的服务器列表失败: {}", e.getMessage());
+            return;
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (SshService server : list) {
+            ids.add(server.getId());
+            Tags tags = tags(server);
+            ServerMeters existing = servers.get(server.getId());
+            if (existing != null && existing.tags.equals(tags)) {
+                continue;
+            }
+            if (existing != null) {
+                existing.remove();
+            }
+            servers.put(server.getId(), register(server.getId(), tags));
+        }
+        servers.entrySet().removeIf(entry -> {
+            if (ids.contains(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().remove();
+            return true;
+        });
+    }
+
+    /**
+     * 更新容器状态，running 为容器名到是否运行中
+     */
+    public void onContainerStates(SshService server, Map<String, Boolean> running) {
+        ServerMeters meters = servers.get(server.getId());
+        if (meters != null) {
+            meters.updateContainers(running);
+        }
+    }
+
+    private ServerMeters register(Integer serverId, Tags tags) {
+        ServerMeters meters = new ServerMeters(serverId, tags);
+        for (HostMetric metric : HostMetric.values()) {
+            int index = metric.ordinal();
+            double scale = isPercent(metric) ? 0.01 : 1;
+            meters.meters.add(Gauge.builder(meterName(metric), meters, m -> m.value(index) * scale)
+                    .tags(tags)
+                    .baseUnit(baseUnit(metric))
+                    .register(registry));
+        }
+        meters.meters.add(Gauge.builder("webssh.host.up", meters, ServerMeters::up)
+                .tags(tags)
+                .description("最近 export-max-age 内是否有成功的采样")
+                .register(registry));
+        meters.meters.add(Gauge.builder("webssh.host.containers", meters, m -> m.containerCount(true))
+                .tags(tags.and("state", "running"))
+                .register(registry));
+        meters.meters.add(Gauge.builder("webssh.host.containers", meters, m -> m.containerCount(false))
+                .tags(tags.and("state", "stopped"))
+                .register(registry));
+        return meters;
+    }
+
+    private static Tags tags(SshService server) {
+        return Tags.of("server", String.valueOf(server.getName()),
+                "server_id", String.valueOf(server.getId()),
+                "host", String.valueOf(server.getHost()));
+    }
+
+    private static String meterName(HostMetric metric) {
+        return switch (metric) {
+            case CPU -> "webssh.host.cpu.usage";
+            case MEMORY -> "webssh.host.memory.usage";
+            case DISK -> "webssh.host.disk.usage";
+            case LOAD1 -> "webssh.host.load1";
+            case LOAD5 -> "webssh.host.load5";
+            case LOAD15 -> "webssh.host.load15";
+            case NET_RX -> "webssh.host.network.receive.rate";
+            case NET_TX -> "webssh.host.network.transmit.rate";
+            case DISK_READ -> "webssh.host.disk.read.rate";
+            case DISK_WRITE -> "webssh.host.disk.write.rate";
+            case UPTIME -> "webssh.host.uptime";
+            case PROCESSES -> "webssh.host.processes";
+            case CONNECTIONS -> "webssh.host.connections";
+        };
+    }
+
+    private static String baseUnit(HostMetric metric) {
+        return switch (metric) {
+            case CPU, MEMORY, DISK -> "ratio";
+            case NET_RX, NET_TX, DISK_READ, DISK_WRITE -> "bytes_per_second";
+            case UPTIME -> "seconds";
+            default -> null;
+        };
+    }
+
+    // 采集结果中以百分数表示的指标
+    private static boolean isPercent(HostMetric metric) {
+        return metric == HostMetric.CPU || metric == HostMetric.MEMORY || metric == HostMetric.DISK;
+    }
+
+    /**
+     * 一台服务器注册的全部指标，以及供 Gauge 读取的最新采样快照
+     */
+    private final class ServerMeters {
+        private final Integer serverId;
+        private final Tags tags;
+        private final List<Meter> meters = new ArrayList<>();
+        private final double[] snapshot = new double[HostMetric.count()];
+        private long snapshotTimestamp = -1;
+        private long snapshotReadAt;
+        // 容器名 -> 运行状态 Gauge 的值
+        private final Map<String, double[]> containers = new HashMap<>();
+        private final Map<String, Meter> containerMeters = new HashMap<>();
+
+        ServerMeters(Integer serverId, Tags tags) {
+            this.serverId = serverId;
+            this.tags = tags;
+        }
+
+        // 抓取线程调用
+        synchronized double value(int index) {
+            refresh();
+            return fresh() ? snapshot[index] : Double.NaN;
+        }
+
+        synchronized double up() {
+            refresh();
+            return fresh() && metricsCollectorService.getLastError(serverId) == null ? 1 : 0;
+        }
+
+        synchronized double containerCount(boolean running) {
+            int count = 0;
+            for (double[] state : containers.values()) {
+                if ((state[0] == 1) == running) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        synchronized void updateContainers(Map<String, Boolean> running) {
+            Iterator<Map.Entry<String, Meter>> iterator = containerMeters.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Meter> entry = iterator.next();
+                if (!running.containsKey(entry.getKey())) {
+                    registry.remove(entry.getValue());
+                    containers.remove(entry.getKey());
+                    iterator.remove();
+                }
+            }
+            for (Map.Entry<String, Boolean> entry : running.entrySet()) {
+                double[] state = containers.get(entry.getKey());
+                if (state == null) {
+                    state = new double[1];
+                    containers.put(entry.getKey(), state);
+                    containerMeters.put(entry.getKey(), Gauge.builder("webssh.container.running", state, s -> s[0])
+                            .tags(tags.and("container", entry.getKey()))
+                            .register(registry));
+                }
+                state[0] = Boolean.TRUE.equals(entry.getValue()) ? 1 : 0;
+            }
+        }
+
+        synchronized void remove() {
+            meters.forEach(registry::remove);
+            containerMeters.values().forEach(registry::remove);
+            meters.clear();
+            containerMeters.clear();
+            containers.clear();
+        }
+
+        private void refresh() {
+            long now = System.currentTimeMillis();
+            if (now - snapshotReadAt >= SNAPSHOT_REUSE_MS) {
+                snapshotTimestamp = metricsCollectorService.getCachedLatest(serverId, snapshot);
+                snapshotReadAt = now;
+            }
+        }
+
+        private boolean fresh() {
+            return snapshotTimestamp >= 0 && System.currentTimeMillis() - snapshotTimestamp <= maxAgeMs;
+        }
+    }
+}
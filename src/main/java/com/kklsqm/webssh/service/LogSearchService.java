@@ -0,0 +1,378 @@
+package com.kklsqm.webssh.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.common.LineReader;
+import com.kklsqm.webssh.common.ShellUtils;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionFactory;
+import com.kklsqm.webssh.domain.SshService;
+import com.kklsqm.webssh.domain.dto.LogSearchRequest;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 功能: 多服务器并行日志搜索
+ * 作者: 沙琪马
+ * 日期: 2025/9/21 10:20
+ *
+ * 每台服务器一个 exec 通道执行 grep/zgrep，同时进行的服务器数受信号量限制。
+ * 匹配行经有界队列交给响应线程按 NDJSON 写出，客户端读得慢时队列写满，
+ * 读取线程阻塞，SSH 窗口随之填满，远程 grep 也会停下来等待。
+ * 达到结果上限、超时、客户端断开或调用取消接口时，给远程进程发 KILL 并断开会话。
+ */
+@Service
+@Slf4j
+public class LogSearchService {
+
+    private static final int DEFAULT_MAX_RESULTS = 1000;
+    private static final int MAX_RESULTS_LIMIT = 10000;
+    private static final int DEFAULT_MAX_PER_SERVER = 500;
+    private static final int MAX_LINE_LENGTH = 2000;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int STDERR_LIMIT = 4096;
+    // 输出中标记文件名的行前缀，grep 结果行不会以该控制字符开头
+    private static final char FILE_MARKER = '\u0001';
+
+    private final SshSessionFactory sessionFactory;
+    private final ObjectMapper objectMapper;
+    private final int maxConcurrent;
+    private final long timeoutMs;
+
+    private final Map<String, SearchTask> searches = new ConcurrentHashMap<>();
+
+    public LogSearchService(SshSessionFactory sessionFactory,
+                            ObjectMapper objectMapper,
+                            @Value("${webssh.search.max-concurrent:8}") int maxConcurrent,
+                            @Value("${webssh.search.timeout:120000}") long timeoutMs) {
+        this.sessionFactory = sessionFactory;
+        this.objectMapper = objectMapper;
+        this.maxConcurrent = maxConcurrent;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * 执行搜索并把结果按 NDJSON 写入 out，返回前会结束所有远程进程
+     */
+    public void search(String searchId, List<SshService> servers, LogSearchRequest request,
+                       OutputStream out) throws IOException {
+        int maxResults = clamp(request.getMaxResults(), DEFAULT_MAX_RESULTS, MAX_RESULTS_LIMIT);
+        int maxPerServer = clamp(request.getMaxPerServer(), DEFAULT_MAX_PER_SERVER, maxResults);
+        String command = buildCommand(request.getPath(), request.getPattern(),
+                request.isRegex(), request.isIgnoreCase(), maxPerServer);
+
+        SearchTask task = new SearchTask(maxResults, maxPerServer, maxConcurrent);
+        if (searches.putIfAbsent(searchId, task) != null) {
+            throw new IllegalStateException("搜索ID已存在: " + searchId);
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            write(out, event("started", Map.of("searchId", searchId, "servers", servers.size())));
+            out.flush();
+
+            for (SshService server : servers) {
+                ServerStats stats = new ServerStats(server.getId(), server.getName());
+                task.stats.add(stats);
+                task.threads.add(Thread.ofVirtual().name("log-search-" + server.getId())
+                        .start(() -> searchServer(task, server, stats, command)));
+            }
+
+            long deadline = startTime + timeoutMs;
+            int remaining = servers.size();
+            while (remaining > 0 && !task.cancelled) {
+                Map<String, Object> event = task.queue.poll(200, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    out.flush();
+                    if (System.currentTimeMillis() > deadline) {
+                        task.timedOut = true;
+                        task.cancel();
+                    }
+                    continue;
+                }
+                if ("server-done".equals(event.get("type"))) {
+                    remaining--;
+                }
+                write(out, event);
+                if (task.queue.isEmpty()) {
+                    out.flush();
+                }
+            }
+
+            // 取消后队列中剩余的结果仍在上限之内，照常输出
+            Map<String, Object> event;
+            while ((event = task.queue.poll()) != null) {
+                write(out, event);
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("matches", task.totalMatches.get());
+            summary.put("truncated", task.truncated);
+            summary.put("cancelled", task.cancelled && !task.truncated && !task.timedOut);
+            summary.put("timedOut", task.timedOut);
+            summary.put("elapsedMs", System.currentTimeMillis() - startTime);
+            summary.put("servers", task.stats);
+            write(out, event("done", summary));
+            out.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            task.cancel();
+            searches.remove(searchId);
+        }
+    }
+
+    /**
+     * 取消正在进行的搜索
+     */
+    public boolean cancel(String searchId) {
+        SearchTask task = searches.get(searchId);
+        if (task == null) {
+            return false;
+        }
+        task.cancel();
+        return true;
+    }
+
+    /**
+     * 生成远程脚本：由 shell 展开路径通配符，逐个文件搜索，
+     * .gz 文件使用 zgrep，每个文件前输出一行文件名标记
+     */
+    static String buildCommand(String pathGlob, String pattern, boolean regex, boolean ignoreCase, int maxPerFile) {
+        StringBuilder options = new StringBuilder("-n -I --line-buffered");
+        options.append(regex ? " -E" : " -F");
+        if (ignoreCase) {
+            options.append(" -i");
+        }
+        options.append(" -m ").append(maxPerFile);
+        String grepArgs = options + " -e " + ShellUtils.quote(pattern) + " -- \"$f\"";
+
+        String script = "P=" + ShellUtils.quote(pathGlob) + "\n"
+                + "IFS='\n'\n"
+                + "for f in $P; do\n"
+                + "  [ -f \"$f\" ] || continue\n"
+                + "  found=1\n"
+                + "  printf '\\001%s\\n' \"$f\"\n"
+                + "  case \"$f\" in\n"
+                + "    *.gz) zgrep " + grepArgs + " ;;\n"
+                + "    *) grep " + grepArgs + " ;;\n"
+                + "  esac\n"
+                + "done\n"
+                + "[ -n \"$found\" ] || { echo \"no file matches $P\" >&2; exit 2; }\n";
+        return "sh -c " + ShellUtils.quote(script);
+    }
+
+    private void searchServer(SearchTask task, SshService server, ServerStats stats, String command) {
+        long start = System.currentTimeMillis();
+        Session session = null;
+        ChannelExec channel = null;
+        boolean acquired = false;
+        try {
+            task.permits.acquire();
+            acquired = true;
+            if (task.cancelled) {
+                stats.setStatus("cancelled");
+                return;
+            }
+            session = sessionFactory.createSession(server);
+            task.sessions.add(session);
+            channel = (ChannelExec) session.openChannel("exec");
+            channel.setCommand(command);
+            ByteArrayOutputStream stderr = new BoundedBuffer(STDERR_LIMIT);
+            channel.setErrStream(stderr);
+            InputStream in = channel.getInputStream();
+            task.channels.add(channel);
+            if (task.cancelled) {
+                stats.setStatus("cancelled");
+                return;
+            }
+            channel.connect();
+
+            LineReader reader = new LineReader(in, MAX_LINE_LENGTH);
+            String currentFile = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && line.charAt(0) == FILE_MARKER) {
+                    currentFile = line.substring(1);
+                    continue;
+                }
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                if (task.totalMatches.incrementAndGet() > task.maxResults) {
+                    task.truncated = true;
+                    task.cancel();
+                    break;
+                }
+                stats.setMatches(stats.getMatches() + 1);
+
+                Map<String, Object> match = new LinkedHashMap<>();
+                match.put("serverId", server.getId());
+                match.put("server", server.getName());
+                match.put("file", currentFile);
+                match.put("line", parseLineNumber(line, colon));
+                match.put("text", line.substring(colon + 1));
+                if (reader.isTruncated()) {
+                    match.put("truncated", true);
+                }
+                task.emit(event("match", match));
+
+                if (stats.getMatches() >= task.maxPerServer) {
+                    stats.setStatus("truncated");
+                    SshExecUtils.kill(channel);
+                    break;
+                }
+            }
+
+            if (stats.getStatus() == null) {
+                if (task.cancelled) {
+                    stats.setStatus("cancelled");
+                } else {
+                    int exitCode = SshExecUtils.waitForExitStatus(channel);
+                    stats.setExitCode(exitCode);
+                    // grep 退出码 2 表示出错，但部分文件有匹配时仍算成功
+                    boolean failed = exitCode > 1 && stats.getMatches() == 0;
+                    stats.setStatus(failed ? "error" : "completed");
+                    if (stderr.size() > 0) {
+                        stats.setMessage(stderr.toString(StandardCharsets.UTF_8).trim());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            stats.setStatus("cancelled");
+        } catch (Exception e) {
+            stats.setStatus(task.cancelled ? "cancelled" : "error");
+            if (!task.cancelled) {
+                stats.setMessage(e.getMessage());
+                log.warn("服务器 {} 日志搜索失败: {}", server.getHost(), e.getMessage());
+            }
+        } finally {
+            if (acquired) {
+                task.permits.release();
+            }
+            if (channel != null) {
+                task.channels.remove(channel);
+                channel.disconnect();
+            }
+            if (session != null) {
+                task.sessions.remove(session);
+                session.disconnect();
+            }
+            stats.setElapsedMs(System.currentTimeMillis() - start);
+            task.emit(event("server-done", Map.of("serverId", server.getId(), "stats", stats)));
+        }
+    }
+
+    private static long parseLineNumber(String line, int colon) {
+        try {
+            return Long.parseLong(line.substring(0, colon));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void write(OutputStream out, Map<String, Object> event) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(event));
+        out.write('\n');
+    }
+
+    private static Map<String, Object> event(String type, Map<String, Object> data) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", type);
+        event.putAll(data);
+        return event;
+    }
+
+    private static int clamp(Integer value, int defaultValue, int max) {
+        if (value == null || value <= 0) {
+            return Math.min(defaultValue, max);
+        }
+        return Math.min(value, max);
+    }
+
+    private static class SearchTask {
+        private final int maxResults;
+        private final int maxPerServer;
+        private final Semaphore permits;
+        private final BlockingQueue<Map<String, Object>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicInteger totalMatches = new AtomicInteger();
+        private final List<ServerStats> stats = new CopyOnWriteArrayList<>();
+        private final List<Thread> threads = new CopyOnWriteArrayList<>();
+        private final Set<ChannelExec> channels = ConcurrentHashMap.newKeySet();
+        private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled;
+        private volatile boolean truncated;
+        private volatile boolean timedOut;
+
+        SearchTask(int maxResults, int maxPerServer, int maxConcurrent) {
+            this.maxResults = maxResults;
+            this.maxPerServer = maxPerServer;
+            this.permits = new Semaphore(maxConcurrent);
+        }
+
+        void emit(Map<String, Object> event) {
+            try {
+                queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            channels.forEach(SshExecUtils::kill);
+            sessions.forEach(Session::disconnect);
+            threads.forEach(Thread::interrupt);
+        }
+    }
+
+    @Data
+    public static class ServerStats {
+        private final Integer serverId;
+        private final String server;
+        // completed / truncated / cancelled / error
+        private volatile String status;
+        private volatile int matches;
+        private volatile Integer exitCode;
+        private volatile String message;
+        private volatile long elapsedMs;
+    }
+
+    /**
+     * 只保留前 limit 个字节的 stderr
+     */
+    private static class BoundedBuffer extends ByteArrayOutputStream {
+        private final int limit;
+
+        BoundedBuffer(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (count < limit) {
+                super.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int allowed = Math.min(len, limit - count);
+            if (allowed > 0) {
+                super.write(b, off, allowed);
+            }
+        }
+    }
+}
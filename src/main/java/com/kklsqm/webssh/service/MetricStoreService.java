@@ -0,0 +1,519 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.common.GorillaSegment;
+import com.kklsqm.webssh.common.MetricRingBuffer;
+import com.kklsqm.webssh.domain.HostMetric;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 功能: 主机指标的本地时间序列存储
+ * 作者: 沙琪马
+ * 日期: 2025/9/27 11:00
+ *
+ * 采集到的指标追加到本地的 Gorilla 压缩段文件 (见 GorillaSegment)，重启后历史不丢失，不依赖外部服务。
+ * 每台服务器三个精度：原始采样、1 分钟平均、1 小时平均。原始数据写入时顺带累加进 1 分钟桶，
+ * 1 分钟的点再累加进 1 小时桶，各精度按自己的保留天数清理。
+ *
+ * 目录结构: {dir}/{serverId}/{raw|1m|1h}/{首条时间戳}.seg，每个精度同一时间只有一个段在追加。
+ */
+@Service
+@Slf4j
+public class MetricStoreService {
+
+    // 段文件初始映射 64KB，按需倍增，单段最大 64MB
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int MAX_CAPACITY = 64 * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // 自动选择精度时，允许读取的点数为返回点数的多少倍
+    private static final int MAX_SCAN_FACTOR = 20;
+
+    /**
+     * 存储精度，step 为汇总的时间桶 (原始数据为 0)，segmentSpan 为单个段文件覆盖的时间
+     */
+    public enum Resolution {
+        RAW("raw", 0, TimeUnit.DAYS.toMillis(1)),
+        MINUTE("1m", TimeUnit.MINUTES.toMillis(1), TimeUnit.DAYS.toMillis(7)),
+        HOUR("1h", TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(90));
+
+        private final String key;
+        private final long step;
+        private final long segmentSpan;
+
+        Resolution(String key, long step, long segmentSpan) {
+            this.key = key;
+            this.step = step;
+            this.segmentSpan = segmentSpan;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getStep() {
+            return step;
+        }
+
+        public long getSegmentSpan() {
+            return segmentSpan;
+        }
+
+        public static Resolution fromKey(String key) {
+            for (Resolution resolution : values()) {
+                if (resolution.key.equalsIgnoreCase(key)) {
+                    return resolution;
+                }
+            }
+            throw new IllegalArgumentException("不支持的精度: " + key);
+        }
+    }
+
+    private final boolean enabled;
+    private final Path root;
+    private final long[] retentionMs;
+    private final Map<Integer, ServerStore> stores = new ConcurrentHashMap<>();
+
+    public MetricStoreService(@Value("${webssh.tsdb.enabled:true}") boolean enabled,
+                              @Value("${webssh.tsdb.dir:data/tsdb}") String dir,
+                              @Value("${webssh.tsdb.raw-retention-days:7}") long rawRetentionDays,
+                              @Value("${webssh.tsdb.minute-retention-days:90}") long minuteRetentionDays,
+                              @Value("${webssh.tsdb.hour-retention-days:730}") long hourRetentionDays) {
+        this.enabled = enabled;
+        this.root = Paths.get(dir);
+        this.retentionMs = new long[]{
+                TimeUnit.DAYS.toMillis(rawRetentionDays),
+                TimeUnit.DAYS.toMillis(minuteRetentionDays),
+                TimeUnit.DAYS.toMillis(hourRetentionDays)};
+    }
+
+    /**
+     * 追加一次采样，values 按 HostMetric 下标排列；时间戳不大于上一条的采样被忽略。
+     * 存储出错只记录日志，不影响采集
+     */
+    public void append(Integer serverId, long timestamp, double[] values) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            storeOf(serverId).append(timestamp, values);
+        } catch (IOException | RuntimeException e) {
+            log.warn("写入服务器 {} 的指标历史失败: {}", serverId, e.getMessage());
+        }
+    }
+
+    /**
+     * 查询 [from, to] 范围内某个精度的数据，按时间升序
+     */
+    public MetricRingBuffer.Range query(Integer serverId, Resolution resolution, long from, long to) throws IOException {
+        if (!enabled || !Files.isDirectory(root.resolve(String.valueOf(serverId)))) {
+            return new MetricRingBuffer.Range(new long[0], new double[HostMetric.count()][0]);
+        }
+        RangeBuilder builder = new RangeBuilder(HostMetric.count());
+        storeOf(serverId).scan(resolution, from, to, builder);
+        return builder.build();
+    }
+
+    /**
+     * 按时间跨度选择精度：最细的、保留期覆盖 from、且需要读取的点数不超过 points 的 MAX_SCAN_FACTOR 倍的精度。
+     * 5 分钟的图读原始数据，一天读 1 分钟数据，一个月读 1 小时数据，读取和降采样的开销基本不随跨度增长
+     *
+     * @param rawIntervalMs 原始数据的采样间隔
+     */
+    public Resolution chooseResolution(long from, long to, long rawIntervalMs, int points) {
+        long now = System.currentTimeMillis();
+        long budget = (long) Math.max(points, 1) * MAX_SCAN_FACTOR;
+        for (Resolution resolution : Resolution.values()) {
+            long step = resolution == Resolution.RAW ? Math.max(rawIntervalMs, 1) : resolution.getStep();
+            boolean retained = from >= now - retentionMs[resolution.ordinal()];
+            if (retained && (to - from) / step <= budget) {
+                return resolution;
+            }
+        }
+        return Resolution.HOUR;
+    }
+
+    /**
+     * 关闭服务器的段文件 (例如服务器已删除)，数据保留到过期清理
+     */
+    public void close(Integer serverId) {
+        ServerStore store = stores.remove(serverId);
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * 按各精度的保留天数删除过期的段文件
+     */
+    @Scheduled(fixedDelayString = "${webssh.tsdb.retention-check-interval:3600000}", initialDelay = 60000)
+    public void enforceRetention() {
+        if (!enabled || !Files.isDirectory(root)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (Stream<Path> servers = Files.list(root)) {
+            for (Path serverDir : servers.toList()) {
+                for (Resolution resolution : Resolution.values()) {
+                    deleteExpired(serverDir, resolution, now - retentionMs[resolution.ordinal()]);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("清理过期指标历史失败: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stores.values().forEach(ServerStore::close);
+        stores.clear();
+    }
+
+    private void deleteExpired(Path serverDir, Resolution resolution, long cutoff) throws IOException {
+        Path dir = serverDir.resolve(resolution.getKey());
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        Integer serverId = parseInt(serverDir.getFileName().toString());
+        ServerStore store = serverId == null ? null : stores.get(serverId);
+        Path active = store == null ? null : store.activeFile(resolution);
+        for (Path file : listSegments(dir)) {
+            if (file.equals(active)) {
+                continue;
+            }
+            try {
+                long last = GorillaSegment.readHeader(file).lastTimestamp();
+                if (last < cutoff) {
+                    Files.deleteIfExists(file);
+                    log.debug("删除过期的指标段文件: {}", file);
+                }
+            } catch (IOException e) {
+                log.warn("读取指标段文件 {} 失败: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private ServerStore storeOf(Integer serverId) throws IOException {
+        ServerStore store = stores.get(serverId);
+        if (store != null) {
+            return store;
+        }
+        synchronized (stores) {
+            store = stores.get(serverId);
+            if (store == null) {
+                store = new ServerStore(root.resolve(String.valueOf(serverId)));
+                stores.put(serverId, store);
+            }
+            return store;
+        }
+    }
+
+    // 按文件名 (首条时间戳) 升序的段文件
+    private static List<Path> listSegments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted(Comparator.comparingLong(MetricStoreService::segmentStart))
+                    .toList();
+        }
+    }
+
+    private static long segmentStart(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static Integer parseInt(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 一台服务器的全部精度，读写都在对象锁内
+     */
+    private static final class ServerStore {
+
+        private final Level[] levels = new Level[Resolution.values().length];
+
+        ServerStore(Path dir) throws IOException {
+            for (Resolution resolution : Resolution.values()) {
+                levels[resolution.ordinal()] = new Level(resolution, dir.resolve(resolution.getKey()));
+            }
+            rebuildRollups();
+        }
+
+        synchronized void append(long timestamp, double[] values) throws IOException {
+            write(0, timestamp, values);
+        }
+
+        synchronized void scan(Resolution resolution, long from, long to, GorillaSegment.PointConsumer consumer) throws IOException {
+            levels[resolution.ordinal()].scan(from, to, consumer);
+        }
+
+        synchronized Path activeFile(Resolution resolution) {
+            GorillaSegment active = levels[resolution.ordinal()].active;
+            return active == null ? null : active.getFile();
+        }
+
+        synchronized void close() {
+            for (Level level : levels) {
+                level.close();
+            }
+        }
+
+        // 写入第 index 个精度并累加到下一级的时间桶
+        private void write(int index, long timestamp, double[] values) throws IOException {
+            if (!levels[index].append(timestamp, values)) {
+                return;
+            }
+            accumulate(index + 1, timestamp, values);
+        }
+
+        private void accumulate(int index, long timestamp, double[] values) throws IOException {
+            if (index >= levels.length) {
+                return;
+            }
+            Level level = levels[index];
+            long bucket = timestamp - Math.floorMod(timestamp, level.resolution.getStep());
+            if (bucket != level.bucket) {
+                // 进入新的时间桶时写出上一个桶的平均值
+                if (level.hasPending()) {
+                    double[] averages = level.averages();
+                    long finished = level.bucket;
+                    level.resetBucket(bucket);
+                    write(index, finished, averages);
+                } else {
+                    level.resetBucket(bucket);
+                }
+            }
+            level.add(values);
+        }
+
+        /**
+         * 重启后用下一级已有的数据恢复未写出的时间桶：先恢复 1 小时 (来自 1 分钟)，
+         * 再恢复 1 分钟 (来自原始数据)，后者写出的新 1 分钟点会继续累加进 1 小时
+         */
+        private void rebuildRollups() throws IOException {
+            for (int index = levels.length - 1; index > 0; index--) {
+                Level level = levels[index];
+                long last = level.lastTimestamp();
+                long from = last < 0 ? Long.MIN_VALUE : last + level.resolution.getStep();
+                int target = index;
+                IOException[] failure = new IOException[1];
+                levels[index - 1].scan(from, Long.MAX_VALUE, (timestamp, values) -> {
+                    try {
+                        accumulate(target, timestamp, values);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个精度：当前追加的段和 (汇总精度的) 未写出时间桶
+     */
+    private static final class Level {
+
+        private final Resolution resolution;
+        private final Path dir;
+        private GorillaSegment active;
+        private long lastTimestamp = -1;
+
+        // 时间桶累加，NaN 不计入
+        private long bucket = Long.MIN_VALUE;
+        private final double[] sums = new double[HostMetric.count()];
+        private final int[] counts = new int[HostMetric.count()];
+
+        Level(Resolution resolution, Path dir) throws IOException {
+            this.resolution = resolution;
+            this.dir = dir;
+            List<Path> segments = listSegments(dir);
+            if (!segments.isEmpty()) {
+                Path newest = segments.get(segments.size() - 1);
+                try {
+                    active = GorillaSegment.open(newest, MAX_CAPACITY);
+                    lastTimestamp = active.getLastTimestamp();
+                    if (active.getMetricCount() != HostMetric.count()) {
+                        // 指标列有增减，旧段不再追加
+                        close();
+                    }
+                } catch (IOException e) {
+                    // 损坏的段不再追加，之后的数据写入新段
+                    log.warn("无法继续追加指标段文件 {}: {}", newest, e.getMessage());
+                }
+            }
+        }
+
+        long lastTimestamp() {
+            return lastTimestamp;
+        }
+
+        /**
+         * 追加一条记录，早于已有数据的记录被忽略并返回 false
+         */
+        boolean append(long timestamp, double[] values) throws IOException {
+            if (timestamp <= lastTimestamp) {
+                return false;
+            }
+            if (active != null && timestamp >= windowEnd(active.getFirstTimestamp())) {
+                seal();
+            }
+            if (active == null || !active.append(timestamp, values)) {
+                // 没有段、段已写满或刚被封存
+                seal();
+                Files.createDirectories(dir);
+                active = GorillaSegment.create(dir.resolve(timestamp + SEGMENT_SUFFIX), HostMetric.count(),
+                        resolution.getStep(), INITIAL_CAPACITY, MAX_CAPACITY);
+                active.append(timestamp, values);
+            }
+            lastTimestamp = timestamp;
+            return true;
+        }
+
+        void scan(long from, long to, GorillaSegment.PointConsumer consumer) throws IOException {
+            List<Path> segments = listSegments(dir);
+            for (int i = 0; i < segments.size(); i++) {
+                Path file = segments.get(i);
+                // 段 i 的数据都早于段 i+1 的首条时间戳
+                if (i + 1 < segments.size() && segmentStart(segments.get(i + 1)) <= from) {
+                    continue;
+                }
+                if (segmentStart(file) > to) {
+                    break;
+                }
+                if (active != null && file.equals(active.getFile())) {
+                    active.scan(from, to, consumer);
+                    continue;
+                }
+                try {
+                    GorillaSegment.scan(file, from, to, consumer);
+                } catch (NoSuchFileException e) {
+                    // 刚被过期清理删除
+                }
+            }
+        }
+
+        boolean hasPending() {
+            for (int count : counts) {
+                if (count > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(double[] values) {
+            for (int metric = 0; metric < sums.length; metric++) {
+                if (!Double.isNaN(values[metric])) {
+                    sums[metric] += values[metric];
+                    counts[metric]++;
+                }
+            }
+        }
+
+        double[] averages() {
+            double[] averages = new double[sums.length];
+            for (int metric = 0; metric < sums.length; metric++) {
+                averages[metric] = counts[metric] == 0 ? Double.NaN : sums[metric] / counts[metric];
+            }
+            return averages;
+        }
+
+        void resetBucket(long bucket) {
+            this.bucket = bucket;
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+        }
+
+        void close() {
+            if (active == null) {
+                return;
+            }
+            try {
+                active.close();
+            } catch (IOException e) {
+                log.warn("关闭指标段文件 {} 失败: {}", active.getFile(), e.getMessage());
+            }
+            active = null;
+        }
+
+        private void seal() throws IOException {
+            if (active != null) {
+                GorillaSegment sealing = active;
+                active = null;
+                sealing.seal();
+            }
+        }
+
+        // 段按 segmentSpan 对齐的时间窗口切分，便于按天清理
+        private long windowEnd(long firstTimestamp) {
+            long span = resolution.getSegmentSpan();
+            return firstTimestamp - Math.floorMod(firstTimestamp, span) + span;
+        }
+    }
+
+    /**
+     * 用基本类型数组收集扫描结果，按需倍增
+     */
+    private static final class RangeBuilder implements GorillaSegment.PointConsumer {
+
+        private long[] timestamps = new long[256];
+        private double[][] values;
+        private int size;
+
+        RangeBuilder(int metricCount) {
+            values = new double[metricCount][timestamps.length];
+        }
+
+        @Override
+        public void accept(long timestamp, double[] point) {
+            if (size == timestamps.length) {
+                int capacity = size * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                for (int metric = 0; metric < values.length; metric++) {
+                    values[metric] = Arrays.copyOf(values[metric], capacity);
+                }
+            }
+            timestamps[size] = timestamp;
+            for (int metric = 0; metric < values.length; metric++) {
+                // 旧段文件可能少几列指标
+                values[metric][size] = metric < point.length ? point[metric] : Double.NaN;
+            }
+            size++;
+        }
+
+        MetricRingBuffer.Range build() {
+            double[][] trimmed = new double[values.length][];
+            for (int metric = 0; metric < values.length; metric++) {
+                trimmed[metric] = Arrays.copyOf(values[metric], size);
+            }
+            return new MetricRingBuffer.Range(Arrays.copyOf(timestamps, size), trimmed);
+        }
+    }
+}
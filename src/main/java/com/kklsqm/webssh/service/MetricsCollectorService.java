@@ -0,0 +1,297 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.common.Lttb;
+import com.kklsqm.webssh.common.MetricRingBuffer;
+import com.kklsqm.webssh.common.ProcSampleParser;
+import com.kklsqm.webssh.common.SingleFlight;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionPool;
+import com.kklsqm.webssh.domain.HostMetric;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 功能: 主机指标后台采集
+ * 作者: 沙琪马
+ * 日期: 2025/9/25 10:30
+ *
+ * 按固定间隔对所有已登记的服务器采样 CPU、内存、磁盘、负载、网络等指标，
+ * 每台服务器一个共享会话、每次采样一个 exec 通道 (见 ProcSampleParser)，结果写入该服务器的环形缓冲区。
+ * 仪表盘的指标和历史接口直接读内存，不再触发 SSH。
+ */
+@Service
+@Slf4j
+public class MetricsCollectorService {
+
+    // 自动选择精度但不降采样时，按这个点数估算
+    private static final int DEFAULT_POINTS = 1000;
+
+    private final SshServiceService sshServiceService;
+    private final SshSessionPool sessionPool;
+    private final MetricStoreService metricStoreService;
+    private final AlertEngineService alertEngineService;
+    private final boolean enabled;
+    private final long intervalMs;
+    private final int capacity;
+    private final Semaphore permits;
+
+    private final Map<Integer, ServerSeries> series = new ConcurrentHashMap<>();
+    // 现场采样：同一服务器的并发请求合并为一次，不缓存 (结果已在环形缓冲区中)
+    private final SingleFlight<Integer, Boolean> onDemandSamples = new SingleFlight<>(0);
+    private final ExecutorService samplers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public MetricsCollectorService(SshServiceService sshServiceService,
+                                   SshSessionPool sessionPool,
+                                   MetricStoreService metricStoreService,
+                                   AlertEngineService alertEngineService,
+                                   @Value("${webssh.metrics.enabled:true}") boolean enabled,
+                                   @Value("${webssh.metrics.interval:5000}") long intervalMs,
+                                   @Value("${webssh.metrics.capacity:720}") int capacity,
+                                   @Value("${webssh.metrics.max-concurrent:32}") int maxConcurrent) {
+        this.sshServiceService = sshServiceService;
+        this.sessionPool = sessionPool;
+        this.metricStoreService = metricStoreService;
+        this.alertEngineService = alertEngineService;
+        this.enabled = enabled;
+        this.intervalMs = intervalMs;
+        this.capacity = capacity;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * 定时采集所有服务器，上一次采集还没结束或刚被采过 (例如仪表盘实时推送中) 的服务器本轮跳过
+     */
+    @Scheduled(fixedRateString = "${webssh.metrics.interval:5000}", initialDelayString = "${webssh.metrics.initial-delay:10000}")
+    public void collectAll() {
+        if (!enabled) {
+            return;
+        }
+        List<SshService> servers = sshServiceService.list();
+        Set<Integer> ids = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for (SshService server : servers) {
+            ids.add(server.getId());
+            ServerSeries target = seriesOf(server.getId());
+            if (now - target.buffer.latestTimestamp() < intervalMs / 2) {
+                continue;
+            }
+            if (!target.collecting.compareAndSet(false, true)) {
+                continue;
+            }
+            samplers.submit(() -> {
+                try {
+                    permits.acquire();
+                    try {
+                        sample(server, target);
+                    } finally {
+                        permits.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.debug("采集服务器 {} 指标失败: {}", server.getId(), e.getMessage());
+                } finally {
+                    target.collecting.set(false);
+                }
+            });
+        }
+
+        // 已删除的服务器不再保留数据和会话
+        for (Integer id : series.keySet()) {
+            if (!ids.contains(id)) {
+                series.remove(id);
+                sessionPool.remove(id);
+                metricStoreService.close(id);
+            }
+        }
+    }
+
+    /**
+     * 最新采样值，还没有数据时立即采集一次
+     */
+    public Map<String, Object> getLatest(SshService server) throws Exception {
+        return getLatest(server, Long.MAX_VALUE);
+    }
+
+    /**
+     * 最新采样值，没有数据或最新数据早于 maxAgeMs 时立即采集一次，
+     * 多个请求同时发现数据过旧时只采集一次
+     */
+    public Map<String, Object> getLatest(SshService server, long maxAgeMs) throws Exception {
+        ServerSeries target = seriesOf(server.getId());
+        if (isStale(target, maxAgeMs)) {
+            onDemandSamples.get(server.getId(), () -> {
+                // 等待锁期间后台采集可能刚采过
+                if (isStale(target, maxAgeMs)) {
+                    sample(server, target);
+                }
+                return Boolean.TRUE;
+            });
+        }
+        double[] values = new double[HostMetric.count()];
+        long timestamp = target.buffer.latest(values);
+        return toPoint(timestamp, values);
+    }
+
+    /**
+     * 把已缓存的最新采样复制到 dest 并返回其时间戳，没有数据时返回 -1，不会触发采集
+     */
+    public long getCachedLatest(Integer serverId, double[] dest) {
+        ServerSeries target = series.get(serverId);
+        return target == null ? -1 : target.buffer.latest(dest);
+    }
+
+    /**
+     * 缓冲区中的全部历史，按时间升序
+     */
+    public List<Map<String, Object>> getHistory(Integer serverId) {
+        ServerSeries target = series.get(serverId);
+        if (target == null) {
+            return List.of();
+        }
+        return toPoints(target.buffer.range(0, Long.MAX_VALUE));
+    }
+
+    /**
+     * 本地存储中 [from, to] 范围内的历史，每个指标一组 [时间戳, 值]，按时间升序
+     *
+     * @param resolution 精度，null 时按时间跨度自动选择
+     * @param points 每个指标最多返回的点数 (LTTB 降采样)，0 表示不降采样
+     */
+    public Map<String, Object> getHistory(Integer serverId, MetricStoreService.Resolution resolution,
+                                          long from, long to, int points) throws IOException {
+        if (resolution == null) {
+            resolution = metricStoreService.chooseResolution(from, to, intervalMs, points > 0 ? points : DEFAULT_POINTS);
+        }
+        MetricRingBuffer.Range range = metricStoreService.query(serverId, resolution, from, to);
+
+        Map<String, Object> seriesByMetric = new LinkedHashMap<>();
+        for (int metric = 0; metric < HostMetric.count(); metric++) {
+            double[] values = range.values()[metric];
+            int[] selected = Lttb.select(range.timestamps(), values, 0, range.size(), points > 0 ? points : range.size());
+            List<Object[]> pairs = new ArrayList<>(selected.length);
+            for (int index : selected) {
+                pairs.add(new Object[]{range.timestamps()[index], values[index]});
+            }
+            seriesByMetric.put(HostMetric.of(metric).getKey(), pairs);
+        }
+
+        Map<String, Object> history = new LinkedHashMap<>();
+        history.put("resolution", resolution.getKey());
+        history.put("from", from);
+        history.put("to", to);
+        history.put("sourcePoints", range.size());
+        history.put("series", seriesByMetric);
+        return history;
+    }
+
+    private static List<Map<String, Object>> toPoints(MetricRingBuffer.Range range) {
+        List<Map<String, Object>> points = new ArrayList<>(range.size());
+        double[] values = new double[HostMetric.count()];
+        for (int i = 0; i < range.size(); i++) {
+            for (int metric = 0; metric < values.length; metric++) {
+                values[metric] = range.values()[metric][i];
+            }
+            points.add(toPoint(range.timestamps()[i], values));
+        }
+        return points;
+    }
+
+    /**
+     * 最近一次采集失败的原因，没有失败时为 null
+     */
+    public String getLastError(Integer serverId) {
+        ServerSeries target = series.get(serverId);
+        return target == null ? null : target.lastError;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        samplers.shutdownNow();
+    }
+
+    private static boolean isStale(ServerSeries target, long maxAgeMs) {
+        long latest = target.buffer.latestTimestamp();
+        return latest < 0 || System.currentTimeMillis() - latest > maxAgeMs;
+    }
+
+    private ServerSeries seriesOf(Integer serverId) {
+        return series.computeIfAbsent(serverId, id -> new ServerSeries(new MetricRingBuffer(capacity, HostMetric.count())));
+    }
+
+    /**
+     * 执行一次采样并写入缓冲区，同一服务器的采样串行执行 (速率依赖上一次的计数)
+     */
+    private void sample(SshService server, ServerSeries target) throws Exception {
+        synchronized (target) {
+            Session session = sessionPool.acquire(server);
+            String command = target.parser.hasBaseline() ? ProcSampleParser.COMMAND : ProcSampleParser.FIRST_COMMAND;
+            target.output.reset();
+            try {
+                SshExecUtils.exec(session, command, null, target.output, OutputStream.nullOutputStream());
+            } catch (Exception e) {
+                sessionPool.invalidate(server.getId(), session);
+                target.lastError = e.getMessage();
+                throw e;
+            }
+
+            long now = System.currentTimeMillis();
+            target.parser.parse(target.output.buffer(), target.output.size(), now, target.values);
+            target.buffer.append(now, target.values);
+            metricStoreService.append(server.getId(), now, target.values);
+            alertEngineService.onSample(server, now, target.values);
+            target.lastError = null;
+        }
+    }
+
+    private static Map<String, Object> toPoint(long timestamp, double[] values) {
+        Map<String, Object> point = new LinkedHashMap<>();
+        point.put("timestamp", timestamp);
+        for (int metric = 0; metric < values.length; metric++) {
+            // 缺失的值返回 null，NaN 不是合法的 JSON 数字
+            point.put(HostMetric.of(metric).getKey(), Double.isNaN(values[metric]) ? null : values[metric]);
+        }
+        return point;
+    }
+
+    // 单台服务器的采样数据，输出缓冲区和解析结果数组在每次采样间复用
+    private static class ServerSeries {
+        private final MetricRingBuffer buffer;
+        private final AtomicBoolean collecting = new AtomicBoolean();
+        private final ProcSampleParser parser = new ProcSampleParser();
+        private final ReusableOutputStream output = new ReusableOutputStream();
+        private final double[] values = new double[HostMetric.count()];
+        private volatile String lastError;
+
+        ServerSeries(MetricRingBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    // 可以直接读取内部数组的 ByteArrayOutputStream，reset 后复用同一块内存
+    private static class ReusableOutputStream extends ByteArrayOutputStream {
+
+        ReusableOutputStream() {
+            super(16 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
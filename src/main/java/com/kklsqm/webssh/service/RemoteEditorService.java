@@ -0,0 +1,472 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.kklsqm.webssh.common.ShellUtils;
+import com.kklsqm.webssh.common.SshExecUtils;
+import com.kklsqm.webssh.common.SshSessionFactory;
+import com.kklsqm.webssh.domain.SshService;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 功能: 远程文件编辑
+ * 作者: 沙琪马
+ * 日期: 2025/9/24 10:00
+ *
+ * 打开文件时只记录大小和修改时间，工作副本是本地的稀疏文件，按固定大小分块，
+ * 读取或修改到某一块时才用 SFTP 偏移读取把它取回来。
+ * 保存时只把脏块所在的区间写回远程 (RESUME 模式按偏移写入，不截断文件)，
+ * 文件变短时再截断到新长度；写入前比对远程大小和修改时间，发现并发修改则拒绝保存。
+ *
+ * 约定：未加载的块 i 始终对应远程文件 [i * blockSize, (i + 1) * blockSize)。
+ * 改变长度的编辑会让其后的数据整体移动，因此先把编辑点之后的块全部加载，
+ * 这类编辑的保存代价是从编辑点到文件末尾，等长替换的保存代价只与修改范围有关。
+ * 保存不是原子操作，写入中途失败时远程文件可能只写入了部分区间。
+ */
+@Service
+@Slf4j
+public class RemoteEditorService {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int MAX_READ_LENGTH = 4 * 1024 * 1024;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final long IDLE_TIMEOUT_MS = 30 * 60 * 1000;
+
+    private final SshSessionFactory sessionFactory;
+    private final FileTransferService fileTransferService;
+    private final Path spoolDir;
+
+    private final Map<String, EditSession> sessions = new ConcurrentHashMap<>();
+
+    public RemoteEditorService(SshSessionFactory sessionFactory,
+                               FileTransferService fileTransferService,
+                               @Value("${webssh.file.temp-dir:/tmp/webssh-uploads}") String tempDir) {
+        this.sessionFactory = sessionFactory;
+        this.fileTransferService = fileTransferService;
+        this.spoolDir = Paths.get(tempDir, "editor");
+    }
+
+    /**
+     * 打开远程文件，不读取内容
+     */
+    public EditInfo open(SshService server, String path) throws Exception {
+        SftpATTRS attrs = withSftp(server, sftp -> sftp.stat(path));
+        if (attrs.isDir()) {
+            throw new IllegalArgumentException("不能编辑目录: " + path);
+        }
+        Files.createDirectories(spoolDir);
+        String editId = UUID.randomUUID().toString();
+        Path spool = spoolDir.resolve(editId);
+        EditSession session = new EditSession(editId, server, path, attrs.getSize(), attrs.getMTime(), spool);
+        sessions.put(editId, session);
+        log.info("打开远程文件编辑: {}:{}, 大小 {}", server.getHost(), path, attrs.getSize());
+        return session.info();
+    }
+
+    /**
+     * 读取工作副本中的一段内容
+     */
+    public Content read(String editId, long offset, int length) throws Exception {
+        EditSession session = require(editId);
+        synchronized (session) {
+            long start = Math.min(Math.max(0, offset), session.size);
+            int count = (int) Math.min(Math.min(length, MAX_READ_LENGTH), session.size - start);
+            ensureLoaded(session, start, count);
+            byte[] data = new byte[Math.max(0, count)];
+            session.file.seek(start);
+            session.file.readFully(data);
+
+            Content content = new Content();
+            content.setOffset(start);
+            content.setLength(data.length);
+            content.setText(new String(data, StandardCharsets.UTF_8));
+            content.setInfo(session.info());
+            return content;
+        }
+    }
+
+    /**
+     * 把 [offset, offset + deleteLength) 替换为 text
+     */
+    public EditInfo edit(String editId, long offset, long deleteLength, String text) throws Exception {
+        EditSession session = require(editId);
+        byte[] data = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        synchronized (session) {
+            if (offset < 0 || deleteLength < 0 || offset + deleteLength > session.size) {
+                throw new IllegalArgumentException("编辑范围超出文件大小");
+            }
+            if (data.length == deleteLength) {
+                ensureLoaded(session, offset, data.length);
+                session.file.seek(offset);
+                session.file.write(data);
+                markDirty(session, offset, data.length);
+            } else {
+                // 长度变化：其后的数据整体移动，先取回所有后续块
+                ensureLoaded(session, offset, session.size - offset);
+                long tailStart = offset + deleteLength;
+                long tailLength = session.size - tailStart;
+                long newSize = session.size - deleteLength + data.length;
+                moveTail(session.file, tailStart, offset + data.length, tailLength);
+                session.file.seek(offset);
+                session.file.write(data);
+                session.file.setLength(newSize);
+                session.size = newSize;
+                session.loaded.set((int) (offset / BLOCK_SIZE), blockCount(newSize) + 1);
+                markDirty(session, offset, Math.max(newSize - offset, 1));
+            }
+            session.touch();
+            return session.info();
+        }
+    }
+
+    /**
+     * 把脏块写回远程文件
+     *
+     * @param force 为 true 时忽略远程文件的并发修改
+     */
+    public SaveResult save(String editId, boolean force) throws Exception {
+        EditSession session = require(editId);
+        synchronized (session) {
+            long start = System.currentTimeMillis();
+            SaveResult result = new SaveResult();
+            Session ssh = sessionFactory.createSession(session.server);
+            ChannelSftp sftp = null;
+            try {
+                sftp = (ChannelSftp) ssh.openChannel("sftp");
+                sftp.connect();
+
+                SftpATTRS remote = sftp.stat(session.path);
+                if (!force && (remote.getSize() != session.baseSize || remote.getMTime() != session.baseMtime)) {
+                    throw new ConflictException("远程文件已被修改 (大小 " + session.baseSize + " -> " + remote.getSize()
+                            + ", 修改时间 " + session.baseMtime + " -> " + remote.getMTime() + ")");
+                }
+
+                long remoteSize = remote.getSize();
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int block = session.dirty.nextSetBit(0);
+                while (block >= 0) {
+                    int runEnd = session.dirty.nextClearBit(block);
+                    long rangeStart = (long) block * BLOCK_SIZE;
+                    long rangeEnd = Math.min((long) runEnd * BLOCK_SIZE, session.size);
+                    if (rangeStart < rangeEnd) {
+                        writeRange(sftp, session, rangeStart, rangeEnd - rangeStart, remoteSize, buffer);
+                        remoteSize = Math.max(remoteSize, rangeEnd);
+                        result.setBytesWritten(result.getBytesWritten() + rangeEnd - rangeStart);
+                        result.setRanges(result.getRanges() + 1);
+                    }
+                    block = session.dirty.nextSetBit(runEnd);
+                }
+
+                if (remoteSize > session.size) {
+                    truncate(ssh, session.path, session.size);
+                }
+
+                SftpATTRS updated = sftp.stat(session.path);
+                session.baseSize = updated.getSize();
+                session.baseMtime = updated.getMTime();
+                session.dirty.clear();
+                session.touch();
+            } finally {
+                if (sftp != null) {
+                    sftp.disconnect();
+                }
+                ssh.disconnect();
+                // 目录列表中的大小和修改时间已经变化
+                fileTransferService.invalidateListings(session.server);
+            }
+            result.setInfo(session.info());
+            result.setElapsedMs(System.currentTimeMillis() - start);
+            log.info("保存远程文件: {}, 写入 {} 字节 / {} 个区间", session.path, result.getBytesWritten(), result.getRanges());
+            return result;
+        }
+    }
+
+    public void close(String editId) {
+        EditSession session = sessions.remove(editId);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    /**
+     * 清理长时间未操作的编辑会话
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void cleanupIdle() {
+        long now = System.currentTimeMillis();
+        sessions.values().stream()
+                .filter(session -> now - session.lastAccess > IDLE_TIMEOUT_MS)
+                .map(session -> session.editId)
+                .toList()
+                .forEach(this::close);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.keySet().forEach(this::close);
+    }
+
+    private EditSession require(String editId) {
+        EditSession session = sessions.get(editId);
+        if (session == null) {
+            throw new NoSuchElementException("编辑会话不存在或已过期");
+        }
+        return session;
+    }
+
+    /**
+     * 取回范围内尚未加载的块，连续的缺失块合并为一次偏移读取
+     */
+    private void ensureLoaded(EditSession session, long offset, long length) throws Exception {
+        if (length <= 0) {
+            return;
+        }
+        int first = (int) (offset / BLOCK_SIZE);
+        int last = (int) ((offset + length - 1) / BLOCK_SIZE);
+        int missing = session.loaded.nextClearBit(first);
+        if (missing > last) {
+            return;
+        }
+        withSftp(session.server, sftp -> {
+            byte[] buffer = new byte[BLOCK_SIZE];
+            int block = missing;
+            while (block <= last) {
+                int next = session.loaded.nextSetBit(block);
+                int runEnd = next < 0 || next > last ? last + 1 : next;
+                long start = (long) block * BLOCK_SIZE;
+                long end = Math.min((long) runEnd * BLOCK_SIZE, session.baseSizeAtOpen);
+                if (start < end) {
+                    try (InputStream in = sftp.get(session.path, null, start)) {
+                        long remaining = end - start;
+                        long position = start;
+                        while (remaining > 0) {
+                            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                            if (read == -1) {
+                                break;
+                            }
+                            session.file.seek(position);
+                            session.file.write(buffer, 0, read);
+                            position += read;
+                            remaining -= read;
+                        }
+                    }
+                }
+                session.loaded.set(block, runEnd);
+                block = session.loaded.nextClearBit(runEnd);
+            }
+            return null;
+        });
+    }
+
+    private void writeRange(ChannelSftp sftp, EditSession session, long offset, long length,
+                            long remoteSize, byte[] buffer) throws Exception {
+        // RESUME 模式以写方式打开且不截断，写入位置为远程文件大小加上 offset 参数
+        try (OutputStream out = sftp.put(session.path, null, ChannelSftp.RESUME, offset - remoteSize)) {
+            long remaining = length;
+            session.file.seek(offset);
+            while (remaining > 0) {
+                int chunk = (int) Math.min(buffer.length, remaining);
+                session.file.readFully(buffer, 0, chunk);
+                out.write(buffer, 0, chunk);
+                remaining -= chunk;
+            }
+        }
+    }
+
+    /**
+     * 截断远程文件。SftpATTRS 无法只设置大小 (setStat 会同时写回旧的属主和修改时间)，改用命令
+     */
+    private void truncate(Session ssh, String path, long size) throws Exception {
+        String quoted = ShellUtils.quote(path);
+        String command = "truncate -s " + size + " -- " + quoted + " 2>/dev/null || dd if=/dev/null of="
+                + quoted + " bs=1 seek=" + size + " 2>/dev/null";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exitCode = SshExecUtils.exec(ssh, command, null, output, output);
+        if (exitCode != 0) {
+            throw new IOException("截断远程文件失败 (exit " + exitCode + ")");
+        }
+    }
+
+    /**
+     * 在同一个文件内移动一段数据，目标位置在后时从尾部向前复制，避免覆盖未复制的数据
+     */
+    private static void moveTail(RandomAccessFile file, long from, long to, long length) throws IOException {
+        if (length <= 0 || from == to) {
+            return;
+        }
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        if (to > from) {
+            long remaining = length;
+            while (remaining > 0) {
+                int chunk = (int) Math.min(buffer.length, remaining);
+                remaining -= chunk;
+                file.seek(from + remaining);
+                file.readFully(buffer, 0, chunk);
+                file.seek(to + remaining);
+                file.write(buffer, 0, chunk);
+            }
+        } else {
+            long done = 0;
+            while (done < length) {
+                int chunk = (int) Math.min(buffer.length, length - done);
+                file.seek(from + done);
+                file.readFully(buffer, 0, chunk);
+                file.seek(to + done);
+                file.write(buffer, 0, chunk);
+                done += chunk;
+            }
+        }
+    }
+
+    private static void markDirty(EditSession session, long offset, long length) {
+        if (length <= 0) {
+            return;
+        }
+        int first = (int) (offset / BLOCK_SIZE);
+        int last = (int) ((offset + length - 1) / BLOCK_SIZE);
+        session.dirty.set(first, last + 1);
+    }
+
+    private static int blockCount(long size) {
+        return (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    private <T> T withSftp(SshService server, SftpAction<T> action) throws Exception {
+        Session ssh = sessionFactory.createSession(server);
+        ChannelSftp sftp = null;
+        try {
+            sftp = (ChannelSftp) ssh.openChannel("sftp");
+            sftp.connect();
+            return action.run(sftp);
+        } finally {
+            if (sftp != null) {
+                sftp.disconnect();
+            }
+            ssh.disconnect();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SftpAction<T> {
+        T run(ChannelSftp sftp) throws Exception;
+    }
+
+    /**
+     * 远程文件在打开后被其他人修改
+     */
+    public static class ConflictException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public ConflictException(String message) {
+            super(message);
+        }
+    }
+
+    private static class EditSession {
+        private final String editId;
+        private final SshService server;
+        private final String path;
+        private final long baseSizeAtOpen;
+        private final Path spoolPath;
+        private final RandomAccessFile file;
+        private final BitSet loaded = new BitSet();
+        private final BitSet dirty = new BitSet();
+        // 最近一次打开或保存时远程文件的大小和修改时间
+        private long baseSize;
+        private int baseMtime;
+        private long size;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        EditSession(String editId, SshService server, String path, long size, int mtime, Path spoolPath) throws IOException {
+            this.editId = editId;
+            this.server = server;
+            this.path = path;
+            this.baseSizeAtOpen = size;
+            this.baseSize = size;
+            this.baseMtime = mtime;
+            this.size = size;
+            this.spoolPath = spoolPath;
+            this.file = new RandomAccessFile(spoolPath.toFile(), "rw");
+            // 稀疏文件，未加载的块不占磁盘
+            this.file.setLength(size);
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        EditInfo info() {
+            touch();
+            EditInfo info = new EditInfo();
+            info.setEditId(editId);
+            info.setPath(path);
+            info.setSize(size);
+            info.setRemoteSize(baseSize);
+            info.setRemoteMtime(baseMtime);
+            info.setBlockSize(BLOCK_SIZE);
+            info.setBlockCount(blockCount(size));
+            info.setLoadedBlocks(loaded.cardinality());
+            info.setDirtyBlocks(dirty.cardinality());
+            return info;
+        }
+
+        void close() {
+            try {
+                file.close();
+                Files.deleteIfExists(spoolPath);
+            } catch (IOException e) {
+                log.warn("清理编辑工作副本失败: {}", spoolPath);
+            }
+        }
+    }
+
+    @Data
+    public static class EditInfo {
+        private String editId;
+        private String path;
+        private long size;
+        private long remoteSize;
+        private int remoteMtime;
+        private int blockSize;
+        private int blockCount;
+        private int loadedBlocks;
+        private int dirtyBlocks;
+    }
+
+    @Data
+    public static class Content {
+        private long offset;
+        private int length;
+        private String text;
+        private EditInfo info;
+    }
+
+    @Data
+    public static class SaveResult {
+        private long bytesWritten;
+        private int ranges;
+        private long elapsedMs;
+        private EditInfo info;
+    }
+}
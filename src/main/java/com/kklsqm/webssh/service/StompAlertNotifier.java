@@ -0,0 +1,28 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.domain.AlertEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 功能: 通过 STOMP 推送告警
+ * 作者: 沙琪马
+ * 日期: 2025/9/28 10:25
+ *
+ * 所有告警推送到 /topic/alerts，同时按服务器推送到 /topic/alerts/{serverId}
+ */
+@Component
+@RequiredArgsConstructor
+public class StompAlertNotifier implements AlertNotifier {
+
+    public static final String TOPIC = "/topic/alerts";
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Override
+    public void notify(AlertEvent event) {
+        messagingTemplate.convertAndSend(TOPIC, event);
+        messagingTemplate.convertAndSend(TOPIC + "/" + event.getServerId(), event);
+    }
+}
@@ -0,0 +1,545 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.common.TokenBucket;
+import com.kklsqm.webssh.domain.SshService;
+import com.kklsqm.webssh.domain.TransferJob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 功能: 异步传输任务队列
+ * 作者: 沙琪马
+ * 日期: 2025/9/19 11:00
+ *
+ * REST 接口只负责接收 (上传文件先落到本地暂存目录) 并返回任务ID，
+ * 实际传输由固定大小的工作线程池执行，不再占用 Tomcat 工作线程。
+ * 调度时限制每台服务器同时运行的任务数，并用每台服务器一个令牌桶限制总带宽；
+ * 任务状态、进度和吞吐量推送到 /topic/transfer-jobs。
+ */
+@Service
+@Slf4j
+public class TransferJobService {
+
+    private static final String TOPIC = "/topic/transfer-jobs";
+    // 已结束任务在内存中保留的时间
+    private static final long FINISHED_RETENTION_MS = 60 * 60 * 1000;
+
+    private final FileTransferService fileTransferService;
+    private final BulkTransferService bulkTransferService;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private final int maxConcurrentPerServer;
+    private final long bandwidthPerServer;
+    private final Path spoolDir;
+    private final ExecutorService workers;
+
+    private final Map<String, JobEntry> jobs = new ConcurrentHashMap<>();
+    private final Map<Long, TokenBucket> buckets = new ConcurrentHashMap<>();
+    // 以下两个字段由 this 保护
+    private final Deque<JobEntry> queue = new ArrayDeque<>();
+    private final Map<Long, Integer> runningPerServer = new HashMap<>();
+
+    public TransferJobService(FileTransferService fileTransferService,
+                              BulkTransferService bulkTransferService,
+                              SimpMessagingTemplate messagingTemplate,
+                              @Value("${webssh.transfer.workers:8}") int workerCount,
+                              @Value("${webssh.transfer.max-concurrent-per-server:2}") int maxConcurrentPerServer,
+                              @Value("${webssh.transfer.bandwidth-per-server:0}") long bandwidthPerServer,
+                              @Value("${webssh.file.temp-dir:/tmp/webssh-uploads}") String tempDir) {
+        this.fileTransferService = fileTransferService;
+        this.bulkTransferService = bulkTransferService;
+        this.messagingTemplate = messagingTemplate;
+        this.maxConcurrentPerServer = maxConcurrentPerServer;
+        this.bandwidthPerServer = bandwidthPerServer;
+        this.spoolDir = Paths.get(tempDir);
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("transfer-job-" + thread.threadId());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交上传类任务：先把文件暂存到本地，再排队异步上传
+     *
+     * @param verify 上传后用远程 sha256sum 校验，不一致时任务失败 (可重试)
+     */
+    public TransferJob submitUpload(SshService server, MultipartFile[] files, String remoteDir,
+                                    TransferJob.Type type, boolean verify) throws IOException {
+        String jobId = UUID.randomUUID().toString();
+        Path jobDir = Files.createDirectories(spoolDir.resolve(jobId));
+
+        List<SpooledFile> spooled = new ArrayList<>();
+        long totalBytes = 0;
+        try {
+            for (int i = 0; i < files.length; i++) {
+                MultipartFile file = files[i];
+                // 暂存文件名用序号，原始文件名 (可能带相对路径) 单独保存
+                Path path = jobDir.resolve(String.valueOf(i));
+                file.transferTo(path);
+                spooled.add(new SpooledFile(file.getOriginalFilename(), path, file.getSize()));
+                totalBytes += file.getSize();
+            }
+        } catch (IOException e) {
+            deleteSpooled(jobDir);
+            throw e;
+        }
+
+        TransferJob job = newJob(jobId, type, server.getId().longValue(), null, remoteDir,
+                type + " " + spooled.size() + " 个文件 -> " + remoteDir);
+        job.setTotalBytes(totalBytes);
+
+        JobWork work = context -> {
+            MultipartFile[] adapters = spooled.stream()
+                    .map(file -> new SpooledMultipartFile(file, context))
+                    .toArray(MultipartFile[]::new);
+            return switch (type) {
+                case UPLOAD -> {
+                    List<FileTransferService.UploadResult> results =
+                            fileTransferService.uploadFiles(server, adapters, remoteDir, verify);
+                    checkVerified(results.stream()
+                            .filter(result -> Boolean.FALSE.equals(result.getVerified()))
+                            .map(FileTransferService.UploadResult::getRemotePath)
+                            .toList());
+                    yield results;
+                }
+                case SYNC -> {
+                    List<FileTransferService.SyncResult> results = new ArrayList<>();
+                    for (MultipartFile adapter : adapters) {
+                        results.add(fileTransferService.syncFile(server, adapter, remoteDir, verify));
+                    }
+                    checkVerified(results.stream()
+                            .filter(result -> Boolean.FALSE.equals(result.getVerified()))
+                            .map(FileTransferService.SyncResult::getName)
+                            .toList());
+                    yield results;
+                }
+                case BULK_UPLOAD -> bulkTransferService.upload(server, adapters, remoteDir);
+                default -> throw new IllegalArgumentException("不支持的上传类型: " + type);
+            };
+        };
+
+        return enqueue(new JobEntry(job, work, List.of(server.getId().longValue()), jobDir, true));
+    }
+
+    /**
+     * 提交服务器间复制任务
+     */
+    public TransferJob submitCopy(SshService source, SshService target, List<String> paths, String targetDir,
+                                  boolean verify) {
+        String jobId = UUID.randomUUID().toString();
+        TransferJob job = newJob(jobId, TransferJob.Type.COPY, source.getId().longValue(), target.getId().longValue(),
+                targetDir, "复制 " + paths.size() + " 个文件 " + source.getHost() + " -> " + target.getHost());
+
+        JobWork work = context -> {
+            List<FileTransferService.CopyResult> results =
+                    fileTransferService.copyBetweenServers(source, target, paths, targetDir, verify, context);
+            List<String> failed = results.stream()
+                    .filter(result -> !result.isSuccess())
+                    .map(result -> result.getSourcePath() + ": " + result.getMessage())
+                    .toList();
+            if (!failed.isEmpty()) {
+                throw new IOException("部分文件复制失败: " + String.join("; ", failed));
+            }
+            return results;
+        };
+
+        return enqueue(new JobEntry(job, work,
+                List.of(source.getId().longValue(), target.getId().longValue()), null, false));
+    }
+
+    public List<TransferJob> listJobs() {
+        return jobs.values().stream()
+                .map(entry -> entry.job)
+                .sorted(Comparator.comparingLong(TransferJob::getCreatedAt).reversed())
+                .toList();
+    }
+
+    public TransferJob getJob(String jobId) {
+        JobEntry entry = jobs.get(jobId);
+        return entry == null ? null : entry.job;
+    }
+
+    /**
+     * 取消任务：排队中的直接移出队列，运行中的设置取消标记并中断工作线程，
+     * 传输线程在下一次进度回调时抛出异常退出
+     */
+    public TransferJob cancel(String jobId) {
+        JobEntry entry = requireJob(jobId);
+        entry.cancelled = true;
+        boolean removed;
+        synchronized (this) {
+            removed = queue.remove(entry);
+        }
+        if (removed) {
+            finish(entry, TransferJob.Status.CANCELLED, "已取消");
+        } else if (entry.future != null) {
+            entry.future.cancel(true);
+        }
+        return entry.job;
+    }
+
+    /**
+     * 重新执行失败或已取消的任务
+     */
+    public TransferJob retry(String jobId) {
+        JobEntry entry = requireJob(jobId);
+        TransferJob job = entry.job;
+        if (job.getStatus() != TransferJob.Status.FAILED && job.getStatus() != TransferJob.Status.CANCELLED) {
+            throw new IllegalStateException("只有失败或已取消的任务可以重试");
+        }
+        if (entry.spoolDir != null && !Files.isDirectory(entry.spoolDir)) {
+            throw new IllegalStateException("暂存文件已清理，无法重试");
+        }
+        entry.reset();
+        return enqueue(entry);
+    }
+
+    /**
+     * 删除已结束的任务并清理暂存文件
+     */
+    public void remove(String jobId) {
+        JobEntry entry = requireJob(jobId);
+        if (!entry.job.isFinished()) {
+            throw new IllegalStateException("任务仍在进行中，请先取消");
+        }
+        jobs.remove(jobId);
+        deleteSpooled(entry.spoolDir);
+    }
+
+    /**
+     * 每秒计算运行中任务的吞吐量并推送进度，同时清理过期任务
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void publishProgress() {
+        long now = System.currentTimeMillis();
+        for (JobEntry entry : jobs.values()) {
+            TransferJob job = entry.job;
+            if (job.getStatus() == TransferJob.Status.RUNNING) {
+                long transferred = entry.transferred.get();
+                long elapsed = Math.max(1, now - entry.lastSampleTime);
+                long instant = (transferred - entry.lastSampleBytes) * 1000 / elapsed;
+                // 指数平滑，避免速度数字跳动
+                job.setBytesPerSecond(job.getBytesPerSecond() == 0 ? instant : (job.getBytesPerSecond() * 7 + instant * 3) / 10);
+                job.setTransferredBytes(transferred);
+                entry.lastSampleBytes = transferred;
+                entry.lastSampleTime = now;
+                publish(job);
+            } else if (job.isFinished() && now - job.getFinishedAt() > FINISHED_RETENTION_MS) {
+                jobs.remove(job.getId());
+                deleteSpooled(entry.spoolDir);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private void checkVerified(List<String> mismatched) throws IOException {
+        if (!mismatched.isEmpty()) {
+            throw new IOException("SHA-256 校验失败: " + String.join(", ", mismatched));
+        }
+    }
+
+    private TransferJob newJob(String jobId, TransferJob.Type type, Long serverId, Long targetServerId,
+                               String remotePath, String description) {
+        TransferJob job = new TransferJob();
+        job.setId(jobId);
+        job.setType(type);
+        job.setServerId(serverId);
+        job.setTargetServerId(targetServerId);
+        job.setRemotePath(remotePath);
+        job.setDescription(description);
+        job.setCreatedAt(System.currentTimeMillis());
+        return job;
+    }
+
+    private TransferJob enqueue(JobEntry entry) {
+        entry.job.setStatus(TransferJob.Status.QUEUED);
+        jobs.put(entry.job.getId(), entry);
+        synchronized (this) {
+            queue.addLast(entry);
+        }
+        publish(entry.job);
+        dispatch();
+        return entry.job;
+    }
+
+    /**
+     * 按提交顺序启动任务，跳过涉及的服务器已达到并发上限的任务
+     */
+    private synchronized void dispatch() {
+        Iterator<JobEntry> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            JobEntry entry = iterator.next();
+            boolean available = entry.serverIds.stream()
+                    .allMatch(id -> runningPerServer.getOrDefault(id, 0) < maxConcurrentPerServer);
+            if (!available) {
+                continue;
+            }
+            iterator.remove();
+            entry.serverIds.forEach(id -> runningPerServer.merge(id, 1, Integer::sum));
+            entry.future = workers.submit(() -> execute(entry));
+        }
+    }
+
+    private void execute(JobEntry entry) {
+        TransferJob job = entry.job;
+        job.setStatus(TransferJob.Status.RUNNING);
+        job.setAttempts(job.getAttempts() + 1);
+        job.setStartedAt(System.currentTimeMillis());
+        entry.lastSampleTime = job.getStartedAt();
+        publish(job);
+
+        try {
+            job.setResult(entry.work.run(new JobContext(entry)));
+            job.setTransferredBytes(entry.transferred.get());
+            finish(entry, TransferJob.Status.COMPLETED, "传输完成");
+            if (entry.deleteOnSuccess) {
+                deleteSpooled(entry.spoolDir);
+            }
+        } catch (Exception e) {
+            job.setTransferredBytes(entry.transferred.get());
+            if (entry.cancelled) {
+                finish(entry, TransferJob.Status.CANCELLED, "已取消");
+            } else {
+                log.warn("传输任务 {} 失败: {}", job.getId(), e.getMessage());
+                finish(entry, TransferJob.Status.FAILED, e.getMessage());
+            }
+        } finally {
+            synchronized (this) {
+                entry.serverIds.forEach(id -> runningPerServer.merge(id, -1, Integer::sum));
+            }
+            dispatch();
+        }
+    }
+
+    private void finish(JobEntry entry, TransferJob.Status status, String message) {
+        entry.job.setStatus(status);
+        entry.job.setMessage(message);
+        entry.job.setBytesPerSecond(0);
+        entry.job.setFinishedAt(System.currentTimeMillis());
+        publish(entry.job);
+    }
+
+    private void publish(TransferJob job) {
+        try {
+            messagingTemplate.convertAndSend(TOPIC, job);
+        } catch (Exception e) {
+            log.debug("推送传输任务进度失败: {}", e.getMessage());
+        }
+    }
+
+    private TokenBucket bucketFor(Long serverId) {
+        return buckets.computeIfAbsent(serverId, id -> new TokenBucket(bandwidthPerServer));
+    }
+
+    private JobEntry requireJob(String jobId) {
+        JobEntry entry = jobs.get(jobId);
+        if (entry == null) {
+            throw new NoSuchElementException("任务不存在: " + jobId);
+        }
+        return entry;
+    }
+
+    private void deleteSpooled(Path dir) {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("清理暂存目录失败: {}", dir);
+        }
+    }
+
+    @FunctionalInterface
+    private interface JobWork {
+        Object run(JobContext context) throws Exception;
+    }
+
+    private record SpooledFile(String name, Path path, long size) {
+    }
+
+    private static class JobEntry {
+        private final TransferJob job;
+        private final JobWork work;
+        private final List<Long> serverIds;
+        private final Path spoolDir;
+        private final boolean deleteOnSuccess;
+        private final AtomicLong transferred = new AtomicLong();
+        private final Map<String, Long> perPath = new ConcurrentHashMap<>();
+        private volatile boolean cancelled;
+        private volatile Future<?> future;
+        private volatile long lastSampleBytes;
+        private volatile long lastSampleTime;
+
+        JobEntry(TransferJob job, JobWork work, List<Long> serverIds, Path spoolDir, boolean deleteOnSuccess) {
+            this.job = job;
+            this.work = work;
+            this.serverIds = serverIds;
+            this.spoolDir = spoolDir;
+            this.deleteOnSuccess = deleteOnSuccess;
+        }
+
+        void reset() {
+            cancelled = false;
+            future = null;
+            transferred.set(0);
+            perPath.clear();
+            lastSampleBytes = 0;
+            job.setTransferredBytes(0);
+            job.setBytesPerSecond(0);
+            job.setMessage(null);
+            job.setResult(null);
+            job.setFinishedAt(0);
+            if (job.getType() == TransferJob.Type.COPY) {
+                job.setTotalBytes(0);
+            }
+        }
+    }
+
+    /**
+     * 任务执行上下文：统计进度、按服务器令牌桶限速、检查取消标记
+     */
+    private class JobContext implements FileTransferService.TransferProgressListener {
+        private final JobEntry entry;
+
+        JobContext(JobEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void onProgress(String path, long transferred, long total) {
+            if (entry.cancelled || Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("任务已取消");
+            }
+            Long previous = entry.perPath.put(path, transferred);
+            if (previous == null && entry.job.getType() == TransferJob.Type.COPY) {
+                // 复制任务的总大小在各文件开始复制时才知道
+                entry.job.setTotalBytes(entry.job.getTotalBytes() + total);
+            }
+            long delta = transferred - (previous == null ? 0 : previous);
+            if (delta <= 0) {
+                return;
+            }
+            entry.transferred.addAndGet(delta);
+            try {
+                for (Long serverId : entry.serverIds) {
+                    bucketFor(serverId).acquire(delta);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("任务已取消");
+            }
+        }
+    }
+
+    /**
+     * 以暂存文件为数据源的 MultipartFile，读取时统计进度并限速
+     */
+    private static class SpooledMultipartFile implements MultipartFile {
+        private final SpooledFile file;
+        private final JobContext context;
+
+        SpooledMultipartFile(SpooledFile file, JobContext context) {
+            this.file = file;
+            this.context = context;
+        }
+
+        @Override
+        public String getName() {
+            return "files";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return file.name();
+        }
+
+        @Override
+        public String getContentType() {
+            return null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return file.size() == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return file.size();
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            return Files.readAllBytes(file.path());
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new ProgressInputStream(Files.newInputStream(file.path()), file, context);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.copy(file.path(), dest.toPath());
+        }
+    }
+
+    private static class ProgressInputStream extends FilterInputStream {
+        private final SpooledFile file;
+        private final JobContext context;
+        private long count;
+
+        ProgressInputStream(InputStream in, SpooledFile file, JobContext context) {
+            super(in);
+            this.file = file;
+            this.context = context;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                report(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                report(read);
+            }
+            return read;
+        }
+
+        private void report(int read) throws IOException {
+            count += read;
+            try {
+                context.onProgress(file.name(), count, file.size());
+            } catch (CancellationException e) {
+                throw new InterruptedIOException(e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.kklsqm.webssh.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kklsqm.webssh.domain.AlertEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * 功能: 通过 Webhook 发送告警
+ * 作者: 沙琪马
+ * 日期: 2025/9/28 10:30
+ *
+ * 每条告警以 JSON POST 到 webssh.alerts.webhook-url，未配置时不发送。
+ * 发送在虚拟线程上进行，失败只记录日志
+ */
+@Component
+@Slf4j
+public class WebhookAlertNotifier implements AlertNotifier {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final ObjectMapper objectMapper;
+    private final String url;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+
+    public WebhookAlertNotifier(ObjectMapper objectMapper,
+                                @Value("${webssh.alerts.webhook-url:}") String url) {
+        this.objectMapper = objectMapper;
+        this.url = url;
+    }
+
+    @Override
+    public void notify(AlertEvent event) {
+        if (url == null || url.isBlank()) {
+            return;
+        }
+        Thread.ofVirtual().name("alert-webhook").start(() -> send(event));
+    }
+
+    private void send(AlertEvent event) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(TIMEOUT)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(event)))
+                    .build();
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 != 2) {
+                log.warn("告警 Webhook 返回 {}: {}", response.statusCode(), url);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("发送告警 Webhook 失败: {}", e.getMessage());
+        }
+    }
+}
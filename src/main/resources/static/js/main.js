@@ -545,6 +545,16 @@ function ensureStompConnected(onReady){
                 if (body.type === 'error') alertErr(body.message || '错误');
             } catch(e) { console.error(e); }
         });
+        // 断线重连后恢复仪表盘订阅
+        if (dashboardLive && currentDashboardServerId) {
+            dashboardSubscription = null;
+            subscribeDashboard(currentDashboardServerId);
+        }
+        if (containerStatsServerId) {
+            containerStatsSubscription = null;
+            containerInventorySubscription = null;
+            subscribeContainerStats(containerStatsServerId);
+        }
         if (onReady) onReady();
     }, (err) => {
         connected = false;
@@ -1199,35 +1209,26 @@ async function bulkDeleteSelectedFiles() {
     }
 }
 
-// 批量下载 (简单实现：逐个触发下载)
+// 批量下载 (所有选中项打包为一个 tar 流，一次 SSH 握手)
 function bulkDownloadSelectedFiles() {
     if (selectedFiles.size === 0 || !currentFileManagerServer) {
         alertWarn('请先选择文件');
         return;
     }
 
-    let fileCount = 0;
-    selectedFiles.forEach(filename => {
-        // 检查是否为文件 (简单检查)
-        const card = document.querySelector(`.file-card[data-name="${CSS.escape(filename)}"]`);
-        if (card && card.dataset.isDirectory !== 'true') {
-            fileCount++;
-            const fullPath = currentPath === '/' ? `/${filename}` : `${currentPath}/${filename}`;
-            const url = `/api/servers/${currentFileManagerServer.id}/download?path=${encodeURIComponent(fullPath)}`;
-            const link = document.createElement('a');
-            link.href = url;
-            link.download = filename;
-            document.body.appendChild(link);
-            link.click();
-            document.body.removeChild(link);
-        }
-    });
+    const params = new URLSearchParams({ path: currentPath });
+    selectedFiles.forEach(filename => params.append('names', filename));
+    const url = `/api/servers/${currentFileManagerServer.id}/download-bulk?${params.toString()}`;
 
-    if (fileCount === 0) {
-        alertWarn('请选择至少一个文件进行下载');
-    } else {
-        alertOk(`已触发下载 ${fileCount} 个文件。浏览器可能会阻止多个下载弹窗，请允许。`);
-    }
+    const dirName = currentPath === '/' ? 'root' : currentPath.substring(currentPath.lastIndexOf('/') + 1);
+    const link = document.createElement('a');
+    link.href = url;
+    link.download = `${dirName}.tar`;
+    document.body.appendChild(link);
+    link.click();
+    document.body.removeChild(link);
+
+    alertOk(`已开始打包下载 ${selectedFiles.size} 个项目`);
 }
 
 // 文件右键菜单事件处理函数 (事件委托)
@@ -1492,20 +1493,16 @@ function downloadSelectedFile() {
         return;
     }
 
-    if (selectedFile.isDirectory) {
-        alertWarn('不能下载目录');
-        // 隐藏菜单
-        document.getElementById('fileContextMenu').classList.remove('show');
-        return;
-    }
-
     const fullPath = currentPath === '/' ? `/${selectedFile.name}` : `${currentPath}/${selectedFile.name}`;
-    const url = `/api/servers/${currentFileManagerServer.id}/download?path=${encodeURIComponent(fullPath)}`;
+    // 目录打包为 zip 流式下载
+    const url = selectedFile.isDirectory
+        ? `/api/servers/${currentFileManagerServer.id}/download-folder?path=${encodeURIComponent(fullPath)}&format=zip`
+        : `/api/servers/${currentFileManagerServer.id}/download?path=${encodeURIComponent(fullPath)}`;
 
     // 创建一个隐藏的下载链接并点击它
     const link = document.createElement('a');
     link.href = url;
-    link.download = selectedFile.name;
+    link.download = selectedFile.isDirectory ? `${selectedFile.name}.zip` : selectedFile.name;
     document.body.appendChild(link);
     link.click();
     document.body.removeChild(link);
@@ -1762,7 +1759,9 @@ async function createDirectory() {
 
 // 仪表盘状态
 let currentDashboardServerId = null;
-let autoRefreshInterval = null;
+// 实时刷新：打开后订阅 /topic/dashboard/{serverId}，由服务端按固定间隔推送
+let dashboardLive = false;
+let dashboardSubscription = null;
 let isDashboardFullscreen = false;
 
 // 修改 switchPage 函数以支持仪表盘
@@ -1850,6 +1849,7 @@ async function loadDashboardData() {
             </div>
         `;
         overviewDiv.style.display = 'none';
+        unsubscribeDashboard();
         return;
     }
 
@@ -1897,6 +1897,9 @@ async function loadDashboardData() {
         // 更新最后更新时间
         updateLastUpdateTime();
 
+        // 切换服务器后改为订阅新服务器
+        if (dashboardLive) subscribeDashboard(serverId);
+
     } catch (error) {
         console.error('加载仪表盘数据失败:', error);
         contentDiv.innerHTML = `
@@ -1980,29 +1983,91 @@ function updateLastUpdateTime() {
     document.getElementById('lastUpdate').textContent = `最后更新: ${timeString}`;
 }
 
-// 切换自动刷新
+// 切换自动刷新 (服务端实时推送)
 function toggleAutoRefresh() {
     const btn = document.getElementById('autoRefreshBtn');
-    const icon = btn.querySelector('i');
     
-    if (autoRefreshInterval) {
-        clearInterval(autoRefreshInterval);
-        autoRefreshInterval = null;
-        icon.className = 'fa fa-play';
+    if (dashboardLive) {
+        dashboardLive = false;
+        unsubscribeDashboard();
         btn.innerHTML = '<i class="fa fa-play"></i> 自动刷新';
         alertInfo('已停止自动刷新');
     } else {
-        autoRefreshInterval = setInterval(() => {
-            if (currentDashboardServerId) {
-                loadDashboardData();
-            }
-        }, 30000); // 30秒刷新一次
-        icon.className = 'fa fa-pause';
+        dashboardLive = true;
+        if (currentDashboardServerId) subscribeDashboard(currentDashboardServerId);
         btn.innerHTML = '<i class="fa fa-pause"></i> 停止刷新';
-        alertOk('已开启自动刷新 (30秒)');
+        alertOk('已开启实时刷新');
+    }
+}
+
+// 订阅服务器的仪表盘推送，同一时间只订阅一台服务器
+function subscribeDashboard(serverId) {
+    ensureStompConnected(() => {
+        unsubscribeDashboard();
+        dashboardSubscription = stompClient.subscribe(`/topic/dashboard/${serverId}`, (msg) => {
+            try {
+                handleDashboardPush(JSON.parse(msg.body));
+            } catch (e) { console.error(e); }
+        });
+    });
+}
+
+function unsubscribeDashboard() {
+    if (dashboardSubscription) {
+        try { dashboardSubscription.unsubscribe(); } catch (e) { /* 连接已断开 */ }
+        dashboardSubscription = null;
     }
 }
 
+// 处理服务端推送的仪表盘数据，只更新变化的部分，不重建页面
+function handleDashboardPush(body) {
+    if (String(body.serverId) !== String(currentDashboardServerId)) return;
+    const statusIndicator = document.getElementById('connectionStatus');
+
+    if (body.type === 'metrics' && body.data) {
+        updateDashboardGauges(body.data);
+        updateDashboardOverviewValues(body.data);
+        if (statusIndicator) statusIndicator.className = 'status-indicator connected';
+        updateLastUpdateTime();
+    } else if (body.type === 'services' && body.data) {
+        const list = document.getElementById('serviceStatusList');
+        if (list) list.innerHTML = renderServiceListHtml(body.data);
+    } else if (body.type === 'error') {
+        console.warn('仪表盘推送失败:', body.message);
+        if (statusIndicator) statusIndicator.className = 'status-indicator';
+    }
+}
+
+function updateDashboardGauges(metrics) {
+    [['cpuChart', 'CPU', metrics.cpu], ['memoryChart', '内存', metrics.memory], ['diskChart', '磁盘', metrics.disk]]
+        .forEach(([id, title, raw]) => {
+            const el = document.getElementById(id);
+            const chart = el && echarts.getInstanceByDom(el);
+            if (!chart) return;
+            const value = (raw != null && raw >= 0) ? Math.round(raw) : 0;
+            chart.setOption({ series: [{ data: [gaugeData(title, value)] }] });
+        });
+}
+
+function updateDashboardOverviewValues(metrics) {
+    const set = (id, text) => { const el = document.getElementById(id); if (el) el.textContent = text; };
+    if (metrics.uptime != null) set('uptimeValue', formatUptime(metrics.uptime));
+    if (metrics.load1 != null) set('loadValue', metrics.load1.toFixed(2));
+    if (metrics.processCount != null) set('processesValue', metrics.processCount);
+    if (metrics.connectionCount != null) set('connectionsValue', metrics.connectionCount);
+}
+
+// 仪表盘的单个数据点，颜色随数值变化
+function gaugeData(title, value) {
+    return {
+        value: value,
+        name: title,
+        itemStyle: {
+            color: value > 80 ? '#ef4444' : value > 60 ? '#f59e0b' : '#22c55e'
+        }
+    };
+}
+
 // 切换全屏模式
 function toggleFullscreen() {
     const container = document.querySelector('.dashboard-container');
@@ -2020,22 +2085,8 @@ function toggleFullscreen() {
     }
 }
 
-// 渲染仪表盘内容
-// 渲染仪表盘内容 (增强版 - 支持 Docker 容器详情)
-function renderDashboard(metrics, services) {
-    const contentDiv = document.getElementById('dashboardContent');
-    if (!metrics || typeof metrics !== 'object') {
-        console.error("Invalid metrics data:", metrics);
-        contentDiv.innerHTML = `<div class="dashboard-error"><i class="fa fa-exclamation-circle"></i><p>接收到无效的指标数据格式。</p></div>`;
-        return;
-    }
-    if (!services || typeof services !== 'object') {
-        console.error("Invalid services data:", services);
-        contentDiv.innerHTML = `<div class="dashboard-error"><i class="fa fa-exclamation-circle"></i><p>接收到无效的服务状态数据格式。</p></div>`;
-        return;
-    }
-
-    // --- 生成服务列表的 HTML，为 Docker 添加特殊 ID 和类 ---
+// 生成服务列表的 HTML，为 Docker 添加特殊 ID 和类
+function renderServiceListHtml(services) {
     let serviceListHtml = '';
     let hasServices = false;
     for (const [serviceName, status] of Object.entries(services)) {
@@ -2075,6 +2126,25 @@ function renderDashboard(metrics, services) {
     if (!hasServices) {
         serviceListHtml = '<li class="service-status-item"><span>未配置监控服务</span></li>';
     }
+    return serviceListHtml;
+}
+
+// 渲染仪表盘内容
+// 渲染仪表盘内容 (增强版 - 支持 Docker 容器详情)
+function renderDashboard(metrics, services) {
+    const contentDiv = document.getElementById('dashboardContent');
+    if (!metrics || typeof metrics !== 'object') {
+        console.error("Invalid metrics data:", metrics);
+        contentDiv.innerHTML = `<div class="dashboard-error"><i class="fa fa-exclamation-circle"></i><p>接收到无效的指标数据格式。</p></div>`;
+        return;
+    }
+    if (!services || typeof services !== 'object') {
+        console.error("Invalid services data:", services);
+        contentDiv.innerHTML = `<div class="dashboard-error"><i class="fa fa-exclamation-circle"></i><p>接收到无效的服务状态数据格式。</p></div>`;
+        return;
+    }
+
+    const serviceListHtml = renderServiceListHtml(services);
 
     contentDiv.innerHTML = `
         <div class="dashboard-grid">
@@ -2207,13 +2277,7 @@ function renderDashboard(metrics, services) {
                 fontWeight: '600',
                 color: '#cbd5e1'
             },
-            data: [{ 
-                value: value, 
-                name: title,
-                itemStyle: {
-                    color: value > 80 ? '#ef4444' : value > 60 ? '#f59e0b' : '#22c55e'
-                }
-            }]
+            data: [gaugeData(title, value)]
         }]
     });
 
@@ -2271,7 +2335,10 @@ async function loadDockerContainers(serverId, containerElement, refreshButtonEle
 
         if (data.success && Array.isArray(data.data)) {
             console.log('容器列表:', data.data);
+            dockerContainers = new Map(data.data.map(c => [c.id, c]));
+            dockerContainersElement = containerElement;
             displayDockerContainers(data.data, containerElement);
+            updateContainerStats(lastContainerStats);
         } else {
             throw new Error(data.message || '获取容器列表失败');
         }
@@ -2341,6 +2408,7 @@ function displayDockerContainers(containers, containerElement) {
                 <div class="container-cell" title="${containerName} (${container.id})">
                     <div class="container-name">${shortName}</div>
                     <div class="container-id">${container.id.substring(0, 12)}...</div>
+                    <div class="container-id container-stats" data-stats-name="${escapeHtml(containerName)}"></div>
                 </div>
                 <div class="container-cell" title="${imageName}">
                     <div class="container-image">${shortImageName}</div>
@@ -2405,6 +2473,7 @@ function openDockerDrawer(serverId) {
     const refreshBtn = document.getElementById('dockerDrawerRefresh');
     list.innerHTML = '<div class="alert info">正在加载容器列表...</div>';
     loadDockerContainers(serverId, list, refreshBtn);
+    subscribeContainerStats(serverId);
 }
 
 async function refreshDockerDrawer(serverId) {
@@ -2415,6 +2484,7 @@ async function refreshDockerDrawer(serverId) {
 }
 
 function closeDockerDrawer() {
+    unsubscribeContainerStats();
     const backdrop = document.getElementById('dockerDrawerBackdrop');
     const drawer = document.getElementById('dockerDrawer');
     drawer.classList.remove('open');
@@ -2424,6 +2494,85 @@ function closeDockerDrawer() {
     }, 200);
 }
 
+// ===== 容器清单与资源占用实时推送 =====
+let containerStatsSubscription = null;
+let containerInventorySubscription = null;
+let containerStatsServerId = null;
+let lastContainerStats = [];
+// 抽屉中当前显示的容器，按 ID 保存，收到增量后重新渲染
+let dockerContainers = new Map();
+let dockerContainersElement = null;
+
+// 订阅后服务端共享一个 docker stats 通道和一个 docker events 通道，抽屉关闭时退订
+function subscribeContainerStats(serverId) {
+    containerStatsServerId = serverId;
+    ensureStompConnected(() => {
+        [containerStatsSubscription, containerInventorySubscription].forEach(sub => {
+            if (sub) {
+                try { sub.unsubscribe(); } catch (e) { /* 连接已断开 */ }
+            }
+        });
+        containerStatsSubscription = stompClient.subscribe(`/topic/container-stats/${serverId}`, (msg) => {
+            try {
+                const body = JSON.parse(msg.body);
+                if (body.type === 'stats' && Array.isArray(body.data)) updateContainerStats(body.data);
+                else if (body.type === 'error') console.warn('容器资源占用推送失败:', body.message);
+            } catch (e) { console.error(e); }
+        });
+        containerInventorySubscription = stompClient.subscribe(`/topic/containers/${serverId}`, (msg) => {
+            try {
+                handleContainerInventoryPush(JSON.parse(msg.body));
+            } catch (e) { console.error(e); }
+        });
+    });
+}
+
+function unsubscribeContainerStats() {
+    containerStatsServerId = null;
+    lastContainerStats = [];
+    [containerStatsSubscription, containerInventorySubscription].forEach(sub => {
+        if (sub) {
+            try { sub.unsubscribe(); } catch (e) { /* 连接已断开 */ }
+        }
+    });
+    containerStatsSubscription = null;
+    containerInventorySubscription = null;
+}
+
+// 容器清单的增量：snapshot 完整清单，upsert 新增或变化的容器，remove 已删除的容器
+function handleContainerInventoryPush(body) {
+    if (String(body.serverId) !== String(containerStatsServerId)) return;
+    if (body.type === 'snapshot' && Array.isArray(body.data)) {
+        dockerContainers = new Map(body.data.map(c => [c.id, c]));
+    } else if (body.type === 'upsert' && body.data) {
+        dockerContainers.set(body.data.id, body.data);
+    } else if (body.type === 'remove' && body.data) {
+        dockerContainers.delete(body.data.id);
+    } else {
+        if (body.type === 'error') console.warn('容器清单推送失败:', body.message);
+        return;
+    }
+    if (dockerContainersElement && document.body.contains(dockerContainersElement)) {
+        displayDockerContainers(Array.from(dockerContainers.values()), dockerContainersElement);
+        updateContainerStats(lastContainerStats);
+    }
+}
+
+function updateContainerStats(stats) {
+    lastContainerStats = stats;
+    const byName = new Map(stats.map(item => [item.name, item]));
+    document.querySelectorAll('.container-stats[data-stats-name]').forEach(el => {
+        const item = byName.get(el.dataset.statsName);
+        if (!item) {
+            el.textContent = '';
+            return;
+        }
+        const cpu = item.cpu != null ? `CPU ${item.cpu.toFixed(1)}%` : '';
+        const memory = item.memoryUsage != null ? `内存 ${formatFileSize(item.memoryUsage)}` : '';
+        el.textContent = [cpu, memory].filter(Boolean).join(' · ');
+    });
+}
+
 // --- 容器操作函数 ---
 async function containerAction(containerId, action) {
     if (!currentDashboardServerId) {
@@ -2466,51 +2615,101 @@ async function containerAction(containerId, action) {
     }
 }
 
-// --- 显示容器日志 ---
-async function showContainerLogs(containerId) {
+// --- 显示容器日志 (实时跟随) ---
+// 订阅 /user/queue/container-logs/{serverId}/{containerId}，过滤在服务端进行，修改过滤条件时重新订阅
+let containerLogSubscription = null;
+const CONTAINER_LOG_MAX_LINES = 5000;
+
+function showContainerLogs(containerId) {
     if (!currentDashboardServerId) {
         alertErr('请先选择服务器');
         return;
     }
-
-    try {
-        showToast('info', '加载中', '正在获取容器日志...');
-        
-        const response = await fetch(`/api/dashboard/server/${currentDashboardServerId}/docker/container/${containerId}/logs`);
-        const data = await response.json();
-        
-        if (data.success) {
-            // 创建日志查看模态框
-            const modal = document.createElement('div');
-            modal.className = 'modal';
-            modal.innerHTML = `
-                <div class="modal-content" style="max-width: 800px; max-height: 600px;">
-                    <div class="modal-header">
-                        <h3><i class="fa fa-file-text"></i> 容器日志 - ${containerId.substring(0, 12)}</h3>
-                        <button class="btn ghost" onclick="this.closest('.modal').remove()">
-                            <i class="fa fa-times"></i>
-                        </button>
-                    </div>
-                    <div class="modal-body">
-                        <div class="log-container" style="background: #1a1a1a; color: #00ff00; font-family: 'Courier New', monospace; padding: 16px; border-radius: 8px; max-height: 400px; overflow-y: auto; white-space: pre-wrap; font-size: 12px;">
-                            ${data.data || '暂无日志'}
-                        </div>
-                    </div>
-                    <div class="modal-footer">
-                        <button class="btn primary" onclick="this.closest('.modal').remove()">关闭</button>
-                    </div>
+    const serverId = currentDashboardServerId;
+    const modal = document.createElement('div');
+    modal.className = 'modal';
+    modal.innerHTML = `
+        <div class="modal-content" style="max-width: 900px; max-height: 700px;">
+            <div class="modal-header">
+                <h3><i class="fa fa-file-text"></i> 容器日志 - ${escapeHtml(containerId.substring(0, 12))}</h3>
+                <button class="btn ghost" data-action="close">
+                    <i class="fa fa-times"></i>
+                </button>
+            </div>
+            <div class="modal-body">
+                <div style="display: flex; gap: 8px; margin-bottom: 8px;">
+                    <input type="text" data-role="filter" placeholder="过滤 (服务端匹配，回车生效)" style="flex: 1;">
+                    <label style="display: flex; align-items: center; gap: 4px;"><input type="checkbox" data-role="regex"> 正则</label>
+                    <span data-role="status" style="align-self: center; font-size: 12px; opacity: 0.7;"></span>
                 </div>
-            `;
-            
-            document.body.appendChild(modal);
-            showToast('success', '加载完成', '容器日志已显示');
-        } else {
-            throw new Error(data.message || '获取日志失败');
-        }
-    } catch (error) {
-        console.error('获取容器日志失败:', error);
-        showToast('error', '加载失败', `获取日志失败: ${error.message}`);
+                <div class="log-container" data-role="log" style="background: #1a1a1a; color: #00ff00; font-family: 'Courier New', monospace; padding: 16px; border-radius: 8px; height: 450px; overflow-y: auto; white-space: pre-wrap; font-size: 12px;"></div>
+            </div>
+            <div class="modal-footer">
+                <button class="btn primary" data-action="close">关闭</button>
+            </div>
+        </div>
+    `;
+    document.body.appendChild(modal);
+
+    const logEl = modal.querySelector('[data-role="log"]');
+    const statusEl = modal.querySelector('[data-role="status"]');
+    const filterEl = modal.querySelector('[data-role="filter"]');
+    const regexEl = modal.querySelector('[data-role="regex"]');
+    let dropped = 0;
+
+    const follow = () => {
+        unsubscribeContainerLogs();
+        logEl.textContent = '';
+        dropped = 0;
+        statusEl.textContent = '跟随中';
+        ensureStompConnected(() => {
+            containerLogSubscription = stompClient.subscribe(`/user/queue/container-logs/${serverId}/${containerId}`, (msg) => {
+                try {
+                    const body = JSON.parse(msg.body);
+                    if (body.type === 'lines') {
+                        appendContainerLogLines(logEl, body.lines);
+                        if (body.dropped) {
+                            dropped += body.dropped;
+                            statusEl.textContent = `跟随中，已丢弃 ${dropped} 行`;
+                        }
+                    } else if (body.type === 'status' || body.type === 'error') {
+                        statusEl.textContent = body.message;
+                    }
+                } catch (e) { console.error(e); }
+            }, { tail: '200', mode: 'drop', filter: filterEl.value, regex: String(regexEl.checked) });
+        });
+    };
+
+    filterEl.addEventListener('keydown', (e) => { if (e.key === 'Enter') follow(); });
+    regexEl.addEventListener('change', follow);
+    modal.querySelectorAll('[data-action="close"]').forEach(btn => btn.addEventListener('click', () => {
+        unsubscribeContainerLogs();
+        modal.remove();
+    }));
+    follow();
+}
+
+function unsubscribeContainerLogs() {
+    if (containerLogSubscription) {
+        try { containerLogSubscription.unsubscribe(); } catch (e) { /* 连接已断开 */ }
+        containerLogSubscription = null;
+    }
+}
+
+// 追加日志行，只保留最近 CONTAINER_LOG_MAX_LINES 行；滚动条在底部时自动滚动
+function appendContainerLogLines(logEl, lines) {
+    const atBottom = logEl.scrollHeight - logEl.scrollTop - logEl.clientHeight < 20;
+    const fragment = document.createDocumentFragment();
+    lines.forEach(line => {
+        const div = document.createElement('div');
+        div.textContent = line;
+        fragment.appendChild(div);
+    });
+    logEl.appendChild(fragment);
+    while (logEl.childNodes.length > CONTAINER_LOG_MAX_LINES) {
+        logEl.removeChild(logEl.firstChild);
     }
+    if (atBottom) logEl.scrollTop = logEl.scrollHeight;
 }
 
 // ===== Init =====
@@ -0,0 +1,110 @@
+package com.kklsqm.webssh.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RollingCksum / DeltaEncoder 测试类
+ */
+class DeltaEncoderTest {
+
+    private static final int BLOCK = 1024;
+
+    @Test
+    void testCksumMatchesPosixCommand() {
+        // printf 'hello' | cksum -> 3287646509 5
+        byte[] data = "hello".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(3287646509L, Integer.toUnsignedLong(RollingCksum.cksum(data, 0, data.length)));
+    }
+
+    @Test
+    void testRollingEqualsDirectComputation() {
+        byte[] data = randomBytes(4 * BLOCK, 1);
+        RollingCksum rolling = new RollingCksum(BLOCK);
+        int crc = RollingCksum.raw(data, 0, BLOCK);
+        for (int i = 1; i + BLOCK <= data.length; i++) {
+            crc = rolling.roll(crc, data[i - 1], data[i + BLOCK - 1]);
+            assertEquals(RollingCksum.cksum(data, i, BLOCK), rolling.finish(crc), "offset " + i);
+        }
+    }
+
+    @Test
+    void testIdenticalFileIsSingleCopy() throws Exception {
+        byte[] old = randomBytes(20 * BLOCK, 2);
+        ByteArrayOutputStream literal = new ByteArrayOutputStream();
+        List<DeltaEncoder.DeltaOp> ops = encoder(old).encode(new ByteArrayInputStream(old), literal);
+
+        assertEquals(1, ops.size());
+        assertFalse(ops.get(0).isLiteral());
+        assertEquals(old.length, ops.get(0).getLength());
+        assertEquals(0, literal.size());
+    }
+
+    @Test
+    void testInsertionOnlySendsNewBytes() throws Exception {
+        byte[] old = randomBytes(50 * BLOCK + 100, 3);
+        byte[] inserted = "inserted config line\n".getBytes(StandardCharsets.US_ASCII);
+        int at = 17 * BLOCK + 33;
+        byte[] updated = new byte[old.length + inserted.length];
+        System.arraycopy(old, 0, updated, 0, at);
+        System.arraycopy(inserted, 0, updated, at, inserted.length);
+        System.arraycopy(old, at, updated, at + inserted.length, old.length - at);
+
+        ByteArrayOutputStream literal = new ByteArrayOutputStream();
+        List<DeltaEncoder.DeltaOp> ops = encoder(old).encode(new ByteArrayInputStream(updated), literal);
+
+        // 被破坏的一个块 + 末尾不足一块的部分
+        assertTrue(literal.size() <= BLOCK + inserted.length + 100, "literal bytes: " + literal.size());
+        assertArrayEquals(updated, apply(old, literal.toByteArray(), ops));
+    }
+
+    @Test
+    void testCompletelyDifferentFile() throws Exception {
+        byte[] old = randomBytes(10 * BLOCK, 4);
+        byte[] updated = randomBytes(300 * BLOCK + 7, 5);
+        ByteArrayOutputStream literal = new ByteArrayOutputStream();
+        List<DeltaEncoder.DeltaOp> ops = encoder(old).encode(new ByteArrayInputStream(updated), literal);
+
+        assertEquals(updated.length, literal.size());
+        assertArrayEquals(updated, apply(old, literal.toByteArray(), ops));
+    }
+
+    private static DeltaEncoder encoder(byte[] old) throws Exception {
+        int blocks = old.length / BLOCK;
+        int[] sums = new int[blocks];
+        byte[] digests = new byte[blocks * 16];
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        for (int i = 0; i < blocks; i++) {
+            sums[i] = RollingCksum.cksum(old, i * BLOCK, BLOCK);
+            md5.update(old, i * BLOCK, BLOCK);
+            System.arraycopy(md5.digest(), 0, digests, i * 16, 16);
+        }
+        return new DeltaEncoder(BLOCK, sums, digests);
+    }
+
+    private static byte[] apply(byte[] old, byte[] literal, List<DeltaEncoder.DeltaOp> ops) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (DeltaEncoder.DeltaOp op : ops) {
+            assertEquals(out.size(), op.getTargetOffset());
+            byte[] source = op.isLiteral() ? literal : old;
+            out.write(Arrays.copyOfRange(source, (int) op.getSourceOffset(), (int) (op.getSourceOffset() + op.getLength())));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
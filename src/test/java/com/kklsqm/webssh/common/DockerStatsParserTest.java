@@ -0,0 +1,50 @@
+package com.kklsqm.webssh.common;
+
+import com.kklsqm.webssh.domain.ContainerMetric;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DockerStatsParser 测试类
+ */
+class DockerStatsParserTest {
+
+    @Test
+    void testParseStreamingLine() {
+        String line = "\u001b[2J\u001b[H{\"BlockIO\":\"4.1MB / 0B\",\"CPUPerc\":\"12.50%\",\"Container\":\"3f2a\","
+                + "\"ID\":\"3f2a9c1b7d4e\",\"MemPerc\":\"1.56%\",\"MemUsage\":\"16MiB / 1GiB\",\"Name\":\"nginx\","
+                + "\"NetIO\":\"1.2kB / 648B\",\"PIDs\":\"5\"}";
+        DockerStatsParser.Entry entry = DockerStatsParser.parse(line);
+        assertNotNull(entry);
+        assertTrue(entry.frameStart());
+        assertEquals("nginx", entry.name());
+        assertEquals("3f2a9c1b7d4e", entry.id());
+        double[] values = entry.values();
+        assertEquals(12.5, values[ContainerMetric.CPU.ordinal()]);
+        assertEquals(1.56, values[ContainerMetric.MEMORY.ordinal()]);
+        assertEquals(16 << 20, values[ContainerMetric.MEMORY_USAGE.ordinal()]);
+        assertEquals(1 << 30, values[ContainerMetric.MEMORY_LIMIT.ordinal()]);
+        assertEquals(1200, values[ContainerMetric.NET_RX.ordinal()]);
+        assertEquals(648, values[ContainerMetric.NET_TX.ordinal()]);
+        assertEquals(4_100_000, values[ContainerMetric.BLOCK_READ.ordinal()], 1e-6);
+        assertEquals(0, values[ContainerMetric.BLOCK_WRITE.ordinal()]);
+        assertEquals(5, values[ContainerMetric.PIDS.ordinal()]);
+    }
+
+    @Test
+    void testMissingValuesAndGarbage() {
+        DockerStatsParser.Entry entry = DockerStatsParser.parse(
+                "{\"CPUPerc\":\"--\",\"MemUsage\":\"-- / --\",\"Name\":\"starting\",\"PIDs\":\"--\"}");
+        assertNotNull(entry);
+        assertFalse(entry.frameStart());
+        assertTrue(Double.isNaN(entry.values()[ContainerMetric.CPU.ordinal()]));
+        assertTrue(Double.isNaN(entry.values()[ContainerMetric.MEMORY_USAGE.ordinal()]));
+        assertTrue(Double.isNaN(entry.values()[ContainerMetric.NET_RX.ordinal()]));
+
+        assertNull(DockerStatsParser.parse("Cannot connect to the Docker daemon"));
+        assertNull(DockerStatsParser.parse("{\"CPUPerc\":\"1%\"}"));
+        assertTrue(Double.isNaN(DockerStatsParser.parseSize("12XB")));
+        assertEquals(1.5 * (1L << 40), DockerStatsParser.parseSize("1.5TiB"));
+    }
+}
@@ -0,0 +1,96 @@
+package com.kklsqm.webssh.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GorillaSegment 测试类
+ */
+class GorillaSegmentTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testRoundTripAndReopen() throws Exception {
+        Path file = dir.resolve("1.seg");
+        Random random = new Random(42);
+        List<long[]> times = new ArrayList<>();
+        List<double[]> rows = new ArrayList<>();
+
+        long timestamp = 1_700_000_000_000L;
+        double cpu = 20;
+        try (GorillaSegment segment = GorillaSegment.create(file, 3, 0, 256, 1 << 20)) {
+            for (int i = 0; i < 500; i++) {
+                // 间隔大多稳定，偶尔有抖动和长时间缺失
+                timestamp += i % 50 == 49 ? 600_000 : 5000 + random.nextInt(7) - 3;
+                cpu = Math.max(0, cpu + random.nextGaussian());
+                double[] row = {Math.round(cpu * 100) / 100.0, 1024.0, i % 10 == 0 ? Double.NaN : -i * 0.5};
+                assertTrue(segment.append(timestamp, row));
+                times.add(new long[]{timestamp});
+                rows.add(row);
+            }
+        }
+
+        // 重新打开后继续追加，编码状态要能接上
+        try (GorillaSegment segment = GorillaSegment.open(file, 1 << 20)) {
+            assertEquals(500, segment.getCount());
+            assertEquals(timestamp, segment.getLastTimestamp());
+            double[] row = {1.5, 2048.0, Double.NaN};
+            timestamp += 5000;
+            assertTrue(segment.append(timestamp, row));
+            times.add(new long[]{timestamp});
+            rows.add(row);
+        }
+
+        List<Long> decodedTimes = new ArrayList<>();
+        List<double[]> decodedRows = new ArrayList<>();
+        GorillaSegment.scan(file, Long.MIN_VALUE, Long.MAX_VALUE, (ts, values) -> {
+            decodedTimes.add(ts);
+            decodedRows.add(values.clone());
+        });
+        assertEquals(times.size(), decodedTimes.size());
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(times.get(i)[0], decodedTimes.get(i));
+            assertArrayEquals(rows.get(i), decodedRows.get(i));
+        }
+
+        // 压缩后远小于原始的 8 + 3 * 8 字节每条
+        assertTrue(GorillaSegment.readHeader(file).bitLength() / 8 < times.size() * 16L);
+    }
+
+    @Test
+    void testRangeScanGrowthAndSeal() throws Exception {
+        Path file = dir.resolve("2.seg");
+        GorillaSegment segment = GorillaSegment.create(file, 2, 60_000, 128, 4096);
+        int written = 0;
+        // 最大 4KB，写满时 append 返回 false
+        while (segment.append(written * 1000L, new double[]{Math.sin(written), written})) {
+            written++;
+        }
+        assertTrue(written > 10);
+        assertEquals(written - 1, (int) (segment.getLastTimestamp() / 1000));
+
+        List<Long> scanned = new ArrayList<>();
+        segment.scan(5000, 9000, (ts, values) -> scanned.add(ts));
+        assertEquals(List.of(5000L, 6000L, 7000L, 8000L, 9000L), scanned);
+
+        segment.seal();
+        long size = Files.size(file);
+        assertTrue(size < 4096);
+        assertEquals(60_000, GorillaSegment.readHeader(file).step());
+
+        List<double[]> last = new ArrayList<>();
+        GorillaSegment.scan(file, (written - 1) * 1000L, Long.MAX_VALUE, (ts, values) -> last.add(values.clone()));
+        assertEquals(1, last.size());
+        assertArrayEquals(new double[]{Math.sin(written - 1), written - 1}, last.get(0));
+    }
+}
@@ -0,0 +1,59 @@
+package com.kklsqm.webssh.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LineIndex 测试类
+ */
+class LineIndexTest {
+
+    @Test
+    void testCheckpointsAcrossChunks() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("line-").append(i).append('\n');
+        }
+        byte[] data = text.toString().getBytes(StandardCharsets.US_ASCII);
+
+        LineIndex index = new LineIndex(8);
+        // 分成不规则的小块扫描，结果应与一次扫描一致
+        for (int offset = 0; offset < data.length; offset += 37) {
+            index.scan(data, offset, Math.min(37, data.length - offset));
+        }
+
+        assertEquals(100, index.getNewlineCount());
+        assertEquals(data.length, index.getIndexedBytes());
+        assertEquals(data.length - 1, index.getLastNewlineOffset());
+
+        for (int line = 0; line < 100; line++) {
+            long offset = index.checkpointOffset(line);
+            long skip = index.linesAfterCheckpoint(line);
+            assertTrue(skip < 8);
+            // 从检查点跳过 skip 行后应正好是第 line 行
+            int pos = (int) offset;
+            for (long s = 0; s < skip; s++) {
+                while (data[pos] != '\n') {
+                    pos++;
+                }
+                pos++;
+            }
+            assertTrue(text.substring(pos).startsWith("line-" + line + "\n"), "line " + line);
+        }
+    }
+
+    @Test
+    void testCoversOnlyScannedLines() {
+        LineIndex index = new LineIndex(4);
+        byte[] data = "a\nb\nc".getBytes(StandardCharsets.US_ASCII);
+        index.scan(data, 0, data.length);
+
+        assertTrue(index.covers(2));
+        assertFalse(index.covers(3));
+        assertEquals(0, index.checkpointOffset(2));
+        assertEquals(2, index.linesAfterCheckpoint(2));
+    }
+}
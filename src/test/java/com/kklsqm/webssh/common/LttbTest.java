@@ -0,0 +1,44 @@
+package com.kklsqm.webssh.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Lttb 测试类
+ */
+class LttbTest {
+
+    @Test
+    void testKeepsEndpointsAndPeaks() {
+        int n = 10_000;
+        long[] x = new long[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = 1_700_000_000_000L + i * 5000L;
+            y[i] = Math.sin(i / 500.0);
+        }
+        // 一个孤立的尖峰必须保留
+        y[4321] = 50;
+
+        int[] selected = Lttb.select(x, y, 0, n, 100);
+        assertEquals(100, selected.length);
+        assertEquals(0, selected[0]);
+        assertEquals(n - 1, selected[99]);
+        boolean peak = false;
+        for (int i = 1; i < selected.length; i++) {
+            assertTrue(selected[i] > selected[i - 1]);
+            peak |= selected[i] == 4321;
+        }
+        assertTrue(peak);
+    }
+
+    @Test
+    void testSkipsNaNAndSmallInputs() {
+        long[] x = {1, 2, 3, 4, 5};
+        double[] y = {1, Double.NaN, 3, Double.NaN, 5};
+        assertArrayEquals(new int[]{0, 2, 4}, Lttb.select(x, y, 0, 5, 10));
+        assertArrayEquals(new int[]{0, 4}, Lttb.select(x, y, 0, 5, 2));
+        assertArrayEquals(new int[0], Lttb.select(x, new double[]{Double.NaN, Double.NaN, 1, 2, 3}, 0, 2, 10));
+    }
+}
@@ -0,0 +1,37 @@
+package com.kklsqm.webssh.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MetricRingBuffer 测试类
+ */
+class MetricRingBufferTest {
+
+    @Test
+    void testOverwriteOldestAndRange() {
+        MetricRingBuffer buffer = new MetricRingBuffer(4, 2);
+        assertEquals(-1, buffer.latestTimestamp());
+
+        for (int i = 1; i <= 6; i++) {
+            buffer.append(i * 1000L, new double[]{i, i * 10});
+        }
+
+        // 容量 4，最早的两个点被覆盖
+        assertEquals(4, buffer.size());
+        double[] latest = new double[2];
+        assertEquals(6000L, buffer.latest(latest));
+        assertArrayEquals(new double[]{6, 60}, latest);
+
+        MetricRingBuffer.Range all = buffer.range(0, Long.MAX_VALUE);
+        assertArrayEquals(new long[]{3000, 4000, 5000, 6000}, all.timestamps());
+        assertArrayEquals(new double[]{3, 4, 5, 6}, all.values()[0]);
+        assertArrayEquals(new double[]{30, 40, 50, 60}, all.values()[1]);
+
+        // 闭区间，且跨过环形缓冲区的回绕位置
+        MetricRingBuffer.Range middle = buffer.range(4000, 5000);
+        assertArrayEquals(new long[]{4000, 5000}, middle.timestamps());
+        assertEquals(0, buffer.range(7000, 8000).size());
+    }
+}
@@ -0,0 +1,75 @@
+package com.kklsqm.webssh.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PathIndex 测试类
+ */
+class PathIndexTest {
+
+    @Test
+    void testRoundTripSortedAndDeduplicated() {
+        TreeSet<String> expected = new TreeSet<>();
+        PathIndex.Builder builder = PathIndex.builder();
+        for (int i = 0; i < 500; i++) {
+            String path = "/srv/app-" + (i % 7) + "/conf/file-" + i + ".yml";
+            builder.add(path, false, i);
+            expected.add(path);
+        }
+        builder.add("/srv/app-1/conf/file-1.yml", false, 99);
+
+        PathIndex index = builder.build();
+        assertEquals(expected.size(), index.size());
+
+        List<String> actual = new ArrayList<>();
+        index.forEach((path, directory, mtime) -> actual.add(path));
+        assertEquals(new ArrayList<>(expected), actual);
+        // 重复路径保留后添加的属性
+        assertEquals(99, index.searchPrefix("/srv/app-1/conf/file-1.yml", 1).get(0).mtime());
+    }
+
+    @Test
+    void testPrefixSearch() {
+        PathIndex index = PathIndex.builder()
+                .add("/etc", true, 1)
+                .add("/etc/nginx", true, 2)
+                .add("/etc/nginx/nginx.conf", false, 3)
+                .add("/etc/nginx/conf.d/default.conf", false, 4)
+                .add("/etc/hosts", false, 5)
+                .add("/var/log/nginx/access.log", false, 6)
+                .build();
+
+        List<PathIndex.Entry> results = index.searchPrefix("/etc/nginx", 10);
+        assertEquals(List.of("/etc/nginx", "/etc/nginx/conf.d/default.conf", "/etc/nginx/nginx.conf"),
+                results.stream().map(PathIndex.Entry::path).toList());
+        assertTrue(results.get(0).directory());
+
+        assertEquals(1, index.searchPrefix("/etc/nginx", 1).size());
+        assertTrue(index.searchPrefix("/opt", 10).isEmpty());
+        assertTrue(index.searchPrefix("/a", 10).isEmpty());
+    }
+
+    @Test
+    void testNameSearchIgnoresCaseAndDirectoryPart() {
+        PathIndex.Builder builder = PathIndex.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add("/data/Nginx-" + i + "/readme.txt", false, i);
+        }
+        builder.add("/data/conf/NGINX.conf", false, 1);
+        PathIndex index = builder.build();
+
+        // 目录名中的 nginx 不应命中
+        List<PathIndex.Entry> results = index.searchName("nginx", 10);
+        assertEquals(List.of("/data/conf/NGINX.conf"), results.stream().map(PathIndex.Entry::path).toList());
+
+        assertEquals(100, index.searchName("README", 1000).size());
+        assertEquals(5, index.searchName("readme", 5).size());
+        assertTrue(index.searchName("missing", 10).isEmpty());
+    }
+}
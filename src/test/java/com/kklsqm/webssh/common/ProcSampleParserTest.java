@@ -0,0 +1,92 @@
+package com.kklsqm.webssh.common;
+
+import com.kklsqm.webssh.domain.HostMetric;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ProcSampleParser 测试类
+ */
+class ProcSampleParserTest {
+
+    private static String sample(long cpuUser, long cpuIdle, long rx, long tx, long sectorsRead) {
+        return "@cpu\n"
+                + "cpu  " + cpuUser + " 0 0 " + cpuIdle + " 0 0 0 0 0 0\n"
+                + "@mem\n"
+                + "MemTotal:        1000 kB\n"
+                + "MemFree:          100 kB\n"
+                + "MemAvailable:     250 kB\n"
+                + "@load\n"
+                + "1.16 0.81 0.05 2/86 6587\n"
+                + "@uptime\n"
+                + "2918.73 5000.10\n"
+                + "@net\n"
+                + "Inter-|   Receive                                                |  Transmit\n"
+                + " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n"
+                + "    lo: 999999 1 0 0 0 0 0 0 999999 1 0 0 0 0 0 0\n"
+                + "  eth0:" + rx + " 1 0 0 0 0 0 0 " + tx + " 1 0 0 0 0 0 0\n"
+                + "@procs\n"
+                + "      52\n"
+                + "@listen\n"
+                + "6\n"
+                + "@diskstats\n"
+                + "   7       0 loop0 5 0 100000 0 0 0 0 0 0 0 0\n"
+                + " 253       0 vda 10 0 " + sectorsRead + " 0 0 0 8 0 0 0 0\n"
+                + " 253       1 vda1 10 0 " + sectorsRead + " 0 0 0 8 0 0 0 0\n"
+                + "@statfs\n"
+                + "1000 600 500 4096\n";
+    }
+
+    @Test
+    void testParseAndDeltas() {
+        ProcSampleParser parser = new ProcSampleParser();
+        double[] out = new double[HostMetric.count()];
+
+        byte[] first = sample(100, 900, 1000, 2000, 10).getBytes(StandardCharsets.US_ASCII);
+        parser.parse(first, first.length, 1000, out);
+        assertTrue(parser.hasBaseline());
+        // 第一次没有上一次的计数，速率类指标为 NaN
+        assertTrue(Double.isNaN(out[HostMetric.CPU.ordinal()]));
+        assertTrue(Double.isNaN(out[HostMetric.NET_RX.ordinal()]));
+        assertEquals(75.0, out[HostMetric.MEMORY.ordinal()]);
+        assertEquals(1.16, out[HostMetric.LOAD1.ordinal()]);
+        assertEquals(0.05, out[HostMetric.LOAD15.ordinal()]);
+        // 进程数取自 @procs，而不是 loadavg 中包含线程的 86
+        assertEquals(52, out[HostMetric.PROCESSES.ordinal()]);
+        assertEquals(2918, out[HostMetric.UPTIME.ordinal()]);
+        assertEquals(6, out[HostMetric.CONNECTIONS.ordinal()]);
+        // 已用 400 / (已用 400 + 可用 500)
+        assertEquals(44.44, out[HostMetric.DISK.ordinal()]);
+
+        byte[] second = sample(130, 970, 3000, 2500, 30).getBytes(StandardCharsets.US_ASCII);
+        parser.parse(second, second.length, 3000, out);
+        // 100 个 jiffies 中 30 个忙
+        assertEquals(30.0, out[HostMetric.CPU.ordinal()]);
+        // lo 不计入，2 秒内收 2000 字节、发 500 字节
+        assertEquals(1000.0, out[HostMetric.NET_RX.ordinal()]);
+        assertEquals(250.0, out[HostMetric.NET_TX.ordinal()]);
+        // 只统计 vda 整块磁盘：20 个扇区 / 2 秒
+        assertEquals(20 * 512 / 2.0, out[HostMetric.DISK_READ.ordinal()]);
+        assertEquals(0.0, out[HostMetric.DISK_WRITE.ordinal()]);
+    }
+
+    @Test
+    void testWholeDiskDetection() {
+        assertTrue(isWholeDisk("sda"));
+        assertTrue(isWholeDisk("nvme0n1"));
+        assertTrue(isWholeDisk("mmcblk0"));
+        assertFalse(isWholeDisk("sda1"));
+        assertFalse(isWholeDisk("nvme0n1p2"));
+        assertFalse(isWholeDisk("mmcblk0p1"));
+        assertFalse(isWholeDisk("loop3"));
+        assertFalse(isWholeDisk("dm-0"));
+    }
+
+    private static boolean isWholeDisk(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        return ProcSampleParser.isWholeDisk(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,99 @@
+package com.kklsqm.webssh.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SingleFlight 测试类
+ */
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsShareOneLoad() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(0);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Integer> first = executor.submit(() -> flight.get("ls /", () -> {
+                started.countDown();
+                release.await();
+                return loads.incrementAndGet();
+            }));
+            started.await();
+
+            List<Future<Integer>> others = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                others.add(executor.submit(() -> flight.get("ls /", loads::incrementAndGet)));
+            }
+            // 等其他调用都开始等待后再完成第一次加载
+            Thread.sleep(100);
+            release.countDown();
+
+            assertEquals(1, first.get());
+            for (Future<Integer> other : others) {
+                assertEquals(1, other.get());
+            }
+        }
+        assertEquals(1, loads.get());
+        // ttl 为 0 时完成后不保留结果
+        assertEquals(2, flight.get("ls /", loads::incrementAndGet));
+    }
+
+    @Test
+    void testResultCachedWithinTtlAndInvalidated() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(60_000);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, flight.get("a", loads::incrementAndGet));
+        assertEquals(1, flight.get("a", loads::incrementAndGet));
+        assertEquals(2, flight.get("b", loads::incrementAndGet));
+
+        flight.invalidateIf(key -> key.equals("a"));
+        assertEquals(3, flight.get("a", loads::incrementAndGet));
+        assertEquals(2, flight.get("b", loads::incrementAndGet));
+    }
+
+    @Test
+    void testFailureIsNotCached() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(60_000);
+
+        IOException error = assertThrows(IOException.class, () -> flight.get("a", () -> {
+            throw new IOException("连接失败");
+        }));
+        assertEquals("连接失败", error.getMessage());
+        assertEquals(0, flight.size());
+        assertEquals(7, flight.get("a", () -> 7));
+    }
+
+    @Test
+    void testWaiterGivesUpOnHungLoad() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(60_000, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Integer> hung = executor.submit(() -> flight.get("a", () -> {
+                started.countDown();
+                release.await();
+                return 1;
+            }));
+            started.await();
+
+            assertThrows(TimeoutException.class, () -> flight.get("a", () -> 2));
+            // 超时后卡住的加载被丢弃，新的请求重新加载
+            assertEquals(3, flight.get("a", () -> 3));
+
+            release.countDown();
+            assertEquals(1, hung.get());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.kklsqm.webssh.common;
+
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.domain.SshService;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * SshSessionPool 测试类
+ */
+class SshSessionPoolTest {
+
+    @Test
+    void testLeasedSessionIsNotEvicted() throws Exception {
+        SshSessionFactory factory = mock(SshSessionFactory.class);
+        Session session = mock(Session.class);
+        when(session.isConnected()).thenReturn(true);
+        SshService server = new SshService(1, "web", "10.0.0.1", 22, "root", "secret", null, null);
+        when(factory.createSession(server)).thenReturn(session);
+
+        // 空闲超时为 -1：没有登记的会话每次检查都会被关闭
+        SshSessionPool pool = new SshSessionPool(factory, -1);
+        assertSame(session, pool.lease(server));
+        assertSame(session, pool.acquire(server));
+        pool.evictIdle();
+        verify(session, never()).disconnect();
+
+        pool.release(1, session);
+        // 重复 release 不会让计数变成负数
+        pool.release(1, session);
+        pool.evictIdle();
+        verify(session).disconnect();
+    }
+
+    @Test
+    void testLeaseEndsWithInvalidatedSession() throws Exception {
+        SshSessionFactory factory = mock(SshSessionFactory.class);
+        Session first = mock(Session.class);
+        Session second = mock(Session.class);
+        when(first.isConnected()).thenReturn(true);
+        when(second.isConnected()).thenReturn(true);
+        SshService server = new SshService(1, "web", "10.0.0.1", 22, "root", "secret", null, null);
+        when(factory.createSession(server)).thenReturn(first, second);
+
+        SshSessionPool pool = new SshSessionPool(factory, -1);
+        pool.lease(server);
+        pool.invalidate(1, first);
+        assertSame(second, pool.acquire(server));
+        // 旧会话的 release 不影响新会话
+        pool.release(1, first);
+        pool.evictIdle();
+        verify(second).disconnect();
+    }
+}
@@ -0,0 +1,94 @@
+package com.kklsqm.webssh.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TarOutputStream 测试类
+ */
+class TarOutputStreamTest {
+
+    @Test
+    void testFileEntryLayout() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarOutputStream tar = new TarOutputStream(bytes)) {
+            byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+            tar.putFileEntry("logs/app.log", content.length, 0644, 1700000000L);
+            tar.write(content);
+            tar.closeEntry();
+        }
+
+        byte[] archive = bytes.toByteArray();
+        // 头部 + 一个数据块 + 两个结束块
+        assertEquals(4 * TarOutputStream.BLOCK_SIZE, archive.length);
+        assertEquals("logs/app.log", readString(archive, 0, 100));
+        assertEquals(5, Long.parseLong(readString(archive, 124, 12), 8));
+        assertEquals('0', archive[156]);
+        assertEquals("ustar", readString(archive, 257, 6));
+        assertEquals(checksum(archive, 0), Long.parseLong(readString(archive, 148, 7), 8));
+        assertEquals("hello", readString(archive, 512, 512));
+    }
+
+    @Test
+    void testLongNameUsesPrefix() throws IOException {
+        String dir = "a".repeat(80);
+        String name = dir + "/" + "b".repeat(60);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarOutputStream tar = new TarOutputStream(bytes)) {
+            tar.putFileEntry(name, 0, 0644, 0);
+            tar.closeEntry();
+        }
+
+        byte[] archive = bytes.toByteArray();
+        assertEquals("b".repeat(60), readString(archive, 0, 100));
+        assertEquals(dir, readString(archive, 345, 155));
+    }
+
+    @Test
+    void testUnsplittableNameUsesGnuLongLink() throws IOException {
+        String name = "c".repeat(150);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarOutputStream tar = new TarOutputStream(bytes)) {
+            tar.putFileEntry(name, 0, 0644, 0);
+            tar.closeEntry();
+        }
+
+        byte[] archive = bytes.toByteArray();
+        assertEquals('L', archive[156]);
+        assertEquals(name, readString(archive, 512, 512));
+        assertEquals('0', archive[2 * 512 + 156]);
+    }
+
+    @Test
+    void testShortContentIsRejected() throws IOException {
+        TarOutputStream tar = new TarOutputStream(new ByteArrayOutputStream());
+        tar.putFileEntry("x", 10, 0644, 0);
+        tar.write(new byte[4]);
+        assertThrows(IOException.class, tar::closeEntry);
+        assertThrows(IOException.class, () -> tar.write(new byte[7]));
+    }
+
+    private static String readString(byte[] data, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && data[end] != 0) {
+            end++;
+        }
+        return new String(data, offset, end - offset, StandardCharsets.UTF_8).trim();
+    }
+
+    private static long checksum(byte[] data, int headerOffset) {
+        byte[] header = Arrays.copyOfRange(data, headerOffset, headerOffset + 512);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long sum = 0;
+        for (byte b : header) {
+            sum += b & 0xFF;
+        }
+        return sum;
+    }
+}
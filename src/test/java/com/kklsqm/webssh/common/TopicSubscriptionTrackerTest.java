@@ -0,0 +1,121 @@
+package com.kklsqm.webssh.common;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TopicSubscriptionTracker 测试类
+ */
+class TopicSubscriptionTrackerTest {
+
+    private final List<String> events = new ArrayList<>();
+    private final TopicSubscriptionTracker tracker = new TopicSubscriptionTracker();
+
+    TopicSubscriptionTrackerTest() {
+        tracker.register("/topic/dashboard/", new TopicSubscriptionTracker.Listener() {
+            @Override
+            public void onFirstSubscriber(String destination) {
+                synchronized (events) {
+                    events.add("start " + destination);
+                }
+            }
+
+            @Override
+            public void onLastUnsubscribed(String destination) {
+                synchronized (events) {
+                    events.add("stop " + destination);
+                }
+            }
+        });
+    }
+
+    @Test
+    void testStartsOnFirstAndStopsOnLast() {
+        tracker.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, "s1", "sub-0", "/topic/dashboard/1")));
+        tracker.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, "s2", "sub-0", "/topic/dashboard/1")));
+        // 未注册的前缀不计数
+        tracker.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, "s2", "sub-1", "/topic/other")));
+        assertEquals(2, tracker.subscriberCount("/topic/dashboard/1"));
+        assertEquals(0, tracker.subscriberCount("/topic/other"));
+
+        tracker.onUnsubscribe(new SessionUnsubscribeEvent(this, message(SimpMessageType.UNSUBSCRIBE, "s1", "sub-0", null)));
+        assertEquals(List.of("start /topic/dashboard/1"), events);
+
+        // 连接断开等同于取消该连接的全部订阅
+        tracker.onDisconnect(new SessionDisconnectEvent(this, message(SimpMessageType.DISCONNECT, "s2", null, null), "s2", CloseStatus.NORMAL));
+        assertEquals(List.of("start /topic/dashboard/1", "stop /topic/dashboard/1"), events);
+        assertEquals(0, tracker.subscriberCount("/topic/dashboard/1"));
+    }
+
+    @Test
+    void testResubscribeWithSameIdMovesSubscription() {
+        tracker.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, "s1", "sub-0", "/topic/dashboard/1")));
+        tracker.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, "s1", "sub-0", "/topic/dashboard/2")));
+        assertEquals(0, tracker.subscriberCount("/topic/dashboard/1"));
+        assertEquals(1, tracker.subscriberCount("/topic/dashboard/2"));
+
+        // 重复的取消订阅只生效一次
+        tracker.onUnsubscribe(new SessionUnsubscribeEvent(this, message(SimpMessageType.UNSUBSCRIBE, "s1", "sub-0", null)));
+        tracker.onUnsubscribe(new SessionUnsubscribeEvent(this, message(SimpMessageType.UNSUBSCRIBE, "s1", "sub-0", null)));
+        assertEquals(List.of("start /topic/dashboard/1", "stop /topic/dashboard/1", "start /topic/dashboard/2", "stop /topic/dashboard/2"), events);
+    }
+
+    @Test
+    void testConcurrentResubscribeKeepsNotificationsInOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                String sessionId = "s" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        tracker.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, sessionId, "sub-0", "/topic/dashboard/1")));
+                        tracker.onUnsubscribe(new SessionUnsubscribeEvent(this, message(SimpMessageType.UNSUBSCRIBE, sessionId, "sub-0", null)));
+                    }
+                    // 最后留下一个订阅
+                    tracker.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, sessionId, "sub-0", "/topic/dashboard/1")));
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(8, tracker.subscriberCount("/topic/dashboard/1"));
+        List<String> snapshot;
+        synchronized (events) {
+            snapshot = List.copyOf(events);
+        }
+        // 启动和停止严格交替，并以启动结束
+        for (int i = 0; i < snapshot.size(); i++) {
+            assertEquals(i % 2 == 0 ? "start /topic/dashboard/1" : "stop /topic/dashboard/1", snapshot.get(i));
+        }
+        assertEquals("start /topic/dashboard/1", snapshot.getLast());
+    }
+
+    private static Message<byte[]> message(SimpMessageType type, String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(type);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(subscriptionId);
+        headers.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+}
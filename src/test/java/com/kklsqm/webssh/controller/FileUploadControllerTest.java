@@ -0,0 +1,22 @@
+package com.kklsqm.webssh.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FileUploadController 测试类
+ */
+class FileUploadControllerTest {
+
+    @Test
+    void testAcceptsEncoding() {
+        assertTrue(FileUploadController.acceptsEncoding("gzip, deflate, br, zstd", "zstd"));
+        assertTrue(FileUploadController.acceptsEncoding("GZIP;q=0.8", "gzip"));
+        assertFalse(FileUploadController.acceptsEncoding("gzip;q=0, br", "gzip"));
+        assertFalse(FileUploadController.acceptsEncoding("gzip; q=0.000", "gzip"));
+        assertTrue(FileUploadController.acceptsEncoding("gzip;q=0.01", "gzip"));
+        assertFalse(FileUploadController.acceptsEncoding("deflate, br", "gzip"));
+        assertFalse(FileUploadController.acceptsEncoding(null, "gzip"));
+    }
+}
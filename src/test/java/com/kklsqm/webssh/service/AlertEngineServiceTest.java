@@ -0,0 +1,174 @@
+package com.kklsqm.webssh.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kklsqm.webssh.domain.AlertEvent;
+import com.kklsqm.webssh.domain.AlertRule;
+import com.kklsqm.webssh.domain.HostMetric;
+import com.kklsqm.webssh.domain.SshService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * AlertEngineService 测试类
+ */
+class AlertEngineServiceTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    private final List<AlertEvent> events = new ArrayList<>();
+    private final SshServiceService sshServiceService = mock(SshServiceService.class);
+    private AlertEngineService engine;
+    private SshService server;
+
+    @BeforeEach
+    void setUp() {
+        engine = new AlertEngineService(List.of(events::add), sshServiceService, new ObjectMapper(),
+                dir.resolve("alert-rules.json").toString(), 60);
+        engine.init();
+        server = new SshService();
+        server.setId(1);
+        server.setName("web-1");
+    }
+
+    private static double[] sample(double cpu, double disk) {
+        double[] values = new double[HostMetric.count()];
+        Arrays.fill(values, Double.NaN);
+        values[HostMetric.CPU.ordinal()] = cpu;
+        values[HostMetric.DISK.ordinal()] = disk;
+        return values;
+    }
+
+    @Test
+    void testThresholdFiresAfterDurationAndResolvesOnce() {
+        // 默认规则：CPU > 90 持续 5 分钟
+        for (int i = 0; i <= 60; i++) {
+            engine.onSample(server, START + i * 10_000L, sample(95, 50));
+        }
+        assertEquals(1, events.size());
+        assertEquals(AlertEvent.State.FIRING, events.get(0).getState());
+        assertEquals(1, engine.getActiveAlerts().size());
+
+        // 持续超过阈值不再重复通知
+        engine.onSample(server, START + 700_000, sample(99, 50));
+        assertEquals(1, events.size());
+
+        engine.onSample(server, START + 710_000, sample(10, 50));
+        assertEquals(2, events.size());
+        assertEquals(AlertEvent.State.RESOLVED, events.get(1).getState());
+        assertTrue(engine.getActiveAlerts().isEmpty());
+
+        // 冷却期内再次告警不通知，恢复也不通知
+        for (int i = 0; i <= 31; i++) {
+            engine.onSample(server, START + 720_000 + i * 10_000L, sample(95, 50));
+        }
+        engine.onSample(server, START + 1_100_000, sample(10, 50));
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    void testShortSpikeDoesNotFire() {
+        engine.onSample(server, START, sample(95, 50));
+        engine.onSample(server, START + 200_000, sample(95, 50));
+        engine.onSample(server, START + 210_000, sample(20, 50));
+        engine.onSample(server, START + 400_000, sample(95, 50));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void testRateRule() {
+        // 默认规则：磁盘使用率每小时增长超过 5
+        for (int i = 0; i < 12; i++) {
+            engine.onSample(server, START + i * 60_000L, sample(10, 50 + i * 0.01));
+        }
+        assertTrue(events.isEmpty());
+        // 10 分钟内涨 2 个百分点，折合每小时 12
+        for (int i = 12; i < 22; i++) {
+            engine.onSample(server, START + i * 60_000L, sample(10, 50 + (i - 11) * 0.2));
+        }
+        assertEquals(1, events.size());
+        assertEquals(HostMetric.DISK.getKey(), events.get(0).getSubject());
+        assertTrue(events.get(0).getValue() > 5);
+    }
+
+    @Test
+    void testServiceChangeAndPersistedRules() throws Exception {
+        engine.onServiceStatus(server, Map.of("nginx", "active"));
+        engine.onServiceStatus(server, Map.of("nginx", "active"));
+        assertTrue(events.isEmpty());
+        engine.onServiceStatus(server, Map.of("nginx", "failed"));
+        assertEquals(1, events.size());
+        assertEquals(AlertEvent.State.CHANGED, events.get(0).getState());
+
+        // 删除规则后写入规则文件，重新加载后仍然生效
+        assertTrue(engine.deleteRule("default-service"));
+        assertTrue(Files.exists(dir.resolve("alert-rules.json")));
+        AlertEngineService reloaded = new AlertEngineService(List.of(events::add), sshServiceService, new ObjectMapper(),
+                dir.resolve("alert-rules.json").toString(), 60);
+        reloaded.init();
+        assertEquals(3, reloaded.getRules().size());
+        reloaded.onServiceStatus(server, Map.of("nginx", "active"));
+        reloaded.onServiceStatus(server, Map.of("nginx", "failed"));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void testFailedPersistLeavesRulesUnchanged() throws Exception {
+        // 规则文件位置是非空目录，写入必然失败
+        Path rulesFile = dir.resolve("rules");
+        Files.createDirectories(rulesFile.resolve("locked"));
+        AlertEngineService broken = new AlertEngineService(List.of(events::add), sshServiceService, new ObjectMapper(),
+                rulesFile.toString(), 60);
+        broken.init();
+
+        AlertRule rule = new AlertRule();
+        rule.setType(AlertRule.Type.SERVICE_CHANGE);
+        assertThrows(IOException.class, () -> broken.saveRule(rule));
+        assertThrows(IOException.class, () -> broken.deleteRule("default-cpu"));
+        assertEquals(4, broken.getRules().size());
+
+        // 删除失败的规则仍在生效
+        for (int i = 0; i <= 30; i++) {
+            broken.onSample(server, START + i * 10_000L, sample(95, 50));
+        }
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void testRemovedContainerAndServerArePurged() throws Exception {
+        AlertRule rule = engine.getRules().stream()
+                .filter(r -> r.getType() == AlertRule.Type.CONTAINER_NOT_RUNNING)
+                .findFirst().orElseThrow();
+        rule.setEnabled(true);
+        rule.setDurationMs(0);
+        engine.saveRule(rule);
+
+        engine.onContainerStates(server, Map.of("db", false, "web", false));
+        assertEquals(2, engine.getActiveAlerts().size());
+
+        // db 被删除：告警结束并通知恢复
+        engine.onContainerStates(server, Map.of("web", false));
+        assertEquals(1, engine.getActiveAlerts().size());
+        assertEquals(AlertEvent.State.RESOLVED, events.getLast().getState());
+        assertEquals("db", events.getLast().getSubject());
+
+        // 服务器被删除：清理该服务器的全部告警
+        when(sshServiceService.list()).thenReturn(List.of());
+        engine.syncServers();
+        assertTrue(engine.getActiveAlerts().isEmpty());
+    }
+}
@@ -0,0 +1,89 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.domain.dto.ContainerActionItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BulkContainerActionService 测试类
+ */
+class BulkContainerActionServiceTest {
+
+    @Test
+    void testBuildCommandGroupsByAction() {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        groups.put("restart", List.of("web", "api"));
+        groups.put("start", List.of("job"));
+        assertEquals("echo '@action restart'; docker restart -t 5 web api 2>&1; "
+                        + "echo '@action start'; docker start job 2>&1; "
+                        + "echo '@inspect'; docker inspect --format '{{.Id}}|{{.Name}}|{{.State.Status}}' web api job 2>&1",
+                BulkContainerActionService.buildCommand(groups, 5));
+    }
+
+    @Test
+    void testParseResults() {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        groups.put("restart", List.of("web", "api", "gone"));
+        groups.put("stop", List.of("3f2a9c1b7d4e"));
+        List<String> lines = List.of(
+                "@action restart",
+                "web",
+                "Error response from daemon: No such container: gone",
+                "api",
+                "@action stop",
+                "3f2a9c1b7d4e",
+                "@inspect",
+                "aaaa1111|/web|running",
+                "bbbb2222|/api|restarting",
+                "3f2a9c1b7d4e5f60|/job|exited",
+                "Error: No such object: gone");
+
+        List<Map<String, Object>> results = BulkContainerActionService.parse(7, groups, lines);
+        assertEquals(4, results.size());
+        assertEquals(true, results.get(0).get("success"));
+        assertEquals(7, results.get(0).get("serverId"));
+        assertEquals(false, results.get(1).get("success"));
+        assertEquals("restarting", results.get(1).get("status"));
+        assertEquals(false, results.get(2).get("success"));
+        assertEquals("Error response from daemon: No such container: gone", results.get(2).get("message"));
+        assertEquals(true, results.get(3).get("success"));
+        assertEquals("exited", results.get(3).get("status"));
+    }
+
+    @Test
+    void testParsePrefersNameOverIdPrefix() {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        groups.put("stop", List.of("cafe"));
+        groups.put("start", List.of("beef"));
+        List<String> lines = List.of(
+                "@action stop",
+                "cafe",
+                "@action start",
+                "beef",
+                "@inspect",
+                // ID 以 cafe 开头的其他容器排在前面，不能被当作名为 cafe 的容器
+                "cafe0123456789ab|/web|running",
+                "1111aaaa2222bbbb|/cafe|exited",
+                "beef0123456789ab|/api|running");
+
+        List<Map<String, Object>> results = BulkContainerActionService.parse(1, groups, lines);
+        assertEquals("exited", results.get(0).get("status"));
+        assertEquals(true, results.get(0).get("success"));
+        // 没有同名容器时仍按 ID 前缀匹配
+        assertEquals("running", results.get(1).get("status"));
+        assertEquals(true, results.get(1).get("success"));
+    }
+
+    @Test
+    void testValidate() {
+        assertNull(BulkContainerActionService.validate(new ContainerActionItem(1L, "web-1", "restart")));
+        assertNotNull(BulkContainerActionService.validate(new ContainerActionItem(1L, "web", "rm")));
+        assertNotNull(BulkContainerActionService.validate(new ContainerActionItem(1L, "web;reboot", "stop")));
+        assertNotNull(BulkContainerActionService.validate(new ContainerActionItem(null, "web", "stop")));
+    }
+}
@@ -0,0 +1,78 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.common.SshSessionFactory;
+import com.kklsqm.webssh.domain.SshService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BulkTransferService 测试类
+ * 基准测试需要真实 SSH 服务器，例如：
+ * mvn test -Dtest=BulkTransferServiceTest -Dbench.ssh.host=10.0.0.2 -Dbench.ssh.user=root -Dbench.ssh.password=xxx
+ */
+class BulkTransferServiceTest {
+
+    @Test
+    void testChooseStrategy() {
+        // 大量小文件走 tar
+        assertEquals(BulkTransferService.Strategy.TAR,
+                BulkTransferService.chooseStrategy(50000, 50000L * 2048, true));
+        // 远程没有 tar 时回退 SFTP
+        assertEquals(BulkTransferService.Strategy.SFTP,
+                BulkTransferService.chooseStrategy(50000, 50000L * 2048, false));
+        // 文件很少
+        assertEquals(BulkTransferService.Strategy.SFTP,
+                BulkTransferService.chooseStrategy(3, 3 * 1024, true));
+        // 平均文件较大
+        assertEquals(BulkTransferService.Strategy.SFTP,
+                BulkTransferService.chooseStrategy(20, 20L * 100 * 1024 * 1024, true));
+    }
+
+    @Test
+    void testSanitizeRelativePath() {
+        assertEquals("a/b/c.txt", BulkTransferService.sanitizeRelativePath("a/b/c.txt"));
+        assertEquals("a/c.txt", BulkTransferService.sanitizeRelativePath("/a/./c.txt"));
+        assertEquals("dir/file.js", BulkTransferService.sanitizeRelativePath("dir\\file.js"));
+        assertThrows(IllegalArgumentException.class, () -> BulkTransferService.sanitizeRelativePath("../etc/passwd"));
+        assertThrows(IllegalArgumentException.class, () -> BulkTransferService.sanitizeRelativePath("/"));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "bench.ssh.host", matches = ".+")
+    void benchmarkTarVersusSftp() throws Exception {
+        SshService server = new SshService();
+        server.setHost(System.getProperty("bench.ssh.host"));
+        server.setPort(Integer.getInteger("bench.ssh.port", 22));
+        server.setUsername(System.getProperty("bench.ssh.user", "root"));
+        server.setPassword(System.getProperty("bench.ssh.password", ""));
+        int fileCount = Integer.getInteger("bench.files", 2000);
+        int fileSize = Integer.getInteger("bench.file.size", 2048);
+        String remoteDir = System.getProperty("bench.dir", "/tmp/webssh-bench");
+
+        MultipartFile[] files = new MultipartFile[fileCount];
+        byte[] content = "x".repeat(fileSize).getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < fileCount; i++) {
+            files[i] = new MockMultipartFile("files", "pkg" + (i % 50) + "/file" + i + ".js", null, content);
+        }
+
+        SshSessionFactory sessionFactory = new SshSessionFactory();
+        BulkTransferService service = new BulkTransferService(sessionFactory, new FileTransferService(sessionFactory));
+
+        BulkTransferService.BulkResult tar = service.upload(server, files, remoteDir + "/tar",
+                BulkTransferService.Strategy.TAR);
+        BulkTransferService.BulkResult sftp = service.upload(server, files, remoteDir + "/sftp",
+                BulkTransferService.Strategy.SFTP);
+
+        System.out.printf("bulk upload %d x %d bytes: tar %d ms, sftp %d ms, speedup %.1fx%n",
+                fileCount, fileSize, tar.getElapsedMs(), sftp.getElapsedMs(),
+                (double) sftp.getElapsedMs() / Math.max(1, tar.getElapsedMs()));
+        assertEquals(fileCount, tar.getFileCount());
+        assertEquals(fileCount, sftp.getFileCount());
+    }
+}
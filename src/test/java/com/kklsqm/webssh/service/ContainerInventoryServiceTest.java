@@ -0,0 +1,129 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.common.SshSessionPool;
+import com.kklsqm.webssh.common.TopicSubscriptionTracker;
+import com.kklsqm.webssh.domain.SshService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * ContainerInventoryService 测试类
+ */
+class ContainerInventoryServiceTest {
+
+    private final AlertEngineService alertEngineService = mock(AlertEngineService.class);
+    private final SshSessionPool sessionPool = mock(SshSessionPool.class);
+    private final ContainerInventoryService service = new ContainerInventoryService(
+            mock(TopicSubscriptionTracker.class), mock(SshServiceService.class), sessionPool,
+            mock(SimpMessagingTemplate.class), alertEngineService, mock(HostMetricsExporter.class),
+            600000, 15000, 5000);
+    private final SshService server = new SshService();
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testParseContainerLine() {
+        Map<String, Object> running = ContainerInventoryService.parseContainer(
+                "3f2a9c1b7d4e5f60|web|Up 3 hours (healthy)|0.0.0.0:80->80/tcp|nginx:1.27");
+        assertNotNull(running);
+        assertEquals("3f2a9c1b7d4e", running.get("id"));
+        assertEquals("web", running.get("name"));
+        assertEquals(true, running.get("isRunning"));
+        assertEquals(List.of("0.0.0.0:80->80/tcp"), running.get("ports"));
+        assertEquals("nginx:1.27", running.get("image"));
+
+        Map<String, Object> exited = ContainerInventoryService.parseContainer("a1b2c3d4e5f6|job|Exited (0) 2 days ago||busybox");
+        assertNotNull(exited);
+        assertEquals(false, exited.get("isRunning"));
+        assertEquals(List.of(), exited.get("ports"));
+
+        assertNull(ContainerInventoryService.parseContainer(""));
+        assertNull(ContainerInventoryService.parseContainer("Cannot connect to the Docker daemon"));
+    }
+
+    @Test
+    void testSeedThenEvents() {
+        ContainerInventoryService.Inventory inventory = seeded();
+        assertTrue(inventory.seeded.isDone());
+        assertFalse(inventory.seeding);
+        assertEquals(2, inventory.containers.size());
+        verify(alertEngineService).onContainerStates(eq(server), eq(Map.of("web", true, "job", false)));
+
+        // 与状态无关的事件和非 JSON 行被忽略
+        service.accept(inventory, server, "{\"Type\":\"container\",\"Action\":\"exec_start: sh\",\"id\":\"3f2a9c1b7d4e5f60\"}");
+        service.accept(inventory, server, "{\"Type\":\"container\",\"Action\":\"resize\",\"id\":\"3f2a9c1b7d4e5f60\"}");
+        service.accept(inventory, server, "warning: something");
+        assertTrue(inventory.dirty.isEmpty());
+
+        service.accept(inventory, server, "{\"Type\":\"container\",\"Action\":\"die\",\"id\":\"3f2a9c1b7d4e5f60aa\"}");
+        // destroy 不直接删除，和其他事件一样排队查询
+        service.accept(inventory, server, "{\"Type\":\"container\",\"Action\":\"destroy\",\"id\":\"a1b2c3d4e5f6\"}");
+        synchronized (inventory) {
+            assertTrue(inventory.dirty.containsAll(List.of("3f2a9c1b7d4e", "a1b2c3d4e5f6")));
+        }
+        assertEquals(2, inventory.containers.size());
+    }
+
+    @Test
+    void testApplyRefresh() {
+        ContainerInventoryService.Inventory inventory = seeded();
+        // 容器 job 已删除，web 已停止
+        service.applyRefresh(inventory, server, List.of("3f2a9c1b7d4e", "a1b2c3d4e5f6"),
+                List.of("3f2a9c1b7d4e|web|Exited (0) 1 second ago||nginx:1.27", ""), 1);
+        assertEquals(false, inventory.containers.get("3f2a9c1b7d4e").get("isRunning"));
+        assertFalse(inventory.containers.containsKey("a1b2c3d4e5f6"));
+        verify(alertEngineService).onContainerStates(eq(server), eq(Map.of("web", false)));
+
+        // generation 0 是初始清单之前开始的查询，结果已过时
+        service.applyRefresh(inventory, server, List.of("a1b2c3d4e5f6"),
+                List.of("a1b2c3d4e5f6|job|Up 1 second||busybox"), 0);
+        assertFalse(inventory.containers.containsKey("a1b2c3d4e5f6"));
+        verify(alertEngineService, times(2)).onContainerStates(eq(server), any());
+    }
+
+    @Test
+    void testFailedQueryLeavesInventoryUnchanged() throws Exception {
+        ChannelExec channel = mock(ChannelExec.class);
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(0).write("Cannot connect to the Docker daemon".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(channel).setErrStream(any());
+        when(channel.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(channel.isClosed()).thenReturn(true);
+        when(channel.getExitStatus()).thenReturn(1);
+        Session session = mock(Session.class);
+        when(session.openChannel("exec")).thenReturn(channel);
+        when(sessionPool.acquire(server)).thenReturn(session);
+
+        // 输出为空但退出码非 0，不能当作容器都已删除
+        assertNull(service.queryContainers(server, List.of("3f2a9c1b7d4e", "a1b2c3d4e5f6")));
+        verify(sessionPool, never()).invalidate(any(), any());
+    }
+
+    private ContainerInventoryService.Inventory seeded() {
+        ContainerInventoryService.Inventory inventory = new ContainerInventoryService.Inventory(1, "/topic/containers/1");
+        inventory.seeding = true;
+        service.accept(inventory, server, "3f2a9c1b7d4e5f60|web|Up 3 hours|0.0.0.0:80->80/tcp|nginx:1.27");
+        service.accept(inventory, server, "a1b2c3d4e5f6|job|Exited (0) 2 days ago||busybox");
+        assertFalse(inventory.seeded.isDone());
+        service.accept(inventory, server, "@events");
+        return inventory;
+    }
+}
@@ -0,0 +1,126 @@
+package com.kklsqm.webssh.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ContainerLogService 测试类
+ */
+class ContainerLogServiceTest {
+
+    @Test
+    void testFilter() {
+        assertTrue(ContainerLogService.filter(null, false).test("anything"));
+        assertTrue(ContainerLogService.filter("", true).test("anything"));
+
+        Predicate<String> plain = ContainerLogService.filter("Error", false);
+        assertTrue(plain.test("2025 ERROR connection refused"));
+        assertFalse(plain.test("2025 INFO started"));
+        // 非正则模式下特殊字符按字面匹配
+        assertTrue(ContainerLogService.filter("[warn]", false).test("x [WARN] y"));
+
+        Predicate<String> regex = ContainerLogService.filter("status=5\\d\\d", true);
+        assertTrue(regex.test("GET /api status=502"));
+        assertFalse(regex.test("GET /api status=200"));
+        assertThrows(PatternSyntaxException.class, () -> ContainerLogService.filter("(", true));
+    }
+
+    @Test
+    void testRegexFilterStopsWhenInterrupted() {
+        // 回溯失控的正则在订阅取消 (发送线程被中断) 后结束
+        Predicate<String> catastrophic = ContainerLogService.filter("(a+)+$", true);
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(IllegalStateException.class, () -> catastrophic.test("a".repeat(64) + "!"));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void testHistoryReplay() throws InterruptedException {
+        ContainerLogService.LogChannel channel = new ContainerLogService.LogChannel(1, "web", "1/web", 3);
+        for (int i = 1; i <= 5; i++) {
+            channel.accept("2025-09-30T10:00:0" + i + ".000000000Z line" + i, 0);
+        }
+        // 历史只保留最近 3 行，新订阅者补发其中最近 2 行
+        ContainerLogService.Subscriber subscriber = subscriber(false, 10);
+        channel.reserve();
+        channel.attach(subscriber, 2);
+        assertEquals(List.of("line4", "line5"), drain(subscriber));
+
+        channel.accept("2025-09-30T10:00:06.000000000Z line6", 0);
+        assertEquals(List.of("line6"), drain(subscriber));
+    }
+
+    @Test
+    void testTimestampDedupeAcrossResume() throws InterruptedException {
+        ContainerLogService.LogChannel channel = new ContainerLogService.LogChannel(1, "web", "1/web", 10);
+        ContainerLogService.Subscriber subscriber = subscriber(false, 10);
+        channel.reserve();
+        channel.attach(subscriber, 0);
+        channel.accept("2025-09-30T10:00:01.000000000Z a", 0);
+        channel.accept("2025-09-30T10:00:02.000000000Z b", 0);
+
+        // 用 --since 重连后 docker 会重新输出同一时间的行
+        channel.accept("2025-09-30T10:00:02.000000000Z b", 0);
+        channel.accept("2025-09-30T10:00:03.000000000Z c", 0);
+        // docker 自身的错误信息没有时间戳，不进入历史
+        channel.accept("Error: No such container: web", 0);
+        assertEquals(List.of("a", "b", "c"), drain(subscriber));
+
+        ContainerLogService.Subscriber late = subscriber(false, 10);
+        channel.reserve();
+        channel.attach(late, 100);
+        assertEquals(List.of("a", "b", "c"), drain(late));
+    }
+
+    @Test
+    void testDropCounting() throws InterruptedException {
+        ContainerLogService.LogChannel channel = new ContainerLogService.LogChannel(1, "web", "1/web", 10);
+        ContainerLogService.Subscriber subscriber = subscriber(false, 2);
+        channel.reserve();
+        channel.attach(subscriber, 0);
+        for (String line : List.of("a", "b", "c", "d")) {
+            channel.publish(line, 0);
+        }
+        assertEquals(2, subscriber.takeDropped());
+        assertEquals(0, subscriber.takeDropped());
+        assertEquals(List.of("c", "d"), drain(subscriber));
+    }
+
+    @Test
+    void testPauseFallsBackToDropping() throws InterruptedException {
+        ContainerLogService.LogChannel channel = new ContainerLogService.LogChannel(1, "web", "1/web", 10);
+        ContainerLogService.Subscriber subscriber = subscriber(true, 1);
+        channel.reserve();
+        channel.attach(subscriber, 0);
+        channel.publish("a", 50);
+
+        // 第一次等待超时后不再等待，后续的行直接丢弃最旧的
+        long start = System.nanoTime();
+        channel.publish("b", 50);
+        channel.publish("c", 50);
+        channel.publish("d", 50);
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        assertEquals(3, subscriber.takeDropped());
+        assertEquals(List.of("d"), drain(subscriber));
+    }
+
+    private static ContainerLogService.Subscriber subscriber(boolean pause, int capacity) {
+        return new ContainerLogService.Subscriber("user", "/queue/container-logs/1/web",
+                ContainerLogService.filter(null, false), pause, capacity);
+    }
+
+    private static List<String> drain(ContainerLogService.Subscriber subscriber) {
+        List<String> lines = new ArrayList<>();
+        subscriber.queue.drainTo(lines);
+        return lines;
+    }
+}
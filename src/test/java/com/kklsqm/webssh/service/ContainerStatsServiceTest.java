@@ -0,0 +1,76 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.common.DockerStatsParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ContainerStatsService 测试类
+ */
+class ContainerStatsServiceTest {
+
+    private final List<List<String>> pushes = new ArrayList<>();
+    private final List<List<String>> appends = new ArrayList<>();
+    private final List<Set<String>> completed = new ArrayList<>();
+
+    private final ContainerStatsService.FrameAssembler frames = new ContainerStatsService.FrameAssembler(
+            (appended, frame) -> {
+                appends.add(appended.stream().map(DockerStatsParser.Entry::name).toList());
+                pushes.add(frame.stream().map(DockerStatsParser.Entry::name).toList());
+            },
+            completed::add);
+
+    @Test
+    void testContainerStartsMidStream() {
+        frame("a", "b");
+        frame("a", "b");
+        // 与上一帧大小相同，收齐即推送
+        assertEquals(List.of("a", "b"), pushes.getLast());
+        int before = pushes.size();
+
+        // c 在提前推送之后出现，帧结束时连同整帧再推送一次
+        frame("a", "b", "c");
+        assertEquals(before + 1, pushes.size());
+        frame("a", "b", "c");
+        assertEquals(before + 3, pushes.size());
+        assertEquals(List.of("a", "b", "c"), pushes.get(before + 1));
+        assertEquals(List.of("c"), appends.get(before + 1));
+        assertEquals(Set.of("a", "b", "c"), completed.getLast());
+
+        // 之后的帧在 3 个容器收齐时推送，而不是逐行推送
+        before = pushes.size();
+        frame("a", "b", "c");
+        assertEquals(before + 1, pushes.size());
+        assertEquals(List.of("a", "b", "c"), pushes.getLast());
+        assertEquals(Set.of("a", "b", "c"), completed.getLast());
+    }
+
+    @Test
+    void testContainerStopsMidStream() {
+        frame("a", "b", "c");
+        frame("a", "b", "c");
+        int before = pushes.size();
+
+        // c 消失，这一帧在下一帧开始时推送
+        frame("a", "b");
+        assertEquals(before, pushes.size());
+        frame("a", "b");
+        assertEquals(List.of("a", "b"), pushes.get(before));
+        assertEquals(Set.of("a", "b"), completed.getLast());
+        assertEquals(List.of("a", "b"), pushes.getLast());
+        for (Set<String> names : completed) {
+            assertTrue(names.size() >= 2, "不完整的帧不能用来清理缓冲区");
+        }
+    }
+
+    private void frame(String... names) {
+        for (int i = 0; i < names.length; i++) {
+            frames.accept(new DockerStatsParser.Entry(names[i], names[i], i == 0, new double[0]));
+        }
+    }
+}
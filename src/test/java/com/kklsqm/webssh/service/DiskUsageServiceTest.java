@@ -0,0 +1,122 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+import com.kklsqm.webssh.common.SshSessionFactory;
+import com.kklsqm.webssh.domain.SshService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * DiskUsageService 测试类
+ */
+class DiskUsageServiceTest {
+
+    private static final String FIND_OUTPUT = """
+            8 4096 /data/logs/app.log
+            8 3000 /data/logs/app.log.1
+            64 32768 /data/db/base/16384/1259
+            garbage line
+            2 100 /data/readme
+            """;
+
+    private final SshService server = new SshService(1, "web", "10.0.0.1", 22, "root", "x", null, null);
+    // 放行 createSession，使第一次扫描在此之前一直处于进行中
+    private final CountDownLatch connect = new CountDownLatch(1);
+    private final DiskUsageService service;
+
+    DiskUsageServiceTest() throws Exception {
+        ChannelExec channel = mock(ChannelExec.class);
+        when(channel.getInputStream()).thenReturn(new ByteArrayInputStream(FIND_OUTPUT.getBytes(StandardCharsets.UTF_8)));
+        when(channel.isClosed()).thenReturn(true);
+        when(channel.getExitStatus()).thenReturn(0);
+        Session session = mock(Session.class);
+        when(session.openChannel("exec")).thenReturn(channel);
+        SshSessionFactory factory = mock(SshSessionFactory.class);
+        when(factory.createSession(server)).thenAnswer(invocation -> {
+            connect.await();
+            return session;
+        });
+        service = new DiskUsageService(factory, mock(SimpMessagingTemplate.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        connect.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    void testConcurrentStartsRunOneScan() throws Exception {
+        int requests = 16;
+        CyclicBarrier barrier = new CyclicBarrier(requests);
+        List<Future<DiskUsageService.Report>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < requests; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    return service.start(server, "/data/");
+                }));
+            }
+        }
+
+        int started = 0;
+        for (Future<DiskUsageService.Report> future : futures) {
+            try {
+                future.get();
+                started++;
+            } catch (ExecutionException e) {
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+        assertEquals(1, started);
+    }
+
+    @Test
+    void testAggregatesFindOutput() throws Exception {
+        String scanId = service.start(server, "/data/").getScanId();
+        assertThrows(IllegalStateException.class, () -> service.start(server, "/"));
+        connect.countDown();
+
+        DiskUsageService.Report report = awaitFinished();
+        assertEquals(scanId, report.getScanId());
+        assertFalse(report.isCancelled());
+        assertNull(report.getError());
+        // 无法解析的行被跳过
+        assertEquals(4, report.getFiles());
+        assertEquals((8 + 8 + 64 + 2) * 512L, report.getBytes());
+        assertEquals(4096 + 3000 + 32768 + 100, report.getApparentBytes());
+        assertEquals("/data/db/base/16384/1259", report.getTopFiles().getFirst().getPath());
+
+        List<DiskUsageService.DirUsage> children = service.getChildren(1, "/data/");
+        assertEquals(List.of("/data/db", "/data/logs"), children.stream().map(DiskUsageService.DirUsage::getPath).toList());
+        assertEquals(16 * 512L, children.get(1).getBytes());
+        assertTrue(children.getFirst().isHasChildren());
+
+        // 上一次扫描结束后可以再次扫描
+        assertNotEquals(scanId, service.start(server, "/data").getScanId());
+    }
+
+    private DiskUsageService.Report awaitFinished() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        DiskUsageService.Report report = service.getLast(1);
+        while (report.isRunning()) {
+            if (System.nanoTime() > deadline) {
+                fail("扫描没有结束");
+            }
+            Thread.sleep(10);
+            report = service.getLast(1);
+        }
+        return report;
+    }
+}
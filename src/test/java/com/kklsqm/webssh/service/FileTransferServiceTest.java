@@ -0,0 +1,46 @@
+package com.kklsqm.webssh.service;
+
+import org.junit.jupiter.api.Test;
+
+import static com.kklsqm.webssh.service.FileTransferService.TransferEncoding.GZIP;
+import static com.kklsqm.webssh.service.FileTransferService.TransferEncoding.ZSTD;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FileTransferService 测试类
+ */
+class FileTransferServiceTest {
+
+    @Test
+    void testChooseEncoding() {
+        // 文本类文件超过 64KB 压缩，zstd 可用时优先
+        assertEquals(ZSTD, FileTransferService.chooseEncoding("app.log", 1 << 20, "auto", true, true));
+        assertEquals(GZIP, FileTransferService.chooseEncoding("app.log", 1 << 20, "auto", true, false));
+        assertNull(FileTransferService.chooseEncoding("app.log", 1024, "auto", true, true));
+        // 轮转日志按文本处理
+        assertEquals(GZIP, FileTransferService.chooseEncoding("app.log.2025-09-01", 1 << 20, "AUTO", true, false));
+        // 未知类型要超过 4MB
+        assertNull(FileTransferService.chooseEncoding("data.bin", 1 << 20, "auto", true, false));
+        assertEquals(GZIP, FileTransferService.chooseEncoding("data.bin", 8 << 20, "auto", true, false));
+        // 已压缩的格式不再压缩
+        assertNull(FileTransferService.chooseEncoding("backup.tar.gz", 1L << 30, "auto", true, true));
+        // 没有压缩命令
+        assertNull(FileTransferService.chooseEncoding("app.log", 1 << 20, "auto", false, false));
+
+        // 强制模式不看类型和大小
+        assertEquals(GZIP, FileTransferService.chooseEncoding("photo.jpg", 10, "gzip", true, true));
+        assertNull(FileTransferService.chooseEncoding("photo.jpg", 10, "gzip", false, true));
+        assertEquals(GZIP, FileTransferService.chooseEncoding("photo.jpg", 10, "zstd", true, false));
+        assertNull(FileTransferService.chooseEncoding("app.log", 1 << 20, "none", true, true));
+    }
+
+    @Test
+    void testMayCompress() {
+        assertTrue(FileTransferService.mayCompress("app.log", "auto"));
+        assertTrue(FileTransferService.mayCompress("noext", "auto"));
+        assertFalse(FileTransferService.mayCompress("release.ZIP", "auto"));
+        assertTrue(FileTransferService.mayCompress("release.zip", "gzip"));
+        assertFalse(FileTransferService.mayCompress("app.log", "none"));
+        assertFalse(FileTransferService.mayCompress("app.log", "brotli"));
+    }
+}
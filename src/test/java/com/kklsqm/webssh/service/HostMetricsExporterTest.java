@@ -0,0 +1,73 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.domain.HostMetric;
+import com.kklsqm.webssh.domain.SshService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * HostMetricsExporter 测试类
+ */
+class HostMetricsExporterTest {
+
+    private static SshService server(int id, String name) {
+        SshService server = new SshService();
+        server.setId(id);
+        server.setName(name);
+        server.setHost("10.0.0." + id);
+        return server;
+    }
+
+    @Test
+    void testGaugesReadCachedSamplesAndFollowServerList() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SshServiceService sshServiceService = mock(SshServiceService.class);
+        MetricsCollectorService collector = mock(MetricsCollectorService.class);
+        when(collector.getCachedLatest(eq(1), any())).thenAnswer(invocation -> {
+            double[] dest = invocation.getArgument(1);
+            Arrays.fill(dest, Double.NaN);
+            dest[HostMetric.CPU.ordinal()] = 42.5;
+            return System.currentTimeMillis();
+        });
+        when(collector.getCachedLatest(eq(2), any())).thenReturn(-1L);
+
+        HostMetricsExporter exporter = new HostMetricsExporter(registry, sshServiceService, collector, 30_000);
+        when(sshServiceService.list()).thenReturn(List.of(server(1, "web-1"), server(2, "db-1")));
+        exporter.syncServers();
+
+        // 百分数导出为比例
+        assertEquals(0.425, registry.get("webssh.host.cpu.usage").tag("server", "web-1").gauge().value(), 1e-9);
+        assertEquals("ratio", registry.get("webssh.host.cpu.usage").tag("server", "web-1").gauge().getId().getBaseUnit());
+        assertEquals("bytes_per_second", registry.get("webssh.host.network.receive.rate").tag("server", "web-1").gauge().getId().getBaseUnit());
+        assertEquals(1, registry.get("webssh.host.up").tag("server", "web-1").gauge().value());
+        // 还没有采样的服务器导出 NaN
+        assertTrue(Double.isNaN(registry.get("webssh.host.cpu.usage").tag("server", "db-1").gauge().value()));
+        assertEquals(0, registry.get("webssh.host.up").tag("server", "db-1").gauge().value());
+
+        exporter.onContainerStates(server(1, "web-1"), Map.of("nginx", true, "redis", false));
+        assertEquals(1, registry.get("webssh.host.containers").tags("server", "web-1", "state", "running").gauge().value());
+        assertEquals(0, registry.get("webssh.container.running").tag("container", "redis").gauge().value());
+        exporter.onContainerStates(server(1, "web-1"), Map.of("nginx", true));
+        assertTrue(registry.find("webssh.container.running").tag("container", "redis").gauges().isEmpty());
+
+        // 改名后按新标签注册，删除后移除
+        when(sshServiceService.list()).thenReturn(List.of(server(1, "web-01")));
+        exporter.syncServers();
+        assertTrue(registry.find("webssh.host.cpu.usage").tag("server", "web-1").gauges().isEmpty());
+        assertTrue(registry.find("webssh.host.cpu.usage").tag("server", "db-1").gauges().isEmpty());
+        assertEquals(0.425, registry.get("webssh.host.cpu.usage").tag("server", "web-01").gauge().value(), 1e-9);
+
+        // 抓取不触发采集
+        verify(collector, never()).getLatest(any());
+        verify(collector, never()).getLatest(any(), anyLong());
+    }
+}
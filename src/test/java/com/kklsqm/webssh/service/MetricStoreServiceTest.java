@@ -0,0 +1,91 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.common.MetricRingBuffer;
+import com.kklsqm.webssh.domain.HostMetric;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MetricStoreService 测试类
+ */
+class MetricStoreServiceTest {
+
+    // 整点开始，便于核对汇总桶
+    private static final long START = 1_700_000_000_000L - 1_700_000_000_000L % 3_600_000;
+
+    @TempDir
+    Path dir;
+
+    private MetricStoreService newStore() {
+        return new MetricStoreService(true, dir.toString(), 7, 90, 730);
+    }
+
+    private static double[] sample(double cpu) {
+        double[] values = new double[HostMetric.count()];
+        Arrays.fill(values, Double.NaN);
+        values[HostMetric.CPU.ordinal()] = cpu;
+        return values;
+    }
+
+    @Test
+    void testRollupsAndRestart() throws Exception {
+        MetricStoreService store = newStore();
+        // 两个半小时，每 10 秒一个点，CPU 等于所在分钟数
+        long end = START + 150 * 60_000L;
+        for (long ts = START; ts < end; ts += 10_000) {
+            store.append(1, ts, sample((ts - START) / 60_000));
+        }
+
+        MetricRingBuffer.Range raw = store.query(1, MetricStoreService.Resolution.RAW, START, START + 59_999);
+        assertEquals(6, raw.size());
+
+        MetricRingBuffer.Range minutes = store.query(1, MetricStoreService.Resolution.MINUTE, Long.MIN_VALUE, Long.MAX_VALUE);
+        // 最后一分钟还没结束，不写出
+        assertEquals(149, minutes.size());
+        assertEquals(START + 60_000, minutes.timestamps()[1]);
+        assertEquals(1.0, minutes.values()[HostMetric.CPU.ordinal()][1]);
+        assertTrue(Double.isNaN(minutes.values()[HostMetric.MEMORY.ordinal()][1]));
+
+        MetricRingBuffer.Range hours = store.query(1, MetricStoreService.Resolution.HOUR, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(2, hours.size());
+        // 第一个小时 0..59 分钟的平均值
+        assertEquals(29.5, hours.values()[HostMetric.CPU.ordinal()][0]);
+        assertEquals(89.5, hours.values()[HostMetric.CPU.ordinal()][1]);
+
+        // 重启后从已有数据恢复未写出的时间桶 (第 149 分钟、第 2 小时)，继续写入
+        store.shutdown();
+        MetricStoreService reopened = newStore();
+        reopened.append(1, START + 180 * 60_000L, sample(180));
+        reopened.append(1, START + 181 * 60_000L, sample(181));
+        // 第 149 分钟和第 180 分钟写出
+        assertEquals(151, reopened.query(1, MetricStoreService.Resolution.MINUTE, Long.MIN_VALUE, Long.MAX_VALUE).size());
+        MetricRingBuffer.Range reopenedHours = reopened.query(1, MetricStoreService.Resolution.HOUR, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(3, reopenedHours.size());
+        assertEquals(134.5, reopenedHours.values()[HostMetric.CPU.ordinal()][2]);
+        assertEquals(902, reopened.query(1, MetricStoreService.Resolution.RAW, Long.MIN_VALUE, Long.MAX_VALUE).size());
+        reopened.shutdown();
+    }
+
+    @Test
+    void testChooseResolutionBySpan() {
+        MetricStoreService store = newStore();
+        long now = System.currentTimeMillis();
+        assertEquals(MetricStoreService.Resolution.RAW, store.chooseResolution(now - 300_000, now, 5000, 500));
+        assertEquals(MetricStoreService.Resolution.MINUTE, store.chooseResolution(now - 86_400_000L, now, 5000, 500));
+        assertEquals(MetricStoreService.Resolution.HOUR, store.chooseResolution(now - 30 * 86_400_000L, now, 5000, 500));
+        // 原始数据只保留 7 天，更早的一小段也要用汇总数据
+        assertEquals(MetricStoreService.Resolution.MINUTE,
+                store.chooseResolution(now - 10 * 86_400_000L, now - 10 * 86_400_000L + 300_000, 5000, 500));
+    }
+
+    @Test
+    void testUnknownServerReturnsEmpty() throws Exception {
+        MetricStoreService store = newStore();
+        assertEquals(0, store.query(99, MetricStoreService.Resolution.RAW, 0, Long.MAX_VALUE).size());
+    }
+}
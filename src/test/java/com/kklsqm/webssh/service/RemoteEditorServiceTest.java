@@ -0,0 +1,225 @@
+package com.kklsqm.webssh.service;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.kklsqm.webssh.common.SshSessionFactory;
+import com.kklsqm.webssh.domain.SshService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * RemoteEditorService 测试类，远程文件用内存中的字节数组模拟
+ */
+class RemoteEditorServiceTest {
+
+    private static final String PATH = "/data/big.log";
+    private static final int BLOCK = 64 * 1024;
+    private static final Pattern TRUNCATE = Pattern.compile("truncate -s (\\d+) ");
+
+    @TempDir
+    Path tempDir;
+
+    private final SshService server = new SshService(1, "web", "10.0.0.1", 22, "root", "x", null, null);
+    private final FileTransferService fileTransferService = mock(FileTransferService.class);
+    private RemoteEditorService service;
+
+    // 模拟的远程文件
+    private byte[] remote;
+    private int remoteMtime = 1000;
+    private long bytesRead;
+    private long bytesWritten;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        remote = new byte[5 * BLOCK + 100];
+        for (int i = 0; i < remote.length; i++) {
+            remote[i] = (byte) ('a' + i % 26);
+        }
+
+        ChannelSftp sftp = mock(ChannelSftp.class);
+        when(sftp.stat(PATH)).thenAnswer(invocation -> attrs());
+        when(sftp.get(eq(PATH), isNull(), anyLong())).thenAnswer(invocation -> {
+            int offset = (int) invocation.<Long>getArgument(2).longValue();
+            return new ByteArrayInputStream(remote, offset, remote.length - offset) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    int read = super.read(b, off, len);
+                    bytesRead += Math.max(read, 0);
+                    return read;
+                }
+            };
+        });
+        when(sftp.put(eq(PATH), isNull(), eq(ChannelSftp.RESUME), anyLong())).thenAnswer(invocation -> {
+            long start = remote.length + invocation.<Long>getArgument(3);
+            return new OutputStream() {
+                private long position = start;
+
+                @Override
+                public void write(int b) {
+                    if (position >= remote.length) {
+                        remote = Arrays.copyOf(remote, (int) position + 1);
+                    }
+                    remote[(int) position++] = (byte) b;
+                    bytesWritten++;
+                }
+
+                @Override
+                public void close() {
+                    remoteMtime++;
+                }
+            };
+        });
+
+        Session ssh = mock(Session.class);
+        when(ssh.openChannel("sftp")).thenReturn(sftp);
+        when(ssh.openChannel("exec")).thenAnswer(invocation -> execChannel());
+        SshSessionFactory factory = mock(SshSessionFactory.class);
+        when(factory.createSession(server)).thenReturn(ssh);
+        service = new RemoteEditorService(factory, fileTransferService, tempDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testSameLengthEditOnlyTouchesOneBlock() throws Exception {
+        byte[] expected = remote.clone();
+        String editId = service.open(server, PATH).getEditId();
+
+        RemoteEditorService.EditInfo info = service.edit(editId, 2 * BLOCK + 10, 5, "HELLO");
+        assertEquals(1, info.getLoadedBlocks());
+        assertEquals(1, info.getDirtyBlocks());
+        assertEquals(BLOCK, bytesRead);
+
+        RemoteEditorService.SaveResult result = service.save(editId, false);
+        assertEquals(1, result.getRanges());
+        assertEquals(BLOCK, result.getBytesWritten());
+        assertEquals(BLOCK, bytesWritten);
+        assertEquals(0, result.getInfo().getDirtyBlocks());
+        verify(fileTransferService).invalidateListings(server);
+
+        System.arraycopy("HELLO".getBytes(StandardCharsets.UTF_8), 0, expected, 2 * BLOCK + 10, 5);
+        assertArrayEquals(expected, remote);
+    }
+
+    @Test
+    void testEditsInSeparateBlocksSaveAsSeparateRanges() throws Exception {
+        byte[] expected = remote.clone();
+        String editId = service.open(server, PATH).getEditId();
+        service.edit(editId, 10, 1, "X");
+        service.edit(editId, 4 * BLOCK + 10, 1, "Y");
+
+        // 读取中间的块只加载，不标记为脏
+        assertEquals(String.valueOf((char) expected[2 * BLOCK]), service.read(editId, 2 * BLOCK, 1).getText());
+        assertEquals(3, service.read(editId, 0, 0).getInfo().getLoadedBlocks());
+
+        RemoteEditorService.SaveResult result = service.save(editId, false);
+        assertEquals(2, result.getRanges());
+        assertEquals(2L * BLOCK, result.getBytesWritten());
+
+        expected[10] = 'X';
+        expected[4 * BLOCK + 10] = 'Y';
+        assertArrayEquals(expected, remote);
+    }
+
+    @Test
+    void testInsertShiftsTail() throws Exception {
+        String original = new String(remote, StandardCharsets.US_ASCII);
+        String editId = service.open(server, PATH).getEditId();
+
+        RemoteEditorService.EditInfo info = service.edit(editId, BLOCK + 7, 0, "INSERTED");
+        assertEquals(remote.length + 8, info.getSize());
+        // 插入点之前的块不需要取回
+        assertEquals(remote.length - BLOCK, bytesRead);
+
+        service.save(editId, false);
+        String expected = original.substring(0, BLOCK + 7) + "INSERTED" + original.substring(BLOCK + 7);
+        assertEquals(expected, new String(remote, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testDeleteTruncatesRemoteFile() throws Exception {
+        String original = new String(remote, StandardCharsets.US_ASCII);
+        String editId = service.open(server, PATH).getEditId();
+
+        service.edit(editId, 3 * BLOCK, 1000, "");
+        RemoteEditorService.SaveResult result = service.save(editId, false);
+
+        String expected = original.substring(0, 3 * BLOCK) + original.substring(3 * BLOCK + 1000);
+        assertEquals(expected, new String(remote, StandardCharsets.US_ASCII));
+        assertEquals(expected.length(), result.getInfo().getRemoteSize());
+    }
+
+    @Test
+    void testConcurrentRemoteChangeIsRejected() throws Exception {
+        String editId = service.open(server, PATH).getEditId();
+        service.edit(editId, 0, 1, "Z");
+
+        remoteMtime++;
+        byte[] changed = remote.clone();
+        assertThrows(RemoteEditorService.ConflictException.class, () -> service.save(editId, false));
+        assertArrayEquals(changed, remote);
+        assertEquals(1, service.read(editId, 0, 0).getInfo().getDirtyBlocks());
+
+        // 强制保存覆盖远程修改，并以新的属性作为下一次比较的基准
+        RemoteEditorService.SaveResult result = service.save(editId, true);
+        assertEquals('Z', remote[0]);
+        assertEquals(remoteMtime, result.getInfo().getRemoteMtime());
+        service.edit(editId, 1, 1, "W");
+        service.save(editId, false);
+        assertEquals('W', remote[1]);
+    }
+
+    @Test
+    void testSecondSaveAfterOwnWriteIsNotAConflict() throws Exception {
+        String editId = service.open(server, PATH).getEditId();
+        service.edit(editId, 0, 1, "A");
+        service.save(editId, false);
+        // 自己的写入改变了修改时间，基准随之更新
+        service.edit(editId, BLOCK, 1, "B");
+        assertEquals(1, service.save(editId, false).getRanges());
+        assertEquals('B', remote[BLOCK]);
+    }
+
+    private SftpATTRS attrs() {
+        SftpATTRS attrs = mock(SftpATTRS.class);
+        long size = remote.length;
+        int mtime = remoteMtime;
+        when(attrs.getSize()).thenReturn(size);
+        when(attrs.getMTime()).thenReturn(mtime);
+        return attrs;
+    }
+
+    private ChannelExec execChannel() throws Exception {
+        ChannelExec channel = mock(ChannelExec.class);
+        doAnswer(invocation -> {
+            Matcher matcher = TRUNCATE.matcher(invocation.getArgument(0));
+            assertTrue(matcher.find());
+            remote = Arrays.copyOf(remote, Integer.parseInt(matcher.group(1)));
+            remoteMtime++;
+            return null;
+        }).when(channel).setCommand(anyString());
+        when(channel.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(channel.isClosed()).thenReturn(true);
+        when(channel.getExitStatus()).thenReturn(0);
+        return channel;
+    }
+}
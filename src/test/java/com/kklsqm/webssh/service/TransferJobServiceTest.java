@@ -0,0 +1,117 @@
+package com.kklsqm.webssh.service;
+
+import com.kklsqm.webssh.domain.SshService;
+import com.kklsqm.webssh.domain.TransferJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * TransferJobService 测试类
+ */
+class TransferJobServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FileTransferService fileTransferService = mock(FileTransferService.class);
+    // 目标目录 -> 放行该复制任务的闩
+    private final Map<String, CountDownLatch> gates = new ConcurrentHashMap<>();
+    private TransferJobService service;
+
+    private final SshService a = new SshService(1, "a", "10.0.0.1", 22, "root", "x", null, null);
+    private final SshService b = new SshService(2, "b", "10.0.0.2", 22, "root", "x", null, null);
+    private final SshService c = new SshService(3, "c", "10.0.0.3", 22, "root", "x", null, null);
+
+    @AfterEach
+    void tearDown() {
+        gates.values().forEach(CountDownLatch::countDown);
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void testPerServerConcurrencyAndQueueOrder() throws Exception {
+        service = newService(1);
+        TransferJob first = submit(a, b, "/first");
+        TransferJob second = submit(a, c, "/second");
+        TransferJob other = submit(c, b, "/other");
+
+        awaitStatus(first, TransferJob.Status.RUNNING);
+        // second 与 first 共用服务器 a，排队；other 的服务器 b 已被 first 占用，同样排队
+        assertEquals(TransferJob.Status.QUEUED, second.getStatus());
+        assertEquals(TransferJob.Status.QUEUED, other.getStatus());
+
+        gates.get("/first").countDown();
+        awaitStatus(first, TransferJob.Status.COMPLETED);
+        // 按提交顺序，second 先占用 a 和 c，other 仍需等待 c
+        awaitStatus(second, TransferJob.Status.RUNNING);
+        assertEquals(TransferJob.Status.QUEUED, other.getStatus());
+
+        gates.get("/second").countDown();
+        awaitStatus(other, TransferJob.Status.RUNNING);
+        gates.get("/other").countDown();
+        awaitStatus(other, TransferJob.Status.COMPLETED);
+    }
+
+    @Test
+    void testCancelQueuedAndRunning() throws Exception {
+        service = newService(1);
+        TransferJob running = submit(a, b, "/running");
+        TransferJob queued = submit(a, b, "/queued");
+        awaitStatus(running, TransferJob.Status.RUNNING);
+
+        service.cancel(queued.getId());
+        assertEquals(TransferJob.Status.CANCELLED, queued.getStatus());
+
+        // 运行中的任务被中断后标记为已取消，而不是失败
+        service.cancel(running.getId());
+        awaitStatus(running, TransferJob.Status.CANCELLED);
+        verify(fileTransferService, never()).copyBetweenServers(any(), any(), eq(List.of("/queued")), any(), anyBoolean(), any());
+
+        // 已取消的任务可以重试
+        gates.get("/running").countDown();
+        service.retry(running.getId());
+        awaitStatus(running, TransferJob.Status.COMPLETED);
+        assertEquals(2, running.getAttempts());
+    }
+
+    private TransferJobService newService(int maxConcurrentPerServer) throws Exception {
+        when(fileTransferService.copyBetweenServers(any(), any(), anyList(), any(), anyBoolean(), any()))
+                .thenAnswer(invocation -> {
+                    String path = invocation.<List<String>>getArgument(2).get(0);
+                    gates.get(path).await();
+                    return List.of();
+                });
+        return new TransferJobService(fileTransferService, mock(BulkTransferService.class),
+                mock(SimpMessagingTemplate.class), 4, maxConcurrentPerServer, 0, tempDir.toString());
+    }
+
+    private TransferJob submit(SshService source, SshService target, String path) {
+        gates.put(path, new CountDownLatch(1));
+        return service.submitCopy(source, target, List.of(path), "/target", false);
+    }
+
+    private static void awaitStatus(TransferJob job, TransferJob.Status status) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (job.getStatus() != status) {
+            if (System.nanoTime() > deadline) {
+                fail("任务状态为 " + job.getStatus() + "，期望 " + status);
+            }
+            Thread.sleep(10);
+        }
+    }
+}